@@ -0,0 +1,278 @@
+package edu.cmu.cs.ark.cle;
+
+import edu.cmu.cs.ark.cle.graph.IntWeightedGraph;
+import edu.cmu.cs.ark.cle.util.Weighted;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static edu.cmu.cs.ark.cle.util.Weighted.weighted;
+
+/**
+ * Chu-Liu-Edmonds' algorithm specialised to graphs over int node ids, in
+ * O(m log n) time. This follows Tarjan's "Finding Optimum Branchings" with
+ * Gabow et al.'s improvements: the incoming edges of each strongly connected
+ * component are held in a mergeable (leftist) heap with lazy weight
+ * adjustment, and components are contracted with a union-find structure that
+ * can be rolled back to recover the arborescence. All the state is held in
+ * primitive arrays indexed by node or edge, so no object is created per edge.
+ *
+ * Nodes that cannot be reached from the root have no parent.
+ */
+public class IntChuLiuEdmonds {
+	/**
+	 * Find an optimal arborescence of the given graph rooted in the given node.
+	 *
+	 * @return The parent of each node, or -1 for the root and the nodes that
+	 * cannot be reached from it, weighted by the sum of the weights of the
+	 * chosen edges
+	 */
+	public static Weighted<int[]> getMaxArborescence(IntWeightedGraph graph, int root) {
+		final int n = graph.numberOfNodes();
+		final int m = graph.numberOfEdges();
+		checkArgument(root >= 0 && root < n, "Root is not a node of the graph");
+		// Every node other than the root gets an artificial edge from the root
+		// (edge m + v into v) whose weight is lower than that of any
+		// arborescence, so that it is only chosen if v cannot be reached
+		double big = 1.0;
+		for (int e = 0; e < m; e++) {
+			if (graph.isEdge(e)) {
+				big += 2.0 * Math.abs(graph.weight(e));
+			}
+		}
+		final EdgeHeaps heaps = new EdgeHeaps(m + n);
+		final int[] heap = new int[n];
+		Arrays.fill(heap, -1);
+		for (int e = 0; e < m; e++) {
+			if (graph.destination(e) != root && graph.isEdge(e)) {
+				final int d = graph.destination(e);
+				heap[d] = heaps.merge(heap[d], heaps.init(e, graph.weight(e)));
+			}
+		}
+		for (int v = 0; v < n; v++) {
+			if (v != root) {
+				heap[v] = heaps.merge(heap[v], heaps.init(m + v, -big));
+			}
+		}
+
+		final RollbackUnionFind components = new RollbackUnionFind(n);
+		final int[] seen = new int[n];
+		Arrays.fill(seen, -1);
+		seen[root] = root;
+		final int[] path = new int[n];
+		final int[] queue = new int[n];
+		final int[] in = new int[n];
+		Arrays.fill(in, -1);
+		// The contracted cycles as (component, union-find time) and their edges
+		final List<int[]> cycles = new ArrayList<int[]>();
+		final List<int[]> cycleEdges = new ArrayList<int[]>();
+		for (int s = 0; s < n; s++) {
+			int u = s, qi = 0;
+			while (seen[u] < 0) {
+				// The best edge into u; the heap is never empty as the
+				// artificial edges lead to the root
+				final int e = heap[u];
+				final double w = heaps.key(e);
+				heaps.add(e, -w);
+				heap[u] = heaps.pop(e);
+				queue[qi] = e;
+				path[qi++] = u;
+				seen[u] = s;
+				u = components.find(source(graph, m, root, e));
+				if (seen[u] == s) {
+					// Found a cycle, contract it
+					int cycle = -1;
+					final int end = qi, time = components.time();
+					int w2;
+					do {
+						w2 = path[--qi];
+						cycle = heaps.merge(cycle, heap[w2]);
+					} while (components.join(u, w2));
+					u = components.find(u);
+					heap[u] = cycle;
+					seen[u] = -1;
+					cycles.add(new int[] { u, time });
+					cycleEdges.add(Arrays.copyOfRange(queue, qi, end));
+				}
+			}
+			for (int i = 0; i < qi; i++) {
+				in[components.find(destination(graph, m, queue[i]))] = queue[i];
+			}
+		}
+		// Expand the cycles, most recent first. All the edges of a cycle are
+		// kept except the one into the node that the edge into the cycle enters
+		for (int c = cycles.size() - 1; c >= 0; c--) {
+			final int u = cycles.get(c)[0];
+			components.rollback(cycles.get(c)[1]);
+			final int inEdge = in[u];
+			for (int e : cycleEdges.get(c)) {
+				in[components.find(destination(graph, m, e))] = e;
+			}
+			in[components.find(destination(graph, m, inEdge))] = inEdge;
+		}
+
+		final int[] parents = new int[n];
+		double score = 0.0;
+		for (int v = 0; v < n; v++) {
+			if (v == root || in[v] < 0 || in[v] >= m) {
+				parents[v] = -1;
+			} else {
+				parents[v] = graph.source(in[v]);
+				score += graph.weight(in[v]);
+			}
+		}
+		return weighted(parents, score);
+	}
+
+	private static int source(IntWeightedGraph graph, int m, int root, int e) {
+		return e < m ? graph.source(e) : root;
+	}
+
+	private static int destination(IntWeightedGraph graph, int m, int e) {
+		return e < m ? graph.destination(e) : e - m;
+	}
+
+	/**
+	 * Leftist max-heaps of edges, where each edge is the node of its own heap.
+	 * A constant can be added to all the keys of a heap lazily.
+	 */
+	private static class EdgeHeaps {
+		private final int[] left, right, rank;
+		private final double[] key, lazy;
+
+		EdgeHeaps(int size) {
+			left = new int[size];
+			right = new int[size];
+			rank = new int[size];
+			key = new double[size];
+			lazy = new double[size];
+		}
+
+		int init(int e, double weight) {
+			left[e] = right[e] = -1;
+			rank[e] = 1;
+			key[e] = weight;
+			return e;
+		}
+
+		private void push(int a) {
+			if (lazy[a] != 0.0) {
+				key[a] += lazy[a];
+				if (left[a] >= 0) {
+					lazy[left[a]] += lazy[a];
+				}
+				if (right[a] >= 0) {
+					lazy[right[a]] += lazy[a];
+				}
+				lazy[a] = 0.0;
+			}
+		}
+
+		private int rank(int a) {
+			return a < 0 ? 0 : rank[a];
+		}
+
+		/** The key of the top of a heap */
+		double key(int a) {
+			push(a);
+			return key[a];
+		}
+
+		/** Add a constant to all keys of a heap */
+		void add(int a, double delta) {
+			lazy[a] += delta;
+		}
+
+		int merge(int a, int b) {
+			if (a < 0) {
+				return b;
+			}
+			if (b < 0) {
+				return a;
+			}
+			push(a);
+			push(b);
+			if (key[a] < key[b] || (key[a] == key[b] && a > b)) {
+				final int t = a;
+				a = b;
+				b = t;
+			}
+			right[a] = merge(right[a], b);
+			if (rank(left[a]) < rank(right[a])) {
+				final int t = left[a];
+				left[a] = right[a];
+				right[a] = t;
+			}
+			rank[a] = rank(right[a]) + 1;
+			return a;
+		}
+
+		/** Remove the top of a heap */
+		int pop(int a) {
+			push(a);
+			return merge(left[a], right[a]);
+		}
+	}
+
+	/**
+	 * Union-find with union by size and no path compression, so that the
+	 * unions can be undone
+	 */
+	private static class RollbackUnionFind {
+		// The negated size of each root or the parent of each other node
+		private final int[] e;
+		private int[] history = new int[16];
+		private int time = 0;
+
+		RollbackUnionFind(int n) {
+			e = new int[n];
+			Arrays.fill(e, -1);
+		}
+
+		int find(int x) {
+			while (e[x] >= 0) {
+				x = e[x];
+			}
+			return x;
+		}
+
+		int time() {
+			return time;
+		}
+
+		void rollback(int t) {
+			while (time > t) {
+				time -= 2;
+				e[history[time]] = history[time + 1];
+			}
+		}
+
+		boolean join(int a, int b) {
+			a = find(a);
+			b = find(b);
+			if (a == b) {
+				return false;
+			}
+			if (e[a] > e[b]) {
+				final int t = a;
+				a = b;
+				b = t;
+			}
+			record(a);
+			record(b);
+			e[a] += e[b];
+			e[b] = a;
+			return true;
+		}
+
+		private void record(int x) {
+			if (time + 2 > history.length) {
+				history = Arrays.copyOf(history, history.length * 2);
+			}
+			history[time++] = x;
+			history[time++] = e[x];
+		}
+	}
+}
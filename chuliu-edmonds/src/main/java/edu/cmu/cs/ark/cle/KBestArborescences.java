@@ -3,16 +3,25 @@ package edu.cmu.cs.ark.cle;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.Queues;
 import edu.cmu.cs.ark.cle.util.Pair;
 import edu.cmu.cs.ark.cle.graph.Edge;
 import edu.cmu.cs.ark.cle.graph.WeightedGraph;
 import edu.cmu.cs.ark.cle.util.Weighted;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static com.google.common.base.Predicates.and;
 import static com.google.common.base.Predicates.not;
@@ -31,15 +40,42 @@ import static java.util.Collections.singleton;
 public class KBestArborescences {
 	/** Find the k-best arborescences of `graph`, rooted in the given node `root`. */
 	public static <V> List<Weighted<Arborescence<V>>> getKBestArborescences(WeightedGraph<V> graph, V root, int k) {
+		return getKBestArborescences(graph, root, k, 1);
+	}
+
+	/**
+	 * Find the k-best arborescences of `graph`, rooted in the given node `root`, solving the
+	 * subproblems on `numThreads` threads (0 or less to use all available processors).
+	 * The result is the same as with a single thread.
+	 */
+	public static <V> List<Weighted<Arborescence<V>>> getKBestArborescences(WeightedGraph<V> graph, V root, int k,
+																		   int numThreads) {
 		// remove all edges incoming to `root`. resulting arborescence is then forced to be rooted at `root`.
-		return getKBestArborescences(graph.filterEdges(not(Edge.hasDestination(root))), k);
+		final WeightedGraph<V> rooted = graph.filterEdges(not(Edge.hasDestination(root)));
+		if (numThreads <= 0) {
+			numThreads = Runtime.getRuntime().availableProcessors();
+		}
+		if (numThreads == 1 || k < 3) {
+			return getKBestArborescences(rooted, k, null, 1);
+		}
+		final ExecutorService service = Executors.newFixedThreadPool(numThreads);
+		try {
+			return getKBestArborescences(rooted, k, service, numThreads);
+		} finally {
+			service.shutdownNow();
+		}
 	}
 
 	/**
 	 * Find the k-best arborescences of `graph`.
 	 * Equivalent to the RANK function in Camerini et al. 1980.
+	 *
+	 * Splitting a subset of solutions only depends on that subset, so with a `service` the best
+	 * `lookahead` subsets in the queue are split speculatively in parallel. The subsets are
+	 * still taken from the queue one at a time, so the order of the results does not change.
 	 */
-	private static <V> List<Weighted<Arborescence<V>>> getKBestArborescences(WeightedGraph<V> graph, int k) {
+	private static <V> List<Weighted<Arborescence<V>>> getKBestArborescences(final WeightedGraph<V> graph, int k,
+																			ExecutorService service, int lookahead) {
 		final List<Weighted<Arborescence<V>>> results = Lists.newArrayList();
 		if (k < 1) return results;
 		// 1-best
@@ -47,28 +83,84 @@ public class KBestArborescences {
 		results.add(best);
 		if (k < 2) return results;
 		final PriorityQueue<Weighted<SubsetOfSolutions<V>>> queue = Queues.newPriorityQueue();
+		final Map<SubsetOfSolutions<V>, Future<Split<V>>> pending = Maps.newIdentityHashMap();
 		// find the edge you need to ban to get the 2nd best
 		final Set<Edge<V>> empty = ImmutableSet.of();
 		queue.addAll(scoreSubsetOfSolutions(graph, empty, empty, best).asSet());
 		for (int j = 2; j <= k && !queue.isEmpty(); j++) {
+			if (service != null && j < k) {
+				// Only the best `k - j + 1` subsets in the queue can still be split
+				final List<Weighted<SubsetOfSolutions<V>>> next = Lists.newArrayList(queue);
+				Collections.sort(next, queue.comparator() == null
+						? Ordering.<Weighted<SubsetOfSolutions<V>>>natural() : queue.comparator());
+				for (int i = 0; i < Math.min(Math.min(lookahead, k - j + 1), next.size()); i++) {
+					final SubsetOfSolutions<V> item = next.get(i).val;
+					if (!pending.containsKey(item)) {
+						pending.put(item, service.submit(new Callable<Split<V>>() {
+							@Override
+							public Split<V> call() {
+								return split(graph, item);
+							}
+						}));
+					}
+				}
+			}
 			final Weighted<SubsetOfSolutions<V>> wItem = queue.poll();
-			final SubsetOfSolutions<V> item = wItem.val;
-			// divide this subset into 2: things that have `edgeToBan`, and those that don't.
-			// We have already pre-calculated that `jthBest` will not contain `edgeToBan`
-			final Set<Edge<V>> newBanned = copyOf(concat(item.banned, singleton(item.edgeToBan)));
-			final Weighted<Arborescence<V>> jthBest =
-					ChuLiuEdmonds.getMaxArborescence(graph, item.required, newBanned);
-			assert jthBest.weight == wItem.weight;
-			results.add(jthBest);
-			// subset of solutions in item that *don't* have `edgeToBan`, except `jthBest`
-			queue.addAll(scoreSubsetOfSolutions(graph, item.required, newBanned, jthBest).asSet());
-			// subset of solutions in item that *do* have `edgeToBan`, except `bestArborescence`
-			final Set<Edge<V>> newRequired = copyOf(concat(item.required, singleton(item.edgeToBan)));
-			queue.addAll(scoreSubsetOfSolutions(graph, newRequired, item.banned, item.bestArborescence).asSet());
+			final Future<Split<V>> future = pending.remove(wItem.val);
+			final Split<V> split;
+			if (future == null) {
+				split = split(graph, wItem.val);
+			} else {
+				try {
+					split = future.get();
+				} catch (InterruptedException | ExecutionException x) {
+					throw new RuntimeException("Could not find the next best arborescence", x);
+				}
+			}
+			assert split.jthBest.weight == wItem.weight;
+			results.add(split.jthBest);
+			queue.addAll(split.withoutEdgeToBan.asSet());
+			queue.addAll(split.withEdgeToBan.asSet());
+		}
+		for (Future<Split<V>> future : pending.values()) {
+			future.cancel(true);
 		}
 		return results;
 	}
 
+	/**
+	 * Divide a subset into 2: things that have `edgeToBan`, and those that don't.
+	 */
+	private static <V> Split<V> split(WeightedGraph<V> graph, SubsetOfSolutions<V> item) {
+		// We have already pre-calculated that `jthBest` will not contain `edgeToBan`
+		final Set<Edge<V>> newBanned = copyOf(concat(item.banned, singleton(item.edgeToBan)));
+		final Weighted<Arborescence<V>> jthBest =
+				ChuLiuEdmonds.getMaxArborescence(graph, item.required, newBanned);
+		// subset of solutions in item that *don't* have `edgeToBan`, except `jthBest`
+		final Optional<Weighted<SubsetOfSolutions<V>>> withoutEdgeToBan =
+				scoreSubsetOfSolutions(graph, item.required, newBanned, jthBest);
+		// subset of solutions in item that *do* have `edgeToBan`, except `bestArborescence`
+		final Set<Edge<V>> newRequired = copyOf(concat(item.required, singleton(item.edgeToBan)));
+		final Optional<Weighted<SubsetOfSolutions<V>>> withEdgeToBan =
+				scoreSubsetOfSolutions(graph, newRequired, item.banned, item.bestArborescence);
+		return new Split<V>(jthBest, withoutEdgeToBan, withEdgeToBan);
+	}
+
+	/** The result of splitting a subset of solutions */
+	private static class Split<V> {
+		final Weighted<Arborescence<V>> jthBest;
+		final Optional<Weighted<SubsetOfSolutions<V>>> withoutEdgeToBan;
+		final Optional<Weighted<SubsetOfSolutions<V>>> withEdgeToBan;
+
+		Split(Weighted<Arborescence<V>> jthBest,
+			  Optional<Weighted<SubsetOfSolutions<V>>> withoutEdgeToBan,
+			  Optional<Weighted<SubsetOfSolutions<V>>> withEdgeToBan) {
+			this.jthBest = jthBest;
+			this.withoutEdgeToBan = withoutEdgeToBan;
+			this.withEdgeToBan = withEdgeToBan;
+		}
+	}
+
 	static <V> Optional<Weighted<SubsetOfSolutions<V>>>
 			scoreSubsetOfSolutions(WeightedGraph<V> graph,
 								   Set<Edge<V>> required,
@@ -0,0 +1,151 @@
+package edu.cmu.cs.ark.cle.graph;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A directed graph over the nodes 0..n-1 whose edges are held in primitive
+ * arrays, so that graphs with tens of millions of edges need no object per
+ * edge. Edges whose weight is not finite (e.g., negative infinity) are not
+ * stored.
+ *
+ * The arrays passed to {@link #from(int, int[], int[], double[])} are not
+ * copied and must not be modified afterwards. A complete graph can also be
+ * created by {@link #dense(int, Weights)} from a function of the weights, in
+ * which case no edge is stored and edge e goes from e / n to e % n.
+ */
+public class IntWeightedGraph {
+	/** The weight of each edge of a complete graph */
+	public interface Weights {
+		/**
+		 * The weight of the edge from source to destination, which is not
+		 * finite if there is no edge
+		 */
+		double weight(int source, int destination);
+	}
+
+	private final int numNodes;
+	private final int[] sources;
+	private final int[] destinations;
+	private final double[] weights;
+	// The weights of a dense graph or null if the edges are stored
+	private final Weights dense;
+
+	private IntWeightedGraph(int numNodes, int[] sources, int[] destinations, double[] weights) {
+		this.numNodes = numNodes;
+		this.sources = sources;
+		this.destinations = destinations;
+		this.weights = weights;
+		this.dense = null;
+	}
+
+	private IntWeightedGraph(int numNodes, Weights dense) {
+		this.numNodes = numNodes;
+		this.sources = null;
+		this.destinations = null;
+		this.weights = null;
+		this.dense = dense;
+	}
+
+	/**
+	 * Create a graph from a list of edges, where edge i goes from sources[i] to
+	 * destinations[i] with weight weights[i]
+	 */
+	public static IntWeightedGraph from(int numNodes, int[] sources, int[] destinations, double[] weights) {
+		checkArgument(sources.length == destinations.length && sources.length == weights.length,
+				"Edge arrays must have the same length");
+		int m = 0;
+		for (int e = 0; e < sources.length; e++) {
+			checkArgument(sources[e] >= 0 && sources[e] < numNodes
+					&& destinations[e] >= 0 && destinations[e] < numNodes, "Edge to unknown node");
+			if (keep(weights[e])) {
+				m++;
+			}
+		}
+		if (m == sources.length) {
+			return new IntWeightedGraph(numNodes, sources, destinations, weights);
+		}
+		final int[] s = new int[m], d = new int[m];
+		final double[] w = new double[m];
+		m = 0;
+		for (int e = 0; e < sources.length; e++) {
+			if (keep(weights[e])) {
+				s[m] = sources[e];
+				d[m] = destinations[e];
+				w[m++] = weights[e];
+			}
+		}
+		return new IntWeightedGraph(numNodes, s, d, w);
+	}
+
+	/**
+	 * Create a graph from a matrix indexed by source and then destination.
+	 * Self-loops are not included.
+	 */
+	public static IntWeightedGraph from(double[][] weights) {
+		final int n = weights.length;
+		int m = 0;
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				if (i != j && keep(weights[i][j])) {
+					m++;
+				}
+			}
+		}
+		final int[] s = new int[m], d = new int[m];
+		final double[] w = new double[m];
+		m = 0;
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				if (i != j && keep(weights[i][j])) {
+					s[m] = i;
+					d[m] = j;
+					w[m++] = weights[i][j];
+				}
+			}
+		}
+		return new IntWeightedGraph(n, s, d, w);
+	}
+
+	/**
+	 * Create a graph with an edge between every ordered pair of nodes, whose
+	 * weights are read from a function when they are needed. Self-loops and
+	 * edges whose weight is not finite are ignored by the algorithms.
+	 */
+	public static IntWeightedGraph dense(int numNodes, Weights weights) {
+		checkArgument((long) numNodes * (numNodes + 1) < Integer.MAX_VALUE, "Too many nodes for a dense graph");
+		return new IntWeightedGraph(numNodes, weights);
+	}
+
+	/**
+	 * Check if an edge can be used, that is it is not a self-loop and its
+	 * weight is finite
+	 */
+	public boolean isEdge(int edge) {
+		final int s = source(edge);
+		return s != destination(edge) && keep(weight(edge));
+	}
+
+	private static boolean keep(double weight) {
+		return !Double.isInfinite(weight) && !Double.isNaN(weight);
+	}
+
+	public int numberOfNodes() {
+		return numNodes;
+	}
+
+	public int numberOfEdges() {
+		return dense == null ? sources.length : numNodes * numNodes;
+	}
+
+	public int source(int edge) {
+		return dense == null ? sources[edge] : edge / numNodes;
+	}
+
+	public int destination(int edge) {
+		return dense == null ? destinations[edge] : edge % numNodes;
+	}
+
+	public double weight(int edge) {
+		return dense == null ? weights[edge] : dense.weight(edge / numNodes, edge % numNodes);
+	}
+}
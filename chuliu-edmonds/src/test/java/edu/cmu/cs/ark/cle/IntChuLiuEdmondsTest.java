@@ -0,0 +1,109 @@
+package edu.cmu.cs.ark.cle;
+
+import edu.cmu.cs.ark.cle.graph.DenseWeightedGraph;
+import edu.cmu.cs.ark.cle.graph.IntWeightedGraph;
+import edu.cmu.cs.ark.cle.util.Weighted;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IntChuLiuEdmondsTest {
+	final static double DELTA = 0.001;
+	final static double NINF = Double.NEGATIVE_INFINITY;
+
+	static void assertIsArborescence(double[][] weights, int root, Weighted<int[]> tree) {
+		final int[] parents = tree.val;
+		double sumOfWeights = 0.0;
+		for (int v = 0; v < parents.length; v++) {
+			if (parents[v] >= 0) {
+				sumOfWeights += weights[parents[v]][v];
+				// Following the parents must reach the root
+				int u = v, steps = 0;
+				while (parents[u] >= 0) {
+					u = parents[u];
+					assertTrue(++steps <= parents.length);
+				}
+				assertEquals(root, u);
+			}
+		}
+		assertEquals(sumOfWeights, tree.weight, DELTA);
+	}
+
+	@Test
+	public void testGetMaxSpanningTree() {
+		double[][] weights = {
+				{NINF, 10, 30, 10, NINF},
+				{NINF, NINF, 10, NINF, 10 },
+				{NINF,  20, NINF,  7, 20 },
+				{NINF, NINF, 40, NINF, NINF},
+				{NINF, NINF, NINF, NINF, NINF},
+		};
+		final Weighted<int[]> tree = IntChuLiuEdmonds.getMaxArborescence(IntWeightedGraph.from(weights), 0);
+		assertArrayEquals(new int[] { -1, 2, 3, 0, 2 }, tree.val);
+		assertEquals(90.0, tree.weight, DELTA);
+		assertIsArborescence(weights, 0, tree);
+	}
+
+	@Test
+	public void testUnreachableNodes() {
+		double[][] weights = {
+				{NINF, 1, NINF, NINF},
+				{NINF, NINF, NINF, NINF},
+				{NINF, NINF, NINF, 5},
+				{NINF, NINF, 3, NINF},
+		};
+		final Weighted<int[]> tree = IntChuLiuEdmonds.getMaxArborescence(IntWeightedGraph.from(weights), 0);
+		// 2 and 3 form a cycle that cannot be reached, so the weaker edge is dropped
+		assertArrayEquals(new int[] { -1, 0, -1, 2 }, tree.val);
+		assertEquals(6.0, tree.weight, DELTA);
+	}
+
+	@Test
+	public void testAgreesWithChuLiuEdmonds() {
+		final Random random = new Random(42);
+		for (int trial = 0; trial < 50; trial++) {
+			final int n = 2 + random.nextInt(30);
+			final double[][] weights = new double[n][n];
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < n; j++) {
+					weights[i][j] = i == j || random.nextDouble() < 0.3 ? NINF : random.nextDouble() * 10 - 5;
+				}
+			}
+			// Make sure all nodes can be reached
+			for (int j = 1; j < n; j++) {
+				weights[random.nextInt(j)][j] = random.nextDouble();
+			}
+			final Weighted<Arborescence<Integer>> expected = ChuLiuEdmonds.getMaxArborescence(
+					DenseWeightedGraph.from(weights), 0);
+			final Weighted<int[]> actual = IntChuLiuEdmonds.getMaxArborescence(IntWeightedGraph.from(weights), 0);
+			assertEquals(expected.weight, actual.weight, 1e-9);
+			assertIsArborescence(weights, 0, actual);
+			for (int v = 1; v < n; v++) {
+				assertTrue(actual.val[v] >= 0);
+			}
+		}
+	}
+
+	@Test
+	public void testDenseGraph() {
+		final Random random = new Random(7);
+		for (int trial = 0; trial < 50; trial++) {
+			final int n = 2 + random.nextInt(30);
+			final double[][] weights = new double[n][n];
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < n; j++) {
+					weights[i][j] = random.nextDouble() < 0.2 ? NINF : random.nextDouble() * 10 - 5;
+				}
+			}
+			final Weighted<int[]> expected = IntChuLiuEdmonds.getMaxArborescence(IntWeightedGraph.from(weights), 0);
+			final Weighted<int[]> actual = IntChuLiuEdmonds.getMaxArborescence(
+					IntWeightedGraph.dense(n, (i, j) -> weights[i][j]), 0);
+			assertEquals(expected.weight, actual.weight, 1e-9);
+			assertArrayEquals(expected.val, actual.val);
+		}
+	}
+}
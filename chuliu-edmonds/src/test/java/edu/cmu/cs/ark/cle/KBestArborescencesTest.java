@@ -3,14 +3,18 @@ package edu.cmu.cs.ark.cle;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import edu.cmu.cs.ark.cle.ds.Partition;
+import edu.cmu.cs.ark.cle.graph.DenseWeightedGraph;
 import edu.cmu.cs.ark.cle.graph.Edge;
 import edu.cmu.cs.ark.cle.graph.SparseWeightedGraph;
 import edu.cmu.cs.ark.cle.graph.WeightedGraph;
 import edu.cmu.cs.ark.cle.util.Weighted;
 import org.junit.Test;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import static edu.cmu.cs.ark.cle.ChuLiuEdmondsTest.*;
@@ -83,6 +87,29 @@ public class KBestArborescencesTest {
 		assertEquals(size, ImmutableSet.copyOf(kBestSpanningTrees).size());
 	}
 
+	@Test
+	public void testGetKBestInParallel() {
+		// distinct powers of two, so that the sums are exact and no two trees tie
+		final List<Integer> exponents = Lists.newArrayList();
+		for (int i = 0; i < 30; i++) {
+			exponents.add(i);
+		}
+		Collections.shuffle(exponents, new Random(7));
+		final double[][] weights = new double[6][6];
+		for (int i = 0, e = 0; i < weights.length; i++) {
+			for (int j = 0; j < weights.length; j++) {
+				weights[i][j] = i == j ? NINF : Math.pow(2, exponents.get(e++));
+			}
+		}
+		final WeightedGraph<Integer> denseGraph = DenseWeightedGraph.from(weights);
+		final List<Weighted<Arborescence<Integer>>> expected =
+				KBestArborescences.getKBestArborescences(denseGraph, 0, 30);
+		final List<Weighted<Arborescence<Integer>>> actual =
+				KBestArborescences.getKBestArborescences(denseGraph, 0, 30, 4);
+		assertEquals(30, actual.size());
+		assertEquals(expected, actual);
+	}
+
 	@Test
 	public void testSeekDoesntReturnAncestor() {
 		final Weighted<Arborescence<Integer>> bestArborescence = bestA;
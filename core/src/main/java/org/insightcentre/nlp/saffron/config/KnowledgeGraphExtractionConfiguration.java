@@ -13,6 +13,9 @@ public class KnowledgeGraphExtractionConfiguration {
 	public SaffronPath kerasModelFile = null;
 	
 	public SaffronPath bertModelFile = null;
+
+	/** The directory of the term embeddings kept between runs (or null to not keep them) */
+	public SaffronPath embeddingStore = null;
 	
 	public double synonymyThreshold = 0.5;
 	
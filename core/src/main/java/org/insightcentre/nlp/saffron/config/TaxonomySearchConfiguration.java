@@ -30,6 +30,47 @@ public class TaxonomySearchConfiguration {
      * (Bhattacharrya-Poisson only) The weighting to give to BP (against the base algorithm)
      */
     public double alpha = 0.01;
+    /**
+     * The number of threads to use in the search (0 or less to use all 
+     * available processors)
+     */
+    public int numThreads = 0;
+    /**
+     * The number of candidate parents kept for each term (0 or less to 
+     * consider every pair of terms)
+     */
+    public int candidateParents = 0;
+    /**
+     * (Greedy, beam and knowledge graph search only) The maximum time in milliseconds to spend
+     * in the search (0 or less for no limit). When the budget is spent, the
+     * terms that have not been placed are attached under their best-scoring
+     * parent in the taxonomy found so far
+     */
+    public long timeBudget = 0;
+    /**
+     * (Greedy, beam and knowledge graph search only) The maximum number of steps of the search
+     * (0 or less for no limit), where a step adds a link (greedy) or places a
+     * term (beam search)
+     */
+    public int iterationBudget = 0;
+    /**
+     * The maximum number of terms in a cluster (0 or less to search all terms
+     * at once). If there are more terms than this, the terms are clustered,
+     * a taxonomy is found for each cluster and the roots of the clusters are
+     * linked by a second search
+     */
+    public int clusterSize = 0;
+    /**
+     * Insert the new terms of a rerun into the existing taxonomy instead of
+     * finding the whole taxonomy again. The links of the existing taxonomy
+     * are kept and only the links of the new terms are scored
+     */
+    public boolean incremental = false;
+    /**
+     * (Incremental only) Move the siblings of a new term under it if they
+     * score better there
+     */
+    public boolean reoptimise = true;
     
     /** Enumeration of the algorithms to use */
     public enum Algorithm { greedy, beam, mst };
@@ -39,7 +80,7 @@ public class TaxonomySearchConfiguration {
 
     @Override
     public String toString() {
-        return "TaxonomySearchConfiguration{" + "algorithm=" + algorithm + ", beamSize=" + beamSize + ", score=" + score + ", baseScore=" + baseScore + ", aveChildren=" + aveChildren + ", alpha=" + alpha + '}';
+        return "TaxonomySearchConfiguration{" + "algorithm=" + algorithm + ", beamSize=" + beamSize + ", score=" + score + ", baseScore=" + baseScore + ", aveChildren=" + aveChildren + ", alpha=" + alpha + ", numThreads=" + numThreads + ", candidateParents=" + candidateParents + ", timeBudget=" + timeBudget + ", iterationBudget=" + iterationBudget + ", clusterSize=" + clusterSize + ", incremental=" + incremental + ", reoptimise=" + reoptimise + '}';
     }
  
     
@@ -0,0 +1,386 @@
+package org.insightcentre.nlp.saffron.data;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.insightcentre.nlp.saffron.exceptions.InvalidOperationException;
+import org.insightcentre.nlp.saffron.exceptions.InvalidValueException;
+
+/**
+ * An index of the nodes of a taxonomy by their term string. The index holds
+ * the parent, depth and subtree size of each node, so that finding a node or
+ * its parent takes constant time and finding its ancestors takes time in its
+ * depth, where the methods of {@link Taxonomy} search the whole tree.
+ *
+ * The edits of this index change the taxonomy it was created from and keep
+ * the index up to date. If the taxonomy is changed in any other way, a new
+ * index must be created.
+ *
+ * @author John McCrae
+ */
+public class TaxonomyIndex {
+
+    private static class Node {
+
+        final Taxonomy taxonomy;
+        Node parent;
+        int depth;
+        int size;
+
+        Node(Taxonomy taxonomy, Node parent) {
+            this.taxonomy = taxonomy;
+            this.parent = parent;
+            this.depth = parent == null ? 0 : parent.depth + 1;
+        }
+    }
+
+    private final Taxonomy taxonomy;
+    private final Map<String, Node> nodes = new HashMap<>();
+
+    /**
+     * Create an index of a taxonomy. This takes O(N) time
+     *
+     * @param taxonomy The taxonomy, whose terms must be distinct
+     */
+    public TaxonomyIndex(Taxonomy taxonomy) {
+        this.taxonomy = taxonomy;
+        index(taxonomy, null);
+    }
+
+    // Iterative so that deep taxonomies do not overflow the stack
+    private void index(Taxonomy branch, Node parent) {
+        final List<Node> order = new ArrayList<>();
+        final Deque<Node> stack = new ArrayDeque<>();
+        stack.push(new Node(branch, parent));
+        while (!stack.isEmpty()) {
+            final Node node = stack.pop();
+            if (nodes.put(node.taxonomy.root, node) != null) {
+                throw new IllegalArgumentException("The term " + node.taxonomy.root + " occurs more than once in the taxonomy");
+            }
+            order.add(node);
+            for (Taxonomy child : node.taxonomy.children) {
+                stack.push(new Node(child, node));
+            }
+        }
+        // Every node comes after its parent, so the sizes can be summed in reverse
+        for (int i = order.size() - 1; i >= 0; i--) {
+            final Node node = order.get(i);
+            node.size += 1;
+            if (node.parent != null && i > 0) {
+                node.parent.size += node.size;
+            }
+        }
+        if (parent != null) {
+            addSize(parent, order.get(0).size);
+        }
+    }
+
+    /**
+     * The taxonomy that is indexed
+     *
+     * @return The taxonomy
+     */
+    public Taxonomy getTaxonomy() {
+        return taxonomy;
+    }
+
+    /**
+     * The number of terms in the taxonomy
+     *
+     * @return The number of terms
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Is a term in the taxonomy
+     *
+     * @param term The term string
+     * @return True if the term is a node of the taxonomy
+     */
+    public boolean contains(String term) {
+        return nodes.containsKey(term);
+    }
+
+    /**
+     * Find the node of a term
+     *
+     * @param term The term string
+     * @return The taxonomy whose root is the term or null if the term is not
+     * in the taxonomy
+     */
+    public Taxonomy get(String term) {
+        final Node node = nodes.get(term);
+        return node == null ? null : node.taxonomy;
+    }
+
+    /**
+     * Find the parent of a term
+     *
+     * @param term The term string
+     * @return The parent node or null if the term is the root or is not in the
+     * taxonomy
+     */
+    public Taxonomy getParent(String term) {
+        final Node node = nodes.get(term);
+        return node == null || node.parent == null ? null : node.parent.taxonomy;
+    }
+
+    /**
+     * The depth of a term, where the root has depth 0
+     *
+     * @param term The term string
+     * @return The depth of the term or -1 if the term is not in the taxonomy
+     */
+    public int depth(String term) {
+        final Node node = nodes.get(term);
+        return node == null ? -1 : node.depth;
+    }
+
+    /**
+     * The number of terms in the branch under a term
+     *
+     * @param term The term string
+     * @return The size of the branch including the term, or 0 if the term is
+     * not in the taxonomy
+     */
+    public int subtreeSize(String term) {
+        final Node node = nodes.get(term);
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * The ancestors of a term. This takes time in the depth of the term
+     *
+     * @param term The term string
+     * @return The terms from the root to the parent of the term, or an empty
+     * list if the term is the root or is not in the taxonomy
+     */
+    public List<String> ancestors(String term) {
+        final Node node = nodes.get(term);
+        if (node == null) {
+            return Collections.emptyList();
+        }
+        final String[] ancestors = new String[node.depth];
+        for (Node n = node.parent; n != null; n = n.parent) {
+            ancestors[n.depth] = n.taxonomy.root;
+        }
+        return Arrays.asList(ancestors);
+    }
+
+    /**
+     * Is a term above another term in the taxonomy. This takes time in the
+     * difference of their depths
+     *
+     * @param ancestor The term that may be an ancestor
+     * @param term The term
+     * @return True if both terms are in the taxonomy and the term is in the
+     * branch under the ancestor (including the ancestor itself)
+     */
+    public boolean isAncestor(String ancestor, String term) {
+        final Node a = nodes.get(ancestor);
+        final Node n = nodes.get(term);
+        return a != null && n != null && isAncestor(a, n);
+    }
+
+    private static boolean isAncestor(Node ancestor, Node node) {
+        while (node != null && node.depth > ancestor.depth) {
+            node = node.parent;
+        }
+        return node == ancestor;
+    }
+
+    /**
+     * Update the parent of a given term. This has the same effect as
+     * {@link Taxonomy#updateParent(java.lang.String, java.lang.String)} on the
+     * indexed taxonomy
+     *
+     * @param termChild - the term to be moved to a new parent
+     * @param termNewParent - the new parent term
+     *
+     * @throws InvalidValueException - if any parameter is either {@code null} or an empty string
+     * @throws InvalidOperationException - if the new parent is a descendant of the termChild
+     * @throws RuntimeException - if either child or new parent term do not exist in this taxonomy
+     */
+    public void updateParent(String termChild, String termNewParent) {
+        if (termChild == null || termChild.equals("")) {
+            throw new InvalidValueException("The term child parameter cannot be null or empty");
+        }
+        if (termNewParent == null || termNewParent.equals("")) {
+            throw new InvalidValueException("The new parent parameter cannot be null or empty");
+        }
+        final Node child = nodes.get(termChild);
+        if (child == null) {
+            throw new RuntimeException("The child term '" + termChild + "' does not exist in this taxonomy");
+        }
+        final Node newParent = nodes.get(termNewParent);
+        if (newParent != null && isAncestor(child, newParent)) {
+            throw new InvalidOperationException("The new parent '" + termNewParent + "' cannot be a descendent of the term '" + termChild + "'.");
+        }
+        if (newParent == null) {
+            throw new RuntimeException("The parent term '" + termNewParent + "' does not exist in this taxonomy");
+        }
+        detach(child);
+        newParent.taxonomy.children.add(child.taxonomy);
+        child.parent = newParent;
+        addSize(newParent, child.size);
+        setDepths(child, newParent.depth + 1);
+    }
+
+    /**
+     * If a term exists in the taxonomy, remove it and move its children to its
+     * parent. The root of the taxonomy cannot be removed
+     *
+     * @param termString - the term to be removed
+     */
+    public void removeDescendent(String termString) {
+        final Node node = nodes.get(termString);
+        if (node == null || node.parent == null) {
+            return;
+        }
+        final Node parent = node.parent;
+        for (Taxonomy grandchild : node.taxonomy.children) {
+            final Node n = nodes.get(grandchild.root);
+            n.parent = parent;
+            setDepths(n, parent.depth + 1);
+        }
+        parent.taxonomy.children.addAll(node.taxonomy.children);
+        removeChild(parent, node);
+        addSize(parent, -1);
+        nodes.remove(termString);
+    }
+
+    /**
+     * Add a branch to the taxonomy under a term
+     *
+     * @param termParent - the term to add the branch under
+     * @param child - the branch to be added
+     *
+     * @throws InvalidValueException - if the child is either null or has an empty root
+     * @throws InvalidOperationException - if a term of the branch is already in the taxonomy
+     * @throws RuntimeException - if the parent term does not exist in this taxonomy
+     */
+    public void addChild(String termParent, Taxonomy child) {
+        if (child == null || child.getRoot() == null || child.getRoot().equals("")) {
+            throw new InvalidValueException("The child term cannot be empty or null.");
+        }
+        final Node parent = nodes.get(termParent);
+        if (parent == null) {
+            throw new RuntimeException("The parent term '" + termParent + "' does not exist in this taxonomy");
+        }
+        final Deque<Taxonomy> stack = new ArrayDeque<>();
+        stack.push(child);
+        while (!stack.isEmpty()) {
+            final Taxonomy t = stack.pop();
+            if (nodes.containsKey(t.root)) {
+                throw new InvalidOperationException("There is already a descendent with the specified term string value");
+            }
+            for (Taxonomy c : t.children) {
+                stack.push(c);
+            }
+        }
+        parent.taxonomy.children.add(child);
+        index(child, parent);
+    }
+
+    /**
+     * Remove a term and all its branch, if the term exists. The root of the
+     * taxonomy cannot be removed
+     *
+     * @param termString - the term to be removed
+     */
+    public void removeBranch(String termString) {
+        if (termString == null || termString.equals("")) {
+            throw new InvalidValueException("The child term cannot be empty or null.");
+        }
+        final Node node = nodes.get(termString);
+        if (node == null || node.parent == null) {
+            return;
+        }
+        detach(node);
+        final Deque<Taxonomy> stack = new ArrayDeque<>();
+        stack.push(node.taxonomy);
+        while (!stack.isEmpty()) {
+            final Taxonomy t = stack.pop();
+            nodes.remove(t.root);
+            for (Taxonomy c : t.children) {
+                stack.push(c);
+            }
+        }
+    }
+
+    /**
+     * Modify the status of the relation between a term and its parent. This
+     * has the same effect as
+     * {@link Taxonomy#setParentChildStatus(java.lang.String, org.insightcentre.nlp.saffron.data.Status)}
+     * on the indexed taxonomy
+     *
+     * @param childTerm - the child term
+     * @param status - the new status
+     * @throws InvalidOperationException - thrown in case of a "rejected" status. Taxonomy is a single connected
+     *   component, therefore parent-child relations cannot be rejected.
+     */
+    public void setParentChildStatus(String childTerm, Status status) {
+        if (childTerm == null || childTerm.equals("")) {
+            throw new InvalidValueException("The child term cannot be empty or null.");
+        }
+        if (status == null) {
+            throw new InvalidValueException("The status of parent-child relation cannot be null.");
+        }
+        if (status.equals(Status.rejected)) {
+            throw new InvalidOperationException("Parent-child relations cannot be rejected. Choose a new parent instead.");
+        }
+        final Node node = nodes.get(childTerm);
+        if (node != null && node.parent != null) {
+            node.taxonomy.setStatus(status);
+        }
+    }
+
+    // Remove a node from the children of its parent
+    private void detach(Node node) {
+        removeChild(node.parent, node);
+        addSize(node.parent, -node.size);
+        node.parent = null;
+    }
+
+    private static void removeChild(Node parent, Node child) {
+        final List<Taxonomy> children = parent.taxonomy.children;
+        for (int i = 0; i < children.size(); i++) {
+            if (children.get(i) == child.taxonomy) {
+                children.remove(i);
+                return;
+            }
+        }
+    }
+
+    private static void addSize(Node node, int delta) {
+        for (; node != null; node = node.parent) {
+            node.size += delta;
+        }
+    }
+
+    // Set the depth of a node and update the depths of its branch
+    private void setDepths(Node node, int depth) {
+        if (node.depth == depth) {
+            return;
+        }
+        final Deque<Node> stack = new ArrayDeque<>();
+        node.depth = depth;
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            final Node n = stack.pop();
+            for (Taxonomy c : n.taxonomy.children) {
+                final Node m = nodes.get(c.root);
+                m.depth = n.depth + 1;
+                stack.push(m);
+            }
+        }
+    }
+}
@@ -0,0 +1,552 @@
+package org.insightcentre.nlp.saffron.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * A bounded cache that may be used from many threads. Values are read from a
+ * concurrent map without locking, and the reads are recorded in small lossy
+ * buffers that are applied to the eviction policy in batches. The policy is
+ * W-TinyLFU: new entries enter a small LRU window and, when they leave it,
+ * are only admitted to the main cache (a segmented LRU) if they have been
+ * used more often than the entry they would evict. The frequencies are
+ * estimated by a count-min sketch that is periodically halved, so that the
+ * cache adapts to changes in use. Eviction takes constant amortised time.
+ *
+ * The cache is bounded by the number of entries or, if a weigher is given, by
+ * the total weight of the entries.
+ *
+ * @author John McCrae
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class ConcurrentCache<K, V> {
+
+    // The states of an entry
+    private static final int NEW = 0, WINDOW = 1, PROBATION = 2, PROTECTED = 3, DEAD = 4;
+    // The window is 1% of the cache and the protected segment 80% of the rest
+    private static final double WINDOW_FRACTION = 0.01;
+    private static final double PROTECTED_FRACTION = 0.8;
+    // The number of reads each buffer holds before it is applied
+    private static final int READ_BUFFER_SIZE = 16;
+
+    private static final class Node<K, V> {
+
+        final K key;
+        final V value;
+        final int weight;
+        // Guarded by the eviction lock
+        int state = NEW;
+        Node<K, V> prev, next;
+
+        Node(K key, V value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * A doubly-linked list of entries in order of use (least recent first)
+     */
+    private static final class Queue<K, V> {
+
+        final Node<K, V> head = new Node<>(null, null, 0);
+        long weight;
+
+        Queue() {
+            head.prev = head;
+            head.next = head;
+        }
+
+        boolean isEmpty() {
+            return head.next == head;
+        }
+
+        Node<K, V> first() {
+            return head.next;
+        }
+
+        Node<K, V> last() {
+            return head.prev;
+        }
+
+        void add(Node<K, V> node) {
+            node.prev = head.prev;
+            node.next = head;
+            head.prev.next = node;
+            head.prev = node;
+            weight += node.weight;
+        }
+
+        void remove(Node<K, V> node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            weight -= node.weight;
+        }
+
+        void moveToEnd(Node<K, V> node) {
+            remove(node);
+            add(node);
+        }
+
+        void clear() {
+            head.prev = head;
+            head.next = head;
+            weight = 0;
+        }
+    }
+
+    /**
+     * A ring buffer of reads, which are dropped if it is full
+     */
+    private static final class ReadBuffer<K, V> {
+
+        final AtomicReferenceArray<Node<K, V>> buffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+        final AtomicLong writes = new AtomicLong();
+        volatile long reads;
+
+        /**
+         * @return False if the buffer is full
+         */
+        boolean offer(Node<K, V> node) {
+            final long w = writes.get();
+            if (w - reads >= READ_BUFFER_SIZE) {
+                return false;
+            }
+            if (writes.compareAndSet(w, w + 1)) {
+                buffer.lazySet((int) (w & (READ_BUFFER_SIZE - 1)), node);
+            }
+            return true;
+        }
+    }
+
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+    private final ToIntBiFunction<? super K, ? super V> weigher;
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final ReadBuffer<K, V>[] readBuffers;
+    private final FrequencySketch sketch;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    // Guarded by the eviction lock
+    private final Queue<K, V> window = new Queue<>();
+    private final Queue<K, V> probation = new Queue<>();
+    private final Queue<K, V> protectedQueue = new Queue<>();
+
+    /**
+     * Create a cache bounded by the number of entries
+     *
+     * @param capacity The maximum number of entries
+     */
+    public ConcurrentCache(int capacity) {
+        this(capacity, null);
+    }
+
+    /**
+     * Create a cache bounded by the total weight of the entries
+     *
+     * @param maximumWeight The maximum total weight
+     * @param weigher The weight of an entry (which must not be negative) or
+     * null to give each entry a weight of one
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentCache(long maximumWeight, ToIntBiFunction<? super K, ? super V> weigher) {
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException("The maximum weight must not be negative");
+        }
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.windowMaximum = Math.max(1, (long) (maximumWeight * WINDOW_FRACTION));
+        this.protectedMaximum = (long) ((maximumWeight - windowMaximum) * PROTECTED_FRACTION);
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() && stripes < 64) {
+            stripes <<= 1;
+        }
+        this.readBuffers = new ReadBuffer[stripes];
+        for (int i = 0; i < stripes; i++) {
+            readBuffers[i] = new ReadBuffer<>();
+        }
+        // With a weigher the number of entries is not known
+        this.sketch = new FrequencySketch(weigher == null ? maximumWeight : 1 << 16);
+    }
+
+    /**
+     * Get the object for the key or use get to compute it. The value is
+     * computed without holding a lock, so two threads may compute the value
+     * of the same key at once, in which case the first value is kept
+     *
+     * @param key The key
+     * @param get The value computer
+     * @return The value, possibly from the cache
+     */
+    public V get(K key, Function<? super K, ? extends V> get) {
+        final Node<K, V> node = data.get(key);
+        if (node != null) {
+            hits.increment();
+            afterRead(node);
+            return node.value;
+        }
+        misses.increment();
+        final V value = get.apply(key);
+        if (value == null) {
+            return null;
+        }
+        final Node<K, V> added = new Node<>(key, value, weigh(key, value));
+        final Node<K, V> existing = data.putIfAbsent(key, added);
+        if (existing != null) {
+            afterRead(existing);
+            return existing.value;
+        }
+        afterWrite(added, null);
+        return value;
+    }
+
+    /**
+     * Get the object for the key if it is in the cache
+     *
+     * @param key The key
+     * @return The cached value or null if there is none
+     */
+    public V getIfPresent(K key) {
+        final Node<K, V> node = data.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        afterRead(node);
+        return node.value;
+    }
+
+    /**
+     * Add a value to the cache, replacing any value of the key
+     *
+     * @param key The key
+     * @param value The value
+     */
+    public void put(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException("Cannot cache null values");
+        }
+        final Node<K, V> node = new Node<>(key, value, weigh(key, value));
+        afterWrite(node, data.put(key, node));
+    }
+
+    /**
+     * Remove the value of a key from the cache
+     *
+     * @param key The key
+     */
+    public void invalidate(K key) {
+        final Node<K, V> node = data.remove(key);
+        if (node != null) {
+            evictionLock.lock();
+            try {
+                unlink(node);
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Invalidate the whole cache
+     */
+    public void clear() {
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            for (Node<K, V> node : data.values()) {
+                if (data.remove(node.key, node)) {
+                    node.state = DEAD;
+                }
+            }
+            window.clear();
+            probation.clear();
+            protectedQueue.clear();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * The number of currently cached values
+     *
+     * @return The number of values
+     */
+    public int size() {
+        return data.size();
+    }
+
+    /**
+     * The total weight of the cached values (the number of values if there is
+     * no weigher)
+     *
+     * @return The weight
+     */
+    public long weightedSize() {
+        evictionLock.lock();
+        try {
+            return window.weight + probation.weight + protectedQueue.weight;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * The number of lookups that found a value in the cache
+     *
+     * @return The number of hits
+     */
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * The number of lookups that did not find a value in the cache
+     *
+     * @return The number of misses
+     */
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * The fraction of lookups that found a value in the cache
+     *
+     * @return The hit rate (1 if there were no lookups)
+     */
+    public double hitRate() {
+        final long h = hits.sum(), total = h + misses.sum();
+        return total == 0 ? 1.0 : (double) h / total;
+    }
+
+    /**
+     * The number of values removed to keep the cache within its bound
+     *
+     * @return The number of evictions
+     */
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentCache{" + "size=" + size() + ", hits=" + hitCount()
+                + ", misses=" + missCount() + ", evictions=" + evictionCount() + '}';
+    }
+
+    private int weigh(K key, V value) {
+        if (weigher == null) {
+            return 1;
+        }
+        final int weight = weigher.applyAsInt(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Negative weight");
+        }
+        return weight;
+    }
+
+    private void afterRead(Node<K, V> node) {
+        final int stripe = (int) (Thread.currentThread().getId() & (readBuffers.length - 1));
+        if (!readBuffers[stripe].offer(node) && evictionLock.tryLock()) {
+            // The read is dropped, but the buffers are applied
+            try {
+                drainReadBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void afterWrite(Node<K, V> node, Node<K, V> replaced) {
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            if (replaced != null) {
+                unlink(replaced);
+            }
+            if (node.state == NEW) {
+                sketch.increment(node.key);
+                node.state = WINDOW;
+                window.add(node);
+                evict();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // Must hold the eviction lock
+    private void drainReadBuffers() {
+        for (ReadBuffer<K, V> buffer : readBuffers) {
+            final long writes = buffer.writes.get();
+            long r = buffer.reads;
+            for (; r < writes; r++) {
+                final int i = (int) (r & (READ_BUFFER_SIZE - 1));
+                final Node<K, V> node = buffer.buffer.get(i);
+                if (node == null) {
+                    // Not yet written by the reader
+                    break;
+                }
+                buffer.buffer.lazySet(i, null);
+                onAccess(node);
+            }
+            buffer.reads = r;
+        }
+    }
+
+    // Must hold the eviction lock
+    private void onAccess(Node<K, V> node) {
+        sketch.increment(node.key);
+        switch (node.state) {
+            case WINDOW:
+                window.moveToEnd(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                node.state = PROTECTED;
+                protectedQueue.add(node);
+                while (protectedQueue.weight > protectedMaximum && !protectedQueue.isEmpty()) {
+                    final Node<K, V> demoted = protectedQueue.first();
+                    protectedQueue.remove(demoted);
+                    demoted.state = PROBATION;
+                    probation.add(demoted);
+                }
+                break;
+            case PROTECTED:
+                protectedQueue.moveToEnd(node);
+                break;
+            default:
+            // New entries are added to the policy by their writer
+        }
+    }
+
+    // Must hold the eviction lock
+    private void unlink(Node<K, V> node) {
+        switch (node.state) {
+            case WINDOW:
+                window.remove(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                break;
+            case PROTECTED:
+                protectedQueue.remove(node);
+                break;
+            default:
+        }
+        node.state = DEAD;
+    }
+
+    // Must hold the eviction lock
+    private void evict() {
+        // The entries leaving the window become candidates for the main cache
+        while (window.weight > windowMaximum && !window.isEmpty()) {
+            final Node<K, V> candidate = window.first();
+            window.remove(candidate);
+            candidate.state = PROBATION;
+            probation.add(candidate);
+        }
+        while (window.weight + probation.weight + protectedQueue.weight > maximumWeight) {
+            final Node<K, V> evicted;
+            if (!probation.isEmpty()) {
+                // The latest candidate is only admitted if it is used more
+                // often than the least recently used entry on probation
+                final Node<K, V> victim = probation.first();
+                final Node<K, V> candidate = probation.last();
+                evicted = victim != candidate
+                        && sketch.frequency(candidate.key) > sketch.frequency(victim.key)
+                        ? victim : candidate;
+            } else if (!protectedQueue.isEmpty()) {
+                evicted = protectedQueue.first();
+            } else {
+                evicted = window.first();
+            }
+            unlink(evicted);
+            if (data.remove(evicted.key, evicted)) {
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * A count-min sketch of the frequency of the keys with four rows of 4-bit
+     * counters (of up to 15), which are packed sixteen to a long. All counters
+     * are halved after a number of increments that is ten times the number of
+     * counters in a row
+     */
+    private static final class FrequencySketch {
+
+        private static final long[] SEEDS = {
+            0x9e3779b97f4a7c15L, 0xc2b2ae3d27d4eb4fL, 0x165667b19e3779f9L, 0xd6e8feb86659fd93L
+        };
+
+        // Halves each of the sixteen counters of a word at once, as the bit
+        // shifted into a counter from the one above it is cleared
+        private static final long HALF_MASK = 0x7777777777777777L;
+
+        private final long[][] counters;
+        private final int mask;
+        private final int resetAt;
+        private int increments;
+
+        FrequencySketch(long expectedEntries) {
+            int width = 16;
+            while (width < expectedEntries && width < (1 << 20)) {
+                width <<= 1;
+            }
+            this.counters = new long[SEEDS.length][width / 16];
+            this.mask = width - 1;
+            this.resetAt = 10 * width;
+        }
+
+        private int index(int row, Object key) {
+            // The high bits of the product depend on all bits of the hash
+            final long h = (key.hashCode() + 1L) * SEEDS[row];
+            return (int) (h >>> 40) & mask;
+        }
+
+        private int count(int row, int i) {
+            return (int) (counters[row][i >>> 4] >>> ((i & 15) << 2)) & 15;
+        }
+
+        void increment(Object key) {
+            boolean added = false;
+            for (int row = 0; row < counters.length; row++) {
+                final int i = index(row, key);
+                if (count(row, i) < 15) {
+                    counters[row][i >>> 4] += 1L << ((i & 15) << 2);
+                    added = true;
+                }
+            }
+            if (added && ++increments >= resetAt) {
+                for (long[] row : counters) {
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = (row[i] >>> 1) & HALF_MASK;
+                    }
+                }
+                increments /= 2;
+            }
+        }
+
+        int frequency(Object key) {
+            int f = 15;
+            for (int row = 0; row < counters.length; row++) {
+                f = Math.min(f, count(row, index(row, key)));
+            }
+            return f;
+        }
+    }
+}
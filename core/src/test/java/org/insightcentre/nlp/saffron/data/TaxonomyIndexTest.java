@@ -0,0 +1,277 @@
+package org.insightcentre.nlp.saffron.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.insightcentre.nlp.saffron.exceptions.InvalidOperationException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class TaxonomyIndexTest {
+
+    public TaxonomyIndexTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private static Taxonomy node(String root, Taxonomy... children) {
+        return new Taxonomy(root, 1.0, 0.5, new ArrayList<>(Arrays.asList(children)), Status.none);
+    }
+
+    // a { b { d, e { f } }, c }
+    private static Taxonomy sample() {
+        return node("a", node("b", node("d"), node("e", node("f"))), node("c"));
+    }
+
+    private static Taxonomy randomTaxonomy(Random random, int n) {
+        final List<Taxonomy> nodes = new ArrayList<>();
+        nodes.add(node("t0"));
+        for (int i = 1; i < n; i++) {
+            final Taxonomy t = node("t" + i);
+            nodes.get(random.nextInt(nodes.size())).children.add(t);
+            nodes.add(t);
+        }
+        return nodes.get(0);
+    }
+
+    private static int depth(Taxonomy taxonomy, String term) {
+        int depth = 0;
+        for (Taxonomy t = taxonomy.getParent(term); t != null; t = taxonomy.getParent(t.root)) {
+            depth++;
+        }
+        return depth;
+    }
+
+    // Check that the index agrees with the methods of the taxonomy
+    private static void assertConsistent(TaxonomyIndex index) {
+        final Taxonomy taxonomy = index.getTaxonomy();
+        assertEquals(taxonomy.size(), index.size());
+        final List<Taxonomy> stack = new ArrayList<>();
+        stack.add(taxonomy);
+        while (!stack.isEmpty()) {
+            final Taxonomy t = stack.remove(stack.size() - 1);
+            assertSame(t, index.get(t.root));
+            assertSame(taxonomy.getParent(t.root), index.getParent(t.root));
+            assertEquals(depth(taxonomy, t.root), index.depth(t.root));
+            assertEquals(t.size(), index.subtreeSize(t.root));
+            final List<String> ancestors = new ArrayList<>();
+            for (Taxonomy p = taxonomy.getParent(t.root); p != null; p = taxonomy.getParent(p.root)) {
+                ancestors.add(p.root);
+            }
+            Collections.reverse(ancestors);
+            assertEquals(ancestors, index.ancestors(t.root));
+            stack.addAll(t.children);
+        }
+    }
+
+    /**
+     * Test of the lookups of class TaxonomyIndex.
+     */
+    @Test
+    public void testLookup() {
+        System.out.println("lookup");
+        Taxonomy taxonomy = sample();
+        TaxonomyIndex index = new TaxonomyIndex(taxonomy);
+        assertEquals(6, index.size());
+        assertTrue(index.contains("f"));
+        assertFalse(index.contains("g"));
+        assertSame(taxonomy.descendent("e"), index.get("e"));
+        assertNull(index.get("g"));
+        assertEquals("b", index.getParent("e").root);
+        assertNull(index.getParent("a"));
+        assertEquals(3, index.depth("f"));
+        assertEquals(-1, index.depth("g"));
+        assertEquals(4, index.subtreeSize("b"));
+        assertEquals(Arrays.asList("a", "b", "e"), index.ancestors("f"));
+        assertEquals(Collections.emptyList(), index.ancestors("a"));
+        assertTrue(index.isAncestor("b", "f"));
+        assertTrue(index.isAncestor("f", "f"));
+        assertFalse(index.isAncestor("c", "f"));
+        assertFalse(index.isAncestor("f", "b"));
+        assertConsistent(index);
+    }
+
+    /**
+     * Test that a taxonomy with a repeated term cannot be indexed
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testRepeatedTerm() {
+        System.out.println("repeatedTerm");
+        new TaxonomyIndex(node("a", node("b", node("c")), node("c")));
+    }
+
+    /**
+     * Test of updateParent method, of class TaxonomyIndex.
+     */
+    @Test
+    public void testUpdateParent() {
+        System.out.println("updateParent");
+        Taxonomy expected = sample();
+        expected.updateParent("e", "c");
+        TaxonomyIndex index = new TaxonomyIndex(sample());
+        index.updateParent("e", "c");
+        assertEquals(expected, index.getTaxonomy());
+        assertEquals(Arrays.asList("a", "c", "e"), index.ancestors("f"));
+        assertEquals(2, index.subtreeSize("b"));
+        assertEquals(3, index.subtreeSize("c"));
+        assertConsistent(index);
+    }
+
+    /**
+     * Test that a term cannot be moved under its own branch
+     */
+    @Test(expected = InvalidOperationException.class)
+    public void testUpdateParentDescendent() {
+        System.out.println("updateParentDescendent");
+        TaxonomyIndex index = new TaxonomyIndex(sample());
+        index.updateParent("b", "f");
+    }
+
+    /**
+     * Test that a term cannot be moved to a term that does not exist
+     */
+    @Test(expected = RuntimeException.class)
+    public void testUpdateParentMissing() {
+        System.out.println("updateParentMissing");
+        TaxonomyIndex index = new TaxonomyIndex(sample());
+        index.updateParent("b", "g");
+    }
+
+    /**
+     * Test of removeDescendent method, of class TaxonomyIndex.
+     */
+    @Test
+    public void testRemoveDescendent() {
+        System.out.println("removeDescendent");
+        Taxonomy expected = sample();
+        expected.removeDescendent("b");
+        TaxonomyIndex index = new TaxonomyIndex(sample());
+        index.removeDescendent("b");
+        index.removeDescendent("a");
+        index.removeDescendent("g");
+        assertEquals(expected, index.getTaxonomy());
+        assertFalse(index.contains("b"));
+        assertEquals(2, index.depth("f"));
+        assertConsistent(index);
+    }
+
+    /**
+     * Test of addChild method, of class TaxonomyIndex.
+     */
+    @Test
+    public void testAddChild() {
+        System.out.println("addChild");
+        TaxonomyIndex index = new TaxonomyIndex(sample());
+        index.addChild("c", node("g", node("h")));
+        assertEquals(Arrays.asList("a", "c", "g"), index.ancestors("h"));
+        assertEquals(8, index.subtreeSize("a"));
+        assertConsistent(index);
+        try {
+            index.addChild("c", node("i", node("f")));
+            fail("A term was added twice");
+        } catch (InvalidOperationException x) {
+        }
+        assertFalse(index.contains("i"));
+        assertConsistent(index);
+    }
+
+    /**
+     * Test of removeBranch method, of class TaxonomyIndex.
+     */
+    @Test
+    public void testRemoveBranch() {
+        System.out.println("removeBranch");
+        TaxonomyIndex index = new TaxonomyIndex(sample());
+        index.removeBranch("e");
+        assertFalse(index.contains("e"));
+        assertFalse(index.contains("f"));
+        assertEquals(2, index.subtreeSize("b"));
+        assertConsistent(index);
+    }
+
+    /**
+     * Test of setParentChildStatus method, of class TaxonomyIndex.
+     */
+    @Test
+    public void testSetParentChildStatus() {
+        System.out.println("setParentChildStatus");
+        TaxonomyIndex index = new TaxonomyIndex(sample());
+        index.setParentChildStatus("e", Status.accepted);
+        assertEquals(Status.accepted, index.get("e").getStatus());
+        index.setParentChildStatus("a", Status.accepted);
+        assertEquals(Status.none, index.get("a").getStatus());
+    }
+
+    /**
+     * Test a random series of edits against the methods of Taxonomy
+     */
+    @Test
+    public void testRandomEdits() {
+        System.out.println("randomEdits");
+        Random random = new Random(42);
+        for (int run = 0; run < 20; run++) {
+            Taxonomy expected = randomTaxonomy(new Random(run), 50);
+            TaxonomyIndex index = new TaxonomyIndex(randomTaxonomy(new Random(run), 50));
+            int next = 50;
+            for (int i = 0; i < 30; i++) {
+                List<String> terms = new ArrayList<>(expected.size());
+                for (int t = 0; t < next; t++) {
+                    if (index.contains("t" + t)) {
+                        terms.add("t" + t);
+                    }
+                }
+                String term = terms.get(random.nextInt(terms.size()));
+                String other = terms.get(random.nextInt(terms.size()));
+                switch (random.nextInt(3)) {
+                    case 0:
+                        if (!index.isAncestor(term, other)) {
+                            expected.updateParent(term, other);
+                            index.updateParent(term, other);
+                        }
+                        break;
+                    case 1:
+                        expected.removeDescendent(term);
+                        index.removeDescendent(term);
+                        break;
+                    default:
+                        expected.descendent(term).addChild(node("t" + next));
+                        index.addChild(term, node("t" + next));
+                        next++;
+                }
+                assertEquals(expected, index.getTaxonomy());
+            }
+            assertConsistent(index);
+        }
+    }
+}
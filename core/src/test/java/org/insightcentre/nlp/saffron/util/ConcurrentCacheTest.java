@@ -0,0 +1,166 @@
+package org.insightcentre.nlp.saffron.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class ConcurrentCacheTest {
+
+    public ConcurrentCacheTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of get method, of class ConcurrentCache.
+     */
+    @Test
+    public void testGet() {
+        System.out.println("get");
+        ConcurrentCache<String, Integer> cache = new ConcurrentCache<>(10);
+        AtomicInteger computed = new AtomicInteger();
+        assertEquals(3, (int) cache.get("foo", s -> {
+            computed.incrementAndGet();
+            return s.length();
+        }));
+        assertEquals(3, (int) cache.get("foo", s -> {
+            computed.incrementAndGet();
+            return -1;
+        }));
+        assertEquals(1, computed.get());
+        assertEquals(3, (int) cache.getIfPresent("foo"));
+        assertNull(cache.getIfPresent("bar"));
+        assertEquals(2, cache.hitCount());
+        assertEquals(2, cache.missCount());
+        assertEquals(0.5, cache.hitRate(), 0.0);
+        cache.invalidate("foo");
+        assertNull(cache.getIfPresent("foo"));
+        cache.put("bar", 1);
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Test that the cache does not grow beyond its capacity
+     */
+    @Test
+    public void testCapacity() {
+        System.out.println("capacity");
+        ConcurrentCache<Integer, Integer> cache = new ConcurrentCache<>(100);
+        for (int i = 0; i < 10000; i++) {
+            cache.get(i, x -> x);
+        }
+        assertEquals(100, cache.size());
+        assertEquals(100, cache.weightedSize());
+        assertEquals(9900, cache.evictionCount());
+    }
+
+    /**
+     * Test that frequently used values are kept when many values are only
+     * used once
+     */
+    @Test
+    public void testFrequentValuesKept() {
+        System.out.println("frequentValuesKept");
+        ConcurrentCache<Integer, Integer> cache = new ConcurrentCache<>(100);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 50; i++) {
+                cache.get(i, x -> x);
+            }
+        }
+        // A scan of values that are only used once
+        for (int i = 1000; i < 2000; i++) {
+            cache.get(i, x -> x);
+        }
+        int kept = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.getIfPresent(i) != null) {
+                kept++;
+            }
+        }
+        assertTrue(kept >= 45);
+    }
+
+    /**
+     * Test the bound on the weight of the values
+     */
+    @Test
+    public void testWeight() {
+        System.out.println("weight");
+        ConcurrentCache<Integer, float[]> cache = new ConcurrentCache<>(1000, (k, v) -> v.length);
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, new float[i % 10 + 1]);
+            assertTrue(cache.weightedSize() <= 1000);
+        }
+        cache.put(-1, new float[2000]);
+        assertNull(cache.getIfPresent(-1));
+        assertTrue(cache.weightedSize() <= 1000);
+    }
+
+    /**
+     * Test the cache from many threads
+     */
+    @Test
+    public void testConcurrent() throws Exception {
+        System.out.println("concurrent");
+        final ConcurrentCache<Integer, int[]> cache = new ConcurrentCache<>(500);
+        ExecutorService service = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Boolean>> tasks = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final int seed = t;
+                tasks.add(() -> {
+                    boolean correct = true;
+                    for (int i = 0; i < 50000; i++) {
+                        int key = (i * 31 + seed * 17) % (i % 3 == 0 ? 100 : 2000);
+                        int[] value = cache.get(key, k -> new int[]{k});
+                        correct &= value[0] == key;
+                    }
+                    return correct;
+                });
+            }
+            for (Future<Boolean> f : service.invokeAll(tasks)) {
+                assertTrue(f.get());
+            }
+        } finally {
+            service.shutdownNow();
+        }
+        assertTrue(cache.size() <= 500);
+        assertEquals(cache.size(), cache.weightedSize());
+        assertEquals(8 * 50000, cache.hitCount() + cache.missCount());
+        assertArrayEquals(new int[]{7}, cache.get(7, k -> new int[]{k}));
+    }
+}
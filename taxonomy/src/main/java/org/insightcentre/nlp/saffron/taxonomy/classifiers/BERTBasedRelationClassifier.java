@@ -1,10 +1,23 @@
 package org.insightcentre.nlp.saffron.taxonomy.classifiers;
 
-import org.insightcentre.nlp.saffron.util.SimpleCache;
+import org.insightcentre.nlp.saffron.util.ConcurrentCache;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.modelimport.keras.KerasModelImport;
@@ -12,6 +25,10 @@ import org.deeplearning4j.nn.modelimport.keras.exceptions.InvalidKerasConfigurat
 import org.deeplearning4j.nn.modelimport.keras.exceptions.UnsupportedKerasConfigurationException;
 import org.insightcentre.nlp.saffron.data.TypedLink.Type;
 import org.insightcentre.nlp.saffron.taxonomy.supervised.MulticlassRelationClassifier;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.AllocationPolicy;
+import org.nd4j.linalg.api.memory.enums.LearningPolicy;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
@@ -23,69 +40,286 @@ import com.robrua.nlp.bert.Bert;
 /**
  * BERT Based relation classifier. Provides an array of predictions
  *
+ * Pairs of terms are best classified in bulk with {@link #predictAll}: each
+ * distinct term is embedded once, in batches, and the relation network is run
+ * on mini-batches of pairs, each on its own copy of the network and in its own
+ * workspace so that the mini-batches can be evaluated in parallel.
+ *
+ * The classifier must be closed if it keeps its embeddings in a store.
+ *
  * @author Rajdeep Sarkar
  * @author Andy Donald
  */
-public class BERTBasedRelationClassifier implements MulticlassRelationClassifier<String>{
-	
-	private ComputationGraph net;
+public class BERTBasedRelationClassifier implements MulticlassRelationClassifier<String>, Closeable {
+
+	// The number of terms embedded by BERT at once
+	private static final int EMBEDDING_BATCH_SIZE = 64;
+	// The number of pairs passed through the relation network at once
+	private static final int PAIR_BATCH_SIZE = 2048;
+	// The width of each row of the input of the network
+	private static final int INPUT_SIZE = 1024;
+	// The number of dimensions of each embedding that are used
+	private static final int EMBEDDING_SIZE = 767;
+
+	private static final WorkspaceConfiguration WORKSPACE_CONFIG = WorkspaceConfiguration.builder()
+			.policyAllocation(AllocationPolicy.OVERALLOCATE)
+			.policyLearning(LearningPolicy.FIRST_LOOP)
+			.build();
+
+	private final ComputationGraph net;
 
-	private Bert bert;
+	private final Bert bert;
+
+	private final int numThreads;
+
+	// The copies of the network that are not in use
+	private final BlockingQueue<Worker> workers = new LinkedBlockingQueue<>();
+	private int numWorkers = 0;
+
+	private final ConcurrentCache<String, float[]> embeddingCache = new ConcurrentCache<>(10000);
+
+	// The embeddings kept between runs or null
+	private final EmbeddingStore embeddingStore;
 
-	private SimpleCache<String, float[]> simpleCache = new SimpleCache<>(10000);
-	
 	/**
 	 * Create a multi-relation classifier based on  BERT
-	 * 
+	 *
 	 * @param simpleMLPFilePath - the file path for the trained Keras model and weights
 	 * @param bertModelFilePath - the file path for the BERT model
-	 * 
+	 *
 	 * @throws IOException
 	 * @throws UnsupportedKerasConfigurationException
 	 * @throws InvalidKerasConfigurationException
 	 */
-	public BERTBasedRelationClassifier(String simpleMLPFilePath, String bertModelFilePath) 
+	public BERTBasedRelationClassifier(String simpleMLPFilePath, String bertModelFilePath)
 			throws IOException, UnsupportedKerasConfigurationException, InvalidKerasConfigurationException {
-		 
+		this(simpleMLPFilePath, bertModelFilePath, 0, null);
+	}
+
+	/**
+	 * Create a multi-relation classifier based on  BERT
+	 *
+	 * @param simpleMLPFilePath - the file path for the trained Keras model and weights
+	 * @param bertModelFilePath - the file path for the BERT model
+	 * @param numThreads - the number of threads used to run the relation network (0 or less to use all available processors)
+	 * @param embeddingStoreDirectory - the directory where the term embeddings are kept between runs (or null to not keep them)
+	 *
+	 * @throws IOException
+	 * @throws UnsupportedKerasConfigurationException
+	 * @throws InvalidKerasConfigurationException
+	 */
+	public BERTBasedRelationClassifier(String simpleMLPFilePath, String bertModelFilePath, int numThreads,
+			String embeddingStoreDirectory)
+			throws IOException, UnsupportedKerasConfigurationException, InvalidKerasConfigurationException {
+
         net = KerasModelImport.importKerasModelAndWeights(simpleMLPFilePath);
-        bert = Bert.load(new File(bertModelFilePath));
+        final File bertModelFile = new File(bertModelFilePath);
+        bert = Bert.load(bertModelFile);
+        this.numThreads = numThreads <= 0 ? Runtime.getRuntime().availableProcessors() : numThreads;
+        // Only the dimensions that the network reads are kept
+        this.embeddingStore = embeddingStoreDirectory == null ? null
+        		: new EmbeddingStore(new File(embeddingStoreDirectory),
+        				bertModelFile.getCanonicalPath() + ":" + bertModelFile.lastModified(), EMBEDDING_SIZE);
 	}
 
 	/**
-	 * Predicts the probability of a set of relationships between a pair of terms 
+	 * Predicts the probability of a set of relationships between a pair of terms
 	 * @param source - the source term string
 	 * @param target - the target term string
 	 * @return an array of probabilities for a set of relations (the specific relations depend on the model used)
-	 * 
-	 * @throws IOException
-	 * @throws UnsupportedKerasConfigurationException
-	 * @throws InvalidKerasConfigurationException
 	 */
     public Map<Type, Double> predict(String source, String target) {
+    	final Set<String> terms = new LinkedHashSet<>(Arrays.asList(source, target));
+    	final Map<String, float[]> embeddings = embed(terms);
+    	final List<Map<Type, Double>> result = new ArrayList<>(1);
+    	try {
+    		final Worker worker = acquireWorker();
+    		try {
+    			addResults(result, worker.predict(embeddings.get(source), embeddings.get(target)));
+    		} finally {
+    			workers.put(worker);
+    		}
+    	} catch (InterruptedException x) {
+    		throw new RuntimeException("Could not classify relations", x);
+    	}
+    	return result.get(0);
+    }
+
+	/**
+	 * Predicts the probability of a set of relationships between many pairs of terms
+	 * @param sources - the source term strings
+	 * @param targets - the target term strings
+	 * @return for each pair, an array of probabilities for a set of relations (the specific relations depend on the model used)
+	 */
+    @Override
+    public List<Map<Type, Double>> predictAll(final List<String> sources, final List<String> targets) {
+    	if (sources.size() != targets.size()) {
+    		throw new IllegalArgumentException("Sources and targets must have the same length");
+    	}
+    	final Set<String> terms = new LinkedHashSet<>(sources);
+    	terms.addAll(targets);
+    	final Map<String, float[]> embeddings = embed(terms);
 
+    	final List<Callable<double[][]>> batches = new ArrayList<>();
+    	for (int i = 0; i < sources.size(); i += PAIR_BATCH_SIZE) {
+    		final int i0 = i, i1 = Math.min(sources.size(), i + PAIR_BATCH_SIZE);
+    		batches.add(new Callable<double[][]>() {
+    			@Override
+    			public double[][] call() throws InterruptedException {
+    				final Worker worker = acquireWorker();
+    				try {
+    					return worker.predict(sources.subList(i0, i1), targets.subList(i0, i1), embeddings);
+    				} finally {
+    					workers.put(worker);
+    				}
+    			}
+    		});
+    	}
 
-		float[] embedding_source = simpleCache.get(source, e -> this.bert.embedSequence(source));
-		float[] embedding_target = simpleCache.get(target, e -> this.bert.embedSequence(target));
+    	final List<Map<Type, Double>> result = new ArrayList<>(sources.size());
+    	if (numThreads == 1 || batches.size() <= 1) {
+    		for (Callable<double[][]> batch : batches) {
+    			try {
+    				addResults(result, batch.call());
+    			} catch (Exception x) {
+    				throw new RuntimeException("Could not classify relations", x);
+    			}
+    		}
+    	} else {
+    		final ExecutorService service = Executors.newFixedThreadPool(Math.min(numThreads, batches.size()));
+    		try {
+    			for (Future<double[][]> future : service.invokeAll(batches)) {
+    				addResults(result, future.get());
+    			}
+    		} catch (InterruptedException | ExecutionException x) {
+    			throw new RuntimeException("Could not classify relations", x);
+    		} finally {
+    			service.shutdownNow();
+    		}
+    	}
+    	return result;
+    }
+
+    /**
+     * Close the store of embeddings, if there is one
+     *
+     * @throws IOException If the store could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+    	if (embeddingStore != null) {
+    		embeddingStore.close();
+    	}
+    }
+
+    private static void addResults(List<Map<Type, Double>> result, double[][] modelResults) {
+    	for (double[] row : modelResults) {
+    		Map<Type, Double> r = new HashMap<Type,Double>();
+    		r.put(Type.hypernymy, row[0]);
+    		r.put(Type.synonymy, row[1]);
+    		r.put(Type.meronymy, row[2]);
+    		r.put(Type.other, row[3]);
+    		r.put(Type.hyponymy, row[4]);
+    		result.add(r);
+    	}
+    }
+
+    /**
+     * Embed each of the terms, looking them up in the cache and then in the
+     * store before embedding the rest in batches
+     */
+    private Map<String, float[]> embed(Set<String> terms) {
+    	final Map<String, float[]> embeddings = new HashMap<>();
+    	final List<String> missing = new ArrayList<>();
+    	for (String term : terms) {
+    		float[] embedding = embeddingCache.getIfPresent(term);
+    		if (embedding == null && embeddingStore != null) {
+    			final float[] stored = embeddingStore.get(term);
+    			if (stored != null) {
+    				embedding = embeddingCache.get(term, e -> stored);
+    			}
+    		}
+    		if (embedding != null) {
+    			embeddings.put(term, embedding);
+    		} else {
+    			missing.add(term);
+    		}
+    	}
+    	for (int i = 0; i < missing.size(); i += EMBEDDING_BATCH_SIZE) {
+    		final List<String> batch = missing.subList(i, Math.min(missing.size(), i + EMBEDDING_BATCH_SIZE));
+    		final float[][] batchEmbeddings = bert.embedSequences(batch);
+    		final Map<String, float[]> computed = new HashMap<>();
+    		for (int j = 0; j < batch.size(); j++) {
+    			final float[] embedding = batchEmbeddings[j];
+    			computed.put(batch.get(j), embeddingCache.get(batch.get(j), e -> embedding));
+    		}
+    		if (embeddingStore != null) {
+    			embeddingStore.putAll(computed);
+    		}
+    		embeddings.putAll(computed);
+    	}
+    	return embeddings;
+    }
+
+    /**
+     * Take an idle copy of the network, creating one if fewer than the number
+     * of threads exist
+     */
+    private Worker acquireWorker() throws InterruptedException {
+    	Worker worker = workers.poll();
+    	if (worker != null) {
+    		return worker;
+    	}
+    	synchronized (workers) {
+    		if (numWorkers < numThreads) {
+    			numWorkers++;
+    			return new Worker(numWorkers == 1 ? net : net.clone(), "BERT_RELATION_" + numWorkers);
+    		}
+    	}
+    	return workers.take();
+    }
 
-        INDArray features = Nd4j.zeros(1, 1, 2, 1024);
+    /**
+     * A copy of the relation network with its own workspace and input buffer
+     */
+    private static class Worker {
+    	private final ComputationGraph net;
+    	private final String workspaceId;
+    	private final float[] buffer = new float[PAIR_BATCH_SIZE * 2 * INPUT_SIZE];
 
-        for(int i=0; i<767; i++)
-        {
-            features.putScalar(0, 0, 0, i, embedding_source[i]);
-            features.putScalar(0, 0, 1, i, embedding_target[i]);
-        }
+    	Worker(ComputationGraph net, String workspaceId) {
+    		this.net = net;
+    		this.workspaceId = workspaceId;
+    	}
 
-        INDArray[] prediction = this.net.output(features);
+    	double[][] predict(List<String> sources, List<String> targets, Map<String, float[]> embeddings) {
+    		final int n = sources.size();
+    		// The features of pair i are the rows [i][0][0] and [i][0][1]; only
+    		// the first dimensions are written, so the rest of the buffer stays zero
+    		for (int i = 0; i < n; i++) {
+    			System.arraycopy(embeddings.get(sources.get(i)), 0, buffer, (2 * i) * INPUT_SIZE, EMBEDDING_SIZE);
+    			System.arraycopy(embeddings.get(targets.get(i)), 0, buffer, (2 * i + 1) * INPUT_SIZE, EMBEDDING_SIZE);
+    		}
+    		return output(n == PAIR_BATCH_SIZE ? buffer : Arrays.copyOf(buffer, n * 2 * INPUT_SIZE), n);
+    	}
 
-        double[] modelResults = prediction[0].toDoubleVector();
-        Map<Type, Double> result = new HashMap<Type,Double>();
+    	// A single pair does not use the buffer of the mini-batches
+    	double[][] predict(float[] source, float[] target) {
+    		final float[] data = new float[2 * INPUT_SIZE];
+    		System.arraycopy(source, 0, data, 0, EMBEDDING_SIZE);
+    		System.arraycopy(target, 0, data, INPUT_SIZE, EMBEDDING_SIZE);
+    		return output(data, 1);
+    	}
 
-        result.put(Type.hypernymy, modelResults[0]);
-        result.put(Type.synonymy, modelResults[1]);
-        result.put(Type.meronymy, modelResults[2]);
-        result.put(Type.other, modelResults[3]);
-        result.put(Type.hyponymy, modelResults[4]);
-        
-        return result;
+    	private double[][] output(float[] data, int n) {
+    		final MemoryWorkspace ws = Nd4j.getWorkspaceManager().getAndActivateWorkspace(WORKSPACE_CONFIG, workspaceId);
+    		try {
+    			final INDArray features = Nd4j.create(data, new long[] { n, 1, 2, INPUT_SIZE }, 'c');
+    			final INDArray[] prediction = net.output(false, features);
+    			return prediction[0].toDoubleMatrix();
+    		} finally {
+    			ws.close();
+    		}
+    	}
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,279 @@
+package org.insightcentre.nlp.saffron.taxonomy.classifiers;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * A persistent store of term embeddings, which can be shared between runs and
+ * between processes. The embeddings of each model are kept in two files in the
+ * store directory, named after a hash of the model identity: a file of
+ * fixed-size vectors, which is memory-mapped, and a file with the term of each
+ * vector, one per line. Terms are normalised (NFC, with runs of whitespace
+ * collapsed to a single space) before they are stored.
+ *
+ * Vectors are only ever appended, under a file lock, and each vector is
+ * written before its term, so a term in the key file always has a complete
+ * vector. Entries added by other processes are picked up when a term is not
+ * found. A file lock is held by the whole JVM, so the stores of one JVM on the
+ * same files also take turns on a lock of their own before taking it.
+ *
+ * @author John McCrae
+ */
+public class EmbeddingStore implements Closeable {
+
+    // The size of each memory-mapped region of the vector file
+    private static final long SEGMENT_BYTES = 1L << 30;
+
+    // The in-process locks of the key files, by their canonical path
+    private static final ConcurrentMap<String, Object> KEY_FILE_LOCKS = new ConcurrentHashMap<>();
+
+    private final int dimensions;
+    private final int recordBytes;
+    private final int segmentSlots;
+    private final RandomAccessFile vectorFile;
+    private final RandomAccessFile keyFile;
+    private final Object keyFileLock;
+    private final Object2IntMap<String> slots = new Object2IntOpenHashMap<>();
+    // The number of lines of the key file that have been read
+    private int numSlots = 0;
+    // The number of bytes of the key file that have been read
+    private long keysRead = 0;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    /**
+     * Open (or create) the store of a model
+     *
+     * @param directory The directory of the store
+     * @param model A string that identifies the model, e.g., its path and
+     * version; embeddings of different models are kept apart
+     * @param dimensions The number of dimensions of the embeddings
+     * @throws IOException If the store could not be opened
+     */
+    public EmbeddingStore(File directory, String model, int dimensions) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        this.dimensions = dimensions;
+        this.recordBytes = dimensions * 4;
+        this.segmentSlots = (int) Math.max(1, SEGMENT_BYTES / recordBytes);
+        final String name = hash(model + "\n" + dimensions);
+        this.vectorFile = new RandomAccessFile(new File(directory, name + ".vec"), "rw");
+        final File keys = new File(directory, name + ".keys");
+        this.keyFile = new RandomAccessFile(keys, "rw");
+        this.keyFileLock = KEY_FILE_LOCKS.computeIfAbsent(keys.getCanonicalPath(), k -> new Object());
+        this.slots.defaultReturnValue(-1);
+        readKeys();
+    }
+
+    private static String hash(String s) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(s.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                sb.append(String.format("%02x", digest[i]));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    /**
+     * Normalise a term as it is stored
+     *
+     * @param term The term
+     * @return The normalised term
+     */
+    public static String normalise(String term) {
+        return Normalizer.normalize(term, Normalizer.Form.NFC).trim().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * The number of dimensions of the embeddings
+     *
+     * @return The number of dimensions
+     */
+    public int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * The number of stored embeddings
+     *
+     * @return The number of embeddings
+     */
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    /**
+     * Get the embedding of a term
+     *
+     * @param term The term (it is normalised)
+     * @return The embedding or null if the term is not in the store
+     */
+    public synchronized float[] get(String term) {
+        final String key = normalise(term);
+        try {
+            int slot = slots.getInt(key);
+            if (slot < 0 && keyFile.length() > keysRead) {
+                // Another process may have added it
+                readKeys();
+                slot = slots.getInt(key);
+            }
+            return slot < 0 ? null : read(slot);
+        } catch (IOException x) {
+            throw new RuntimeException("Could not read embedding store", x);
+        }
+    }
+
+    /**
+     * Add embeddings to the store. Terms that are already in the store are
+     * not overwritten.
+     *
+     * @param embeddings The embeddings of the (normalised) terms
+     */
+    public synchronized void putAll(Map<String, float[]> embeddings) {
+        final Map<String, float[]> normalised = new LinkedHashMap<>();
+        for (Map.Entry<String, float[]> e : embeddings.entrySet()) {
+            if (e.getValue().length < dimensions) {
+                throw new IllegalArgumentException("Embedding has fewer than " + dimensions + " dimensions");
+            }
+            normalised.put(normalise(e.getKey()), e.getValue());
+        }
+        try {
+            synchronized (keyFileLock) {
+                final FileLock lock = keyFile.getChannel().lock();
+                try {
+                    append(normalised);
+                } finally {
+                    lock.release();
+                }
+            }
+        } catch (IOException x) {
+            throw new RuntimeException("Could not write embedding store", x);
+        }
+    }
+
+    // Append the embeddings of the terms that are not in the store, while
+    // holding the lock of the key file
+    private void append(Map<String, float[]> normalised) throws IOException {
+        readKeys();
+        // Any vector after the last term was never completed and is
+        // overwritten
+        final long slot = numSlots;
+        final ByteBuffer record = ByteBuffer.allocate(recordBytes).order(ByteOrder.LITTLE_ENDIAN);
+        final StringBuilder keys = new StringBuilder();
+        final List<String> added = new ArrayList<>();
+        final FileChannel vectors = vectorFile.getChannel();
+        for (Map.Entry<String, float[]> e : normalised.entrySet()) {
+            if (slots.containsKey(e.getKey()) || e.getKey().isEmpty()) {
+                continue;
+            }
+            record.clear();
+            record.asFloatBuffer().put(e.getValue(), 0, dimensions);
+            long pos = (slot + added.size()) * recordBytes;
+            while (record.hasRemaining()) {
+                pos += vectors.write(record, pos);
+            }
+            keys.append(e.getKey()).append('\n');
+            added.add(e.getKey());
+        }
+        if (!added.isEmpty()) {
+            final FileChannel keyChannel = keyFile.getChannel();
+            // Drop the incomplete line of a write that failed
+            if (keyChannel.size() > keysRead) {
+                keyChannel.truncate(keysRead);
+            }
+            final ByteBuffer keyBytes = ByteBuffer.wrap(keys.toString().getBytes(StandardCharsets.UTF_8));
+            long pos = keysRead;
+            while (keyBytes.hasRemaining()) {
+                pos += keyChannel.write(keyBytes, pos);
+            }
+            readKeys();
+        }
+    }
+
+    /**
+     * Read the keys that have been added since the last read. An incomplete
+     * last line is left for later.
+     */
+    private void readKeys() throws IOException {
+        final long length = keyFile.length();
+        if (length <= keysRead) {
+            return;
+        }
+        final byte[] bytes = new byte[(int) Math.min(Integer.MAX_VALUE, length - keysRead)];
+        keyFile.seek(keysRead);
+        keyFile.readFully(bytes);
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                final String key = new String(bytes, start, i - start, StandardCharsets.UTF_8);
+                if (!slots.containsKey(key)) {
+                    slots.put(key, numSlots);
+                }
+                numSlots++;
+                start = i + 1;
+            }
+        }
+        keysRead += start;
+    }
+
+    private float[] read(int slot) throws IOException {
+        final int segment = slot / segmentSlots;
+        final int offset = (slot % segmentSlots) * recordBytes;
+        while (segments.size() <= segment) {
+            segments.add(null);
+        }
+        MappedByteBuffer buffer = segments.get(segment);
+        if (buffer == null || buffer.capacity() < offset + recordBytes) {
+            // Map the segment up to the end of the file as it is now
+            final long start = (long) segment * segmentSlots * recordBytes;
+            final long size = Math.min((long) segmentSlots * recordBytes, vectorFile.length() - start);
+            buffer = vectorFile.getChannel().map(FileChannel.MapMode.READ_ONLY, start, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            segments.set(segment, buffer);
+        }
+        final float[] vector = new float[dimensions];
+        final ByteBuffer record = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        record.position(offset);
+        record.asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        segments.clear();
+        try {
+            vectorFile.close();
+        } finally {
+            keyFile.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EmbeddingStore{" + "dimensions=" + dimensions + ", size=" + size() + '}';
+    }
+}
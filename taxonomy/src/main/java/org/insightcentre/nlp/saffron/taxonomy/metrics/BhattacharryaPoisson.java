@@ -6,13 +6,12 @@ import static java.lang.Math.exp;
 import static java.lang.Math.pow;
 import static java.lang.Math.sqrt;
 
-import java.util.Arrays;
 import java.util.Set;
 
 import org.insightcentre.nlp.saffron.data.TaxoLink;
 import org.insightcentre.nlp.saffron.taxonomy.search.Solution;
 
-import it.unimi.dsi.fastutil.objects.Object2IntArrayMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
 
 /**
@@ -42,14 +41,24 @@ import it.unimi.dsi.fastutil.objects.Object2IntMap;
  * 
  *   sim2 = n * alpha * sim
  * 
+ * The counts are held in persistent arrays so that next only copies the
+ * entries that change. The number of leaves and the sum of sqrt(p * f) over
+ * the nodes with two or more children are kept with the counts, so that
+ * deltaScore only reads a constant number of counts. The score can be read by
+ * the ids of the terms if its base score can.
+ * 
  * @author John McCrae
  */
-public class BhattacharryaPoisson implements HierarchicalScore {
+public class BhattacharryaPoisson implements HierarchicalScore, IndexedScore {
     private final Score baseScore;
     private final Object2IntMap<String> term2index;
-    private final int[] f;
-    private final int[] c;
+    private final PersistentArray<Integer> f;
+    private final PersistentArray<Integer> c;
     private final double[] p;
+    // The number of nodes without children, f[0]
+    private final int f0;
+    // The sum of sqrt(p[i] * f[i]) for i >= 2
+    private final double tail;
     private final int N;
     private final double lambda;
     //private double alpha;
@@ -58,26 +67,29 @@ public class BhattacharryaPoisson implements HierarchicalScore {
     public BhattacharryaPoisson(Score baseScore, Set<String> terms, 
             double lambda, double alpha) {
         this.baseScore = baseScore;
-        this.term2index = new Object2IntArrayMap<>();
+        this.term2index = new Object2IntOpenHashMap<>();
         int i = 0;
         for(String t : terms) {
             this.term2index.put(t, i++);
         }
-        this.f = new int[terms.size()];
         this.N = terms.size() - 1;
         this.p = dpois(lambda, N);
-        f[0] = N;
-        this.c = new int[terms.size()];
+        this.f = PersistentArray.<Integer>empty().set(0, N);
+        this.c = PersistentArray.empty();
+        this.f0 = N;
+        this.tail = 0.0;
         this.lambda = lambda;
         this.r = alpha * N;
     }
 
-    private BhattacharryaPoisson(Score baseScore, Object2IntMap<String> term2index, int[] f, int[] c, double[] p, int N, double lambda, double r) {
+    private BhattacharryaPoisson(Score baseScore, Object2IntMap<String> term2index, PersistentArray<Integer> f, PersistentArray<Integer> c, double[] p, int f0, double tail, int N, double lambda, double r) {
         this.baseScore = baseScore;
         this.term2index = term2index;
         this.f = f;
         this.c = c;
         this.p = p;
+        this.f0 = f0;
+        this.tail = tail;
         this.N = N;
         this.lambda = lambda;
         this.r = r;
@@ -92,36 +104,67 @@ public class BhattacharryaPoisson implements HierarchicalScore {
         return d;
     }
     
+    private static int count(PersistentArray<Integer> counts, int i) {
+        Integer n = counts.get(i);
+        return n == null ? 0 : n;
+    }
+
     @Override
     public double deltaScore(TaxoLink taxoLink) {
-        int t = term2index.get(taxoLink.getTop());
+        return delta(term2index.getInt(taxoLink.getTop())) * r + baseScore.deltaScore(taxoLink);
+    }
+
+    @Override
+    public Scorer scorer(String[] terms) {
+        final Scorer base = baseScore instanceof IndexedScore
+                ? ((IndexedScore) baseScore).scorer(terms) : null;
+        if (base == null) {
+            return null;
+        }
+        final int[] indexes = new int[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            indexes[i] = term2index.getInt(terms[i]);
+        }
+        return (top, bottom) -> delta(indexes[top]) * r + base.deltaScore(top, bottom);
+    }
+
+    // The change in the metric of adding a child to the term with index t
+    private double delta(int t) {
+        final int ct = count(c, t);
         final double delta;
-        if(c[t] > 0) {
+        if(ct > 0) {
+            final int f1 = count(f, ct + 1), f2 = count(f, ct);
             delta =
-                    (sqrt(f[c[t] + 1] + 1) - sqrt(f[c[t] + 1])) * sqrt(p[c[t] + 1] / (N - f[0])) +
-                    (sqrt(f[c[t]] - 1) - sqrt(f[c[t]])) * sqrt(p[c[t]]) / (N - f[0]);
+                    (sqrt(f1 + 1) - sqrt(f1)) * sqrt(p[ct + 1] / (N - f0)) +
+                    (sqrt(f2 - 1) - sqrt(f2)) * sqrt(p[ct]) / (N - f0);
         } else /*if(f[c[t]] == 0)*/ {
-            double d = 0.0;
-            d += sqrt(p[1] * (f[1] + 1) / (N - f[0] + 1))
-                    - (N == f[0] ? 0.0 : sqrt(p[1] * (f[1]) / (N - f[0])));
-            for(int i = 2; i < p.length; i++) {
-                d += sqrt(p[i] * f[i] / (N - f[0] + 1)) 
-                        - (N == f[0] ? 0.0 : sqrt(p[i] * f[i] / (N - f[0])));
-            }
-            delta = d;
+            // Only the normalisation of the nodes with two or more children
+            // changes, so their sum is rescaled
+            final int f1 = count(f, 1);
+            delta = sqrt(p[1] * (f1 + 1) / (N - f0 + 1))
+                    - (N == f0 ? 0.0 : sqrt(p[1] * (f1) / (N - f0)))
+                    + tail * (1.0 / sqrt(N - f0 + 1) - (N == f0 ? 0.0 : 1.0 / sqrt(N - f0)));
         } 
-        return delta * r + baseScore.deltaScore(taxoLink);
+        return delta;
     }
 
     @Override
     public HierarchicalScore next(TaxoLink link, Solution soln) {
-        int t = term2index.get(link.getTop());
-        int[] newC = Arrays.copyOf(c, c.length);
-        newC[t]++;
-        int[] newF = Arrays.copyOf(f, f.length);
-        newF[c[t]]--;
-        newF[newC[t]]++;
-        return new BhattacharryaPoisson(baseScore, term2index, newF, newC, p, N, lambda, r);
+        int t = term2index.getInt(link.getTop());
+        final int ct = count(c, t);
+        final int fFrom = count(f, ct), fTo = count(f, ct + 1);
+        PersistentArray<Integer> newC = c.set(t, ct + 1);
+        PersistentArray<Integer> newF = f.set(ct, fFrom - 1);
+        newF = newF.set(ct + 1, fTo + 1);
+        double newTail = tail;
+        if(ct >= 2) {
+            newTail += sqrt(p[ct] * (fFrom - 1)) - sqrt(p[ct] * fFrom);
+        }
+        if(ct + 1 >= 2) {
+            newTail += sqrt(p[ct + 1] * (fTo + 1)) - sqrt(p[ct + 1] * fTo);
+        }
+        return new BhattacharryaPoisson(baseScore, term2index, newF, newC, p,
+                ct == 0 ? f0 - 1 : f0, newTail, N, lambda, r);
     }
     // Calculates y ** x / x! mostly by the Sterling approximation
     // =~ 1/sqrt(2*pi*x) (e * y / x) ** x 
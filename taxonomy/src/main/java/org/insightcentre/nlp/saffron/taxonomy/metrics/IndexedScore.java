@@ -0,0 +1,35 @@
+package org.insightcentre.nlp.saffron.taxonomy.metrics;
+
+/**
+ * A score of taxonomy links that can also be read by the ids of the terms, so
+ * that a search that holds its links as ids does not need to create a link
+ * object to score each of them
+ *
+ * @author John McCrae
+ */
+public interface IndexedScore {
+
+    /**
+     * The change in score of adding a link given by the ids of its terms
+     */
+    interface Scorer {
+
+        /**
+         * Calculate the change in score of adding a single link
+         *
+         * @param top The id of the broader term
+         * @param bottom The id of the narrower term
+         * @return The change in score
+         */
+        double deltaScore(int top, int bottom);
+    }
+
+    /**
+     * Read this score by the ids of some terms. The scorer gives the same
+     * values as deltaScore for the corresponding links
+     *
+     * @param terms The terms, where the id of each term is its position
+     * @return The scorer or null if this score cannot be read by ids
+     */
+    Scorer scorer(String[] terms);
+}
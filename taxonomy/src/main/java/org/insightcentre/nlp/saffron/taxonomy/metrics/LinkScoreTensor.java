@@ -0,0 +1,180 @@
+package org.insightcentre.nlp.saffron.taxonomy.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.insightcentre.nlp.saffron.data.TypedLink;
+
+import it.unimi.dsi.fastutil.objects.AbstractObject2DoubleMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectSet;
+
+/**
+ * The scores of typed links, held as a tensor indexed by source term,
+ * target term and relation type. Terms are given ids as they are first seen.
+ * Each source term has a row of blocks of 64 target terms, and a block holds
+ * the scores of all relation types for those targets, so blocks are only
+ * allocated for the pairs of terms that are scored.
+ *
+ * The scores can be read and written by term id without allocation. The
+ * tensor can also be used as a map from links to scores; its entry set is a
+ * copy.
+ *
+ * @author John McCrae
+ */
+public class LinkScoreTensor extends AbstractObject2DoubleMap<TypedLink> {
+
+    private static final long serialVersionUID = 3360128492791805527L;
+
+    private static final TypedLink.Type[] TYPES = TypedLink.Type.values();
+    private static final int BLOCK_BITS = 6;
+    private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+    private static final double[][] NO_BLOCKS = new double[0][];
+
+    private final Object2IntMap<String> termIds = new Object2IntOpenHashMap<>();
+    private final List<String> terms = new ArrayList<>();
+    // The blocks of each source term; missing scores are NaN
+    private double[][][] rows = new double[16][][];
+    private int size = 0;
+
+    public LinkScoreTensor() {
+        termIds.defaultReturnValue(-1);
+    }
+
+    /**
+     * The id of a term, giving it a new id if it has none
+     *
+     * @param term The term
+     * @return The id
+     */
+    public int termId(String term) {
+        int id = termIds.getInt(term);
+        if (id < 0) {
+            id = terms.size();
+            termIds.put(term, id);
+            terms.add(term);
+        }
+        return id;
+    }
+
+    /**
+     * The id of a term
+     *
+     * @param term The term
+     * @return The id or -1 if the term has no id
+     */
+    public int lookup(String term) {
+        return termIds.getInt(term);
+    }
+
+    /**
+     * Get a score
+     *
+     * @param type The relation type
+     * @param source The id of the source term
+     * @param target The id of the target term
+     * @return The score or NaN if there is none
+     */
+    public double get(TypedLink.Type type, int source, int target) {
+        if (source < 0 || target < 0 || source >= rows.length || rows[source] == null) {
+            return Double.NaN;
+        }
+        final double[][] row = rows[source];
+        final int b = target >>> BLOCK_BITS;
+        if (b >= row.length || row[b] == null) {
+            return Double.NaN;
+        }
+        return row[b][type.ordinal() * BLOCK_SIZE + (target & (BLOCK_SIZE - 1))];
+    }
+
+    /**
+     * Set a score
+     *
+     * @param type The relation type
+     * @param source The id of the source term
+     * @param target The id of the target term
+     * @param score The score
+     */
+    public void set(TypedLink.Type type, int source, int target, double score) {
+        if (source >= rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(source + 1, rows.length * 2));
+        }
+        double[][] row = rows[source];
+        if (row == null) {
+            row = rows[source] = NO_BLOCKS;
+        }
+        final int b = target >>> BLOCK_BITS;
+        if (b >= row.length) {
+            row = rows[source] = Arrays.copyOf(row, Math.max(b + 1, row.length * 2));
+        }
+        if (row[b] == null) {
+            row[b] = new double[TYPES.length * BLOCK_SIZE];
+            Arrays.fill(row[b], Double.NaN);
+        }
+        final int k = type.ordinal() * BLOCK_SIZE + (target & (BLOCK_SIZE - 1));
+        if (Double.isNaN(row[b][k]) != Double.isNaN(score)) {
+            size += Double.isNaN(score) ? -1 : 1;
+        }
+        row[b][k] = score;
+    }
+
+    @Override
+    public double getDouble(Object o) {
+        if (!(o instanceof TypedLink)) {
+            return defRetValue;
+        }
+        final TypedLink link = (TypedLink) o;
+        final double score = get(link.getType(), lookup(link.getSource()), lookup(link.getTarget()));
+        return Double.isNaN(score) ? defRetValue : score;
+    }
+
+    @Override
+    public boolean containsKey(Object o) {
+        if (!(o instanceof TypedLink)) {
+            return false;
+        }
+        final TypedLink link = (TypedLink) o;
+        return !Double.isNaN(get(link.getType(), lookup(link.getSource()), lookup(link.getTarget())));
+    }
+
+    @Override
+    public double put(TypedLink link, double score) {
+        final int source = termId(link.getSource());
+        final int target = termId(link.getTarget());
+        final double old = get(link.getType(), source, target);
+        set(link.getType(), source, target, score);
+        return Double.isNaN(old) ? defRetValue : old;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public ObjectSet<Entry<TypedLink>> object2DoubleEntrySet() {
+        final ObjectSet<Entry<TypedLink>> entries = new ObjectOpenHashSet<>(size);
+        for (int s = 0; s < rows.length; s++) {
+            if (rows[s] == null) {
+                continue;
+            }
+            for (int b = 0; b < rows[s].length; b++) {
+                final double[] block = rows[s][b];
+                if (block == null) {
+                    continue;
+                }
+                for (int k = 0; k < block.length; k++) {
+                    if (!Double.isNaN(block[k])) {
+                        final int target = (b << BLOCK_BITS) + (k & (BLOCK_SIZE - 1));
+                        entries.add(new BasicEntry<>(new TypedLink(terms.get(s), terms.get(target),
+                                TYPES[k / BLOCK_SIZE]), block[k]));
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+}
@@ -9,7 +9,7 @@ import org.insightcentre.nlp.saffron.taxonomy.search.Solution;
  * 
  * @author John McCrae
  */
-public class NullScore implements Score<TypedLink> {
+public class NullScore implements Score<TypedLink>, IndexedScore {
 
     @Override
     public double deltaScore(TypedLink link) {
@@ -21,4 +21,9 @@ public class NullScore implements Score<TypedLink> {
         return this;
     }
 
+    @Override
+    public Scorer scorer(String[] terms) {
+        return (top, bottom) -> 0.0;
+    }
+
 }
@@ -0,0 +1,93 @@
+package org.insightcentre.nlp.saffron.taxonomy.metrics;
+
+/**
+ * An immutable array indexed by non-negative integers. Setting a value returns
+ * a new array that shares all but the path to the changed element with this
+ * array, so deriving a new state costs O(log n) rather than O(n). Unset
+ * elements are null and the array grows as needed.
+ *
+ * @author John McCrae
+ * @param <V> The type of the elements
+ */
+final class PersistentArray<V> {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final PersistentArray<Object> EMPTY = new PersistentArray<>(null, 0);
+
+    private final Object[] root;
+    // The number of bits of the index consumed below the root
+    private final int shift;
+
+    private PersistentArray(Object[] root, int shift) {
+        this.root = root;
+        this.shift = shift;
+    }
+
+    /**
+     * Create an empty array
+     *
+     * @param <V> The type of the elements
+     * @return An array with no elements set
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentArray<V> empty() {
+        return (PersistentArray<V>) EMPTY;
+    }
+
+    /**
+     * Get an element of this array
+     *
+     * @param i The index
+     * @return The element or null if it has not been set
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int i) {
+        if (i < 0 || (i >>> shift) >= WIDTH) {
+            return null;
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0 && node != null; level -= BITS) {
+            node = (Object[]) node[(i >>> level) & MASK];
+        }
+        return node == null ? null : (V) node[i & MASK];
+    }
+
+    /**
+     * Create a new array with an element changed. This array is not modified
+     *
+     * @param i The index
+     * @param value The new value
+     * @return The array with the element at i set to value
+     */
+    public PersistentArray<V> set(int i, V value) {
+        if (i < 0) {
+            throw new IndexOutOfBoundsException("Negative index: " + i);
+        }
+        Object[] r = root;
+        int s = shift;
+        while ((i >>> s) >= WIDTH) {
+            // Grow by adding a level above the current root
+            if (r != null) {
+                Object[] r2 = new Object[WIDTH];
+                r2[0] = r;
+                r = r2;
+            }
+            s += BITS;
+        }
+        return new PersistentArray<>(set(r, s, i, value), s);
+    }
+
+    private static Object[] set(Object[] node, int level, int i, Object value) {
+        final Object[] copy = node == null ? new Object[WIDTH] : node.clone();
+        if (level == 0) {
+            copy[i & MASK] = value;
+        } else {
+            final int j = (i >>> level) & MASK;
+            copy[j] = set((Object[]) copy[j], level - BITS, i, value);
+        }
+        return copy;
+    }
+}
@@ -1,5 +1,7 @@
 package org.insightcentre.nlp.saffron.taxonomy.metrics;
 
+import java.util.Collection;
+
 import org.insightcentre.nlp.saffron.data.TypedLink;
 import org.insightcentre.nlp.saffron.taxonomy.search.Solution;
 
@@ -23,4 +25,26 @@ public interface Score<T extends TypedLink>{
      * @return An object that is updated for this case
      */
     Score<T> next(T link, Solution soln);
+
+    /**
+     * Compute the scores of many links ahead of time, so that the later calls
+     * to deltaScore for these links are cheap. Scores that can predict many
+     * links at once may override this
+     *
+     * @param links The links that will be scored
+     */
+    default void prefetch(Collection<T> links) {
+    }
+
+    /**
+     * The links whose change in score may differ after a link is added, that
+     * is between the score that next was called on and the score it returned.
+     * A search only needs to rescore these links
+     *
+     * @param link The link that was added
+     * @return The links whose score may change or null if any link may change
+     */
+    default Collection<T> affectedBy(T link) {
+        return null;
+    }
 }
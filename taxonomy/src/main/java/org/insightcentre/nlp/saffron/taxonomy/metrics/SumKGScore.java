@@ -1,6 +1,12 @@
 package org.insightcentre.nlp.saffron.taxonomy.metrics;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.insightcentre.nlp.saffron.config.KnowledgeGraphExtractionConfiguration;
 import org.insightcentre.nlp.saffron.data.TypedLink;
@@ -8,12 +14,20 @@ import org.insightcentre.nlp.saffron.taxonomy.search.Solution;
 import org.insightcentre.nlp.saffron.taxonomy.supervised.MulticlassRelationClassifier;
 
 import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
-import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
 
+/**
+ * A score of a knowledge graph that is the sum of the scores of its links.
+ * The scores do not depend on the solution. If synonymy normalisation is
+ * enabled, a pair of terms is classified together with its reverse pair, so
+ * the normalised synonymy score of a link is the same whatever order the
+ * links are scored in and does not change once it has been read.
+ */
 public class SumKGScore implements Score<TypedLink>{
 	
 	private final MulticlassRelationClassifier<String> classifier;
-	public final Object2DoubleMap<TypedLink> scores = new Object2DoubleOpenHashMap<>();
+	private final LinkScoreTensor tensor = new LinkScoreTensor();
+	// The scores of the links (a view of the tensor)
+	public final Object2DoubleMap<TypedLink> scores = tensor;
 	private final boolean enableSynonymyNormalisation;
 	
 	public SumKGScore(MulticlassRelationClassifier<String> classifier, boolean enableSynonymyNormalisation) {
@@ -21,44 +35,102 @@ public class SumKGScore implements Score<TypedLink>{
 	    this.enableSynonymyNormalisation = enableSynonymyNormalisation;
 	}
 	
+	// The number of pairs of terms passed to the classifier at once
+	private static final int PREFETCH_SIZE = 65536;
+
 	@Override
 	public double deltaScore(final TypedLink tl) {
-	    if (!scores.containsKey(tl)) {
-	    	Map<TypedLink.Type, Double> prediction = classifier.predict(tl.getSource(), tl.getTarget());
-	    	for(TypedLink.Type relationType : prediction.keySet()) {
-				TypedLink deepCopy = new TypedLink(tl);
+		final int source = tensor.termId(tl.getSource());
+		final int target = tensor.termId(tl.getTarget());
+		if (!isScored(source, target)) {
+			store(source, target, classifier.predict(tl.getSource(), tl.getTarget()));
+			if (this.enableSynonymyNormalisation && !isScored(target, source)) {
+				store(target, source, classifier.predict(tl.getTarget(), tl.getSource()));
+			}
+		}
+		final double score = tensor.get(tl.getType(), source, target);
+	    return Double.isNaN(score) ? 0.0 : score;
+	}
 
-				if (this.enableSynonymyNormalisation &&
-						relationType.equals(TypedLink.Type.synonymy)) {
-					deepCopy.setType(relationType);
-					double synonymyScore = normaliseSynonymyScores(deepCopy, prediction.get(TypedLink.Type.synonymy));
-					scores.put(deepCopy, synonymyScore);
-				} else {
+	// A pair is scored once the classifier has given a score for any type,
+	// as a prediction may not score every type
+	private boolean isScored(int source, int target) {
+		for (TypedLink.Type type : TypedLink.Type.values()) {
+			if (!Double.isNaN(tensor.get(type, source, target))) {
+				return true;
+			}
+		}
+		return false;
+	}
 
-					deepCopy.setType(relationType);
-					scores.put(deepCopy,prediction.get(relationType));
+	/**
+	 * Classify the pairs of terms of the links that are not yet scored in
+	 * batches. The predictions are stored in the order of the links, so the
+	 * scores are the same as if each link had been scored in turn. With
+	 * synonymy normalisation the reverse of each pair is classified as well
+	 */
+	@Override
+	public void prefetch(Collection<TypedLink> links) {
+		final Set<TypedLink> pending = new HashSet<>();
+		final List<TypedLink> pairs = new ArrayList<>();
+		for (TypedLink tl : links) {
+			final int source = tensor.termId(tl.getSource());
+			final int target = tensor.termId(tl.getTarget());
+			if (!isScored(source, target)) {
+				TypedLink pair = new TypedLink(tl.getSource(), tl.getTarget(), TypedLink.Type.other);
+				if (pending.add(pair)) {
+					pairs.add(pair);
+					TypedLink reverse = new TypedLink(tl.getTarget(), tl.getSource(), TypedLink.Type.other);
+					if (this.enableSynonymyNormalisation && !isScored(target, source)
+							&& pending.add(reverse)) {
+						pairs.add(reverse);
+					}
 				}
-	    	}
-	    }
-	    return scores.getDouble(tl);
+			}
+		}
+		for (int i = 0; i < pairs.size(); i += PREFETCH_SIZE) {
+			final List<TypedLink> batch = pairs.subList(i, Math.min(pairs.size(), i + PREFETCH_SIZE));
+			final List<String> sources = new ArrayList<>(batch.size());
+			final List<String> targets = new ArrayList<>(batch.size());
+			for (TypedLink pair : batch) {
+				sources.add(pair.getSource());
+				targets.add(pair.getTarget());
+			}
+			final List<Map<TypedLink.Type, Double>> predictions = classifier.predictAll(sources, targets);
+			for (int j = 0; j < batch.size(); j++) {
+				final TypedLink pair = batch.get(j);
+				store(tensor.termId(pair.getSource()), tensor.termId(pair.getTarget()), predictions.get(j));
+			}
+		}
+	}
+
+	private void store(int source, int target, Map<TypedLink.Type, Double> prediction) {
+    	for(Map.Entry<TypedLink.Type, Double> e : prediction.entrySet()) {
+			if (this.enableSynonymyNormalisation &&
+					e.getKey().equals(TypedLink.Type.synonymy)) {
+				tensor.set(e.getKey(), source, target, normaliseSynonymyScores(source, target, e.getValue()));
+			} else {
+				tensor.set(e.getKey(), source, target, e.getValue());
+			}
+    	}
 	}
 
 	protected double normaliseSynonymyScores(TypedLink tl, double currentSynonymyScore) {
+		return normaliseSynonymyScores(tensor.termId(tl.getSource()), tensor.termId(tl.getTarget()), currentSynonymyScore);
+	}
+
+	protected double normaliseSynonymyScores(int source, int target, double currentSynonymyScore) {
 		
 		double normalisedScore;
-		TypedLink deepCopyReverse = new TypedLink(tl.getTarget(), tl.getSource(), tl.getType());
-		double otherSynonymyScore;
-		if (scores.containsKey(deepCopyReverse)) {
-			otherSynonymyScore = scores.getDouble(deepCopyReverse);
+		double otherSynonymyScore = tensor.get(TypedLink.Type.synonymy, target, source);
+		if (!Double.isNaN(otherSynonymyScore)) {
 			normalisedScore = (currentSynonymyScore + otherSynonymyScore)*0.5;
-			scores.replace(deepCopyReverse, normalisedScore);
+			tensor.set(TypedLink.Type.synonymy, target, source, normalisedScore);
 		}
 		else {
 			normalisedScore = currentSynonymyScore;
 		}
 
-
-
 		return normalisedScore;
 	}
 
@@ -66,4 +138,12 @@ public class SumKGScore implements Score<TypedLink>{
 	public Score<TypedLink> next(TypedLink link, Solution soln) {
 	    return this;
 	}
+
+	/**
+	 * No score depends on the links in the solution
+	 */
+	@Override
+	public Collection<TypedLink> affectedBy(TypedLink link) {
+		return Collections.emptyList();
+	}
 }
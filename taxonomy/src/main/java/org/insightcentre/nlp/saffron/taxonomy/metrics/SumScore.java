@@ -3,18 +3,23 @@ package org.insightcentre.nlp.saffron.taxonomy.metrics;
 import org.insightcentre.nlp.saffron.data.TypedLink;
 import org.insightcentre.nlp.saffron.taxonomy.search.Solution;
 import org.insightcentre.nlp.saffron.taxonomy.supervised.BinaryRelationClassifier;
+import org.insightcentre.nlp.saffron.taxonomy.supervised.ScoreMatrix;
 
 import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
+import it.unimi.dsi.fastutil.objects.Object2DoubleMaps;
 import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
 
 /**
+ * A score that is the sum of the scores of the links. This score may be
+ * queried from several threads. If the classifier is a score matrix, the
+ * score can also be read by the ids of the terms
  *
  * @author John McCrae
  */
-public class SumScore implements Score<TypedLink> {
+public class SumScore implements Score<TypedLink>, IndexedScore {
 
     private final BinaryRelationClassifier<String> classifier;
-    private final Object2DoubleMap<TypedLink> scores = new Object2DoubleOpenHashMap<>();
+    private final Object2DoubleMap<TypedLink> scores = Object2DoubleMaps.synchronize(new Object2DoubleOpenHashMap<TypedLink>());
 
     public SumScore(BinaryRelationClassifier<String> classifier) {
         this.classifier = classifier;
@@ -32,4 +37,19 @@ public class SumScore implements Score<TypedLink> {
     public Score<TypedLink> next(TypedLink link, Solution soln) {
         return this;
     }
+
+    @Override
+    public Scorer scorer(final String[] terms) {
+        if (!(classifier instanceof ScoreMatrix)) {
+            return null;
+        }
+        final ScoreMatrix matrix = (ScoreMatrix) classifier;
+        final int[] indexes = new int[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            indexes[i] = matrix.indexOf(terms[i]);
+        }
+        return (top, bottom) -> indexes[top] >= 0 && indexes[bottom] >= 0
+                ? matrix.get(indexes[top], indexes[bottom])
+                : matrix.predict(terms[top], terms[bottom]);
+    }
 }
@@ -1,17 +1,26 @@
 package org.insightcentre.nlp.saffron.taxonomy.metrics;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.insightcentre.nlp.saffron.data.TaxoLink;
 import org.insightcentre.nlp.saffron.taxonomy.search.Solution;
 import org.insightcentre.nlp.saffron.taxonomy.supervised.BinaryRelationClassifier;
 
 import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
+import it.unimi.dsi.fastutil.objects.Object2DoubleMaps;
 import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
 
 /**
+ * A score that sums the classifier's score over every pair of a term and one
+ * of its ancestors. The state of the taxonomy is held as the parent and the
+ * children of each term in persistent arrays, so that each call to next only
+ * copies the entries that change and the states can be shared between
+ * threads.
  *
  * @author John McCrae
  */
@@ -19,100 +28,93 @@ public class TransitiveScore implements HierarchicalScore {
 
     private final BinaryRelationClassifier<String> classifier;
     private final Object2DoubleMap<TaxoLink> scores;
-    final HashMap<String, Set<String>> parents;
-    final HashMap<String, Set<String>> children;
+    private final ConcurrentMap<String, Integer> termIds;
+    private final AtomicInteger nextTermId;
+    private final PersistentArray<String> parents;
+    private final PersistentArray<String[]> children;
 
     public TransitiveScore(BinaryRelationClassifier<String> classifier) {
         this.classifier = classifier;
-        this.parents = new HashMap<>();
-        this.children = new HashMap<>();
-        this.scores = new Object2DoubleOpenHashMap<>();
+        this.scores = Object2DoubleMaps.synchronize(new Object2DoubleOpenHashMap<TaxoLink>());
+        this.termIds = new ConcurrentHashMap<>();
+        this.nextTermId = new AtomicInteger();
+        this.parents = PersistentArray.empty();
+        this.children = PersistentArray.empty();
     }
 
-    public TransitiveScore(BinaryRelationClassifier<String> classifier, Object2DoubleMap<TaxoLink> scores, HashMap<String, Set<String>> parents, HashMap<String, Set<String>> children) {
-        this.classifier = classifier;
-        this.scores = scores;
+    private TransitiveScore(TransitiveScore base, PersistentArray<String> parents,
+            PersistentArray<String[]> children) {
+        this.classifier = base.classifier;
+        this.scores = base.scores;
+        this.termIds = base.termIds;
+        this.nextTermId = base.nextTermId;
         this.parents = parents;
         this.children = children;
     }
 
-    @Override
-    public double deltaScore(TaxoLink tl) {
+    private double score(String top, String bottom) {
+        TaxoLink tl = new TaxoLink(top, bottom);
         if (!scores.containsKey(tl)) {
-            scores.put(tl, classifier.predict(tl.getTop(), tl.getBottom()) - 0.5);
+            scores.put(tl, classifier.predict(top, bottom) - 0.5);
         }
-        double s = scores.getDouble(tl);
-        if (parents.containsKey(tl.getTop())) {
-            for (String p : parents.get(tl.getTop())) {
-                TaxoLink tl2 = new TaxoLink(p, tl.getBottom());
-                if (!scores.containsKey(tl2)) {
-                    scores.put(tl2, classifier.predict(tl2.getTop(), tl2.getBottom()) - 0.5);
-                }
-                s += scores.getDouble(tl2);
-                if (children.containsKey(tl.getBottom())) {
-                    for (String c : children.get(tl.getBottom())) {
-                        TaxoLink tl3 = new TaxoLink(p, c);
-                        if (!scores.containsKey(tl3)) {
-                            scores.put(tl3, classifier.predict(tl3.getTop(), tl3.getBottom()) - 0.5);
-                        }
-                        s += scores.getDouble(tl3);
+        return scores.getDouble(tl);
+    }
+
+    private int termId(String term) {
+        Integer i = termIds.get(term);
+        return i == null ? -1 : i;
+    }
+
+    private int internTerm(String term) {
+        return termIds.computeIfAbsent(term, t -> nextTermId.getAndIncrement());
+    }
+
+    private String parent(String term) {
+        return parents.get(termId(term));
+    }
 
-                    }
-                }
+    private void addDescendants(String term, List<String> descendants) {
+        String[] c = children.get(termId(term));
+        if (c != null) {
+            for (String child : c) {
+                descendants.add(child);
+                addDescendants(child, descendants);
             }
         }
-        if (children.containsKey(tl.getBottom())) {
-            for (String c : children.get(tl.getBottom())) {
-                TaxoLink tl2 = new TaxoLink(tl.getTop(), c);
-                if (!scores.containsKey(tl2)) {
-                    scores.put(tl2, classifier.predict(tl2.getTop(), tl2.getBottom()) - 0.5);
-                }
-                s += scores.getDouble(tl2);
+    }
+
+    @Override
+    public double deltaScore(TaxoLink tl) {
+        double s = score(tl.getTop(), tl.getBottom());
+        final List<String> descendants = new ArrayList<>();
+        addDescendants(tl.getBottom(), descendants);
+        for (String p = parent(tl.getTop()); p != null; p = parent(p)) {
+            s += score(p, tl.getBottom());
+            for (String c : descendants) {
+                s += score(p, c);
             }
         }
+        for (String c : descendants) {
+            s += score(tl.getTop(), c);
+        }
         return s;
     }
 
     @Override
     public HierarchicalScore next(TaxoLink link, Solution soln) {
-        HashMap<String, Set<String>> newParents = new HashMap<>(parents);
         // Shouldn't already be parents
-        Set<String> p = newParents.containsKey(link.getBottom()) ? newParents.get(link.getBottom()) : new HashSet<String>();
-
-        HashMap<String, Set<String>> newChildren = new HashMap<>(children);
-        Set<String> c = newChildren.containsKey(link.getTop()) ? newChildren.get(link.getTop()) : new HashSet<String>();
-
-        if (newParents.containsKey(link.getTop())) {
-            p.addAll(newParents.get(link.getTop()));
-        }
-
-        if (newChildren.containsKey(link.getBottom())) {
-            c.addAll(newChildren.get(link.getBottom()));
-        }
-
-        for (String parent : p) {
-            if (!newChildren.containsKey(parent)) {
-                newChildren.put(parent, new HashSet<String>());
-            }
-            newChildren.get(parent).addAll(c);
-            newChildren.get(parent).add(link.getBottom());
-        }
-
-        for (String child : c) {
-            if (!newParents.containsKey(child)) {
-                newParents.put(child, new HashSet<String>());
-            }
-            newParents.get(child).addAll(p);
-            newParents.get(child).add(link.getTop());
+        final int top = internTerm(link.getTop());
+        final int bottom = internTerm(link.getBottom());
+        final String[] c = children.get(top);
+        final String[] newC;
+        if (c == null) {
+            newC = new String[]{link.getBottom()};
+        } else {
+            newC = Arrays.copyOf(c, c.length + 1);
+            newC[c.length] = link.getBottom();
         }
-
-        p.add(link.getTop());
-        newParents.put(link.getBottom(), p);
-
-        c.add(link.getBottom());
-        newChildren.put(link.getTop(), c);
-
-        return new TransitiveScore(classifier, scores, newParents, newChildren);
+        return new TransitiveScore(this, parents.set(bottom, link.getTop()),
+                children.set(top, newC));
     }
 
 }
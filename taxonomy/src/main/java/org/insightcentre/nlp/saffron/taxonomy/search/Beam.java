@@ -55,10 +55,11 @@ public class Beam<K extends Comparable<K>> implements Iterable<K> {
             enqueue(k);
             return true;
         } else if (score > scores.getDouble(last())) {
-            K k2 = heap[size - 1];
-            heap[size - 1] = k;
+            final int i = lastIndex();
+            K k2 = heap[i];
+            heap[i] = k;
             scores.put(k, score);
-            ObjectHeaps.upHeap(heap, size, size - 1, c);
+            ObjectHeaps.upHeap(heap, size, i, c);
             scores.remove(k2);
             return true;
         } else {
@@ -119,10 +120,24 @@ public class Beam<K extends Comparable<K>> implements Iterable<K> {
     }
 
     private K last() {
+        return heap[lastIndex()];
+    }
+
+    /**
+     * The index of the lowest scoring element, which is always a leaf of the
+     * heap
+     */
+    private int lastIndex() {
         if (size == 0) {
             throw new NoSuchElementException();
         }
-        return heap[size - 1];
+        int last = size - 1;
+        for (int i = size / 2; i < size - 1; i++) {
+            if (c.compare(heap[i], heap[last]) > 0) {
+                last = i;
+            }
+        }
+        return last;
     }
 
     private void enqueue(K x) {
@@ -1,16 +1,34 @@
 package org.insightcentre.nlp.saffron.taxonomy.search;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.insightcentre.nlp.saffron.DefaultSaffronListener;
+import org.insightcentre.nlp.saffron.SaffronListener;
 import org.insightcentre.nlp.saffron.data.TaxoLink;
 import org.insightcentre.nlp.saffron.data.Taxonomy;
 import org.insightcentre.nlp.saffron.data.Term;
 import org.insightcentre.nlp.saffron.taxonomy.metrics.Score;
 
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
 /**
+ * Beam search for the best taxonomy. The states in the beam are expanded in
+ * parallel and states that contain the same set of links are only kept once.
  *
  * @author John McCrae
  */
@@ -18,21 +36,94 @@ public class BeamSearch implements TaxonomySearch {
 
     private final Score emptyScore;
     private final int beamSize;
+    private final int numThreads;
+    private final CandidateParents candidateParents;
+    private final SearchBudget budget;
+    private final SaffronListener log;
 
     public BeamSearch(Score emptyScore, int beamSize) {
+        this(emptyScore, beamSize, 1);
+    }
+
+    /**
+     * Create a beam search
+     *
+     * @param emptyScore The score of the empty taxonomy
+     * @param beamSize The size of the beam
+     * @param numThreads The number of threads used to expand the beam (0 or
+     * less to use all available processors)
+     */
+    public BeamSearch(Score emptyScore, int beamSize, int numThreads) {
+        this(emptyScore, beamSize, numThreads, null);
+    }
+
+    /**
+     * Create a beam search that only considers the candidate parents of each
+     * term
+     *
+     * @param emptyScore The score of the empty taxonomy
+     * @param beamSize The size of the beam
+     * @param numThreads The number of threads used to expand the beam (0 or
+     * less to use all available processors)
+     * @param candidateParents The candidate parents of each term or null to
+     * consider every pair of terms
+     */
+    public BeamSearch(Score emptyScore, int beamSize, int numThreads,
+            CandidateParents candidateParents) {
+        this(emptyScore, beamSize, numThreads, candidateParents,
+                SearchBudget.UNLIMITED, new DefaultSaffronListener());
+    }
+
+    /**
+     * Create a beam search with a budget. When the budget is spent the terms
+     * that have not been placed in the best state of the beam are attached
+     * under their best-scoring parent
+     *
+     * @param emptyScore The score of the empty taxonomy
+     * @param beamSize The size of the beam
+     * @param numThreads The number of threads used to expand the beam (0 or
+     * less to use all available processors)
+     * @param candidateParents The candidate parents of each term or null to
+     * consider every pair of terms
+     * @param budget The budget of the search
+     * @param log The listener that is told of the progress of the search
+     */
+    public BeamSearch(Score emptyScore, int beamSize, int numThreads,
+            CandidateParents candidateParents, SearchBudget budget,
+            SaffronListener log) {
         this.emptyScore = emptyScore;
+        this.candidateParents = candidateParents;
+        this.budget = budget;
+        this.log = log;
         this.beamSize = beamSize;
+        this.numThreads = numThreads <= 0 ? Runtime.getRuntime().availableProcessors() : numThreads;
         assert (beamSize > 0);
     }
 
     @Override
     public Taxonomy extractTaxonomyWithBlackWhiteList(Map<String, Term> termMap,
             Set<TaxoLink> whiteList, Set<TaxoLink> blackList) {
+        final ExecutorService service = numThreads > 1 ? Executors.newFixedThreadPool(numThreads) : null;
+        try {
+            return search(termMap, whiteList, blackList, service);
+        } finally {
+            if (service != null) {
+                service.shutdownNow();
+            }
+        }
+    }
+
+    private Taxonomy search(Map<String, Term> termMap,
+            Set<TaxoLink> whiteList, Set<TaxoLink> blackList,
+            ExecutorService service) {
+        final LinkKeys keys = new LinkKeys(termMap.keySet());
         Beam<Soln> previous = new Beam<>(beamSize);
         Beam<Soln> complete = new Beam<>(beamSize);
+        final LongSet completeSeen = new LongOpenHashSet();
         Score score = emptyScore;
         TaxonomySolution soln = TaxonomySolution.empty(termMap.keySet());
         double s2 = 0.0;
+        long linkHash = 0L;
         Set<String> whiteHeads = new HashSet<>();
 
         for (TaxoLink sp : whiteList) {
@@ -42,68 +133,222 @@ public class BeamSearch implements TaxonomySearch {
                     score.deltaScore(sp), true);
             s2 += score.deltaScore(sp);
             score = score.next(sp, soln);
+            linkHash ^= keys.key(sp.getTop(), sp.getBottom());
             whiteHeads.add(sp.getBottom());
         }
-        previous.push(new Soln(soln, score, s2, false), s2);
+        previous.push(new Soln(soln, score, s2, false, linkHash, 0, 0), s2);
+        final SearchBudget.Clock clock = budget.start();
+        final int tickEvery = Math.max(1, termMap.size() / 100);
         for (String t1 : termMap.keySet()) {
-            if(whiteHeads.contains(t1))
+            if (whiteHeads.contains(t1)) {
                 continue;
-            Beam<Soln> next = new Beam<>(beamSize);
+            }
+            if (clock.isSpent()) {
+                log.endTick();
+                log.log("Taxonomy search budget spent after placing " + clock.steps()
+                        + " terms, attaching the remaining terms");
+                final Soln best = previous.pop();
+                return best.soln.complete(termMap, candidateParents,
+                        (top, bottom) -> best.score.deltaScore(new TaxoLink(top, bottom))).toTaxonomy();
+            }
             // We are looking for t1's parent
-            for (String t2 : termMap.keySet()) {
-                if (!t1.equals(t2)) {
-                    final TaxoLink taxoLink = new TaxoLink(t2, t1);
-                    if (blackList.contains(taxoLink)) {
-                        continue;
-                    }
-                    for (Soln prevSoln : previous) {
-                        final double linkScore = prevSoln.score.deltaScore(taxoLink);
-                        double totalScore = prevSoln.totalScore
-                                + linkScore;
-                        if (next.canPush(totalScore)) {
-                            TaxonomySolution s = prevSoln.soln.add(t2, t1,
-                                    termMap.get(t2).getScore(),
-                                    termMap.get(t1).getScore(), linkScore, false);
-                            if (s != null) {
-                                Soln candidate = new Soln(s,
-                                        prevSoln.score.next(new TaxoLink(t2, t1), s),
-                                        totalScore,
-                                        prevSoln.rooted);
-                                next.push(candidate, totalScore);
-                                if (candidate.soln.isComplete()) {
-                                    complete.push(candidate, totalScore);
-                                }
-                            }
-                        }
-                    }
-                    // We may once in a search have a node with no parents, this
-                    // is the root element and a flag is set to decide this
-                    for (Soln prevSoln : previous) {
-                        if (!prevSoln.rooted) {
-                            next.push(new Soln(prevSoln.soln, prevSoln.score,
-                                    prevSoln.totalScore, true),
-                                    prevSoln.totalScore);
-                        }
-                    }
+            final List<Beam<Soln>> expansions = expandAll(previous, t1, termMap, blackList, keys, service);
+            // Each state is expanded into its own beam. As two distinct states
+            // cannot produce the same link set by adding a link to t1, the
+            // best beamSize states of each are sufficient to fill the next beam.
+            // They are pushed in the order they were generated as the beam
+            // favours the earliest of equally scored states
+            final List<Soln> candidates = new ArrayList<>();
+            for (Beam<Soln> expansion : expansions) {
+                for (Soln candidate : expansion) {
+                    candidates.add(candidate);
                 }
             }
+            candidates.sort(new Comparator<Soln>() {
+                @Override
+                public int compare(Soln o1, Soln o2) {
+                    int c = Integer.compare(o1.order, o2.order);
+                    return c == 0 ? Integer.compare(o1.parentIndex, o2.parentIndex) : c;
+                }
+            });
+            final Beam<Soln> next = new Beam<>(beamSize);
+            final LongSet seen = new LongOpenHashSet();
+            for (Soln candidate : candidates) {
+                if (!seen.add(candidate.stateHash())) {
+                    continue;
+                }
+                next.push(candidate, candidate.totalScore);
+                if (candidate.order % 2 == 0 && candidate.soln.isComplete()
+                        && completeSeen.add(candidate.linkHash)) {
+                    complete.push(candidate, candidate.totalScore);
+                }
+            }
+            int parentIndex = 0;
+            for (Soln soln2 : next) {
+                soln2.parentIndex = parentIndex++;
+            }
             previous = next;
+            clock.step();
+            if (clock.steps() % tickEvery == 0) {
+                log.tick();
+            }
         }
+        log.endTick();
         return complete.pop().soln.toTaxonomy();
     }
 
+    private List<Beam<Soln>> expandAll(Beam<Soln> previous, final String t1,
+            final Map<String, Term> termMap, final Set<TaxoLink> blackList,
+            final LinkKeys keys, ExecutorService service) {
+        final List<Beam<Soln>> expansions = new ArrayList<>();
+        if (service == null) {
+            for (Soln prevSoln : previous) {
+                expansions.add(expand(prevSoln, t1, termMap, blackList, keys));
+            }
+            return expansions;
+        }
+        final List<Callable<Beam<Soln>>> tasks = new ArrayList<>();
+        for (final Soln prevSoln : previous) {
+            tasks.add(new Callable<Beam<Soln>>() {
+                @Override
+                public Beam<Soln> call() {
+                    return expand(prevSoln, t1, termMap, blackList, keys);
+                }
+            });
+        }
+        try {
+            for (Future<Beam<Soln>> future : service.invokeAll(tasks)) {
+                expansions.add(future.get());
+            }
+        } catch (InterruptedException | ExecutionException x) {
+            throw new RuntimeException("Could not expand beam", x);
+        }
+        return expansions;
+    }
+
+    /**
+     * Find the best states that can be obtained from a single state by
+     * attaching t1 to a parent or making it the root.
+     */
+    private Beam<Soln> expand(Soln prevSoln, String t1, Map<String, Term> termMap,
+            Set<TaxoLink> blackList, LinkKeys keys) {
+        final Beam<Soln> next = new Beam<>(beamSize);
+        boolean rootPushed = prevSoln.rooted;
+        int order = 0;
+        final Iterable<String> parents = candidateParents == null ? termMap.keySet()
+                : candidateParents.parents(t1);
+        for (String t2 : parents) {
+            if (!t1.equals(t2) && termMap.containsKey(t2)) {
+                final TaxoLink taxoLink = new TaxoLink(t2, t1);
+                if (blackList.contains(taxoLink)) {
+                    continue;
+                }
+                final double linkScore = prevSoln.score.deltaScore(taxoLink);
+                double totalScore = prevSoln.totalScore
+                        + linkScore;
+                if (next.canPush(totalScore)) {
+                    TaxonomySolution s = prevSoln.soln.add(t2, t1,
+                            termMap.get(t2).getScore(),
+                            termMap.get(t1).getScore(), linkScore, false);
+                    if (s != null) {
+                        next.push(new Soln(s,
+                                prevSoln.score.next(taxoLink, s),
+                                totalScore,
+                                prevSoln.rooted,
+                                prevSoln.linkHash ^ keys.key(t2, t1),
+                                order, prevSoln.parentIndex), totalScore);
+                    }
+                }
+                order += 2;
+                // We may once in a search have a node with no parents, this
+                // is the root element and a flag is set to decide this
+                if (!rootPushed) {
+                    next.push(new Soln(prevSoln.soln, prevSoln.score,
+                            prevSoln.totalScore, true, prevSoln.linkHash,
+                            1, prevSoln.parentIndex),
+                            prevSoln.totalScore);
+                    rootPushed = true;
+                }
+            }
+        }
+        // A term without candidate parents can only be the root
+        if (!rootPushed) {
+            next.push(new Soln(prevSoln.soln, prevSoln.score,
+                    prevSoln.totalScore, true, prevSoln.linkHash,
+                    1, prevSoln.parentIndex),
+                    prevSoln.totalScore);
+        }
+        return next;
+    }
+
+    /**
+     * Zobrist-style keys for links. Each term has a random key as a top and as
+     * a bottom and the key of a link is a mix of both, so the hash of a set of
+     * links is the XOR of the keys of its links and can be updated in O(1)
+     * when a link is added
+     */
+    private static class LinkKeys {
+
+        private final Object2IntMap<String> termIds = new Object2IntOpenHashMap<>();
+        private final long[] topKeys, bottomKeys;
+
+        public LinkKeys(Set<String> terms) {
+            final Random random = new Random(terms.size());
+            this.topKeys = new long[terms.size()];
+            this.bottomKeys = new long[terms.size()];
+            int i = 0;
+            for (String term : terms) {
+                termIds.put(term, i);
+                topKeys[i] = random.nextLong();
+                bottomKeys[i] = random.nextLong();
+                i++;
+            }
+        }
+
+        public long key(String top, String bottom) {
+            return mix(topKeys[termIds.getInt(top)] + 31 * bottomKeys[termIds.getInt(bottom)]);
+        }
+
+        // The finalizer of SplitMix64
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            return z ^ (z >>> 31);
+        }
+    }
+
+    private static final long ROOTED_KEY = 0x9e3779b97f4a7c15L;
+
     private static class Soln implements Comparable<Soln> {
 
         public final TaxonomySolution soln;
         public final Score score;
         public final double totalScore;
         public final boolean rooted;
+        public final long linkHash;
+        // The order in which this state was generated from its parent
+        public final int order;
+        // The position of the parent state in the previous beam or of this
+        // state in its beam once the beam is complete
+        public int parentIndex;
 
-        public Soln(TaxonomySolution soln, Score score, double totalScore, boolean rooted) {
+        public Soln(TaxonomySolution soln, Score score, double totalScore, boolean rooted, long linkHash,
+                int order, int parentIndex) {
             this.soln = soln;
             this.score = score;
             this.totalScore = totalScore;
             this.rooted = rooted;
+            this.linkHash = linkHash;
+            this.order = order;
+            this.parentIndex = parentIndex;
+        }
+
+        /**
+         * The hash of the links in this state and whether the root has been
+         * chosen
+         */
+        public long stateHash() {
+            return rooted ? linkHash ^ ROOTED_KEY : linkHash;
         }
 
         @Override
@@ -125,25 +370,9 @@ public class BeamSearch implements TaxonomySearch {
             } else if(i2.hasNext()) {
                 return +1;
             }
-            c = Integer.compare(this.hashCode(), o.hashCode());
-            if (c != 0) {
-                return c;
-            }
-            c = Integer.compare(this.soln.hashCode(), o.soln.hashCode());
-            if (c != 0) {
-                return c;
-            }
-            c = Integer.compare(this.score.hashCode(), o.score.hashCode());
-            if (c != 0) {
-                return c;
-            }
-            c = Double.compare(totalScore, o.totalScore);
-            if (c != 0) {
-                return c;
-            }
-            c = Boolean.compare(rooted, o.rooted);
-            // This means there is a chance that some solutions may be lost
-            return c;
+            // The beam drops states with the same state hash as duplicates,
+            // so no two states in a beam are equal here
+            return Long.compare(stateHash(), o.stateHash());
         }
     }
 }
@@ -0,0 +1,95 @@
+package org.insightcentre.nlp.saffron.taxonomy.search;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.insightcentre.nlp.saffron.data.TaxoLink;
+
+/**
+ * The terms that may be considered as the parent of each term. A search that
+ * is given candidate parents only considers links from a term to one of its
+ * candidate parents, so that it need not consider every pair of terms.
+ *
+ * @author John McCrae
+ */
+public class CandidateParents {
+
+    private final Map<String, Set<String>> parents;
+
+    /**
+     * Create a set of candidate parents
+     *
+     * @param parents The candidate parents of each term
+     */
+    public CandidateParents(Map<String, ? extends Collection<String>> parents) {
+        this.parents = new HashMap<>();
+        for (Map.Entry<String, ? extends Collection<String>> e : parents.entrySet()) {
+            this.parents.put(e.getKey(), Collections.unmodifiableSet(new LinkedHashSet<>(e.getValue())));
+        }
+    }
+
+    /**
+     * The candidate parents of a term
+     *
+     * @param child The term
+     * @return The candidate parents (empty if the term has none)
+     */
+    public Set<String> parents(String child) {
+        Set<String> s = parents.get(child);
+        return s == null ? Collections.<String>emptySet() : s;
+    }
+
+    /**
+     * Check if a term is a candidate parent of another term
+     *
+     * @param parent The parent
+     * @param child The child
+     * @return True if parent is a candidate parent of child
+     */
+    public boolean contains(String parent, String child) {
+        return parents(child).contains(parent);
+    }
+
+    /**
+     * The number of pairs of a term and a candidate parent
+     *
+     * @return The number of pairs
+     */
+    public int size() {
+        int n = 0;
+        for (Set<String> s : parents.values()) {
+            n += s.size();
+        }
+        return n;
+    }
+
+    /**
+     * Add links to these candidates, e.g., so that whitelisted links are never
+     * pruned
+     *
+     * @param links The links to add
+     * @return Candidates that also include the top of each link as a parent of
+     * its bottom
+     */
+    public CandidateParents withLinks(Collection<TaxoLink> links) {
+        if (links.isEmpty()) {
+            return this;
+        }
+        Map<String, Set<String>> p = new HashMap<>();
+        for (Map.Entry<String, Set<String>> e : parents.entrySet()) {
+            p.put(e.getKey(), new LinkedHashSet<>(e.getValue()));
+        }
+        for (TaxoLink link : links) {
+            Set<String> s = p.get(link.getBottom());
+            if (s == null) {
+                p.put(link.getBottom(), s = new LinkedHashSet<>());
+            }
+            s.add(link.getTop());
+        }
+        return new CandidateParents(p);
+    }
+}
@@ -0,0 +1,366 @@
+package org.insightcentre.nlp.saffron.taxonomy.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.ToDoubleBiFunction;
+
+import org.insightcentre.nlp.saffron.SaffronListener;
+import org.insightcentre.nlp.saffron.data.Status;
+import org.insightcentre.nlp.saffron.data.TaxoLink;
+import org.insightcentre.nlp.saffron.data.Taxonomy;
+import org.insightcentre.nlp.saffron.data.Term;
+import org.insightcentre.nlp.saffron.data.VirtualRootTaxonomy;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * Finds a taxonomy for a very large set of terms by dividing it. The terms are
+ * clustered by their candidate parents (i.e., by string inclusion, shared
+ * documents and embeddings) into clusters of a bounded size, a taxonomy is
+ * found for each cluster in parallel and then the roots of the clusters are
+ * linked by a second search (which is divided again if there are still too
+ * many roots). As each search only considers the pairs of terms within a
+ * cluster, the time grows linearly with the number of terms. All the searches
+ * share one budget and once it is spent the terms of each cluster that has not
+ * been searched are attached under their best-scoring candidate parents.
+ *
+ * @author John McCrae
+ */
+public class DivideAndConquerSearch implements TaxonomySearch {
+
+    /**
+     * The number of candidate parents of each term used to cluster the terms
+     * if no number is configured
+     */
+    public static final int DEFAULT_NEIGHBOURS = 10;
+
+    private final BiFunction<Set<String>, SearchBudget, TaxonomySearch> searchFactory;
+    private final Function<Set<String>, CandidateParents> neighbours;
+    private final ToDoubleBiFunction<String, String> linkScore;
+    private final SearchBudget budget;
+    private final int clusterSize;
+    private final int numThreads;
+    private final SaffronListener log;
+
+    /**
+     * Create a divide-and-conquer search without a budget
+     *
+     * @param searchFactory Creates the search for a set of terms that is no
+     * larger than a cluster
+     * @param neighbours Finds the candidate parents of each term, which are
+     * used to cluster the terms
+     * @param clusterSize The maximum number of terms in a cluster
+     * @param numThreads The number of clusters searched in parallel (0 or
+     * less to use all available processors)
+     * @param log The listener
+     */
+    public DivideAndConquerSearch(final Function<Set<String>, TaxonomySearch> searchFactory,
+            Function<Set<String>, CandidateParents> neighbours,
+            int clusterSize, int numThreads, SaffronListener log) {
+        this((terms, budget) -> searchFactory.apply(terms), neighbours,
+                (top, bottom) -> 0.0, SearchBudget.UNLIMITED, clusterSize, numThreads, log);
+    }
+
+    /**
+     * Create a divide-and-conquer search
+     *
+     * @param searchFactory Creates the search for a set of terms that is no
+     * larger than a cluster, which must keep within the budget it is given
+     * @param neighbours Finds the candidate parents of each term, which are
+     * used to cluster the terms
+     * @param linkScore The score of a link from a parent to a child, which is
+     * used to attach the terms of the clusters that are not searched
+     * @param budget The budget of all the searches
+     * @param clusterSize The maximum number of terms in a cluster
+     * @param numThreads The number of clusters searched in parallel (0 or
+     * less to use all available processors)
+     * @param log The listener
+     */
+    public DivideAndConquerSearch(BiFunction<Set<String>, SearchBudget, TaxonomySearch> searchFactory,
+            Function<Set<String>, CandidateParents> neighbours,
+            ToDoubleBiFunction<String, String> linkScore, SearchBudget budget,
+            int clusterSize, int numThreads, SaffronListener log) {
+        if (clusterSize < 2) {
+            throw new IllegalArgumentException("Clusters must have at least two terms");
+        }
+        this.searchFactory = searchFactory;
+        this.neighbours = neighbours;
+        this.linkScore = linkScore;
+        this.budget = budget;
+        this.clusterSize = clusterSize;
+        this.numThreads = numThreads <= 0 ? Runtime.getRuntime().availableProcessors() : numThreads;
+        this.log = log;
+    }
+
+    @Override
+    public Taxonomy extractTaxonomyWithBlackWhiteList(Map<String, Term> termMap,
+            Set<TaxoLink> whiteList, Set<TaxoLink> blackList) {
+        final SearchBudget.Clock clock = budget.start();
+        final AtomicInteger unsearched = new AtomicInteger();
+        final Taxonomy taxonomy = search(termMap, whiteList, blackList, clock, unsearched);
+        if (unsearched.get() > 0) {
+            log.log("Taxonomy search budget spent, attached the terms of "
+                    + unsearched.get() + " clusters without searching them");
+        }
+        return taxonomy;
+    }
+
+    private Taxonomy search(final Map<String, Term> termMap,
+            final Set<TaxoLink> whiteList, final Set<TaxoLink> blackList,
+            final SearchBudget.Clock clock, final AtomicInteger unsearched) {
+        if (termMap.size() <= clusterSize) {
+            return searchCluster(termMap.keySet(), termMap, whiteList, blackList, clock, unsearched);
+        }
+        final List<Set<String>> clusters = cluster(termMap.keySet(),
+                neighbours.apply(termMap.keySet()), clusterSize, whiteList);
+        log.log("Searching " + clusters.size() + " clusters of " + termMap.size() + " terms");
+
+        final List<Callable<Taxonomy>> tasks = new ArrayList<>();
+        for (final Set<String> cluster : clusters) {
+            tasks.add(new Callable<Taxonomy>() {
+                @Override
+                public Taxonomy call() {
+                    return searchCluster(cluster, termMap, whiteList, blackList, clock, unsearched);
+                }
+            });
+        }
+        final Map<String, Taxonomy> clusterRoots = new HashMap<>();
+        final ExecutorService service = Executors.newFixedThreadPool(Math.min(numThreads, tasks.size()));
+        try {
+            for (Future<Taxonomy> future : service.invokeAll(tasks)) {
+                for (Taxonomy head : heads(future.get())) {
+                    clusterRoots.put(head.root, head);
+                }
+                log.tick();
+            }
+        } catch (InterruptedException | ExecutionException x) {
+            throw new RuntimeException("Could not search clusters", x);
+        } finally {
+            service.shutdownNow();
+        }
+        log.endTick();
+
+        // Link the roots of the clusters
+        final Map<String, Term> rootMap = new HashMap<>();
+        for (String root : clusterRoots.keySet()) {
+            rootMap.put(root, termMap.get(root));
+        }
+        log.log("Linking the roots of " + clusters.size() + " clusters");
+        final Taxonomy top;
+        if (rootMap.size() == 1) {
+            top = clusterRoots.values().iterator().next();
+        } else if (rootMap.size() < termMap.size()) {
+            top = search(rootMap, linksWithin(rootMap.keySet(), whiteList), blackList, clock, unsearched);
+        } else {
+            // The clusters did not reduce the terms, so they are searched at once
+            top = searchCluster(rootMap.keySet(), rootMap, whiteList, blackList, clock, unsearched);
+        }
+        return graft(top, clusterRoots);
+    }
+
+    private Taxonomy searchCluster(Set<String> cluster, Map<String, Term> termMap,
+            Set<TaxoLink> whiteList, Set<TaxoLink> blackList,
+            SearchBudget.Clock clock, AtomicInteger unsearched) {
+        if (cluster.size() == 1) {
+            final String term = cluster.iterator().next();
+            return new Taxonomy(term, termMap.get(term).getScore(), Double.NaN,
+                    new ArrayList<Taxonomy>(), Status.none);
+        }
+        final Map<String, Term> clusterMap = new HashMap<>();
+        for (String term : cluster) {
+            clusterMap.put(term, termMap.get(term));
+        }
+        final Set<TaxoLink> clusterWhiteList = linksWithin(cluster, whiteList);
+        if (clock.isSpent()) {
+            unsearched.incrementAndGet();
+            return complete(clusterMap, clusterWhiteList, blackList);
+        }
+        return searchFactory.apply(cluster, clock.remaining())
+                .extractTaxonomyWithBlackWhiteList(clusterMap, clusterWhiteList, blackList);
+    }
+
+    /**
+     * Attach each term of a cluster under its best-scoring candidate parent
+     * without a search, keeping the whitelisted links
+     */
+    private Taxonomy complete(Map<String, Term> clusterMap,
+            Set<TaxoLink> whiteList, final Set<TaxoLink> blackList) {
+        TaxonomySolution soln = TaxonomySolution.empty(clusterMap.keySet());
+        for (TaxoLink link : whiteList) {
+            final TaxonomySolution soln2 = soln.add(link.getTop(), link.getBottom(),
+                    clusterMap.get(link.getTop()).getScore(),
+                    clusterMap.get(link.getBottom()).getScore(),
+                    linkScore.applyAsDouble(link.getTop(), link.getBottom()), true);
+            if (soln2 != null) {
+                soln = soln2;
+            }
+        }
+        // A blacklisted link is only used if a term has no other parent
+        return soln.complete(clusterMap, neighbours.apply(clusterMap.keySet()),
+                (top, bottom) -> blackList.contains(new TaxoLink(top, bottom))
+                ? Double.NEGATIVE_INFINITY : linkScore.applyAsDouble(top, bottom))
+                .toTaxonomy();
+    }
+
+    private static Set<TaxoLink> linksWithin(Set<String> terms, Set<TaxoLink> links) {
+        final Set<TaxoLink> within = new HashSet<>();
+        for (TaxoLink link : links) {
+            if (terms.contains(link.getTop()) && terms.contains(link.getBottom())) {
+                within.add(link);
+            }
+        }
+        return within;
+    }
+
+    private static List<Taxonomy> heads(Taxonomy taxonomy) {
+        if (VirtualRootTaxonomy.VIRTUAL_ROOT.equals(taxonomy.root)) {
+            return taxonomy.children;
+        } else {
+            return Collections.singletonList(taxonomy);
+        }
+    }
+
+    /**
+     * Replace each node of the taxonomy of the roots with the taxonomy of its
+     * cluster
+     */
+    private static Taxonomy graft(Taxonomy node, Map<String, Taxonomy> clusterRoots) {
+        final List<Taxonomy> children = new ArrayList<>();
+        for (Taxonomy child : node.children) {
+            children.add(graft(child, clusterRoots));
+        }
+        if (VirtualRootTaxonomy.VIRTUAL_ROOT.equals(node.root)) {
+            return new VirtualRootTaxonomy(children);
+        }
+        final Taxonomy cluster = clusterRoots.get(node.root);
+        if (cluster != null) {
+            children.addAll(0, cluster.children);
+        }
+        return new Taxonomy(node.root, node.score, node.linkScore, children, node.status);
+    }
+
+    /**
+     * Cluster terms by their candidate parents. The terms of each whitelisted
+     * link are always in the same cluster. Otherwise each term is joined with
+     * its first candidate parent, then its second and so on, as long as
+     * neither cluster would grow beyond the maximum size. Finally the small
+     * clusters are packed together.
+     *
+     * @param terms The terms
+     * @param candidates The candidate parents of each term, best first
+     * @param maxSize The maximum size of a cluster (which may be exceeded by
+     * whitelisted links)
+     * @param whiteList The whitelisted links
+     * @return The clusters
+     */
+    public static List<Set<String>> cluster(Collection<String> terms, CandidateParents candidates,
+            int maxSize, Collection<TaxoLink> whiteList) {
+        final List<String> sorted = new ArrayList<>(terms);
+        Collections.sort(sorted);
+        final int n = sorted.size();
+        final Object2IntMap<String> ids = new Object2IntOpenHashMap<>();
+        ids.defaultReturnValue(-1);
+        for (int i = 0; i < n; i++) {
+            ids.put(sorted.get(i), i);
+        }
+        final int[] parent = new int[n];
+        final int[] size = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+            size[i] = 1;
+        }
+        for (TaxoLink link : whiteList) {
+            final int i = ids.getInt(link.getTop()), j = ids.getInt(link.getBottom());
+            if (i >= 0 && j >= 0) {
+                union(parent, size, i, j, Integer.MAX_VALUE);
+            }
+        }
+        final List<String[]> neighbours = new ArrayList<>(n);
+        int maxRank = 0;
+        for (String term : sorted) {
+            final Set<String> p = candidates.parents(term);
+            neighbours.add(p.toArray(new String[p.size()]));
+            maxRank = Math.max(maxRank, p.size());
+        }
+        for (int rank = 0; rank < maxRank; rank++) {
+            for (int i = 0; i < n; i++) {
+                final String[] p = neighbours.get(i);
+                if (rank < p.length) {
+                    final int j = ids.getInt(p[rank]);
+                    if (j >= 0) {
+                        union(parent, size, i, j, maxSize);
+                    }
+                }
+            }
+        }
+        final Map<Integer, Set<String>> byRoot = new HashMap<>();
+        final List<Set<String>> clusters = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            final int r = find(parent, i);
+            Set<String> c = byRoot.get(r);
+            if (c == null) {
+                byRoot.put(r, c = new LinkedHashSet<>());
+                clusters.add(c);
+            }
+            c.add(sorted.get(i));
+        }
+        // Pack the small clusters together, so that there are fewer roots
+        final List<Set<String>> packed = new ArrayList<>();
+        Set<String> bin = null;
+        for (Set<String> c : clusters) {
+            if (c.size() * 2 >= maxSize) {
+                packed.add(c);
+            } else {
+                if (bin != null && bin.size() + c.size() > maxSize) {
+                    packed.add(bin);
+                    bin = null;
+                }
+                if (bin == null) {
+                    bin = new LinkedHashSet<>();
+                }
+                bin.addAll(c);
+            }
+        }
+        if (bin != null) {
+            packed.add(bin);
+        }
+        return packed;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int[] size, int i, int j, int maxSize) {
+        final int ri = find(parent, i), rj = find(parent, j);
+        if (ri != rj && (long) size[ri] + size[rj] <= maxSize) {
+            if (size[ri] < size[rj]) {
+                parent[ri] = rj;
+                size[rj] += size[ri];
+            } else {
+                parent[rj] = ri;
+                size[ri] += size[rj];
+            }
+        }
+    }
+}
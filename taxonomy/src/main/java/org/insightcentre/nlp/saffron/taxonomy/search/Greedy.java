@@ -1,20 +1,18 @@
 package org.insightcentre.nlp.saffron.taxonomy.search;
 
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.ToDoubleBiFunction;
 
+import org.insightcentre.nlp.saffron.DefaultSaffronListener;
+import org.insightcentre.nlp.saffron.SaffronListener;
 import org.insightcentre.nlp.saffron.data.Status;
 import org.insightcentre.nlp.saffron.data.TaxoLink;
 import org.insightcentre.nlp.saffron.data.Taxonomy;
 import org.insightcentre.nlp.saffron.data.Term;
 import org.insightcentre.nlp.saffron.taxonomy.metrics.Score;
 
-import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
-import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
-
 /**
  * Implements a simple greedy search for the best taxonomy
  *
@@ -23,26 +21,72 @@ import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
 public class Greedy implements TaxonomySearch {
 
     private final Score emptyScore;
+    private final CandidateParents candidateParents;
+    private final SearchBudget budget;
+    private final SaffronListener log;
 
     public Greedy(Score score) {
+        this(score, null);
+    }
+
+    /**
+     * Create a greedy search that only considers the candidate parents of
+     * each term
+     *
+     * @param score The score of the empty taxonomy
+     * @param candidateParents The candidate parents of each term or null to
+     * consider every pair of terms
+     */
+    public Greedy(Score score, CandidateParents candidateParents) {
+        this(score, candidateParents, SearchBudget.UNLIMITED, new DefaultSaffronListener());
+    }
+
+    /**
+     * Create a greedy search with a budget. When the budget is spent the
+     * terms that have not been placed are attached under their best-scoring
+     * parent in the taxonomy found so far
+     *
+     * @param score The score of the empty taxonomy
+     * @param candidateParents The candidate parents of each term or null to
+     * consider every pair of terms
+     * @param budget The budget of the search
+     * @param log The listener that is told of the progress of the search
+     */
+    public Greedy(Score score, CandidateParents candidateParents,
+            SearchBudget budget, SaffronListener log) {
         this.emptyScore = score;
+        this.candidateParents = candidateParents;
+        this.budget = budget;
+        this.log = log;
     }
 
     @Override
     public Taxonomy extractTaxonomyWithBlackWhiteList(Map<String, Term> termMap,
             Set<TaxoLink> whiteList, Set<TaxoLink> blackList) {
         Score score = this.emptyScore;
-        ArrayList<TaxoLink> candidates = new ArrayList<>();
         if(termMap.size() == 0) {
             return new Taxonomy("NO TERMS", 0, 0, Collections.EMPTY_LIST, Status.none);
         } else if(termMap.size() == 1) {
             // It is not possible to construct a taxonomy from 1 term
             return new Taxonomy(termMap.keySet().iterator().next(), 0, 0, Collections.EMPTY_LIST, Status.none);
         }
-        for (String t1 : termMap.keySet()) {
-            for (String t2 : termMap.keySet()) {
-                if (!t1.equals(t2)) {
-                    candidates.add(new TaxoLink(t1, t2));
+        final PackedLinks candidates = new PackedLinks(termMap.keySet());
+        final int n = termMap.size();
+        if (candidateParents == null) {
+            for (int t1 = 0; t1 < n; t1++) {
+                for (int t2 = 0; t2 < n; t2++) {
+                    if (t1 != t2) {
+                        candidates.add(t1, t2);
+                    }
+                }
+            }
+        } else {
+            for (int t2 = 0; t2 < n; t2++) {
+                for (String p : candidateParents.parents(candidates.term(t2))) {
+                    final int t1 = candidates.id(p);
+                    if (t1 >= 0 && t1 != t2) {
+                        candidates.add(t1, t2);
+                    }
                 }
             }
         }
@@ -59,41 +103,65 @@ public class Greedy implements TaxonomySearch {
                 score = score.next(sp, soln);
             }
         }
+        // The order of the candidates only changes if the score does
+        Score sortedBy = null;
+        final SearchBudget.Clock clock = budget.start();
+        final int tickEvery = Math.max(1, n / 100);
         SOLN_LOOP:
         while (!soln.isComplete()) {
-            final Object2DoubleMap<TaxoLink> scores = new Object2DoubleOpenHashMap<>();
-            for (TaxoLink candidate : candidates) {
-                scores.put(candidate, score.deltaScore(candidate));
+            if (clock.isSpent()) {
+                log.endTick();
+                log.log("Taxonomy search budget spent after " + clock.steps()
+                        + " links, attaching the remaining terms");
+                soln = soln.complete(termMap, candidateParents, completionScore(score, blackList));
+                return soln.toTaxonomy();
             }
-            candidates.sort(new Comparator<TaxoLink>() {
-                @Override
-                public int compare(TaxoLink o1, TaxoLink o2) {
-                    double d1 = scores.getOrDefault(o1, Double.MIN_VALUE);
-                    double d2 = scores.getOrDefault(o2, Double.MIN_VALUE);
-                    int c = Double.compare(d1, d2);
-                    return c == 0 ? o1.compareTo(o2) : -c;
+            if (score != sortedBy) {
+                if (!candidates.scoreAndSort(score, budget.isLimited() ? clock : null)) {
+                    // The budget was spent while scoring, so the loop stops
+                    // at the check of the clock above
+                    continue;
                 }
-            });
+                sortedBy = score;
+            }
             while (!candidates.isEmpty()) {
-                TaxoLink candidate = candidates.remove(0);
-                TaxonomySolution soln2 = soln.add(candidate.getTop(), candidate.getBottom(),
-                        termMap.get(candidate.getTop()).getScore(),
-                        termMap.get(candidate.getBottom()).getScore(),
-                        scores.getDouble(candidate), false);
+                final long candidate = candidates.first();
+                final double linkScore = candidates.firstScore();
+                candidates.removeFirst();
+                final String top = candidates.term(PackedLinks.parent(candidate));
+                final String bottom = candidates.term(PackedLinks.child(candidate));
+                TaxonomySolution soln2 = soln.add(top, bottom,
+                        termMap.get(top).getScore(),
+                        termMap.get(bottom).getScore(),
+                        linkScore, false);
                 // soln2 = null means adding this link would create an invalid taxonomy
                 if (soln2 != null) {
                     soln = soln2;
-                    score = score.next(candidate, soln);
+                    score = score.next(candidates.toTaxoLink(candidate), soln);
+                    clock.step();
+                    if (clock.steps() % tickEvery == 0) {
+                        log.tick();
+                    }
                     continue SOLN_LOOP;
                 }
             }
-            //System.err.println(soln);
-            for (TaxoLink candidate : candidates) {
-                System.err.println(candidate);
-            }
-            throw new RuntimeException("Failed to find solution");
+            // No candidate can be added, which happens if the blacklist
+            // removes all the candidate parents of a term, so the remaining
+            // terms are attached under their best parent
+            soln = soln.complete(termMap, candidateParents, completionScore(score, blackList));
         }
+        log.endTick();
         return soln.toTaxonomy();
     }
 
+    // The score of a link when the remaining terms are attached, where a
+    // blacklisted link is only used if a term has no other parent
+    private static ToDoubleBiFunction<String, String> completionScore(final Score score,
+            final Set<TaxoLink> blackList) {
+        return (top, bottom) -> {
+            final TaxoLink link = new TaxoLink(top, bottom);
+            return blackList.contains(link) ? Double.NEGATIVE_INFINITY : score.deltaScore(link);
+        };
+    }
+
 }
@@ -2,6 +2,7 @@ package org.insightcentre.nlp.saffron.taxonomy.search;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.Map;
 import java.util.Set;
@@ -22,11 +23,47 @@ public class GreedyKG implements KGSearch{
 
 	private final Score<TypedLink> emptyScore;
 	private final KnowledgeGraphExtractionConfiguration config;
+	private final CandidateParents candidateParents;
+	private final SearchBudget budget;
 	private SaffronListener log;
 	
 	public GreedyKG(Score<TypedLink> score, KnowledgeGraphExtractionConfiguration config, SaffronListener log) {
+		this(score, config, null, log);
+	}
+
+	/**
+	 * Create a greedy search that only considers links between a term and
+	 * one of its candidate parents (in either direction)
+	 *
+	 * @param score The score of the empty knowledge graph
+	 * @param config The configuration
+	 * @param candidateParents The candidate parents of each term or null to
+	 * consider every pair of terms
+	 * @param log The listener
+	 */
+	public GreedyKG(Score<TypedLink> score, KnowledgeGraphExtractionConfiguration config,
+			CandidateParents candidateParents, SaffronListener log) {
+		this(score, config, candidateParents, SearchBudget.UNLIMITED, log);
+	}
+
+	/**
+	 * Create a greedy search with a budget. When the budget is spent the
+	 * terms that are not in the taxonomy found so far are attached under
+	 * their best-scoring parent
+	 *
+	 * @param score The score of the empty knowledge graph
+	 * @param config The configuration
+	 * @param candidateParents The candidate parents of each term or null to
+	 * consider every pair of terms
+	 * @param budget The budget of the search
+	 * @param log The listener
+	 */
+	public GreedyKG(Score<TypedLink> score, KnowledgeGraphExtractionConfiguration config,
+			CandidateParents candidateParents, SearchBudget budget, SaffronListener log) {
 		this.emptyScore = score;
 		this.config = config;
+		this.candidateParents = candidateParents;
+		this.budget = budget;
 		this.log = log;
 	}
 
@@ -51,21 +88,52 @@ public class GreedyKG implements KGSearch{
         //3 - Create solution based on links on allowance list
         Pair<KnowledgeGraphSolution, Score<TypedLink>> result = generateInitialSolution(termMap, allowanceList);
         
+        //Classify all the candidate pairs at once, rather than one at a time
+        result.getValue().prefetch(candidates);
+        
         log.log(LocalDateTime.now().toString() + " - GreedyKG  - Starting Search");
         //4 - Greedy Search for the final solution 
+        // All the candidates are scored once, after that only the candidates
+        // whose score is affected by the last link are rescored
+        Score<TypedLink> scoredWith = null;
+        TypedLink lastLink = null;
+        final SearchBudget.Clock clock = budget.start();
+        final int tickEvery = Math.max(1, termMap.size() / 100);
         SOLN_LOOP:
-        while(!candidates.isEmpty()) {//TODO: Ideally this loop should stop as soon as a "complete" solution is found
+        while(!candidates.isEmpty()) {
+        	if (clock.isSpent()) {
+        		log.log(LocalDateTime.now().toString() + " - GreedyKG - Search budget spent after "
+        				+ clock.steps() + " links, attaching the remaining terms");
+        		final Score<TypedLink> lastScore = result.getValue();
+        		return result.getKey().completeTaxonomy(termMap, candidateParents,
+        				(top, bottom) -> lastScore.deltaScore(new TypedLink(top, bottom, TypedLink.Type.hypernymy)))
+        				.getKnowledgeGraph();
+        	}
         	
         	//5 - Calculate how much each link contributes to improving the score of the current Knowledge Graph
-                final Pair<KnowledgeGraphSolution, Score<TypedLink>> result0 = result;
-            candidates.scoreAndSort(tl -> result0.getValue().deltaScore(tl));
+        	final Score<TypedLink> current = result.getValue();
+        	if (scoredWith == null) {
+        		candidates.score(tl -> current.deltaScore(tl));
+        	} else if (current != scoredWith) {
+        		final Collection<TypedLink> affected = scoredWith.affectedBy(lastLink);
+        		if (affected == null) {
+        			candidates.score(tl -> current.deltaScore(tl));
+        		} else {
+        			candidates.rescore(affected, tl -> current.deltaScore(tl));
+        		}
+        	}
+        	scoredWith = current;
             
             //7 - Choose which candidate will enter in the current Knowledge Graph
             while (!candidates.isEmpty()) {
+            	//Stop if none of the remaining candidates can change the solution
+            	if (isFinal(result.getKey(), candidates)) {
+            		break SOLN_LOOP;
+            	}
             	
             	//8 - Create a single solution with the highest ranked candidate
-                double score = candidates.getScore(0);
-            	TypedLink candidate = candidates.remove(0);
+                double score = candidates.peekScore();
+            	TypedLink candidate = candidates.poll();
                 KnowledgeGraphSolution soln2 = result.getKey().add(candidate,
                         termMap.get(candidate.getSource()).getScore(),
                         termMap.get(candidate.getTarget()).getScore(),
@@ -74,15 +142,21 @@ public class GreedyKG implements KGSearch{
                 if (soln2 != null) {
                 	Score<TypedLink> newScore = result.getValue().next(candidate, soln2);
                     result = new MutablePair<KnowledgeGraphSolution, Score<TypedLink>>(soln2,newScore);
+                    lastLink = candidate;
                     
                     //Prune the list of candidates by removing those that will never be considered by a new 
                     // partial solution
                     soln2.pruneCandidateList(candidates, candidate);
+                    clock.step();
+                    if (clock.steps() % tickEvery == 0) {
+                        log.tick();
+                    }
                     continue SOLN_LOOP;
                 }
             }
         }
         
+        log.endTick();
         log.log(LocalDateTime.now().toString() + " - Greedy KG finished");
         //If the solution is not complete, even after considering all candidates then no solution was found
         if(!result.getKey().isComplete()) {// Complete = all terms must to appear at least in the taxonomy (except synonyms)
@@ -95,6 +169,17 @@ public class GreedyKG implements KGSearch{
         return result.getKey().getKnowledgeGraph();
 	}
 
+	/**
+	 * Check if no remaining candidate can change a solution: once the taxonomy
+	 * is complete, taxonomic links are ignored, as are synonymy and meronymy
+	 * links whose score is not above their threshold
+	 */
+	private boolean isFinal(KnowledgeGraphSolution soln, GreedyKGList candidates) {
+		return soln.taxonomy.isComplete()
+				&& !(candidates.maxScore(TypedLink.Type.synonymy) > config.synonymyThreshold)
+				&& !(candidates.maxScore(TypedLink.Type.meronymy) > config.meronomyThreshold);
+	}
+
 	private Pair<KnowledgeGraphSolution, Score<TypedLink>> generateInitialSolution(
 			Map<String, Term> termMap, Set<TypedLink> allowanceList) {
 		
@@ -120,7 +205,8 @@ public class GreedyKG implements KGSearch{
 		for (String t1 : termMap.keySet()) {
             for (String t2 : termMap.keySet()) {
         		// Assumes there are no self-loops (e.g. group 'is a' group, or group 'part of' group)
-        		if (!t1.equals(t2)) {
+        		if (!t1.equals(t2) && (candidateParents == null
+        				|| candidateParents.contains(t1, t2) || candidateParents.contains(t2, t1))) {
         			for(TypedLink.Type relationType: TypedLink.Type.values()) {
         				candidates.add(new TypedLink(t1, t2, relationType));
         			}
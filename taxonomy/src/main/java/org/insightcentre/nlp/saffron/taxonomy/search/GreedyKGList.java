@@ -1,92 +1,235 @@
 package org.insightcentre.nlp.saffron.taxonomy.search;
 
 import java.util.AbstractCollection;
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.function.ToDoubleFunction;
+
 import org.insightcentre.nlp.saffron.data.TypedLink;
 
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
 /**
+ * The candidate links of the greedy knowledge graph search, ordered with the
+ * synonymy links first and then by descending score (ties are broken by the
+ * order of the links as given). The links are held in one indexed binary heap
+ * per relation type, so that the best link can be taken and any link can be
+ * removed or rescored in logarithmic time.
  *
  * @author John McCrae
  */
 public class GreedyKGList extends AbstractCollection<TypedLink> {
 
+    private static final int SYNONYMY = TypedLink.Type.synonymy.ordinal();
+
     private final List<TypedLink> links;
-    private final Integer[] orderedIndices;
+    private final Object2IntMap<TypedLink> index;
     private final double[] scores;
+    private final int[] types;
+    // The heap of each type as the indexes of its links
+    private final int[][] heaps;
+    private final int[] heapSizes;
+    // The position of each link in its heap or -1 if it was removed
+    private final int[] positions;
+    private int size;
 
     public GreedyKGList(List<TypedLink> links) {
+        final int n = links.size();
+        final int numTypes = TypedLink.Type.values().length;
         this.links = links;
-        this.orderedIndices = new Integer[links.size()];
-        for (int i = 0; i < links.size(); i++) {
-            orderedIndices[i] = i;
+        this.index = new Object2IntOpenHashMap<>(n);
+        this.index.defaultReturnValue(-1);
+        this.scores = new double[n];
+        this.types = new int[n];
+        this.positions = new int[n];
+        this.heapSizes = new int[numTypes];
+        for (int i = 0; i < n; i++) {
+            index.put(links.get(i), i);
+            types[i] = links.get(i).getType().ordinal();
+            heapSizes[types[i]]++;
+        }
+        this.heaps = new int[numTypes][];
+        for (int t = 0; t < numTypes; t++) {
+            heaps[t] = new int[heapSizes[t]];
+            heapSizes[t] = 0;
         }
-        this.scores = new double[links.size()];
+        // All scores are zero, so the links in index order form valid heaps
+        for (int i = 0; i < n; i++) {
+            final int t = types[i];
+            positions[i] = heapSizes[t];
+            heaps[t][heapSizes[t]++] = i;
+        }
+        this.size = n;
     }
 
-    @Override
-    public boolean remove(Object o) {
-        for (int i = 0; i < orderedIndices.length; i++) {
-            if (orderedIndices[i] >= 0 && links.get(orderedIndices[i]).equals(o)) {
-                remove(i);
-                return true;
+    /**
+     * Apply a score to all remaining links, only moving the links whose score
+     * has changed
+     *
+     * @param scorer The scoring function
+     */
+    public void score(ToDoubleFunction<TypedLink> scorer) {
+        for (int i = 0; i < scores.length; i++) {
+            if (positions[i] >= 0) {
+                update(i, scorer.applyAsDouble(links.get(i)));
             }
         }
-        return false;
     }
 
     /**
-     * Apply a score to all elements of the list and sort this list according to
-     * this element
+     * Apply a score to some of the remaining links, through the index of the
+     * heaps
      *
-     * @param scorer
+     * @param links The links to rescore (links that are not in this list are
+     * ignored)
+     * @param scorer The scoring function
      */
-    public void scoreAndSort(ToDoubleFunction<TypedLink> scorer) {
-        for (Integer idx : orderedIndices) {
-            if (idx >= 0) {
-                scores[idx] = scorer.applyAsDouble(links.get(idx));
+    public void rescore(Iterable<TypedLink> links, ToDoubleFunction<TypedLink> scorer) {
+        for (TypedLink link : links) {
+            final int i = index.getInt(link);
+            if (i >= 0 && positions[i] >= 0) {
+                update(i, scorer.applyAsDouble(link));
             }
         }
+    }
 
-        Arrays.sort(orderedIndices, new Comparator<Integer>() {
-            @Override
-            public int compare(Integer i1, Integer i2) {
-                if (i1 < 0 && i2 < 0) {
-                    return Integer.compare(i1, i2);
-                } else if (i1 < 0) {
-                    return +1;
-                } else if (i2 < 0) {
-                    return -1;
-                }
+    private void update(int i, double score) {
+        final int c = Double.compare(score, scores[i]);
+        if (c != 0) {
+            scores[i] = score;
+            if (c > 0) {
+                siftUp(types[i], positions[i]);
+            } else {
+                siftDown(types[i], positions[i]);
+            }
+        }
+    }
 
-                TypedLink o1 = links.get(i1);
-                TypedLink o2 = links.get(i2);
-                //Consider synonyms as the most important links
+    // The heap of the best remaining link or -1 if there is none
+    private int top() {
+        if (heapSizes[SYNONYMY] > 0) {
+            return SYNONYMY;
+        }
+        int best = -1;
+        for (int t = 0; t < heaps.length; t++) {
+            if (heapSizes[t] > 0 && (best < 0 || before(heaps[t][0], heaps[best][0]))) {
+                best = t;
+            }
+        }
+        return best;
+    }
 
-                if (o1.getType().equals(TypedLink.Type.synonymy)
-                        && !o2.getType().equals(TypedLink.Type.synonymy)) {
-                    return Integer.MIN_VALUE;
-                } else if (!o1.getType().equals(TypedLink.Type.synonymy)
-                        && o2.getType().equals(TypedLink.Type.synonymy)) {
-                    return Integer.MAX_VALUE;
-                }
-                int c = Double.compare(scores[i1], scores[i2]);
-                return c == 0 ? i1.compareTo(i2) : -c;
+    /**
+     * The score of the best remaining link
+     *
+     * @return The score
+     * @throws NoSuchElementException If the list is empty
+     */
+    public double peekScore() {
+        final int t = top();
+        if (t < 0) {
+            throw new NoSuchElementException();
+        }
+        return scores[heaps[t][0]];
+    }
+
+    /**
+     * Remove the best remaining link
+     *
+     * @return The link
+     * @throws NoSuchElementException If the list is empty
+     */
+    public TypedLink poll() {
+        final int t = top();
+        if (t < 0) {
+            throw new NoSuchElementException();
+        }
+        final int i = heaps[t][0];
+        delete(i);
+        return links.get(i);
+    }
+
+    /**
+     * The highest score of the remaining links of a type
+     *
+     * @param type The relation type
+     * @return The score or negative infinity if no link of this type remains
+     */
+    public double maxScore(TypedLink.Type type) {
+        final int t = type.ordinal();
+        return heapSizes[t] > 0 ? scores[heaps[t][0]] : Double.NEGATIVE_INFINITY;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        final int i = index.getInt(o);
+        if (i >= 0 && positions[i] >= 0) {
+            delete(i);
+            return true;
+        }
+        return false;
+    }
+
+    private void delete(int i) {
+        final int t = types[i];
+        final int p = positions[i];
+        final int last = heaps[t][--heapSizes[t]];
+        positions[i] = -1;
+        size--;
+        if (last != i) {
+            heaps[t][p] = last;
+            positions[last] = p;
+            siftUp(t, p);
+            siftDown(t, positions[last]);
+        }
+    }
+
+    private boolean before(int i, int j) {
+        final int c = Double.compare(scores[i], scores[j]);
+        return c == 0 ? i < j : c > 0;
+    }
+
+    private void siftUp(int t, int p) {
+        final int[] heap = heaps[t];
+        final int i = heap[p];
+        while (p > 0) {
+            final int parent = (p - 1) / 2;
+            if (!before(i, heap[parent])) {
+                break;
             }
-        });
+            heap[p] = heap[parent];
+            positions[heap[p]] = p;
+            p = parent;
+        }
+        heap[p] = i;
+        positions[i] = p;
     }
 
-    public TypedLink remove(int i) {
-        TypedLink tl = links.get(orderedIndices[i]);
-        Integer i2 = -orderedIndices[i] - 1;
-        System.arraycopy(orderedIndices, i + 1, orderedIndices, i, orderedIndices.length - i - 1);
-        orderedIndices[orderedIndices.length - 1] = i2;
-        return tl;
+    private void siftDown(int t, int p) {
+        final int[] heap = heaps[t];
+        final int n = heapSizes[t];
+        final int i = heap[p];
+        while (2 * p + 1 < n) {
+            int child = 2 * p + 1;
+            if (child + 1 < n && before(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(heap[child], i)) {
+                break;
+            }
+            heap[p] = heap[child];
+            positions[heap[p]] = p;
+            p = child;
+        }
+        heap[p] = i;
+        positions[i] = p;
     }
 
+    /**
+     * Iterate the remaining links (not in order)
+     */
     @Override
     public Iterator<TypedLink> iterator() {
         return new Iterator<TypedLink>() {
@@ -94,38 +237,29 @@ public class GreedyKGList extends AbstractCollection<TypedLink> {
 
             @Override
             public boolean hasNext() {
-                while (i < orderedIndices.length && orderedIndices[i] < 0) {
+                while (i < positions.length && positions[i] < 0) {
                     i++;
                 }
-                return i < orderedIndices.length;
+                return i < positions.length;
             }
 
             @Override
             public TypedLink next() {
-                while (i < orderedIndices.length && orderedIndices[i] < 0) {
-                    i++;
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
                 }
-                return links.get(orderedIndices[i++]);
+                return links.get(i++);
             }
         };
     }
 
     @Override
     public boolean isEmpty() {
-        for (Integer idx : orderedIndices) {
-            if (idx >= 0) {
-                return false;
-            }
-        }
-        return true;
+        return size == 0;
     }
 
     @Override
     public int size() {
-        throw new RuntimeException("Slow don't do this");
-    }
-
-    public double getScore(int i) {
-        return scores[orderedIndices[i] < 0 ? -1 - orderedIndices[i] : orderedIndices[i]];
+        return size;
     }
 }
@@ -0,0 +1,457 @@
+package org.insightcentre.nlp.saffron.taxonomy.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.insightcentre.nlp.saffron.SaffronListener;
+import org.insightcentre.nlp.saffron.config.TaxonomySearchConfiguration;
+import org.insightcentre.nlp.saffron.data.Status;
+import org.insightcentre.nlp.saffron.data.TaxoLink;
+import org.insightcentre.nlp.saffron.data.Taxonomy;
+import org.insightcentre.nlp.saffron.data.Term;
+import org.insightcentre.nlp.saffron.data.VirtualRootTaxonomy;
+import org.insightcentre.nlp.saffron.taxonomy.supervised.BinaryRelationClassifier;
+import org.insightcentre.nlp.saffron.taxonomy.supervised.SupervisedTaxo;
+
+/**
+ * Inserts new terms into an existing taxonomy. The structure of the existing
+ * taxonomy is kept and only the links of the new terms are scored, so that
+ * adding a few terms to a large taxonomy does not need the whole taxonomy to
+ * be found again. Each new term is placed under its best-scoring parent and,
+ * if the neighbourhood is reoptimised, the siblings that score better under
+ * the new term are moved under it. Whitelisted (accepted) links are never
+ * moved.
+ *
+ * The terms of the existing taxonomy that are no longer in the term map are
+ * removed and their children are attached to their parent. The existing
+ * links that are blacklisted, or that differ from a whitelisted link, are
+ * broken and the branch under each of them is placed again as a new term
+ * would be.
+ *
+ * @author John McCrae
+ */
+public class IncrementalSearch {
+
+    private final BinaryRelationClassifier<String> classifier;
+    private final CandidateParents candidateParents;
+    private final boolean reoptimise;
+    private final SaffronListener log;
+
+    /**
+     * Create an incremental search
+     *
+     * @param classifier The classifier of links
+     * @param candidateParents The candidate parents of each term or null to
+     * consider every term in the taxonomy as a parent of a new term
+     * @param reoptimise Whether to move the siblings of a new term under it
+     * if they score better there
+     * @param log The listener
+     */
+    public IncrementalSearch(BinaryRelationClassifier<String> classifier,
+            CandidateParents candidateParents, boolean reoptimise, SaffronListener log) {
+        this.classifier = classifier;
+        this.candidateParents = candidateParents;
+        this.reoptimise = reoptimise;
+        this.log = log;
+    }
+
+    /**
+     * Create an incremental search from the configuration
+     *
+     * @param config The configuration
+     * @param classifier The classifier of links
+     * @param terms All the terms (including those already in the taxonomy)
+     * @param log The listener
+     * @return The incremental search
+     */
+    public static IncrementalSearch create(TaxonomySearchConfiguration config,
+            SupervisedTaxo classifier, Set<String> terms, SaffronListener log) {
+        return new IncrementalSearch(classifier,
+                config.candidateParents > 0 ? classifier.candidateParents(terms, config.candidateParents) : null,
+                config.reoptimise, log);
+    }
+
+    /**
+     * Insert the new terms into a taxonomy
+     *
+     * @param taxonomy The existing taxonomy (which is not changed)
+     * @param termMap All the terms, those that are not in the taxonomy are
+     * inserted
+     * @return The taxonomy with the new terms
+     */
+    public Taxonomy insert(Taxonomy taxonomy, Map<String, Term> termMap) {
+        return insert(taxonomy, termMap, Collections.<TaxoLink>emptySet(), Collections.<TaxoLink>emptySet());
+    }
+
+    /**
+     * Insert the new terms into a taxonomy
+     *
+     * @param taxonomy The existing taxonomy (which is not changed)
+     * @param termMap All the terms, those that are not in the taxonomy are
+     * inserted
+     * @param whiteList The links that must be in the taxonomy. A term of the
+     * existing taxonomy is moved under its whitelisted parent unless the
+     * parent is below it
+     * @param blackList The links that must not be in the taxonomy
+     * @return The taxonomy with the new terms
+     */
+    public Taxonomy insert(Taxonomy taxonomy, final Map<String, Term> termMap,
+            Set<TaxoLink> whiteList, Set<TaxoLink> blackList) {
+        final Insertion insertion = new Insertion(termMap, whiteList, blackList);
+        // An empty taxonomy has a single node that is not a term
+        if (taxonomy != null && !(taxonomy.children.isEmpty() && !termMap.containsKey(taxonomy.root))) {
+            if (VirtualRootTaxonomy.VIRTUAL_ROOT.equals(taxonomy.root)) {
+                for (Taxonomy head : taxonomy.children) {
+                    insertion.addHead(head.deepCopy());
+                }
+            } else {
+                insertion.addHead(taxonomy.deepCopy());
+            }
+        }
+        insertion.prune();
+        insertion.breakLinks();
+        final List<String> newTerms = new ArrayList<>();
+        for (String term : termMap.keySet()) {
+            if (!insertion.nodes.containsKey(term)) {
+                newTerms.add(term);
+            }
+        }
+        if (newTerms.isEmpty() && !insertion.changed) {
+            return taxonomy;
+        }
+        newTerms.sort(new Comparator<String>() {
+            @Override
+            public int compare(String t1, String t2) {
+                final int c = Double.compare(termMap.get(t2).getScore(), termMap.get(t1).getScore());
+                return c == 0 ? t1.compareTo(t2) : c;
+            }
+        });
+        log.log("Inserting " + newTerms.size() + " new terms into a taxonomy of "
+                + insertion.nodes.size() + " terms");
+        insertion.scoreParents(newTerms);
+        final int tickEvery = Math.max(1, newTerms.size() / 100);
+        int placed = 0;
+        for (String term : newTerms) {
+            insertion.place(term);
+            if (++placed % tickEvery == 0) {
+                log.tick();
+            }
+        }
+        log.endTick();
+        insertion.placeDetached();
+        if (insertion.heads.isEmpty()) {
+            return new Taxonomy("NO TERMS", 0, 0, Collections.EMPTY_LIST, Status.none);
+        } else if (insertion.heads.size() == 1) {
+            return insertion.heads.get(0);
+        } else {
+            return new VirtualRootTaxonomy(insertion.heads);
+        }
+    }
+
+    /**
+     * The state of a single insertion
+     */
+    private class Insertion {
+
+        private final Map<String, Term> termMap;
+        private final Set<TaxoLink> blackList;
+        private final Map<String, String> whiteParent = new HashMap<>();
+        private final List<Taxonomy> heads = new ArrayList<>();
+        private final Map<String, Taxonomy> nodes = new HashMap<>();
+        // The parent of each node that is not a head or detached
+        private final Map<String, String> parentOf = new HashMap<>();
+        // The branches whose link to their parent was broken, to be placed
+        // again after the new terms
+        private final List<Taxonomy> detached = new ArrayList<>();
+        private final Set<String> placing = new HashSet<>();
+        private boolean changed = false;
+        // The scores of every term as the parent of each new term, which are
+        // only computed up front if every term is considered
+        private List<String> sources;
+        private Map<String, Integer> sourceIndex;
+        private Map<String, Integer> targetIndex;
+        private double[][] scores;
+
+        Insertion(Map<String, Term> termMap, Set<TaxoLink> whiteList, Set<TaxoLink> blackList) {
+            this.termMap = termMap;
+            this.blackList = blackList;
+            for (TaxoLink link : whiteList) {
+                whiteParent.put(link.getBottom(), link.getTop());
+            }
+        }
+
+        void addHead(Taxonomy head) {
+            heads.add(head);
+            index(head);
+        }
+
+        private void index(Taxonomy node) {
+            nodes.put(node.root, node);
+            for (Taxonomy child : node.children) {
+                parentOf.put(child.root, node.root);
+                index(child);
+            }
+        }
+
+        /**
+         * Remove the terms that are not in the term map, attaching their
+         * children to their parent
+         */
+        void prune() {
+            for (String term : new ArrayList<>(nodes.keySet())) {
+                if (!termMap.containsKey(term)) {
+                    final String parent = parentOf.get(term);
+                    final Taxonomy node = unlink(term);
+                    nodes.remove(term);
+                    for (Taxonomy child : node.children) {
+                        if (parent != null && !blackList.contains(new TaxoLink(parent, child.root))) {
+                            nodes.get(parent).children.add(child);
+                            parentOf.put(child.root, parent);
+                        } else {
+                            parentOf.remove(child.root);
+                            detached.add(child);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Detach the branches under the existing links that are blacklisted
+         * or that differ from a whitelisted link
+         */
+        void breakLinks() {
+            for (TaxoLink link : blackList) {
+                if (link.getTop().equals(parentOf.get(link.getBottom()))) {
+                    detached.add(unlink(link.getBottom()));
+                }
+            }
+            for (Map.Entry<String, String> e : whiteParent.entrySet()) {
+                final String bottom = e.getKey();
+                if (nodes.containsKey(bottom) && !e.getValue().equals(parentOf.get(bottom))
+                        && !detached.contains(nodes.get(bottom))) {
+                    detached.add(unlink(bottom));
+                }
+            }
+        }
+
+        // Remove a node from its parent or from the heads
+        private Taxonomy unlink(String term) {
+            final Taxonomy node = nodes.get(term);
+            final String parent = parentOf.remove(term);
+            if (parent != null) {
+                removeSame(nodes.get(parent).children, node);
+            } else {
+                removeSame(heads, node);
+                removeSame(detached, node);
+            }
+            changed = true;
+            return node;
+        }
+
+        private void removeSame(List<Taxonomy> list, Taxonomy node) {
+            for (int i = 0; i < list.size(); i++) {
+                if (list.get(i) == node) {
+                    list.remove(i);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Place each detached branch under the best parent that is not in
+         * the branch
+         */
+        void placeDetached() {
+            detached.sort(new Comparator<Taxonomy>() {
+                @Override
+                public int compare(Taxonomy t1, Taxonomy t2) {
+                    final int c = Double.compare(termScore(t2.root), termScore(t1.root));
+                    return c == 0 ? t1.root.compareTo(t2.root) : c;
+                }
+            });
+            for (Taxonomy branch : detached) {
+                final Set<String> exclude = new HashSet<>();
+                collectTerms(branch, exclude);
+                String parent = whiteParent.get(branch.root);
+                Status status = Status.accepted;
+                if (parent == null || !nodes.containsKey(parent) || exclude.contains(parent)) {
+                    parent = bestParent(branch.root, exclude);
+                    status = branch.status == Status.accepted ? Status.none : branch.status;
+                }
+                if (parent == null) {
+                    heads.add(branch);
+                } else {
+                    final Taxonomy node = new Taxonomy(branch.root, branch.score,
+                            score(parent, branch.root), branch.children, status);
+                    nodes.put(node.root, node);
+                    nodes.get(parent).children.add(node);
+                    parentOf.put(node.root, parent);
+                }
+            }
+            detached.clear();
+        }
+
+        private void collectTerms(Taxonomy node, Set<String> terms) {
+            terms.add(node.root);
+            for (Taxonomy child : node.children) {
+                collectTerms(child, terms);
+            }
+        }
+
+        void scoreParents(List<String> newTerms) {
+            if (candidateParents != null) {
+                return;
+            }
+            sources = new ArrayList<>(nodes.keySet());
+            sources.addAll(newTerms);
+            sourceIndex = new HashMap<>();
+            for (int i = 0; i < sources.size(); i++) {
+                sourceIndex.put(sources.get(i), i);
+            }
+            targetIndex = new HashMap<>();
+            for (int j = 0; j < newTerms.size(); j++) {
+                targetIndex.put(newTerms.get(j), j);
+            }
+            scores = classifier.predictBlock(sources, newTerms);
+        }
+
+        private double score(String top, String bottom) {
+            if (scores != null) {
+                final Integer i = sourceIndex.get(top), j = targetIndex.get(bottom);
+                if (i != null && j != null) {
+                    return scores[i][j];
+                }
+            }
+            return classifier.predict(top, bottom);
+        }
+
+        private double termScore(String term) {
+            final Term t = termMap.get(term);
+            return t == null ? 0.0 : t.getScore();
+        }
+
+        void place(String term) {
+            if (nodes.containsKey(term) || !placing.add(term)) {
+                return;
+            }
+            String parent = null;
+            double linkScore = Double.NaN;
+            Status status = Status.none;
+            final String white = whiteParent.get(term);
+            if (white != null && (termMap.containsKey(white) || nodes.containsKey(white))) {
+                // Place the whitelisted parent first
+                place(white);
+                if (nodes.containsKey(white)) {
+                    parent = white;
+                    linkScore = score(white, term);
+                    status = Status.accepted;
+                }
+            }
+            if (parent == null) {
+                parent = bestParent(term, Collections.<String>emptySet());
+                if (parent != null) {
+                    linkScore = score(parent, term);
+                }
+            }
+            final Taxonomy node = new Taxonomy(term, termScore(term), parent == null ? Double.NaN : linkScore,
+                    new ArrayList<Taxonomy>(), status);
+            if (parent == null) {
+                addHead(node);
+            } else {
+                final Taxonomy parentNode = nodes.get(parent);
+                parentNode.children.add(node);
+                nodes.put(term, node);
+                parentOf.put(term, parent);
+                if (reoptimise) {
+                    adoptSiblings(node, parentNode);
+                }
+            }
+        }
+
+        /**
+         * The best-scoring parent of a term in the taxonomy, from its
+         * candidate parents if any of them is in the taxonomy
+         *
+         * @param term The term
+         * @param exclude The terms that may not be the parent
+         * @return The parent or null if there is none
+         */
+        private String bestParent(String term, Set<String> exclude) {
+            String parent = null;
+            double linkScore = Double.NaN;
+            if (candidateParents != null) {
+                for (String p : candidateParents.parents(term)) {
+                    if (nodes.containsKey(p) && !p.equals(term) && !exclude.contains(p)
+                            && !blackList.contains(new TaxoLink(p, term))) {
+                        final double s = score(p, term);
+                        if (parent == null || s > linkScore) {
+                            parent = p;
+                            linkScore = s;
+                        }
+                    }
+                }
+            }
+            if (parent == null) {
+                for (String p : nodes.keySet()) {
+                    if (!p.equals(term) && !exclude.contains(p)
+                            && !blackList.contains(new TaxoLink(p, term))) {
+                        final double s = score(p, term);
+                        if (parent == null || s > linkScore) {
+                            parent = p;
+                            linkScore = s;
+                        }
+                    }
+                }
+            }
+            return parent;
+        }
+
+        /**
+         * Move the siblings of a new node under it if they score better there
+         */
+        private void adoptSiblings(Taxonomy node, Taxonomy parentNode) {
+            final List<Taxonomy> siblings = new ArrayList<>();
+            final List<String> siblingTerms = new ArrayList<>();
+            // The siblings whose link to the parent has no score yet
+            final List<String> unscored = new ArrayList<>();
+            for (Taxonomy sibling : parentNode.children) {
+                if (sibling == node || sibling.status == Status.accepted
+                        || parentNode.root.equals(whiteParent.get(sibling.root))
+                        || blackList.contains(new TaxoLink(node.root, sibling.root))) {
+                    continue;
+                }
+                siblings.add(sibling);
+                siblingTerms.add(sibling.root);
+                if (Double.isNaN(sibling.linkScore)) {
+                    unscored.add(sibling.root);
+                }
+            }
+            if (siblings.isEmpty()) {
+                return;
+            }
+            final double[] adopted = classifier.predictBlock(
+                    Collections.singletonList(node.root), siblingTerms)[0];
+            final double[] current = unscored.isEmpty() ? null : classifier.predictBlock(
+                    Collections.singletonList(parentNode.root), unscored)[0];
+            int k = 0;
+            for (int i = 0; i < siblings.size(); i++) {
+                final Taxonomy sibling = siblings.get(i);
+                final double s = Double.isNaN(sibling.linkScore) ? current[k++] : sibling.linkScore;
+                if (adopted[i] > s) {
+                    final Taxonomy moved = sibling.withLinkScore(adopted[i]);
+                    parentNode.children.remove(sibling);
+                    node.children.add(moved);
+                    nodes.put(moved.root, moved);
+                    parentOf.put(moved.root, node.root);
+                }
+            }
+        }
+    }
+}
@@ -13,6 +13,7 @@ import org.insightcentre.nlp.saffron.data.Term;
 import org.insightcentre.nlp.saffron.data.TypedLink;
 import org.insightcentre.nlp.saffron.taxonomy.metrics.Score;
 import org.insightcentre.nlp.saffron.taxonomy.metrics.ScoreFactory;
+import org.insightcentre.nlp.saffron.taxonomy.supervised.CandidateGenerator;
 import org.insightcentre.nlp.saffron.taxonomy.supervised.MulticlassRelationClassifier;
 
 public interface KGSearch {
@@ -36,7 +37,32 @@ public interface KGSearch {
     		KnowledgeGraphExtractionConfiguration configKG,
     		MulticlassRelationClassifier<String> classifier, Set<String> terms, SaffronListener log) {
     	
+    	// Without the documents of the terms only string inclusion is used to
+    	// find the candidate parents
+    	final CandidateParents candidates = configTaxo.candidateParents > 0
+    			? new CandidateGenerator(configTaxo.candidateParents, null, null).generate(terms)
+    			: null;
+    	return create(configTaxo, configKG, classifier, terms, candidates, log);
+    }
+
+    /**
+     * Create a knowledge graph search that only considers links between each
+     * term and its candidate parents
+     *
+     * @param configTaxo The taxonomy search configuration
+     * @param configKG The knowledge graph configuration
+     * @param classifier The relation classifier
+     * @param terms The terms
+     * @param candidates The candidate parents of each term or null to consider
+     * every pair of terms
+     * @param log The listener
+     * @return The search
+     */
+    public static KGSearch create(TaxonomySearchConfiguration configTaxo,
+    		KnowledgeGraphExtractionConfiguration configKG,
+    		MulticlassRelationClassifier<String> classifier, Set<String> terms,
+    		CandidateParents candidates, SaffronListener log) {
     	final Score score = ScoreFactory.getInstance(configTaxo, configKG, configTaxo.score, classifier, terms);
-    	return new GreedyKG(score, configKG, log);
+    	return new GreedyKG(score, configKG, candidates, SearchBudget.of(configTaxo), log);
     }
 }
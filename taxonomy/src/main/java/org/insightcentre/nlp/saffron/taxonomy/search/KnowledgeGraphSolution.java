@@ -1,19 +1,18 @@
 package org.insightcentre.nlp.saffron.taxonomy.search;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.function.ToDoubleBiFunction;
 
 import org.insightcentre.nlp.saffron.data.KnowledgeGraph;
 import org.insightcentre.nlp.saffron.data.Partonomy;
 import org.insightcentre.nlp.saffron.data.Taxonomy;
+import org.insightcentre.nlp.saffron.data.Term;
 import org.insightcentre.nlp.saffron.data.TypedLink;
 
 public class KnowledgeGraphSolution extends Solution{
@@ -21,7 +20,7 @@ public class KnowledgeGraphSolution extends Solution{
 	protected TaxonomySolution taxonomy;
 	private TaxonomySolution partonomy;
     public Set<String> terms;
-    protected Map<String,String> synonymyPairs;//change to SynonymySolution
+    protected SynonymGroups synonyms;
     
     private double synonymyThreshold;
     private double meronomyThreshold;
@@ -31,10 +30,14 @@ public class KnowledgeGraphSolution extends Solution{
     }
     
     protected KnowledgeGraphSolution(Set<String> terms, double synonymyThreshold, double meronomyThreshold) {
+        this(terms, synonymyThreshold, meronomyThreshold, new SynonymGroups(terms));
+    }
+
+    private KnowledgeGraphSolution(Set<String> terms, double synonymyThreshold, double meronomyThreshold,
+    		SynonymGroups synonyms) {
     	this.taxonomy = TaxonomySolution.empty(terms);
         this.partonomy = TaxonomySolution.empty(terms);
-        this.taxonomy = TaxonomySolution.empty(terms);
-        this.synonymyPairs = new HashMap<String,String>();
+        this.synonyms = synonyms;
         this.terms = terms;
         this.synonymyThreshold = synonymyThreshold;
         this.meronomyThreshold = meronomyThreshold;
@@ -63,17 +66,8 @@ public class KnowledgeGraphSolution extends Solution{
     	
     }
     
-    //TODO: Needs testing
     private Collection<Set<String>> generateSynonymyClusters() {
-    	Map<String,Set<String>> clusters = new HashMap<String, Set<String>>();
-    	for(Entry<String,String> entry: this.synonymyPairs.entrySet()) {
-    		if(clusters.containsKey(entry.getValue())) {
-    			clusters.get(entry.getValue()).add(entry.getKey());
-    		} else {
-    			clusters.put(entry.getValue(), new HashSet<String>(Arrays.asList(entry.getKey(),entry.getValue())));
-    		}
-    	}
-    	return clusters.values();
+    	return this.synonyms.groups();
     }
     
 	/**
@@ -90,7 +84,10 @@ public class KnowledgeGraphSolution extends Solution{
     }
     
     public KnowledgeGraphSolution clone() {
-    	KnowledgeGraphSolution copy = new KnowledgeGraphSolution(new HashSet<String>(this.terms), this.synonymyThreshold, this.meronomyThreshold);
+    	// The synonym groups cover all the terms, including those that are
+    	// no longer in the solution as they are synonyms of another term
+    	KnowledgeGraphSolution copy = new KnowledgeGraphSolution(new HashSet<String>(this.terms), this.synonymyThreshold, this.meronomyThreshold,
+    			this.synonyms == null ? null : this.synonyms.copy());
     	if (this.taxonomy != null) 
     		copy.taxonomy = new TaxonomySolution(new HashMap<String, Taxonomy>(this.taxonomy.heads), new HashSet<String>(this.terms));
     	else
@@ -101,16 +98,6 @@ public class KnowledgeGraphSolution extends Solution{
     	else
     		copy.partonomy = null;
     	
-    	if (this.synonymyPairs != null)
-    		copy.synonymyPairs = this.synonymyPairs.entrySet() 
-                    .stream() 
-                    .collect( 
-                        Collectors 
-                            .toMap(Map.Entry::getKey, 
-                                   Map.Entry::getValue));
-    	else
-    		copy.synonymyPairs = null;
-    	
     	return copy;
     }
     
@@ -159,17 +146,12 @@ public class KnowledgeGraphSolution extends Solution{
 		    	break;
 	    	case synonymy:
 	    		if (linkScore > this.synonymyThreshold) {
-		    		link = linkToBeAdded;
-		    		String currentTarget = link.getTarget();
-		    		while(kgs.synonymyPairs.containsKey(currentTarget)) {
-		    			if(!kgs.synonymyPairs.get(currentTarget).equals(link.getSource())) {
-		    				currentTarget = kgs.synonymyPairs.get(currentTarget);
-		    			} else {
-		    				return kgs;
-		    			}
+		    		// The group of the source joins the group of the target, so
+		    		// its representative is no longer a term of the taxonomy
+		    		final String joined = kgs.synonyms.representative(linkToBeAdded.getSource());
+		    		if (kgs.synonyms.union(linkToBeAdded.getSource(), linkToBeAdded.getTarget())) {
+		    			kgs.terms.remove(joined);
 		    		}
-		    		kgs.synonymyPairs.put(link.getSource(), currentTarget);
-		    		kgs.terms.remove(link.getSource());
 	    		}
 	    	default:
     	}
@@ -193,7 +175,23 @@ public class KnowledgeGraphSolution extends Solution{
 			case hyponymy:
 				candidates.remove(new TypedLink(link.getSource(), link.getTarget(), TypedLink.Type.hypernymy));
 				candidates.remove(new TypedLink(link.getTarget(), link.getSource(), TypedLink.Type.hypernymy));
-				break;			
+				break;
+			case synonymy:
+				// Links between synonyms would be links of a term to itself
+				final List<String> group = this.synonyms.members(link.getSource());
+				if (group.size() > 1) {
+					for (String t1 : group) {
+						for (String t2 : group) {
+							if (!t1.equals(t2)) {
+								for (TypedLink.Type type : TypedLink.Type.values()) {
+									candidates.remove(new TypedLink(t1, t2, type));
+								}
+							}
+						}
+					}
+				}
+				break;
+			default:
 		}		
 	}
         
@@ -205,19 +203,41 @@ public class KnowledgeGraphSolution extends Solution{
      * @return a new {@link TypedLink} pointed to the "preferred" synonym
      */
     private TypedLink resolveSynonyms(TypedLink original) {
-    	String source = original.getSource();
-    	while(this.synonymyPairs.containsKey(source)) {
-    		source = this.synonymyPairs.get(source);
-    	}
-    	
-    	String target = original.getTarget();
-    	while(this.synonymyPairs.containsKey(target)) {
-    		target = this.synonymyPairs.get(target);
-    	}
-    	
-    	return new TypedLink(source, target, original.getType());
+    	return new TypedLink(this.synonyms.representative(original.getSource()),
+    			this.synonyms.representative(original.getTarget()), original.getType());
     }
     
+    /**
+     * Complete the taxonomy of this solution by attaching each term that is
+     * not yet in it under its best-scoring parent
+     *
+     * @param termMap The terms
+     * @param candidateParents The candidate parents of each term or null to
+     * consider every term in the taxonomy
+     * @param linkScore The score of a hypernymy link from a parent to a child
+     * @return A solution with a complete taxonomy
+     * @see TaxonomySolution#complete(Map, CandidateParents, ToDoubleBiFunction)
+     */
+    public KnowledgeGraphSolution completeTaxonomy(Map<String, Term> termMap,
+            CandidateParents candidateParents, ToDoubleBiFunction<String, String> linkScore) {
+        final KnowledgeGraphSolution kgs = this.clone();
+        // Terms that became synonyms after they were placed stay in the taxonomy
+        final Set<String> taxoTerms = new HashSet<String>(kgs.terms);
+        for (Taxonomy t : kgs.taxonomy.heads.values()) {
+            addTerms(t, taxoTerms);
+        }
+        kgs.taxonomy = new TaxonomySolution(kgs.taxonomy.heads, taxoTerms)
+                .complete(termMap, candidateParents, linkScore);
+        return kgs;
+    }
+
+    private static void addTerms(Taxonomy taxo, Set<String> terms) {
+        terms.add(taxo.root);
+        for (Taxonomy child : taxo.children) {
+            addTerms(child, terms);
+        }
+    }
+
     /**
      * *
      * Check if the solution has completed
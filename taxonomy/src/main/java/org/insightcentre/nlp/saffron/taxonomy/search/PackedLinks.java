@@ -0,0 +1,267 @@
+package org.insightcentre.nlp.saffron.taxonomy.search;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.insightcentre.nlp.saffron.data.TaxoLink;
+import org.insightcentre.nlp.saffron.taxonomy.metrics.IndexedScore;
+import org.insightcentre.nlp.saffron.taxonomy.metrics.Score;
+
+import it.unimi.dsi.fastutil.Swapper;
+import it.unimi.dsi.fastutil.ints.IntComparator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * A list of candidate links between terms, held as packed (parent id, child
+ * id) longs with a parallel array of scores. Terms are interned to ids in
+ * sorted order, so that ordering the packed links is the same as ordering the
+ * corresponding {@link TaxoLink}s. Links are scored by their ids if the score
+ * is an {@link IndexedScore}, and otherwise converted to TaxoLinks to be
+ * scored.
+ *
+ * @author John McCrae
+ */
+public class PackedLinks {
+
+    // The number of links scored between checks of the clock
+    private static final int CLOCK_CHECK_INTERVAL = 1024;
+
+    private final String[] terms;
+    private final Object2IntMap<String> ids;
+    private long[] links = new long[16];
+    private double[] scores = new double[16];
+    // The links still in the list are those in [start, end)
+    private int start = 0, end = 0;
+
+    /**
+     * Create an empty list of links
+     *
+     * @param terms The terms that links may connect
+     */
+    public PackedLinks(Collection<String> terms) {
+        this.terms = terms.toArray(new String[terms.size()]);
+        Arrays.sort(this.terms);
+        this.ids = new Object2IntOpenHashMap<>(this.terms.length);
+        this.ids.defaultReturnValue(-1);
+        for (int i = 0; i < this.terms.length; i++) {
+            ids.put(this.terms[i], i);
+        }
+    }
+
+    /**
+     * Pack a link
+     *
+     * @param parent The id of the parent
+     * @param child The id of the child
+     * @return The packed link
+     */
+    public static long pack(int parent, int child) {
+        return ((long) parent << 32) | (child & 0xffffffffL);
+    }
+
+    /**
+     * The parent of a packed link
+     *
+     * @param link The packed link
+     * @return The id of the parent
+     */
+    public static int parent(long link) {
+        return (int) (link >>> 32);
+    }
+
+    /**
+     * The child of a packed link
+     *
+     * @param link The packed link
+     * @return The id of the child
+     */
+    public static int child(long link) {
+        return (int) link;
+    }
+
+    /**
+     * The id of a term
+     *
+     * @param term The term
+     * @return The id or -1 if the term is not known
+     */
+    public int id(String term) {
+        return ids.getInt(term);
+    }
+
+    /**
+     * The term of an id
+     *
+     * @param id The id
+     * @return The term
+     */
+    public String term(int id) {
+        return terms[id];
+    }
+
+    /**
+     * Convert a packed link to a link
+     *
+     * @param link The packed link
+     * @return The link
+     */
+    public TaxoLink toTaxoLink(long link) {
+        return new TaxoLink(terms[parent(link)], terms[child(link)]);
+    }
+
+    /**
+     * Add a link at the end of the list
+     *
+     * @param parent The id of the parent
+     * @param child The id of the child
+     */
+    public void add(int parent, int child) {
+        if (end == links.length) {
+            links = Arrays.copyOf(links, links.length * 2);
+            scores = Arrays.copyOf(scores, scores.length * 2);
+        }
+        scores[end] = 0.0;
+        links[end++] = pack(parent, child);
+    }
+
+    /**
+     * Remove some links from the list
+     *
+     * @param toRemove The links to remove
+     */
+    public void removeAll(Collection<? extends TaxoLink> toRemove) {
+        final LongSet removed = new LongOpenHashSet();
+        for (TaxoLink link : toRemove) {
+            final int parent = ids.getInt(link.getTop());
+            final int child = ids.getInt(link.getBottom());
+            if (parent >= 0 && child >= 0) {
+                removed.add(pack(parent, child));
+            }
+        }
+        if (removed.isEmpty()) {
+            return;
+        }
+        int j = start;
+        for (int i = start; i < end; i++) {
+            if (!removed.contains(links[i])) {
+                links[j] = links[i];
+                scores[j++] = scores[i];
+            }
+        }
+        end = j;
+    }
+
+    /**
+     * Score all the links in the list and sort them by descending score, with
+     * ties in the order of the links
+     *
+     * @param score The score of the links
+     */
+    public void scoreAndSort(Score score) {
+        scoreAndSort(score, null);
+    }
+
+    /**
+     * Score all the links in the list and sort them by descending score, with
+     * ties in the order of the links, unless the budget of a search is spent
+     * while scoring
+     *
+     * @param score The score of the links
+     * @param clock The clock of the search or null if it is not limited
+     * @return False if the budget was spent and the list was not sorted
+     */
+    public boolean scoreAndSort(Score score, SearchBudget.Clock clock) {
+        final IndexedScore.Scorer scorer = score instanceof IndexedScore
+                ? ((IndexedScore) score).scorer(terms) : null;
+        for (int i = start; i < end; i++) {
+            if (clock != null && (i - start) % CLOCK_CHECK_INTERVAL == 0 && clock.isSpent()) {
+                return false;
+            }
+            scores[i] = scorer != null ? scorer.deltaScore(parent(links[i]), child(links[i]))
+                    : score.deltaScore(toTaxoLink(links[i]));
+        }
+        it.unimi.dsi.fastutil.Arrays.quickSort(start, end, new IntComparator() {
+            @Override
+            public int compare(int i, int j) {
+                final int c = Double.compare(scores[j], scores[i]);
+                return c == 0 ? Long.compare(links[i], links[j]) : c;
+            }
+
+            @Override
+            public int compare(Integer i, Integer j) {
+                return compare(i.intValue(), j.intValue());
+            }
+        }, new Swapper() {
+            @Override
+            public void swap(int i, int j) {
+                final long l = links[i];
+                links[i] = links[j];
+                links[j] = l;
+                final double s = scores[i];
+                scores[i] = scores[j];
+                scores[j] = s;
+            }
+        });
+        return true;
+    }
+
+    /**
+     * The number of links in the list
+     *
+     * @return The number of links
+     */
+    public int size() {
+        return end - start;
+    }
+
+    public boolean isEmpty() {
+        return end == start;
+    }
+
+    /**
+     * The first link of the list
+     *
+     * @return The packed link
+     */
+    public long first() {
+        if (start == end) {
+            throw new IndexOutOfBoundsException();
+        }
+        return links[start];
+    }
+
+    /**
+     * The score of the first link of the list when it was last scored
+     *
+     * @return The score
+     */
+    public double firstScore() {
+        if (start == end) {
+            throw new IndexOutOfBoundsException();
+        }
+        return scores[start];
+    }
+
+    /**
+     * Remove the first link of the list
+     */
+    public void removeFirst() {
+        if (start == end) {
+            throw new IndexOutOfBoundsException();
+        }
+        start++;
+    }
+
+    /**
+     * The link at a position of the list
+     *
+     * @param i The position
+     * @return The packed link
+     */
+    public long get(int i) {
+        return links[start + i];
+    }
+}
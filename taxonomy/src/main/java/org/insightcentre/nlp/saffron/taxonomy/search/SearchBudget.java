@@ -0,0 +1,138 @@
+package org.insightcentre.nlp.saffron.taxonomy.search;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.insightcentre.nlp.saffron.config.TaxonomySearchConfiguration;
+
+/**
+ * A limit on the time and the number of steps of a search. A search starts a
+ * clock on the budget each time it is run and stops (keeping its best
+ * solution so far) once the clock is out of budget.
+ *
+ * @author John McCrae
+ */
+public class SearchBudget {
+
+    /**
+     * A budget without any limit
+     */
+    public static final SearchBudget UNLIMITED = new SearchBudget(0, 0);
+
+    private final long timeMillis;
+    private final int iterations;
+    private final Clock shared;
+
+    /**
+     * Create a budget
+     *
+     * @param timeMillis The maximum time in milliseconds (0 or less for no
+     * limit)
+     * @param iterations The maximum number of steps (0 or less for no limit)
+     */
+    public SearchBudget(long timeMillis, int iterations) {
+        this(timeMillis, iterations, null);
+    }
+
+    private SearchBudget(long timeMillis, int iterations, Clock shared) {
+        this.timeMillis = timeMillis;
+        this.iterations = iterations;
+        this.shared = shared;
+    }
+
+    /**
+     * The budget of a search configuration
+     *
+     * @param config The configuration
+     * @return The budget
+     */
+    public static SearchBudget of(TaxonomySearchConfiguration config) {
+        return new SearchBudget(config.timeBudget, config.iterationBudget);
+    }
+
+    /**
+     * Check if this budget has any limit
+     *
+     * @return True if the time or the number of steps is limited
+     */
+    public boolean isLimited() {
+        return timeMillis > 0 || iterations > 0
+                || (shared != null && shared.budget().isLimited());
+    }
+
+    /**
+     * Start spending this budget
+     *
+     * @return A clock that counts the time and steps from now
+     */
+    public Clock start() {
+        return new Clock();
+    }
+
+    @Override
+    public String toString() {
+        return "SearchBudget{" + "timeMillis=" + timeMillis + ", iterations=" + iterations
+                + (shared == null ? "" : ", shared=" + shared.budget()) + '}';
+    }
+
+    /**
+     * The time and steps spent by one run of a search. The steps of a clock
+     * may be counted by several threads.
+     */
+    public class Clock {
+
+        private final long deadline;
+        private final AtomicInteger steps = new AtomicInteger();
+
+        private Clock() {
+            this.deadline = timeMillis > 0 ? System.nanoTime() + timeMillis * 1000000L : 0L;
+        }
+
+        private SearchBudget budget() {
+            return SearchBudget.this;
+        }
+
+        /**
+         * The budget that remains on this clock, so that several searches can
+         * share one budget. A clock started on the remaining budget also
+         * counts its steps on this clock and is spent when this clock is.
+         *
+         * @return The remaining budget
+         */
+        public SearchBudget remaining() {
+            return new SearchBudget(0, 0, this);
+        }
+
+        /**
+         * Count a step of the search
+         *
+         * @return True if the search may take another step
+         */
+        public boolean step() {
+            steps.incrementAndGet();
+            if (shared != null) {
+                shared.step();
+            }
+            return !isSpent();
+        }
+
+        /**
+         * Check if the budget is spent
+         *
+         * @return True if the search should stop
+         */
+        public boolean isSpent() {
+            return (iterations > 0 && steps.get() >= iterations)
+                    || (timeMillis > 0 && System.nanoTime() - deadline >= 0)
+                    || (shared != null && shared.isSpent());
+        }
+
+        /**
+         * The number of steps taken
+         *
+         * @return The number of steps
+         */
+        public int steps() {
+            return steps.get();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package org.insightcentre.nlp.saffron.taxonomy.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * The groups of synonymous terms of a knowledge graph, held as a union-find
+ * structure so that joining two groups and finding the representative of a
+ * term take nearly constant time. Each group is represented by one of its
+ * terms, which is the term that links to the other relations in the knowledge
+ * graph. When a term is added as a synonym of another term, the group of the
+ * other term keeps its representative.
+ *
+ * @author John McCrae
+ */
+public class SynonymGroups {
+
+    // The terms and their indexes are shared by all copies
+    private final List<String> terms;
+    private final Object2IntMap<String> ids;
+    private final int[] parent;
+    private final int[] size;
+    // The representative of the group of each root
+    private final int[] representative;
+    // The members of each group as a circular list
+    private final int[] next;
+
+    /**
+     * Create groups where each term is only a synonym of itself
+     *
+     * @param terms The terms
+     */
+    public SynonymGroups(Collection<String> terms) {
+        this.terms = Collections.unmodifiableList(new ArrayList<>(terms));
+        this.ids = new Object2IntOpenHashMap<>(this.terms.size());
+        this.ids.defaultReturnValue(-1);
+        final int n = this.terms.size();
+        this.parent = new int[n];
+        this.size = new int[n];
+        this.representative = new int[n];
+        this.next = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids.put(this.terms.get(i), i);
+            parent[i] = i;
+            size[i] = 1;
+            representative[i] = i;
+            next[i] = i;
+        }
+    }
+
+    private SynonymGroups(SynonymGroups other) {
+        this.terms = other.terms;
+        this.ids = other.ids;
+        this.parent = other.parent.clone();
+        this.size = other.size.clone();
+        this.representative = other.representative.clone();
+        this.next = other.next.clone();
+    }
+
+    /**
+     * Create a copy of these groups that can be changed independently
+     *
+     * @return The copy
+     */
+    public SynonymGroups copy() {
+        return new SynonymGroups(this);
+    }
+
+    private int find(int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * The term that represents the group of a term
+     *
+     * @param term The term
+     * @return The representative (the term itself if it has no synonyms or is
+     * not known)
+     */
+    public String representative(String term) {
+        final int i = ids.getInt(term);
+        return i < 0 ? term : terms.get(representative[find(i)]);
+    }
+
+    /**
+     * Check if a term represents its group
+     *
+     * @param term The term
+     * @return True if the term is the representative of its group
+     */
+    public boolean isRepresentative(String term) {
+        return representative(term).equals(term);
+    }
+
+    /**
+     * Check if two terms are in the same group
+     *
+     * @param term1 The first term
+     * @param term2 The second term
+     * @return True if the terms are synonyms (or equal)
+     */
+    public boolean areSynonyms(String term1, String term2) {
+        final int i = ids.getInt(term1), j = ids.getInt(term2);
+        return term1.equals(term2) || (i >= 0 && j >= 0 && find(i) == find(j));
+    }
+
+    /**
+     * Join the group of a term to the group of its synonym. The group keeps
+     * the representative of the synonym
+     *
+     * @param term The term
+     * @param synonym The synonym
+     * @return True if the groups were joined, false if the terms were already
+     * synonyms or are not known
+     */
+    public boolean union(String term, String synonym) {
+        final int i = ids.getInt(term), j = ids.getInt(synonym);
+        if (i < 0 || j < 0) {
+            return false;
+        }
+        final int ri = find(i), rj = find(j);
+        if (ri == rj) {
+            return false;
+        }
+        final int rep = representative[rj];
+        final int root;
+        if (size[ri] < size[rj]) {
+            parent[ri] = rj;
+            size[rj] += size[ri];
+            root = rj;
+        } else {
+            parent[rj] = ri;
+            size[ri] += size[rj];
+            root = ri;
+        }
+        representative[root] = rep;
+        // Splice the two circular lists of members
+        final int t = next[ri];
+        next[ri] = next[rj];
+        next[rj] = t;
+        return true;
+    }
+
+    /**
+     * The members of the group of a term
+     *
+     * @param term The term
+     * @return The terms of its group (including the term)
+     */
+    public List<String> members(String term) {
+        final int i = ids.getInt(term);
+        if (i < 0) {
+            return Collections.singletonList(term);
+        }
+        final List<String> members = new ArrayList<>(size[find(i)]);
+        int j = i;
+        do {
+            members.add(terms.get(j));
+            j = next[j];
+        } while (j != i);
+        return members;
+    }
+
+    /**
+     * The groups of more than one term, in the order of their representatives
+     * with the members of each group in the order the terms were given. The
+     * order does not depend on the order in which the groups were joined
+     *
+     * @return The groups
+     */
+    public Collection<Set<String>> groups() {
+        final List<Set<String>> groups = new ArrayList<>();
+        for (int i = 0; i < parent.length; i++) {
+            final int r = find(i);
+            if (representative[r] == i && size[r] > 1) {
+                final int[] members = new int[size[r]];
+                int j = i, k = 0;
+                do {
+                    members[k++] = j;
+                    j = next[j];
+                } while (j != i);
+                Arrays.sort(members);
+                final Set<String> group = new LinkedHashSet<>();
+                for (int m : members) {
+                    group.add(terms.get(m));
+                }
+                groups.add(group);
+            }
+        }
+        return groups;
+    }
+}
@@ -13,6 +13,7 @@ import org.insightcentre.nlp.saffron.data.Term;
 import org.insightcentre.nlp.saffron.taxonomy.metrics.Score;
 import org.insightcentre.nlp.saffron.taxonomy.metrics.ScoreFactory;
 import org.insightcentre.nlp.saffron.taxonomy.supervised.MSTTaxoExtract;
+import org.insightcentre.nlp.saffron.taxonomy.supervised.ScoreMatrix;
 import org.insightcentre.nlp.saffron.taxonomy.supervised.SupervisedTaxo;
 
 /**
@@ -34,16 +35,79 @@ public interface TaxonomySearch {
         return create(config, classifier, terms, new DefaultSaffronListener());                
     }
     
+    public static TaxonomySearch create(final TaxonomySearchConfiguration config, 
+            final SupervisedTaxo classifier, Set<String> terms, final SaffronListener log) {
+        if(config.clusterSize > 0 && terms.size() > config.clusterSize) {
+            // Each cluster is searched on a single thread as the clusters are
+            // searched in parallel
+            final int k = config.candidateParents > 0 ? config.candidateParents
+                    : DivideAndConquerSearch.DEFAULT_NEIGHBOURS;
+            return new DivideAndConquerSearch(
+                    (subTerms, budget) -> create(config, classifier, subTerms, 1, budget, log),
+                    subTerms -> classifier.candidateParents(subTerms, k),
+                    classifier::predict, SearchBudget.of(config),
+                    config.clusterSize, config.numThreads, log);
+        }
+        return create(config, classifier, terms, config.numThreads, log);
+    }
+
+    /**
+     * Create a search over all the terms at once
+     *
+     * @param config The configuration
+     * @param classifier The classifier of links
+     * @param terms The terms
+     * @param numThreads The number of threads used to score the pairs of terms
+     * and in the search (0 or less to use all available processors)
+     * @param log The listener
+     * @return The search
+     */
     public static TaxonomySearch create(TaxonomySearchConfiguration config, 
-            SupervisedTaxo classifier, Set<String> terms, SaffronListener log) {
-        final Score score = ScoreFactory.getInstance(config, config.score, classifier, terms);
+            SupervisedTaxo classifier, Set<String> terms, int numThreads, SaffronListener log) {
+        return create(config, classifier, terms, numThreads, SearchBudget.of(config), log);
+    }
+
+    /**
+     * Create a search over all the terms at once with a given budget
+     *
+     * @param config The configuration
+     * @param classifier The classifier of links
+     * @param terms The terms
+     * @param numThreads The number of threads used to score the pairs of terms
+     * and in the search (0 or less to use all available processors)
+     * @param budget The budget of the search (instead of the budget of the
+     * configuration)
+     * @param log The listener
+     * @return The search
+     */
+    public static TaxonomySearch create(TaxonomySearchConfiguration config, 
+            SupervisedTaxo classifier, Set<String> terms, int numThreads, 
+            SearchBudget budget, SaffronListener log) {
+        // The algorithms consider every pair of terms, or each term and its
+        // candidate parents, so the scores are computed up front. A search
+        // with a budget scores the pairs as it needs them instead, so that
+        // the scoring is within its budget
+        final CandidateParents candidates;
+        final ScoreMatrix scores;
+        final boolean upFront = config.algorithm == TaxonomySearchConfiguration.Algorithm.mst
+                || !budget.isLimited();
+        if(config.candidateParents > 0) {
+            candidates = classifier.candidateParents(terms, config.candidateParents);
+            scores = upFront ? ScoreMatrix.compute(classifier, terms, candidates, numThreads) : null;
+        } else {
+            candidates = null;
+            scores = upFront ? ScoreMatrix.compute(classifier, terms, numThreads) : null;
+        }
+        final Score score = ScoreFactory.getInstance(config, config.score,
+                scores == null ? classifier : scores, terms);
         switch(config.algorithm) {
             case greedy:
-                return new Greedy(score);
+                return new Greedy(score, candidates, budget, log);
             case beam:
-                return new BeamSearch(score, config.beamSize);
+                return new BeamSearch(score, config.beamSize, numThreads, candidates,
+                        budget, log);
             case mst:
-                return new MSTTaxoExtract(classifier);
+                return new MSTTaxoExtract(scores, numThreads, candidates);
         }
         throw new IllegalArgumentException("Unknown algorithm");
     }
@@ -2,12 +2,17 @@ package org.insightcentre.nlp.saffron.taxonomy.search;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.ToDoubleBiFunction;
 import org.insightcentre.nlp.saffron.data.Status;
 import org.insightcentre.nlp.saffron.data.Taxonomy;
+import org.insightcentre.nlp.saffron.data.Term;
 import org.insightcentre.nlp.saffron.data.VirtualRootTaxonomy;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -19,6 +24,12 @@ import com.fasterxml.jackson.annotation.JsonProperty;
  */
 public class TaxonomySolution extends Solution{
 
+    /**
+     * The number of terms considered as parents of a term when completing a
+     * solution without candidate parents
+     */
+    public static final int COMPLETION_PARENTS = 100;
+
     public final Map<String, Taxonomy> heads;
     public final Set<String> terms;
     public final int size;
@@ -144,6 +155,108 @@ public class TaxonomySolution extends Solution{
         }
     }
 
+    /**
+     * Complete this solution by attaching each term that is not yet in the
+     * taxonomy under the term already in the taxonomy that is its
+     * best-scoring parent. Terms are attached in descending order of their
+     * score. If the taxonomy is empty, the best-scoring term becomes the root.
+     * Without candidate parents only the {@value #COMPLETION_PARENTS} terms in
+     * the taxonomy with the highest term scores are considered as parents, so
+     * that completing a large taxonomy takes linear time.
+     *
+     * @param termMap The terms
+     * @param candidateParents The candidate parents of each term or null to
+     * consider the best-scoring terms in the taxonomy (a term is attached under
+     * one of these if none of its candidate parents is in it)
+     * @param linkScore The score of a link from a parent to a child, which is
+     * negative infinity for a link that should only be used if there is no
+     * other parent
+     * @return The complete solution
+     */
+    public TaxonomySolution complete(final Map<String, Term> termMap,
+            CandidateParents candidateParents, ToDoubleBiFunction<String, String> linkScore) {
+        final List<String> placed = new ArrayList<>();
+        for (Taxonomy t : heads.values()) {
+            collectTerms(t, placed);
+        }
+        final Set<String> placedSet = new HashSet<>(placed);
+        final List<String> unplaced = new ArrayList<>();
+        for (String term : terms) {
+            if (!placedSet.contains(term)) {
+                unplaced.add(term);
+            }
+        }
+        final Comparator<String> byScore = new Comparator<String>() {
+            @Override
+            public int compare(String t1, String t2) {
+                final int c = Double.compare(termScore(termMap, t2), termScore(termMap, t1));
+                return c == 0 ? t1.compareTo(t2) : c;
+            }
+        };
+        unplaced.sort(byScore);
+        // The best-scoring terms in the taxonomy in descending order of score
+        final List<String> topPlaced = placed;
+        topPlaced.sort(byScore);
+        if (topPlaced.size() > COMPLETION_PARENTS) {
+            topPlaced.subList(COMPLETION_PARENTS, topPlaced.size()).clear();
+        }
+        TaxonomySolution soln = this;
+        for (String term : unplaced) {
+            if (placedSet.isEmpty()) {
+                final Map<String, Taxonomy> newHeads = new HashMap<>(heads);
+                newHeads.put(term, new Taxonomy(term, termScore(termMap, term), Double.NaN,
+                        new ArrayList<Taxonomy>(), Status.none));
+                soln = new TaxonomySolution(newHeads, terms, soln.size + 1);
+            } else {
+                String best = null;
+                double bestScore = Double.NEGATIVE_INFINITY;
+                if (candidateParents != null) {
+                    for (String parent : candidateParents.parents(term)) {
+                        if (placedSet.contains(parent) && !parent.equals(term)) {
+                            final double s = linkScore.applyAsDouble(parent, term);
+                            if (best == null || s > bestScore) {
+                                best = parent;
+                                bestScore = s;
+                            }
+                        }
+                    }
+                }
+                if (best == null || bestScore == Double.NEGATIVE_INFINITY) {
+                    for (String parent : topPlaced) {
+                        final double s = linkScore.applyAsDouble(parent, term);
+                        if (best == null || s > bestScore) {
+                            best = parent;
+                            bestScore = s;
+                        }
+                    }
+                }
+                soln = soln.add(best, term, termScore(termMap, best), termScore(termMap, term),
+                        bestScore, false);
+            }
+            placedSet.add(term);
+            final int i = Collections.binarySearch(topPlaced, term, byScore);
+            if (i < 0 && -i - 1 < COMPLETION_PARENTS) {
+                topPlaced.add(-i - 1, term);
+                if (topPlaced.size() > COMPLETION_PARENTS) {
+                    topPlaced.remove(COMPLETION_PARENTS);
+                }
+            }
+        }
+        return soln;
+    }
+
+    private static double termScore(Map<String, Term> termMap, String term) {
+        final Term t = termMap.get(term);
+        return t == null ? 0.0 : t.getScore();
+    }
+
+    private static void collectTerms(Taxonomy taxo, List<String> terms) {
+        terms.add(taxo.root);
+        for (Taxonomy child : taxo.children) {
+            collectTerms(child, terms);
+        }
+    }
+
     private Taxonomy insertIntoTaxo(Taxonomy taxo, String top, Taxonomy bottom) {
         ArrayList<Taxonomy> newChildren = new ArrayList<>();
         if (taxo.root.equals(top)) {
@@ -1,5 +1,7 @@
 package org.insightcentre.nlp.saffron.taxonomy.supervised;
 
+import java.util.List;
+
 /**
  * 
  * Classifier that verifies the probability of a relationship
@@ -21,4 +23,25 @@ public interface BinaryRelationClassifier<T> {
 	 * source and target
 	 */
 	public double predict(T source, T target);
+
+	/**
+	 * Predict the relationship between every pair of a block of nodes.
+	 * Implementations may override this to reuse the work done for each
+	 * node across the pairs it occurs in.
+	 * 
+	 * @param sources The source nodes
+	 * @param targets The target nodes
+	 * 
+	 * @return A matrix whose element [i][j] is the probability of a 
+	 * directed relationship between sources[i] and targets[j]
+	 */
+	public default double[][] predictBlock(List<T> sources, List<T> targets) {
+		double[][] result = new double[sources.size()][targets.size()];
+		for(int i = 0; i < sources.size(); i++) {
+			for(int j = 0; j < targets.size(); j++) {
+				result[i][j] = predict(sources.get(i), targets.get(j));
+			}
+		}
+		return result;
+	}
 }
@@ -0,0 +1,126 @@
+package org.insightcentre.nlp.saffron.taxonomy.supervised;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.insightcentre.nlp.saffron.data.TypedLink;
+
+/**
+ * A relation classifier that looks up the scores of pairs in a cache and only
+ * uses the underlying classifier for the pairs that are not in it, which are
+ * then added to the cache
+ *
+ * @author John McCrae
+ */
+public class CachedRelationClassifier implements MulticlassRelationClassifier<String> {
+
+    private static final TypedLink.Type[] TYPES = TypedLink.Type.values();
+
+    private final MulticlassRelationClassifier<String> classifier;
+    private final PairScoreCache cache;
+
+    /**
+     * Create a cached classifier
+     *
+     * @param classifier The classifier
+     * @param cache The cache, with one score per relation type
+     */
+    public CachedRelationClassifier(MulticlassRelationClassifier<String> classifier,
+            PairScoreCache cache) {
+        if (cache.width() != TYPES.length) {
+            throw new IllegalArgumentException("A relation score cache has one score per relation type");
+        }
+        this.classifier = classifier;
+        this.cache = cache;
+    }
+
+    /**
+     * The fingerprint of a relation classifier from its model files, which
+     * identifies the scores it computes in a score cache
+     *
+     * @param modelFiles The model files
+     * @return The fingerprint
+     */
+    public static long fingerprint(File... modelFiles) {
+        final String[] parts = new String[modelFiles.length];
+        for (int i = 0; i < modelFiles.length; i++) {
+            parts[i] = modelFiles[i].getAbsolutePath() + ":" + modelFiles[i].length()
+                    + ":" + modelFiles[i].lastModified();
+        }
+        return PairScoreCache.fingerprint(parts);
+    }
+
+    /**
+     * The number of scores of each pair in the cache of a relation classifier
+     *
+     * @return The number of relation types
+     */
+    public static int width() {
+        return TYPES.length;
+    }
+
+    @Override
+    public Map<TypedLink.Type, Double> predict(String source, String target) {
+        final double[] scores = new double[TYPES.length];
+        if (cache.get(source, target, scores)) {
+            return toMap(scores);
+        }
+        final Map<TypedLink.Type, Double> prediction = classifier.predict(source, target);
+        cache.put(source, target, toScores(prediction));
+        return prediction;
+    }
+
+    @Override
+    public List<Map<TypedLink.Type, Double>> predictAll(List<String> sources, List<String> targets) {
+        if (sources.size() != targets.size()) {
+            throw new IllegalArgumentException("Sources and targets must have the same length");
+        }
+        final List<Map<TypedLink.Type, Double>> result = new ArrayList<>(sources.size());
+        final List<String> missingSources = new ArrayList<>(), missingTargets = new ArrayList<>();
+        final List<Integer> missing = new ArrayList<>();
+        final double[] scores = new double[TYPES.length];
+        for (int i = 0; i < sources.size(); i++) {
+            if (cache.get(sources.get(i), targets.get(i), scores)) {
+                result.add(toMap(scores));
+            } else {
+                result.add(null);
+                missing.add(i);
+                missingSources.add(sources.get(i));
+                missingTargets.add(targets.get(i));
+            }
+        }
+        if (!missing.isEmpty()) {
+            final List<Map<TypedLink.Type, Double>> predictions = classifier.predictAll(missingSources, missingTargets);
+            final List<double[]> missingScores = new ArrayList<>(missing.size());
+            for (int i = 0; i < missing.size(); i++) {
+                result.set(missing.get(i), predictions.get(i));
+                missingScores.add(toScores(predictions.get(i)));
+            }
+            cache.putAll(missingSources, missingTargets, missingScores);
+        }
+        return result;
+    }
+
+    // A relation type without a score is stored as NaN
+    private static double[] toScores(Map<TypedLink.Type, Double> prediction) {
+        final double[] scores = new double[TYPES.length];
+        for (int i = 0; i < TYPES.length; i++) {
+            final Double d = prediction.get(TYPES[i]);
+            scores[i] = d == null ? Double.NaN : d;
+        }
+        return scores;
+    }
+
+    private static Map<TypedLink.Type, Double> toMap(double[] scores) {
+        final Map<TypedLink.Type, Double> prediction = new HashMap<>();
+        for (int i = 0; i < TYPES.length; i++) {
+            if (!Double.isNaN(scores[i])) {
+                prediction.put(TYPES[i], scores[i]);
+            }
+        }
+        return prediction;
+    }
+}
@@ -0,0 +1,324 @@
+package org.insightcentre.nlp.saffron.taxonomy.supervised;
+
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+import org.insightcentre.nlp.saffron.taxonomy.search.CandidateParents;
+
+/**
+ * Selects a small number of plausible parents for each term so that the
+ * taxonomy algorithms do not have to consider every pair of terms. The
+ * candidates are found with cheap signals:
+ *
+ * <ul>
+ * <li>Inclusion: a term whose words are a prefix or suffix of the words of
+ * another term</li>
+ * <li>Shared documents: the cosine of the sets of documents of the terms</li>
+ * <li>Embeddings: the cosine of the embeddings of the terms, found with an
+ * approximate nearest-neighbour index</li>
+ * </ul>
+ *
+ * The k terms with the highest sum of these signals are kept. In addition,
+ * the terms that are most often chosen as candidates (the hubs) are
+ * candidates of every term, so that the candidates always connect all the
+ * terms.
+ *
+ * @author John McCrae
+ */
+public class CandidateGenerator {
+
+    // Documents with more terms than this are too general to suggest links
+    private static final int MAX_DOCUMENT_TERMS = 500;
+
+    private final int k;
+    private final Function<String, float[]> embeddings;
+    private final Map<String, IntSet> termDocuments;
+
+    /**
+     * Create a candidate generator
+     *
+     * @param k The number of candidate parents to keep for each term
+     * @param embeddings The embedding of each term (may be null or return null
+     * if a term has no embedding)
+     * @param termDocuments The documents of each term (may be null)
+     */
+    public CandidateGenerator(int k, Function<String, float[]> embeddings,
+            Map<String, IntSet> termDocuments) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("The number of candidates must be positive");
+        }
+        this.k = k;
+        this.embeddings = embeddings;
+        this.termDocuments = termDocuments;
+    }
+
+    /**
+     * Find the candidate parents of each term
+     *
+     * @param termCollection The terms
+     * @return The candidate parents
+     */
+    public CandidateParents generate(Collection<String> termCollection) {
+        final List<String> terms = new ArrayList<>(termCollection);
+        Collections.sort(terms);
+        final int n = terms.size();
+        final List<Int2DoubleMap> signals = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            signals.add(new Int2DoubleOpenHashMap());
+        }
+        addInclusion(terms, signals);
+        if (termDocuments != null) {
+            addSharedDocuments(terms, signals);
+        }
+        if (embeddings != null) {
+            addEmbeddings(terms, signals);
+        }
+
+        final List<IntList> selected = new ArrayList<>(n);
+        final int[] inDegree = new int[n];
+        for (int i = 0; i < n; i++) {
+            final Int2DoubleMap s = signals.get(i);
+            final IntList c = new IntArrayList(s.keySet());
+            c.sort(new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    int c = Double.compare(s.get(o2.intValue()), s.get(o1.intValue()));
+                    return c == 0 ? Integer.compare(o1, o2) : c;
+                }
+            });
+            final IntList top = c.size() > k ? new IntArrayList(c.subList(0, k)) : c;
+            for (int j : top) {
+                inDegree[j]++;
+            }
+            selected.add(top);
+        }
+
+        final int[] hubs = hubs(inDegree, Math.min(n, Math.max(1, (k + 3) / 4)));
+        final Map<String, List<String>> parents = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            final List<String> p = new ArrayList<>();
+            for (int j : selected.get(i)) {
+                p.add(terms.get(j));
+            }
+            for (int h : hubs) {
+                if (h != i) {
+                    p.add(terms.get(h));
+                }
+            }
+            parents.put(terms.get(i), p);
+        }
+        return new CandidateParents(parents);
+    }
+
+    private static int[] hubs(final int[] inDegree, int nHubs) {
+        final List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < inDegree.length; i++) {
+            order.add(i);
+        }
+        order.sort(new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                int c = Integer.compare(inDegree[o2], inDegree[o1]);
+                return c == 0 ? Integer.compare(o1, o2) : c;
+            }
+        });
+        final int[] hubs = new int[nHubs];
+        for (int i = 0; i < nHubs; i++) {
+            hubs[i] = order.get(i);
+        }
+        return hubs;
+    }
+
+    private static void add(List<Int2DoubleMap> signals, int child, int parent, double score) {
+        if (child != parent && score > 0) {
+            signals.get(child).put(parent, signals.get(child).get(parent) + score);
+        }
+    }
+
+    /**
+     * Terms whose words are a prefix or suffix of a term
+     */
+    private static void addInclusion(List<String> terms, List<Int2DoubleMap> signals) {
+        final Map<String, Integer> byWords = new HashMap<>();
+        final List<String[]> words = new ArrayList<>();
+        for (int i = 0; i < terms.size(); i++) {
+            final String[] w = PrettyGoodTokenizer.tokenize(terms.get(i));
+            words.add(w);
+            byWords.put(String.join(" ", w), i);
+        }
+        for (int i = 0; i < terms.size(); i++) {
+            final String[] w = words.get(i);
+            for (int j = 1; j < w.length; j++) {
+                final Integer prefix = byWords.get(String.join(" ", Arrays.copyOfRange(w, 0, j)));
+                if (prefix != null) {
+                    add(signals, i, prefix, 1.0);
+                }
+                final Integer suffix = byWords.get(String.join(" ", Arrays.copyOfRange(w, j, w.length)));
+                if (suffix != null) {
+                    add(signals, i, suffix, 1.0);
+                }
+            }
+        }
+    }
+
+    /**
+     * The cosine of the document sets of terms that share a document
+     */
+    private void addSharedDocuments(List<String> terms, List<Int2DoubleMap> signals) {
+        final Map<Integer, IntList> docTerms = new HashMap<>();
+        final int[] nDocs = new int[terms.size()];
+        for (int i = 0; i < terms.size(); i++) {
+            final IntSet docs = termDocuments.get(terms.get(i));
+            if (docs != null) {
+                nDocs[i] = docs.size();
+                for (int d : docs) {
+                    IntList l = docTerms.get(d);
+                    if (l == null) {
+                        docTerms.put(d, l = new IntArrayList());
+                    }
+                    l.add(i);
+                }
+            }
+        }
+        final List<Int2DoubleMap> shared = new ArrayList<>();
+        for (int i = 0; i < terms.size(); i++) {
+            shared.add(new Int2DoubleOpenHashMap());
+        }
+        for (IntList l : docTerms.values()) {
+            if (l.size() > MAX_DOCUMENT_TERMS) {
+                continue;
+            }
+            for (int i : l) {
+                for (int j : l) {
+                    if (i != j) {
+                        shared.get(i).put(j, shared.get(i).get(j) + 1.0);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < terms.size(); i++) {
+            for (Int2DoubleMap.Entry e : shared.get(i).int2DoubleEntrySet()) {
+                add(signals, i, e.getIntKey(), e.getDoubleValue() / Math.sqrt((double) nDocs[i] * nDocs[e.getIntKey()]));
+            }
+        }
+    }
+
+    /**
+     * The cosine of the embeddings of the approximate nearest neighbours of
+     * each term, found by random hyperplane hashing
+     */
+    private void addEmbeddings(List<String> terms, List<Int2DoubleMap> signals) {
+        final float[][] vectors = new float[terms.size()][];
+        int dim = -1;
+        for (int i = 0; i < terms.size(); i++) {
+            final float[] v = embeddings.apply(terms.get(i));
+            if (v != null && (dim < 0 || v.length == dim)) {
+                dim = v.length;
+                vectors[i] = normalize(v);
+            }
+        }
+        if (dim <= 0) {
+            return;
+        }
+        final EmbeddingIndex index = new EmbeddingIndex(vectors, dim,
+                Math.max(1, Math.min(20, 31 - Integer.numberOfLeadingZeros(Math.max(1, terms.size() / (2 * k))))));
+        for (int i = 0; i < terms.size(); i++) {
+            if (vectors[i] != null) {
+                for (int j : index.neighbours(i)) {
+                    add(signals, i, j, dot(vectors[i], vectors[j]));
+                }
+            }
+        }
+    }
+
+    private static float[] normalize(float[] v) {
+        double norm = 0.0;
+        for (float x : v) {
+            norm += x * x;
+        }
+        norm = Math.sqrt(norm);
+        final float[] v2 = new float[v.length];
+        if (norm > 0) {
+            for (int i = 0; i < v.length; i++) {
+                v2[i] = (float) (v[i] / norm);
+            }
+        }
+        return v2;
+    }
+
+    private static double dot(float[] v1, float[] v2) {
+        double d = 0.0;
+        for (int i = 0; i < v1.length; i++) {
+            d += v1[i] * v2[i];
+        }
+        return d;
+    }
+
+    /**
+     * An index that finds vectors with a high cosine by hashing each vector to
+     * the side of a number of random hyperplanes it lies on. Vectors that
+     * share a bucket in any of the tables are neighbours
+     */
+    private static class EmbeddingIndex {
+
+        private static final int TABLES = 8;
+        private final long[][] keys;
+        private final List<Long2ObjectMap<IntList>> buckets = new ArrayList<>();
+
+        public EmbeddingIndex(float[][] vectors, int dim, int bits) {
+            this.keys = new long[TABLES][vectors.length];
+            final Random random = new Random(vectors.length);
+            for (int t = 0; t < TABLES; t++) {
+                final float[][] planes = new float[bits][dim];
+                for (float[] plane : planes) {
+                    for (int d = 0; d < dim; d++) {
+                        plane[d] = (float) random.nextGaussian();
+                    }
+                }
+                final Long2ObjectMap<IntList> table = new Long2ObjectOpenHashMap<>();
+                for (int i = 0; i < vectors.length; i++) {
+                    if (vectors[i] != null) {
+                        long key = 0;
+                        for (int b = 0; b < bits; b++) {
+                            if (dot(planes[b], vectors[i]) >= 0) {
+                                key |= 1L << b;
+                            }
+                        }
+                        keys[t][i] = key;
+                        IntList l = table.get(key);
+                        if (l == null) {
+                            table.put(key, l = new IntArrayList());
+                        }
+                        l.add(i);
+                    }
+                }
+                buckets.add(table);
+            }
+        }
+
+        public IntSet neighbours(int i) {
+            final IntSet n = new IntOpenHashSet();
+            for (int t = 0; t < TABLES; t++) {
+                n.addAll(buckets.get(t).get(keys[t][i]));
+            }
+            n.remove(i);
+            return n;
+        }
+    }
+}
@@ -4,19 +4,24 @@ import org.insightcentre.nlp.saffron.config.TaxonomyExtractionConfiguration;
 import Jama.Matrix;
 import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import it.unimi.dsi.fastutil.doubles.DoubleList;
-import it.unimi.dsi.fastutil.ints.IntRBTreeSet;
+import it.unimi.dsi.fastutil.ints.IntAVLTreeSet;
 import it.unimi.dsi.fastutil.ints.IntSet;
 import static java.lang.Math.max;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.insightcentre.nlp.saffron.data.Term;
 import org.insightcentre.nlp.saffron.taxonomy.wordnet.Hypernym;
+import org.insightcentre.nlp.saffron.taxonomy.wordnet.HypernymIndex;
 
 /**
- * Provides supervised feature extraction for taxonomy learning
+ * Provides supervised feature extraction for taxonomy learning. The data of
+ * each term (its tokens, vectors, documents and hypernyms) is extracted once
+ * and cached, so that the features of a pair of terms are cheap array
+ * operations
  *
  * @author John McCrae &lt;john@mccr.ae&gt;
  */
@@ -28,6 +33,9 @@ public class Features {
     private final TaxonomyExtractionConfiguration.FeatureSelection selection;
     private final Map<String, Term> termMap;
     private final Set<Hypernym> hypernyms;
+    private final HypernymIndex hypernymIndex;
+    private final ConcurrentMap<String, Integer> tokenIds;
+    private final ConcurrentMap<String, TermData> termData = new ConcurrentHashMap<>();
 
     public Features(Matrix svdMatrixAve, Matrix svdMatrixMinMax, 
             Map<String, IntSet> termDocuments, 
@@ -42,6 +50,8 @@ public class Features {
         this.termMap = termMap;
         this.hypernyms = hypernyms;
         this.selection = selection;
+        this.hypernymIndex = hypernyms == null ? null : HypernymIndex.build(hypernyms);
+        this.tokenIds = new ConcurrentHashMap<>();
     }
     
     Features(Matrix svdMatrixAve, Matrix svdMatrixMinMax, Features other) {
@@ -52,6 +62,8 @@ public class Features {
         this.termMap = other.termMap;
         this.selection = other.selection;
         this.hypernyms = other.hypernyms;
+        this.hypernymIndex = other.hypernymIndex;
+        this.tokenIds = other.tokenIds;
     }
 
     /**
@@ -64,17 +76,31 @@ public class Features {
      * @return
      */
     public double inclusion(String top, String bottom) {
-        if (bottom.matches("\\Q" + top + "\\E\\b.*")
-                || bottom.matches(".*\\b\\Q" + top + "\\E")) {
+        if (includes(bottom, top)) {
             return +1;
-        } else if (top.matches("\\Q" + bottom + "\\E\\b.*")
-                || top.matches(".*\\b\\Q" + bottom + "\\E")) {
+        } else if (includes(top, bottom)) {
             return -1;
         } else {
             return 0;
         }
     }
 
+    private static boolean includes(String s, String t) {
+        return (s.startsWith(t) && isWordBoundary(s, t.length()))
+                || (s.endsWith(t) && isWordBoundary(s, s.length() - t.length()));
+    }
+
+    // As \b in a regular expression
+    private static boolean isWordBoundary(String s, int i) {
+        boolean left = i > 0 && isWordChar(s.codePointBefore(i));
+        boolean right = i < s.length() && isWordChar(s.codePointAt(i));
+        return left != right;
+    }
+
+    private static boolean isWordChar(int c) {
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+
     /**
      * The number of words that are in both strings divided by the length of top
      *
@@ -83,10 +109,30 @@ public class Features {
      * @return
      */
     public double overlap(String top, String bottom) {
-        Set<String> tops = new TreeSet<>(Arrays.asList(PrettyGoodTokenizer.tokenize(top)));
-        int n = tops.size();
-        tops.retainAll(Arrays.asList(PrettyGoodTokenizer.tokenize(bottom)));
-        return (double) tops.size() / n;
+        return overlap(termData(top), termData(bottom));
+    }
+
+    private static double overlap(TermData top, TermData bottom) {
+        return (double) intersectionSize(top.tokenSet, bottom.tokenSet) / top.tokenSet.length;
+    }
+
+    /**
+     * The size of the intersection of two sorted arrays with no duplicates
+     */
+    private static int intersectionSize(int[] a, int[] b) {
+        int i = 0, j = 0, m = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                m++;
+                i++;
+                j++;
+            }
+        }
+        return m;
     }
 
     /**
@@ -97,13 +143,15 @@ public class Features {
      * @return
      */
     public double longestCommonSubseq(String top, String bottom) {
-        String[] tops = PrettyGoodTokenizer.tokenize(top);
-        String[] bottoms = PrettyGoodTokenizer.tokenize(bottom);
+        return longestCommonSubseq(termData(top).tokens, termData(bottom).tokens);
+    }
+
+    private static double longestCommonSubseq(int[] tops, int[] bottoms) {
         int[][] lcs = new int[tops.length][bottoms.length];
         int maxLcs = 0;
         for (int i = 0; i < tops.length; i++) {
             for (int j = 0; j < bottoms.length; j++) {
-                if (tops[i].equals(bottoms[j])) {
+                if (tops[i] == bottoms[j]) {
                     if (i == 0 || j == 0) {
                         lcs[i][j] = 1;
                     } else {
@@ -116,68 +164,112 @@ public class Features {
         return (double) maxLcs / tops.length;
     }
 
-    private Matrix getVectorForWord(String word) {
-        double[] v = vectors.get(word);
-        return v == null ? null : new Matrix(v, v.length);
-    }
-
     public SVD svdByAve = new SVD() {
         @Override
         public double[] vector(String t) {
-            Matrix v = vectorByAve(t);
-            return v == null ? null : v.getColumnPackedCopy();
+            return toDoubles(termData(t).ave);
         }
     };
     
     public SVD svdByMinMax = new SVD() {
         @Override
         public double[] vector(String t) {
-            Matrix v = vectorMinMax(t);
-            return v == null ? null : v.getColumnPackedCopy();
+            return toDoubles(termData(t).minMax);
         }
     };
-    
-    private Matrix vectorByAve(String sent) {
-        String[] sents = PrettyGoodTokenizer.tokenize(sent);
-        if (sents.length == 0) {
-            throw new RuntimeException("Empty sentence");
+
+    private static double[] toDoubles(float[] v) {
+        if (v == null) {
+            return null;
         }
-        int m = 0;
-        int n = 1;
-        Matrix v = null;
-        while (v == null && m < sents.length) {
-            v = getVectorForWord(sents[m++]);
+        double[] d = new double[v.length];
+        for (int i = 0; i < v.length; i++) {
+            d[i] = v[i];
         }
-        for (int i = m; i < sents.length; i++) {
-            Matrix v2 = getVectorForWord(sents[i]);
+        return d;
+    }
+
+    /**
+     * The average of the vectors of the words of a term
+     */
+    private float[] vectorByAve(String[] words) {
+        double[] v = null;
+        int n = 0;
+        for (String word : words) {
+            double[] v2 = vectors.get(word);
             if (v2 != null) {
-                v.plus(v2);
+                if (v == null) {
+                    v = new double[v2.length];
+                }
+                for (int j = 0; j < v.length; j++) {
+                    v[j] += v2[j];
+                }
                 n++;
             }
         }
-        return v == null ? null : v.times(1.0 / n);
+        if (v == null) {
+            return null;
+        }
+        float[] f = new float[v.length];
+        for (int j = 0; j < v.length; j++) {
+            f[j] = (float) (v[j] / n);
+        }
+        return f;
     }
 
-    private Matrix vectorMinMax(String sent) {
-        String[] sents = PrettyGoodTokenizer.tokenize(sent);
-        if (sents.length == 0) {
-            throw new RuntimeException("Empty sentence");
-        }
-        Matrix v2 = null;
-        for (int i = 0; i < sents.length; i++) {
-            Matrix v = getVectorForWord(sents[0]);
+    /**
+     * The element-wise maximum and minimum of the vectors of the words of a
+     * term interleaved, i.e., max[0], min[0], max[1], min[1], ...
+     */
+    private float[] vectorMinMax(String[] words) {
+        float[] v2 = null;
+        for (String word : words) {
+            double[] v = vectors.get(word);
             if (v != null) {
                 if (v2 == null) {
-                    v2 = new Matrix(v.getRowDimension() * 2, 1);
-                }
-                for (int j = 0; j < v.getRowDimension(); j++) {
-                    v2.set(j * 2, 0, Math.max(v2.get(j * 2, 0), v.get(j, 0)));
-                    v2.set(j * 2 + 1, 0, Math.min(v2.get(j * 2 + 1, 0), v.get(j, 0)));
+                    v2 = new float[v.length * 2];
+                    for (int j = 0; j < v.length; j++) {
+                        v2[j * 2] = v2[j * 2 + 1] = (float) v[j];
+                    }
+                } else {
+                    for (int j = 0; j < v.length; j++) {
+                        v2[j * 2] = Math.max(v2[j * 2], (float) v[j]);
+                        v2[j * 2 + 1] = Math.min(v2[j * 2 + 1], (float) v[j]);
+                    }
                 }
             }
         }
         return v2;
+    }
+
+    /**
+     * Multiply a vector by the learned relation matrix
+     */
+    private static double[] project(Matrix m, float[] v) {
+        if (m == null || v == null) {
+            return null;
+        }
+        final double[][] a = m.getArray();
+        final double[] p = new double[a.length];
+        for (int i = 0; i < a.length; i++) {
+            double x = 0.0;
+            for (int j = 0; j < v.length; j++) {
+                x += a[i][j] * v[j];
+            }
+            p[i] = x;
+        }
+        return p;
+    }
 
+    private static double svdSim(double[] projectedTop, float[] bottom) {
+        if (projectedTop == null || bottom == null) {
+            return 0.0;
+        }
+        double x = 0.0;
+        for (int i = 0; i < bottom.length; i++) {
+            x += projectedTop[i] * bottom[i];
+        }
+        return x;
     }
 
     /**
@@ -189,15 +281,7 @@ public class Features {
      * @return
      */
     public double svdSimAve(String top, String bottom) {
-        Matrix v1 = vectorByAve(top);
-        Matrix v2 = vectorByAve(bottom);
-        if(v1 != null & v2 != null) {
-            v2 = v2.transpose();
-            Matrix v3 = svdMatrixAve.times(v1);
-            return v2.times(v3).get(0, 0);
-        } else {
-            return 0.0;
-        }
+        return svdSim(termData(top).projectedAve, termData(bottom).ave);
     }
 
     /**
@@ -209,15 +293,7 @@ public class Features {
      * @return
      */
     public double svdSimMixMax(String top, String bottom) {
-        Matrix v1 = vectorMinMax(top);
-        Matrix v2 = vectorMinMax(bottom);
-        if(v1 != null && v2 != null) {
-            v2 = v2.transpose();
-            Matrix v3 = svdMatrixMinMax.times(v1);
-            return v2.times(v3).get(0, 0);
-        } else {
-            return 0.0;
-        }
+        return svdSim(termData(top).projectedMinMax, termData(bottom).minMax);
     }
 
     /**
@@ -229,14 +305,16 @@ public class Features {
      * @return
      */
     public double topicComplementDiff(String top, String bottom) {
-        IntSet s1 = termDocuments.get(top);
-        IntSet s2 = termDocuments.get(bottom);
-        if (s1 != null && s2 != null && !s1.isEmpty() && !s2.isEmpty()) {
-            s1 = new IntRBTreeSet(s1);
-            int n1 = s1.size();
-            s1.retainAll(s2);
-            int m = s1.size();
-            int n2 = s2.size();
+        return topicComplementDiff(termData(top), termData(bottom));
+    }
+
+    private static double topicComplementDiff(TermData top, TermData bottom) {
+        int[] s1 = top.documents;
+        int[] s2 = bottom.documents;
+        if (s1 != null && s2 != null && s1.length > 0 && s2.length > 0) {
+            int n1 = s1.length;
+            int m = intersectionSize(s1, s2);
+            int n2 = s2.length;
             return (double) (n1 - m) / n1 - (double) (n2 - m) / n2;
         } else {
             return 0;
@@ -250,48 +328,66 @@ public class Features {
      * @return 
      */
     public double relFreq(String top, String bottom) {
-        if(termMap != null) {
-            Term t1 = termMap.get(top);
-            Term t2 = termMap.get(bottom);
-            if(t1 != null && t2 != null && t1.getOccurrences() > 0 && t2.getOccurrences() > 0) {
-                return Math.log((double)t1.getOccurrences()) - Math.log((double)t2.getOccurrences());
-            }
+        return relFreq(termData(top), termData(bottom));
+    }
+
+    private static double relFreq(TermData top, TermData bottom) {
+        if(!Double.isNaN(top.logFreq) && !Double.isNaN(bottom.logFreq)) {
+            return top.logFreq - bottom.logFreq;
         }
         return 0;
     }
     
     public double wnDirect(String top, String bottom) {
-        return hypernyms.contains(new Hypernym(bottom, top)) ?
-                1.0 : hypernyms.contains(new Hypernym(top, bottom)) ?
+        return wnDirect(termData(top), termData(bottom));
+    }
+
+    private double wnDirect(TermData top, TermData bottom) {
+        return hypernymIndex.isHypernym(bottom.hypernymId, top.hypernymId) ?
+                1.0 : hypernymIndex.isHypernym(top.hypernymId, bottom.hypernymId) ?
                 -1.0 : 0.0;
     }
     
     public double wnIndirect(String top, String bottom) {
-        String[] t1 = top.split(" ");
-        String[] t2 = bottom.split(" ");
+        return wnIndirect(termData(top), termData(bottom));
+    }
+
+    private double wnIndirect(TermData top, TermData bottom) {
         int score = 0;
-        for(String s1 : t1) {
-            for(String s2 : t2) {
-                score += hypernyms.contains(new Hypernym(s2, s1)) ?
-                1 : hypernyms.contains(new Hypernym(s1, s2)) ?
+        for(int i = 0; i < top.wordHypernymIds.length; i++) {
+            for(int j = 0; j < bottom.wordHypernymIds.length; j++) {
+                score += hypernymIndex.isHypernym(bottom.wordHypernymIds[j], top.wordHypernymIds[i]) ?
+                1 : hypernymIndex.isHypernym(top.wordHypernymIds[i], bottom.wordHypernymIds[j]) ?
                 -1 : 0;
             }
         }
-        return (double)score / t1.length / t2.length;
+        return (double)score / top.wordHypernymIds.length / bottom.wordHypernymIds.length;
     }
     
     public double[] buildFeatures(String top, String bottom) {
+        return buildFeatures(termData(top), termData(bottom));
+    }
+
+    /**
+     * Build the features for a pair of terms whose data has already been
+     * extracted with {@link #termData(String)}
+     *
+     * @param top The data of the top term
+     * @param bottom The data of the bottom term
+     * @return The feature vector
+     */
+    public double[] buildFeatures(TermData top, TermData bottom) {
         DoubleList v = new DoubleArrayList();
         if(selection == null || selection.inclusion)
-            v.add(inclusion(top, bottom));
+            v.add(inclusion(top.term, bottom.term));
         if(selection == null || selection.overlap)
             v.add(overlap(top, bottom));
         if(selection == null || selection.lcs)
-            v.add(longestCommonSubseq(top, bottom));
-        if((selection == null || selection.svdSimAve) && vectors != null && svdMatrixAve != null) 
-            v.add(svdSimAve(top, bottom));
-        if((selection == null || selection.svdSimMinMax) && vectors != null && svdMatrixMinMax != null)
-            v.add(svdSimMixMax(top, bottom));
+            v.add(longestCommonSubseq(top.tokens, bottom.tokens));
+        if(useSvdAve() && svdMatrixAve != null) 
+            v.add(svdSim(top.projectedAve, bottom.ave));
+        if(useSvdMinMax() && svdMatrixMinMax != null)
+            v.add(svdSim(top.projectedMinMax, bottom.minMax));
         if((selection == null || selection.topicDiff) && termDocuments != null)
             v.add(topicComplementDiff(top, bottom));
         if((selection == null || selection.relFreq) && termMap != null)
@@ -302,6 +398,126 @@ public class Features {
             v.add(wnIndirect(top, bottom));
         return v.toDoubleArray();
     }
+
+    private boolean useSvdAve() {
+        return (selection == null || selection.svdSimAve) && vectors != null;
+    }
+
+    private boolean useSvdMinMax() {
+        return (selection == null || selection.svdSimMinMax) && vectors != null;
+    }
+
+    /**
+     * Get the data of a single term that is used by the features. This is
+     * extracted on the first call for each term and then cached
+     *
+     * @param term The term
+     * @return The data of the term
+     */
+    public TermData termData(String term) {
+        TermData d = termData.get(term);
+        if (d == null) {
+            d = new TermData(term);
+            TermData d2 = termData.putIfAbsent(term, d);
+            if (d2 != null) {
+                d = d2;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * The average of the word vectors of a term
+     *
+     * @param term The term
+     * @return The vector or null if there are no word vectors for the term
+     */
+    float[] embedding(String term) {
+        if (vectors == null) {
+            return null;
+        }
+        final TermData d = termData(term);
+        return d.ave != null ? d.ave : vectorByAve(PrettyGoodTokenizer.tokenize(term));
+    }
+
+    /**
+     * The documents of each term
+     *
+     * @return The map from terms to document indexes or null if unknown
+     */
+    Map<String, IntSet> termDocuments() {
+        return termDocuments;
+    }
+
+    private int[] tokenIds(String[] tokens) {
+        int[] ids = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            Integer id = tokenIds.get(tokens[i]);
+            if (id == null) {
+                synchronized (tokenIds) {
+                    id = tokenIds.get(tokens[i]);
+                    if (id == null) {
+                        tokenIds.put(tokens[i], id = tokenIds.size());
+                    }
+                }
+            }
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    private int hypernymId(String term) {
+        return hypernymIndex == null ? -1 : hypernymIndex.id(term);
+    }
+
+    /**
+     * The data of a single term used in building features. This object is
+     * immutable
+     */
+    public final class TermData {
+        final String term;
+        // The ids of the tokens of the term
+        final int[] tokens;
+        // The sorted ids of the distinct tokens of the term
+        final int[] tokenSet;
+        final float[] ave, minMax;
+        final double[] projectedAve, projectedMinMax;
+        // The sorted ids of the documents containing the term
+        final int[] documents;
+        final double logFreq;
+        // The ids of the term and of its words in the hypernym index
+        final int hypernymId;
+        final int[] wordHypernymIds;
+
+        private TermData(String term) {
+            this.term = term;
+            final String[] tokenStrings = PrettyGoodTokenizer.tokenize(term);
+            this.tokens = tokenIds(tokenStrings);
+            int[] ts = tokens.clone();
+            Arrays.sort(ts);
+            int n = 0;
+            for (int i = 0; i < ts.length; i++) {
+                if (i == 0 || ts[i] != ts[i - 1]) {
+                    ts[n++] = ts[i];
+                }
+            }
+            this.tokenSet = Arrays.copyOf(ts, n);
+            this.ave = useSvdAve() ? vectorByAve(tokenStrings) : null;
+            this.minMax = useSvdMinMax() ? vectorMinMax(tokenStrings) : null;
+            this.projectedAve = project(svdMatrixAve, ave);
+            this.projectedMinMax = project(svdMatrixMinMax, minMax);
+            final IntSet docs = termDocuments == null ? null : termDocuments.get(term);
+            this.documents = docs == null ? null : new IntAVLTreeSet(docs).toIntArray();
+            final Term t = termMap == null ? null : termMap.get(term);
+            this.logFreq = t != null && t.getOccurrences() > 0 ? Math.log((double) t.getOccurrences()) : Double.NaN;
+            this.hypernymId = hypernymId(term);
+            final String[] words = term.split(" ");
+            this.wordHypernymIds = new int[words.length];
+            for (int i = 0; i < words.length; i++) {
+                wordHypernymIds[i] = hypernymId(words[i]);
+            }
+        }
+    }
     
     public String[] featureNames() {
         ArrayList<String> v = new ArrayList<>();
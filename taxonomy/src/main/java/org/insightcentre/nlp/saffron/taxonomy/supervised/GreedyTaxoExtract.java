@@ -21,22 +21,39 @@ import org.insightcentre.nlp.saffron.data.connections.DocumentTerm;
  */
 public class GreedyTaxoExtract {
 
-    private final SupervisedTaxo classifier;
+    private final BinaryRelationClassifier<String> classifier;
     private final int maxChildren;
+    private final int numThreads;
 
-    public GreedyTaxoExtract(SupervisedTaxo classifier, int maxChildren) {
+    public GreedyTaxoExtract(BinaryRelationClassifier<String> classifier, int maxChildren) {
+        this(classifier, maxChildren, 0);
+    }
+
+    /**
+     * Create a taxonomy extractor
+     * @param classifier The classifier of links
+     * @param maxChildren The maximum number of children of any node
+     * @param numThreads The number of threads used to score the links (0 or
+     * less to use all available processors)
+     */
+    public GreedyTaxoExtract(BinaryRelationClassifier<String> classifier, int maxChildren, int numThreads) {
         this.classifier = classifier;
         this.maxChildren = maxChildren;
+        this.numThreads = numThreads;
     }
 
     
     public Taxonomy extractTaxonomy(List<DocumentTerm> docTerms, Map<String, Term> termMap) {
+        final ScoreMatrix matrix = ScoreMatrix.compute(classifier, termMap.keySet(), numThreads);
+        final List<String> terms = matrix.terms();
         HashMap<String, List<ScoredString>> scoresByChild = new HashMap<>();
-        for(String t1 : termMap.keySet()) {
+        for(int i = 0; i < terms.size(); i++) {
+            final String t1 = terms.get(i);
             List<ScoredString> list = new ArrayList<>();
-            for(String t2 : termMap.keySet()) {
-                if(!t1.equals(t2)) {
-                    double score = classifier.predict(t2, t1);
+            for(int j = 0; j < terms.size(); j++) {
+                if(i != j) {
+                    final String t2 = terms.get(j);
+                    double score = matrix.get(j, i);
                     if(score > 0)
                         list.add(new ScoredString(t2, score));
                 }
@@ -20,23 +20,40 @@ import org.insightcentre.nlp.saffron.data.Taxonomy;
  * @author John McCrae
  */
 public class HeadAndBag {
-    private final SupervisedTaxo classifier;
+    private final BinaryRelationClassifier<String> classifier;
     private final double splitPenalty;
+    private final int numThreads;
 
-    public HeadAndBag(SupervisedTaxo classifier, double splitPenalty) {
+    public HeadAndBag(BinaryRelationClassifier<String> classifier, double splitPenalty) {
+        this(classifier, splitPenalty, 0);
+    }
+
+    /**
+     * Create a taxonomy extractor
+     * @param classifier The classifier of links
+     * @param splitPenalty The penalty for splitting a set of terms
+     * @param numThreads The number of threads used to score the links (0 or
+     * less to use all available processors)
+     */
+    public HeadAndBag(BinaryRelationClassifier<String> classifier, double splitPenalty, int numThreads) {
         this.classifier = classifier;
         this.splitPenalty = splitPenalty;
+        this.numThreads = numThreads;
     }
 
     
     public Taxonomy extractTaxonomy(Set<String> terms) {
      
+        final ScoreMatrix matrix = ScoreMatrix.compute(classifier, terms, numThreads);
+        final List<String> termList = matrix.terms();
         HashMap<String, List<ScoredString>> scoresByChild = new HashMap<>();
-        for(String t1 : terms) {
+        for(int i = 0; i < termList.size(); i++) {
+            final String t1 = termList.get(i);
             List<ScoredString> list = new ArrayList<>();
-            for(String t2 : terms) {
-                if(!t1.equals(t2)) {
-                    double score = classifier.predict(t2, t1);
+            for(int j = 0; j < termList.size(); j++) {
+                if(i != j) {
+                    final String t2 = termList.get(j);
+                    double score = matrix.get(j, i);
                     if(score > 0)
                         list.add(new ScoredString(t2, score));
                 }
@@ -0,0 +1,253 @@
+package org.insightcentre.nlp.saffron.taxonomy.supervised;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import libsvm.svm;
+import libsvm.svm_parameter;
+import libsvm.svm_problem;
+
+/**
+ * Search for the parameters of the SVM (kernel, C, gamma and the
+ * negative-sampling ratio) by cross-validation. The features of the training
+ * pairs are extracted once, by {@link Train#sampleInstances}, and each setting
+ * is evaluated on a thread pool. As the settings differ in their
+ * negative-sampling ratio, and so in the balance of their classes, they are
+ * ranked by balanced accuracy.
+ *
+ * @author John McCrae
+ */
+public class HyperparameterSearch {
+
+    private static final double[] GRID_C = {0.01, 0.1, 1, 10, 100};
+    private static final double[] GRID_GAMMA = {0.01, 0.1, 0.5, 1};
+    private static final double[] GRID_NEG_SAMPLING = {0.5, 1, 2};
+
+    /**
+     * A setting of the parameters
+     */
+    public static class Setting {
+
+        public final int kernelType;
+        public final double C;
+        public final double gamma;
+        public final double negSampling;
+
+        public Setting(int kernelType, double C, double gamma, double negSampling) {
+            this.kernelType = kernelType;
+            this.C = C;
+            this.gamma = gamma;
+            this.negSampling = negSampling;
+        }
+
+        /**
+         * Apply this setting to the parameters of the SVM
+         *
+         * @param param The parameters to change
+         */
+        public void apply(svm_parameter param) {
+            param.kernel_type = kernelType;
+            param.C = C;
+            param.gamma = gamma;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH, "Setting{kernel=%s, C=%g, gamma=%g, negSampling=%g}",
+                    kernelType == svm_parameter.LINEAR ? "linear" : "rbf", C, gamma, negSampling);
+        }
+    }
+
+    /**
+     * The cross-validated accuracy of a setting
+     */
+    public static class Result {
+
+        public final Setting setting;
+        public final double accuracy;
+        /**
+         * The mean of the accuracy on the positive and on the negative
+         * instances, which does not depend on the ratio of the classes
+         */
+        public final double balancedAccuracy;
+        public final long millis;
+
+        public Result(Setting setting, double accuracy, double balancedAccuracy, long millis) {
+            this.setting = setting;
+            this.accuracy = accuracy;
+            this.balancedAccuracy = balancedAccuracy;
+            this.millis = millis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH, "%s accuracy=%.4f balancedAccuracy=%.4f time=%dms",
+                    setting, accuracy, balancedAccuracy, millis);
+        }
+    }
+
+    /**
+     * The grid of settings: a linear kernel for each C and an RBF kernel for
+     * each C and gamma, each at a half, the same and twice the given
+     * negative-sampling ratio
+     *
+     * @param negSampling The configured negative-sampling ratio
+     * @return The settings
+     */
+    public static List<Setting> grid(double negSampling) {
+        final List<Setting> settings = new ArrayList<>();
+        for (double n : GRID_NEG_SAMPLING) {
+            for (double c : GRID_C) {
+                settings.add(new Setting(svm_parameter.LINEAR, c, 0.5, n * negSampling));
+                for (double g : GRID_GAMMA) {
+                    settings.add(new Setting(svm_parameter.RBF, c, g, n * negSampling));
+                }
+            }
+        }
+        return settings;
+    }
+
+    /**
+     * Settings drawn at random, with C and gamma drawn log-uniformly over the
+     * range of the grid and the negative-sampling ratio uniformly over the
+     * range of the grid
+     *
+     * @param negSampling The configured negative-sampling ratio
+     * @param trials The number of settings
+     * @param random The random number generator
+     * @return The settings
+     */
+    public static List<Setting> random(double negSampling, int trials, Random random) {
+        final List<Setting> settings = new ArrayList<>();
+        for (int i = 0; i < trials; i++) {
+            final int kernel = random.nextBoolean() ? svm_parameter.LINEAR : svm_parameter.RBF;
+            final double c = logUniform(GRID_C[0], GRID_C[GRID_C.length - 1], random);
+            final double g = logUniform(GRID_GAMMA[0], GRID_GAMMA[GRID_GAMMA.length - 1], random);
+            final double n = GRID_NEG_SAMPLING[0] + random.nextDouble()
+                    * (GRID_NEG_SAMPLING[GRID_NEG_SAMPLING.length - 1] - GRID_NEG_SAMPLING[0]);
+            settings.add(new Setting(kernel, c, g, n * negSampling));
+        }
+        return settings;
+    }
+
+    private static double logUniform(double min, double max, Random random) {
+        return Math.exp(Math.log(min) + random.nextDouble() * (Math.log(max) - Math.log(min)));
+    }
+
+    /**
+     * The largest negative-sampling ratio of some settings
+     *
+     * @param settings The settings
+     * @return The ratio for which the instances should be sampled
+     */
+    public static double maxNegSampling(List<Setting> settings) {
+        double max = 0.0;
+        for (Setting setting : settings) {
+            max = Math.max(max, setting.negSampling);
+        }
+        return max;
+    }
+
+    /**
+     * Evaluate each setting by cross-validation
+     *
+     * @param instances The training instances, sampled for the largest
+     * negative-sampling ratio of the settings
+     * @param settings The settings
+     * @param folds The number of folds
+     * @param numThreads The number of threads to use (0 or less to use all
+     * available processors)
+     * @return The result of each setting, in the order of the settings
+     */
+    public static List<Result> search(final Train.SampledInstances instances,
+            List<Setting> settings, final int folds, int numThreads) {
+        if (numThreads <= 0) {
+            numThreads = Runtime.getRuntime().availableProcessors();
+        }
+        final List<Callable<Result>> tasks = new ArrayList<>();
+        for (final Setting setting : settings) {
+            tasks.add(new Callable<Result>() {
+                @Override
+                public Result call() {
+                    return evaluate(instances, setting, folds);
+                }
+            });
+        }
+        final List<Result> results = new ArrayList<>();
+        final ExecutorService service = Executors.newFixedThreadPool(Math.max(1, Math.min(numThreads, tasks.size())));
+        try {
+            for (Future<Result> future : service.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException | ExecutionException x) {
+            throw new RuntimeException("Could not search parameters", x);
+        } finally {
+            service.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Evaluate a setting by cross-validation
+     *
+     * @param instances The training instances
+     * @param setting The setting
+     * @param folds The number of folds
+     * @return The accuracy of the setting
+     */
+    public static Result evaluate(Train.SampledInstances instances, Setting setting, int folds) {
+        final long start = System.currentTimeMillis();
+        final svm_problem prob = instances.toProblem(setting.negSampling);
+        final svm_parameter param = Train.makeParameters();
+        setting.apply(param);
+        // Probability estimates are not needed to measure the accuracy
+        param.probability = 0;
+        final double[] predicted = new double[prob.l];
+        svm.svm_cross_validation(prob, param, folds, predicted);
+        int positive = 0, truePositive = 0, trueNegative = 0;
+        for (int i = 0; i < prob.l; i++) {
+            if (prob.y[i] > 0) {
+                positive++;
+                if (predicted[i] == prob.y[i]) {
+                    truePositive++;
+                }
+            } else if (predicted[i] == prob.y[i]) {
+                trueNegative++;
+            }
+        }
+        final int negative = prob.l - positive;
+        final double balanced;
+        if (positive == 0 || negative == 0) {
+            balanced = prob.l == 0 ? 0.0 : (double) (truePositive + trueNegative) / prob.l;
+        } else {
+            balanced = ((double) truePositive / positive + (double) trueNegative / negative) / 2.0;
+        }
+        return new Result(setting, prob.l == 0 ? 0.0 : (double) (truePositive + trueNegative) / prob.l,
+                balanced, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * The result with the highest balanced accuracy, the earliest of equally
+     * accurate results. The raw accuracy would favour the settings with the
+     * most negative instances
+     *
+     * @param results The results
+     * @return The best result
+     */
+    public static Result best(List<Result> results) {
+        Result best = null;
+        for (Result result : results) {
+            if (best == null || result.balancedAccuracy > best.balancedAccuracy) {
+                best = result;
+            }
+        }
+        return best;
+    }
+}
@@ -1,13 +1,17 @@
 package org.insightcentre.nlp.saffron.taxonomy.supervised;
 
-import com.google.common.collect.ImmutableMap;
-import edu.cmu.cs.ark.cle.Arborescence;
-import edu.cmu.cs.ark.cle.ChuLiuEdmonds;
-import edu.cmu.cs.ark.cle.graph.DenseWeightedGraph;
-import edu.cmu.cs.ark.cle.graph.WeightedGraph;
-import edu.cmu.cs.ark.cle.util.Weighted;
+import edu.cmu.cs.ark.cle.IntChuLiuEdmonds;
+import edu.cmu.cs.ark.cle.graph.IntWeightedGraph;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -16,32 +20,83 @@ import org.insightcentre.nlp.saffron.data.Status;
 import org.insightcentre.nlp.saffron.data.TaxoLink;
 import org.insightcentre.nlp.saffron.data.Taxonomy;
 import org.insightcentre.nlp.saffron.data.Term;
+import org.insightcentre.nlp.saffron.taxonomy.search.CandidateParents;
 import org.insightcentre.nlp.saffron.taxonomy.search.TaxonomySearch;
 /**
- * Extract a taxonomy by using a MST
+ * Extract a taxonomy by using a MST. The graph only holds the edges that may
+ * be chosen: whitelisted links are forced by removing all other edges into
+ * their bottom term and blacklisted links are removed, so with candidate
+ * parents the memory used is proportional to the number of candidates.
+ * Without candidate parents the edges are read from the dense score matrix
+ * and are not copied, and a dense matrix given as the classifier is used
+ * without scoring the pairs again. The arborescence is found over int node
+ * ids by {@link IntChuLiuEdmonds}.
  * @author John McCrae &lt;john@mccr.ae&gt;
  */
 public class MSTTaxoExtract implements TaxonomySearch {
     
     
-    private final SupervisedTaxo classifier;
+    private final BinaryRelationClassifier<String> classifier;
+    private final int numThreads;
+    private final CandidateParents candidateParents;
 
-    public MSTTaxoExtract(SupervisedTaxo classifier) {
+    public MSTTaxoExtract(BinaryRelationClassifier<String> classifier) {
+        this(classifier, 0);
+    }
+
+    /**
+     * Create an MST taxonomy extractor
+     * @param classifier The classifier of links
+     * @param numThreads The number of threads used to score the links (0 or
+     * less to use all available processors)
+     */
+    public MSTTaxoExtract(BinaryRelationClassifier<String> classifier, int numThreads) {
+        this(classifier, numThreads, null);
+    }
+
+    /**
+     * Create an MST taxonomy extractor that only scores the links from each
+     * term to its candidate parents
+     * @param classifier The classifier of links
+     * @param numThreads The number of threads used to score the links (0 or
+     * less to use all available processors)
+     * @param candidateParents The candidate parents of each term or null to
+     * score every pair of terms
+     */
+    public MSTTaxoExtract(BinaryRelationClassifier<String> classifier, int numThreads,
+            CandidateParents candidateParents) {
         this.classifier = classifier;
+        this.numThreads = numThreads;
+        this.candidateParents = candidateParents;
     }
 
     @Override
-    public Taxonomy extractTaxonomy(Map<String, Term> termMap) {
-        final ArrayList<String> terms = new ArrayList<>(termMap.keySet());
-        final double[][] matrix = new double[terms.size()][terms.size()];
+    public Taxonomy extractTaxonomyWithBlackWhiteList(Map<String, Term> termMap,
+            Set<TaxoLink> whiteList, Set<TaxoLink> blackList) {
+        // A whitelisted link is forced by removing all other edges into its
+        // bottom. If a term has several whitelisted parents the first is used
+        final Map<String, String> forcedParents = new HashMap<>();
+        for(TaxoLink link : whiteList) {
+            if(termMap.containsKey(link.getTop()) && termMap.containsKey(link.getBottom())
+                    && !forcedParents.containsKey(link.getBottom())) {
+                forcedParents.put(link.getBottom(), link.getTop());
+            }
+        }
+        final Map<String, Set<String>> bannedParents = new HashMap<>();
+        for(TaxoLink link : blackList) {
+            if(!bannedParents.containsKey(link.getBottom())) {
+                bannedParents.put(link.getBottom(), new HashSet<String>());
+            }
+            bannedParents.get(link.getBottom()).add(link.getTop());
+        }
+
         String topNode = null;
-                
         double bestScore = Double.NEGATIVE_INFINITY;
         int bestOcc = Integer.MIN_VALUE;
-        for(int i = 0; i < terms.size(); i++) {
-            Term t1 = termMap.get(terms.get(i));
-            for(int j = 0; j < terms.size(); j++) {
-                matrix[i][j] = i == j ? 0 : classifier.predict(terms.get(i), terms.get(j));
+        for(String term : termMap.keySet()) {
+            Term t1 = termMap.get(term);
+            if(forcedParents.containsKey(term)) {
+                continue;
             }
             if(t1.getScore() > bestScore || (t1.getScore() == bestScore && t1.getOccurrences() > bestOcc)) {
                 bestScore = t1.getScore();
@@ -49,51 +104,121 @@ public class MSTTaxoExtract implements TaxonomySearch {
                 topNode = t1.getString();
             }
         }
-        System.err.println("Built graph");
-        WeightedGraph<String> graph = DenseWeightedGraph.from(terms, matrix);
-        
         if(topNode == null) {
             throw new IllegalArgumentException("No terms for taxonomy construction");
         }
+
+        final ScoreMatrix matrix;
+        if(candidateParents == null && isDense(classifier, termMap.keySet())) {
+            matrix = (ScoreMatrix)classifier;
+        } else if(candidateParents == null) {
+            matrix = ScoreMatrix.compute(classifier, termMap.keySet(), numThreads);
+        } else {
+            // The top node is a candidate parent of every term so that the
+            // arborescence spans all the terms, and the whitelisted links
+            // are always scored
+            final List<TaxoLink> links = new ArrayList<>(whiteList);
+            for(String term : termMap.keySet()) {
+                if(!term.equals(topNode)) {
+                    links.add(new TaxoLink(topNode, term));
+                }
+            }
+            matrix = ScoreMatrix.compute(classifier, termMap.keySet(),
+                    candidateParents.withLinks(links), numThreads);
+        }
+        final List<String> terms = matrix.terms();
+        final int root = matrix.indexOf(topNode);
+        // The forced parent and banned parents of each term by index
+        final int[] forced = new int[terms.size()];
+        Arrays.fill(forced, -1);
+        for(Map.Entry<String, String> e : forcedParents.entrySet()) {
+            forced[matrix.indexOf(e.getKey())] = matrix.indexOf(e.getValue());
+        }
+        final IntSet[] banned = new IntSet[terms.size()];
+        for(Map.Entry<String, Set<String>> e : bannedParents.entrySet()) {
+            final int j = matrix.indexOf(e.getKey());
+            if(j >= 0) {
+                banned[j] = new IntOpenHashSet();
+                for(String top : e.getValue()) {
+                    final int i = matrix.indexOf(top);
+                    if(i >= 0) {
+                        banned[j].add(i);
+                    }
+                }
+            }
+        }
+        final IntWeightedGraph graph;
+        if(!matrix.isSparse()) {
+            graph = IntWeightedGraph.dense(terms.size(), new IntWeightedGraph.Weights() {
+                @Override
+                public double weight(int i, int j) {
+                    return isEdge(i, j, root, forced, banned)
+                            ? matrix.get(i, j) : Double.NEGATIVE_INFINITY;
+                }
+            });
+        } else {
+            final IntList sources = new IntArrayList(), destinations = new IntArrayList();
+            final DoubleList weights = new DoubleArrayList();
+            for(int j = 0; j < terms.size(); j++) {
+                for(int i : matrix.parents(j)) {
+                    if(isEdge(i, j, root, forced, banned)) {
+                        sources.add(i);
+                        destinations.add(j);
+                        weights.add(matrix.get(i, j));
+                    }
+                }
+            }
+            System.err.println("Built graph with " + sources.size() + " edges");
+            graph = IntWeightedGraph.from(terms.size(), sources.toIntArray(),
+                    destinations.toIntArray(), weights.toDoubleArray());
+        }
         System.err.println("Starting Chu-Liu Edmonds");
-        final Weighted<Arborescence<String>> arbor = ChuLiuEdmonds.getMaxArborescence(graph, topNode);
+        final int[] arbor = IntChuLiuEdmonds.getMaxArborescence(graph, root).val;
         System.err.println("Finished... building taxonomy");
-        return buildTaxo(topNode, arbor, termMap, null, terms, matrix);        
-    }
-
-    @Override
-    public Taxonomy extractTaxonomyWithBlackWhiteList(Map<String, Term> termMap, Set<TaxoLink> whiteList, Set<TaxoLink> blackList) {
-        throw new UnsupportedOperationException("Not supported yet.");
-    }
 
-    
-    
-    private Taxonomy buildTaxo(String node, Weighted<Arborescence<String>> arbor,
-            Map<String, Term> termMap, String parent,
-            ArrayList<String> term, double[][] matrix) {
         Map<String,List<String>> invertedArbor = new HashMap<>();
-        for(ImmutableMap.Entry<String,String> e : arbor.val.parents.entrySet()) {
-            if(!invertedArbor.containsKey(e.getValue())) {
-                invertedArbor.put(e.getValue(), new ArrayList<String>());
+        for(int j = 0; j < terms.size(); j++) {
+            // Only if the blacklist removes all the edges into a term does it
+            // have no parent, then it is attached to the root
+            final String parent = j == root ? null : terms.get(arbor[j] < 0 ? root : arbor[j]);
+            final String term = terms.get(j);
+            if(parent != null) {
+                if(!invertedArbor.containsKey(parent)) {
+                    invertedArbor.put(parent, new ArrayList<String>());
+                }
+                invertedArbor.get(parent).add(term);
             }
-            invertedArbor.get(e.getValue()).add(e.getKey());
         }
-        
-        return buildTaxo(node, invertedArbor, termMap, parent, term, matrix);
+        return buildTaxo(topNode, invertedArbor, termMap, null, forcedParents, matrix);
     }
     
+    private static boolean isDense(BinaryRelationClassifier<String> classifier, Set<String> terms) {
+        if(!(classifier instanceof ScoreMatrix)) {
+            return false;
+        }
+        final ScoreMatrix matrix = (ScoreMatrix)classifier;
+        return !matrix.isSparse() && matrix.size() == terms.size()
+                && terms.stream().allMatch(t -> matrix.indexOf(t) >= 0);
+    }
+
+    private static boolean isEdge(int i, int j, int root, int[] forced, IntSet[] banned) {
+        return i != j && j != root && (forced[j] >= 0 ? forced[j] == i
+                : banned[j] == null || !banned[j].contains(i));
+    }
+
     private Taxonomy buildTaxo(String node, Map<String, List<String>> tree,
-            Map<String, Term> termMap, String parent,
-            ArrayList<String> term, double[][] matrix) {
+            Map<String, Term> termMap, String parent, Map<String, String> forcedParents,
+            ScoreMatrix matrix) {
         List<Taxonomy> children = new ArrayList<>();
         List<String> edges = tree.get(node);
         if(edges != null) {
             for(String s : edges) {
-                children.add(buildTaxo(s, tree, termMap, parent, term, matrix));
+                children.add(buildTaxo(s, tree, termMap, node, forcedParents, matrix));
             }
         }
-        double linkScore = parent == null ? Double.NaN : matrix[term.indexOf(parent)][term.indexOf(node)];
-        return new Taxonomy(node, termMap.get(node).getScore(), linkScore, children, Status.none);
+        double linkScore = parent == null ? Double.NaN : matrix.predict(parent, node);
+        Status status = parent != null && parent.equals(forcedParents.get(node)) ? Status.accepted : Status.none;
+        return new Taxonomy(node, termMap.get(node).getScore(), linkScore, children, status);
     }
     
     /*public Taxonomy extractTaxonomy(List<DocumentTopic> docTopics, Map<String, Topic> topicMap) {
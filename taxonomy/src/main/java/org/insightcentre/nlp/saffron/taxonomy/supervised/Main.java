@@ -39,6 +39,7 @@ public class Main {
                     accepts("d", "The document term alignment").withRequiredArg().ofType(File.class);
                     accepts("t", "The terms to load").withRequiredArg().ofType(File.class);
                     accepts("o", "Where to write the output taxonomy").withRequiredArg().ofType(File.class);
+                    accepts("s", "A file that caches the scores of pairs of terms between runs").withRequiredArg().ofType(File.class);
                 }
             };
             final OptionSet os;
@@ -83,8 +84,17 @@ public class Main {
             Model model = mapper.readValue(config.taxonomy.modelFile.toFile(), Model.class);
 
             SupervisedTaxo supTaxo = new SupervisedTaxo(docTerms, termMap, model);
+            final File scoreCacheFile = (File) os.valueOf("s");
+            final PairScoreCache scoreCache = scoreCacheFile == null ? null
+                    : PairScoreCache.load(scoreCacheFile, SupervisedTaxo.fingerprint(model, docTerms, termMap), 1);
+            if (scoreCache != null) {
+                supTaxo = supTaxo.withCache(scoreCache);
+            }
             TaxonomySearch search = TaxonomySearch.create(config.taxonomy.search, supTaxo, termMap.keySet());
             final Taxonomy graph = search.extractTaxonomy(termMap);
+            if (scoreCache != null && scoreCache.isModified()) {
+                scoreCache.write(scoreCacheFile);
+            }
 
             mapper.writerWithDefaultPrettyPrinter().writeValue(output, graph);
 
@@ -16,6 +16,7 @@ import org.insightcentre.nlp.saffron.data.SaffronPath;
 import org.insightcentre.nlp.saffron.data.Term;
 import org.insightcentre.nlp.saffron.data.connections.DocumentTerm;
 import org.insightcentre.nlp.saffron.taxonomy.classifiers.BERTBasedRelationClassifier;
+import org.insightcentre.nlp.saffron.taxonomy.search.CandidateParents;
 import org.insightcentre.nlp.saffron.taxonomy.search.KGSearch;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -41,6 +42,7 @@ public class MainKG {
                     accepts("d", "The document term alignment").withRequiredArg().ofType(File.class);
                     accepts("t", "The terms to load").withRequiredArg().ofType(File.class);
                     accepts("o", "Where to write the output knowledge graph").withRequiredArg().ofType(File.class);
+                    accepts("s", "A file that caches the scores of pairs of terms between runs").withRequiredArg().ofType(File.class);
                 }
             };
             final OptionSet os;
@@ -85,12 +87,34 @@ public class MainKG {
 
             Map<String, Term> termMap = loadMap(terms, mapper, new DefaultSaffronListener());
             
-            BERTBasedRelationClassifier relationClassifier = new BERTBasedRelationClassifier(config.kg.kerasModelFile.getResolvedPath(), config.kg.bertModelFile.getResolvedPath());
+            // Closing the classifier releases its embedding store
+            try (BERTBasedRelationClassifier bert = new BERTBasedRelationClassifier(config.kg.kerasModelFile.getResolvedPath(), config.kg.bertModelFile.getResolvedPath(),
+                    config.taxonomy.search.numThreads,
+                    config.kg.embeddingStore == null ? null : config.kg.embeddingStore.getResolvedPath())) {
+                MulticlassRelationClassifier<String> relationClassifier = bert;
+
+                final File scoreCacheFile = (File) os.valueOf("s");
+                final PairScoreCache scoreCache = scoreCacheFile == null ? null
+                        : PairScoreCache.load(scoreCacheFile, CachedRelationClassifier.fingerprint(
+                                config.kg.kerasModelFile.toFile(), config.kg.bertModelFile.toFile()),
+                                CachedRelationClassifier.width());
+                if (scoreCache != null) {
+                    relationClassifier = new CachedRelationClassifier(relationClassifier, scoreCache);
+                }
 
-            KGSearch search = KGSearch.create(config.taxonomy.search, config.kg, relationClassifier, termMap.keySet());
-            final KnowledgeGraph graph = search.extractKnowledgeGraph(termMap);
+                final CandidateParents candidates = config.taxonomy.search.candidateParents > 0
+                        ? new CandidateGenerator(config.taxonomy.search.candidateParents, null,
+                                Train.indexDocTerms(docTerms)).generate(termMap.keySet())
+                        : null;
+                KGSearch search = KGSearch.create(config.taxonomy.search, config.kg, relationClassifier, termMap.keySet(),
+                        candidates, new DefaultSaffronListener());
+                final KnowledgeGraph graph = search.extractKnowledgeGraph(termMap);
+                if (scoreCache != null && scoreCache.isModified()) {
+                    scoreCache.write(scoreCacheFile);
+                }
 
-            mapper.writerWithDefaultPrettyPrinter().writeValue(output, graph);
+                mapper.writerWithDefaultPrettyPrinter().writeValue(output, graph);
+            }
 
         } catch (Exception x) {
             x.printStackTrace();
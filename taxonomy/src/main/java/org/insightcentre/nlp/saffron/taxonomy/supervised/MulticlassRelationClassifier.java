@@ -1,5 +1,7 @@
 package org.insightcentre.nlp.saffron.taxonomy.supervised;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import org.insightcentre.nlp.saffron.data.TypedLink;
@@ -25,5 +27,27 @@ public interface MulticlassRelationClassifier<T> {
 	 * key: relation label, value: probability
 	 */
 	public Map<TypedLink.Type, Double> predict(T source, T target);
-	
+
+	/**
+	 * Predict the relationship between many pairs of nodes at once.
+	 * Implementations may override this to batch the work done for the
+	 * pairs.
+	 *
+	 * @param sources The source nodes
+	 * @param targets The target nodes, of the same length as sources
+	 *
+	 * @return The probabilities of the relationships between sources[i]
+	 * and targets[i], for each i
+	 */
+	public default List<Map<TypedLink.Type, Double>> predictAll(List<T> sources, List<T> targets) {
+		if (sources.size() != targets.size()) {
+			throw new IllegalArgumentException("Sources and targets must have the same length");
+		}
+		List<Map<TypedLink.Type, Double>> result = new ArrayList<>(sources.size());
+		for(int i = 0; i < sources.size(); i++) {
+			result.add(predict(sources.get(i), targets.get(i)));
+		}
+		return result;
+	}
+
 }
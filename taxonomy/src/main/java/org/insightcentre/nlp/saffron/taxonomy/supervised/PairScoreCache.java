@@ -0,0 +1,405 @@
+package org.insightcentre.nlp.saffron.taxonomy.supervised;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * The scores of pairs of terms computed by a classifier, which can be saved
+ * with the output of a run so that a rerun only computes the scores of the
+ * pairs it has not seen before. Each pair has a fixed number of scores (one
+ * for a taxonomy and one per relation type for a knowledge graph). The cache
+ * is keyed by a fingerprint of the model and of the inputs of its features,
+ * so that the scores are discarded if either changes. The cache may be read and updated from several threads.
+ * The cache holds at most a fixed number of pairs; once it is full the scores
+ * of further pairs are not kept.
+ *
+ * The file consists of the magic bytes "SAFPSC01", the fingerprint (long),
+ * the number of scores per pair (int), the number of terms (int) followed by
+ * each term (as modified UTF-8), the number of pairs (int) followed by the
+ * index of the source and target term (int) and the scores (double) of each
+ * pair.
+ *
+ * @author John McCrae
+ */
+public class PairScoreCache {
+
+    private static final byte[] MAGIC = "SAFPSC01".getBytes(StandardCharsets.US_ASCII);
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * The default number of pairs that a cache holds (about 100MB for a
+     * taxonomy)
+     */
+    public static final int DEFAULT_MAX_PAIRS = 1 << 22;
+
+    private final long fingerprint;
+    private final int width;
+    private final int maxPairs;
+    private final List<String> terms = new ArrayList<>();
+    private final Object2IntMap<String> termIds = new Object2IntOpenHashMap<>();
+    private final Long2IntMap rows = new Long2IntOpenHashMap();
+    private final DoubleArrayList values = new DoubleArrayList();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean modified = false;
+
+    /**
+     * Create an empty cache
+     *
+     * @param fingerprint The fingerprint of the model that computes the
+     * scores
+     * @param width The number of scores of each pair
+     */
+    public PairScoreCache(long fingerprint, int width) {
+        this(fingerprint, width, DEFAULT_MAX_PAIRS);
+    }
+
+    /**
+     * Create an empty cache
+     *
+     * @param fingerprint The fingerprint of the model that computes the
+     * scores
+     * @param width The number of scores of each pair
+     * @param maxPairs The maximum number of pairs held by the cache
+     */
+    public PairScoreCache(long fingerprint, int width, int maxPairs) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("Width must be positive");
+        }
+        if (maxPairs < 0 || (long) maxPairs * width > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many pairs for the width");
+        }
+        this.fingerprint = fingerprint;
+        this.width = width;
+        this.maxPairs = maxPairs;
+        termIds.defaultReturnValue(-1);
+        rows.defaultReturnValue(-1);
+    }
+
+    /**
+     * Compute the fingerprint of a model from its description
+     *
+     * @param parts The parts of the description of the model (e.g., its
+     * serialization or the paths and modification times of its files)
+     * @return The fingerprint
+     */
+    public static long fingerprint(String... parts) {
+        long h = FNV_OFFSET;
+        for (String part : parts) {
+            for (byte b : String.valueOf(part).getBytes(StandardCharsets.UTF_8)) {
+                h = (h ^ (b & 0xff)) * FNV_PRIME;
+            }
+            // Separate the parts so that ("ab","c") differs from ("a","bc")
+            h = (h ^ 0xff) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * Load a cache from a file. If the file does not exist or was computed by
+     * a different model an empty cache is returned
+     *
+     * @param file The file
+     * @param fingerprint The fingerprint of the current model
+     * @param width The number of scores of each pair
+     * @return The cache
+     * @throws IOException If the file could not be read
+     */
+    public static PairScoreCache load(File file, long fingerprint, int width) throws IOException {
+        return load(file, fingerprint, width, DEFAULT_MAX_PAIRS);
+    }
+
+    /**
+     * Load a cache from a file. If the file does not exist or was computed by
+     * a different model an empty cache is returned
+     *
+     * @param file The file
+     * @param fingerprint The fingerprint of the current model
+     * @param width The number of scores of each pair
+     * @param maxPairs The maximum number of pairs held by the cache, the
+     * pairs after these in the file are not loaded
+     * @return The cache
+     * @throws IOException If the file could not be read
+     */
+    public static PairScoreCache load(File file, long fingerprint, int width, int maxPairs) throws IOException {
+        final PairScoreCache cache = new PairScoreCache(fingerprint, width, maxPairs);
+        if (!file.exists()) {
+            return cache;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            final byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(file + " is not a score cache");
+            }
+            if (in.readLong() != fingerprint || in.readInt() != width) {
+                // The model has changed so the scores are not valid
+                return cache;
+            }
+            final int numTerms = in.readInt();
+            for (int i = 0; i < numTerms; i++) {
+                cache.termId(in.readUTF());
+            }
+            final int numPairs = Math.min(in.readInt(), maxPairs);
+            cache.values.ensureCapacity(numPairs * width);
+            for (int i = 0; i < numPairs; i++) {
+                final int source = in.readInt(), target = in.readInt();
+                if (source < 0 || source >= numTerms || target < 0 || target >= numTerms) {
+                    throw new IOException(file + " is corrupt");
+                }
+                cache.rows.put(pair(source, target), i);
+                for (int j = 0; j < width; j++) {
+                    cache.values.add(in.readDouble());
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Write this cache to a file. The file is replaced only once the cache has
+     * been written
+     *
+     * @param file The file
+     * @throws IOException If the file could not be written
+     */
+    public void write(File file) throws IOException {
+        final File tmp = new File(file.getPath() + ".tmp");
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.write(MAGIC);
+            out.writeLong(fingerprint);
+            out.writeInt(width);
+            out.writeInt(terms.size());
+            for (String term : terms) {
+                out.writeUTF(term);
+            }
+            out.writeInt(rows.size());
+            for (Long2IntMap.Entry e : rows.long2IntEntrySet()) {
+                out.writeInt((int) (e.getLongKey() >>> 32));
+                out.writeInt((int) e.getLongKey());
+                final int offset = e.getIntValue() * width;
+                for (int j = 0; j < width; j++) {
+                    out.writeDouble(values.getDouble(offset + j));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException x) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        lock.writeLock().lock();
+        try {
+            modified = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static long pair(int source, int target) {
+        return ((long) source << 32) | (target & 0xffffffffL);
+    }
+
+    // Must hold the write lock (or be loading)
+    private int termId(String term) {
+        int id = termIds.getInt(term);
+        if (id < 0) {
+            id = terms.size();
+            terms.add(term);
+            termIds.put(term, id);
+        }
+        return id;
+    }
+
+    /**
+     * Look up the scores of a pair
+     *
+     * @param source The source term
+     * @param target The target term
+     * @param scores The array the scores are copied to
+     * @return True if the pair was in the cache
+     */
+    public boolean get(String source, String target, double[] scores) {
+        lock.readLock().lock();
+        try {
+            final int s = termIds.getInt(source), t = termIds.getInt(target);
+            if (s < 0 || t < 0) {
+                return false;
+            }
+            final int row = rows.get(pair(s, t));
+            if (row < 0) {
+                return false;
+            }
+            values.getElements(row * width, scores, 0, width);
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Add the scores of a pair to the cache
+     *
+     * @param source The source term
+     * @param target The target term
+     * @param scores The scores of the pair
+     */
+    public void put(String source, String target, double[] scores) {
+        if (scores.length != width) {
+            throw new IllegalArgumentException("Expected " + width + " scores");
+        }
+        lock.writeLock().lock();
+        try {
+            store(source, target, scores, 0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add the scores of many pairs to the cache at once
+     *
+     * @param sources The source term of each pair
+     * @param targets The target term of each pair
+     * @param scores The scores of each pair
+     */
+    public void putAll(List<String> sources, List<String> targets, List<double[]> scores) {
+        if (sources.size() != targets.size() || sources.size() != scores.size()) {
+            throw new IllegalArgumentException("Sources, targets and scores must have the same length");
+        }
+        for (double[] s : scores) {
+            if (s.length != width) {
+                throw new IllegalArgumentException("Expected " + width + " scores");
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < sources.size(); i++) {
+                store(sources.get(i), targets.get(i), scores.get(i), 0);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add the scores of every pair of a block of sources and targets to a
+     * cache with one score per pair
+     *
+     * @param sources The sources
+     * @param targets The targets
+     * @param scores The score of each source (row) and target (column)
+     */
+    public void putBlock(List<String> sources, List<String> targets, double[][] scores) {
+        if (width != 1) {
+            throw new IllegalStateException("A block can only be added to a cache with one score per pair");
+        }
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < sources.size(); i++) {
+                for (int j = 0; j < targets.size(); j++) {
+                    store(sources.get(i), targets.get(j), scores[i], j);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Must hold the write lock
+    private void store(String source, String target, double[] scores, int offset) {
+        final int s = termIds.getInt(source), t = termIds.getInt(target);
+        final int row = s < 0 || t < 0 ? -1 : rows.get(pair(s, t));
+        if (row >= 0) {
+            for (int j = 0; j < width; j++) {
+                values.set(row * width + j, scores[offset + j]);
+            }
+        } else if (rows.size() < maxPairs) {
+            rows.put(pair(termId(source), termId(target)), values.size() / width);
+            values.addElements(values.size(), scores, offset, width);
+        } else {
+            return;
+        }
+        modified = true;
+    }
+
+    /**
+     * The fingerprint of the model that computed the scores
+     *
+     * @return The fingerprint
+     */
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * The number of scores of each pair
+     *
+     * @return The width
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * The maximum number of pairs in the cache
+     *
+     * @return The maximum number of pairs
+     */
+    public int maxPairs() {
+        return maxPairs;
+    }
+
+    /**
+     * The number of pairs in the cache
+     *
+     * @return The number of pairs
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rows.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Check if scores were added since the cache was loaded or written
+     *
+     * @return True if the cache should be written
+     */
+    public boolean isModified() {
+        lock.readLock().lock();
+        try {
+            return modified;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
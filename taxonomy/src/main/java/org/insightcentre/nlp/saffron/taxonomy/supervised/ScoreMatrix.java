@@ -0,0 +1,258 @@
+package org.insightcentre.nlp.saffron.taxonomy.supervised;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.insightcentre.nlp.saffron.taxonomy.search.CandidateParents;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * The scores of a classifier for every pair of a set of terms, or for each
+ * term and its candidate parents. The matrix is computed once, in blocks that
+ * are scored in parallel, and can then be used in place of the classifier by
+ * the taxonomy algorithms. Pairs of terms that are not in the matrix are
+ * passed to the classifier.
+ *
+ * @author John McCrae
+ */
+public class ScoreMatrix implements BinaryRelationClassifier<String> {
+
+    private static final int BLOCK_SIZE = 64;
+
+    private final BinaryRelationClassifier<String> classifier;
+    private final List<String> terms;
+    private final Object2IntMap<String> index;
+    // The dense scores indexed by top and then bottom or null if sparse
+    private final double[][] scores;
+    // The sorted indexes of the candidate parents of each term and their
+    // scores or null if dense
+    private final int[][] parents;
+    private final double[][] parentScores;
+
+    private ScoreMatrix(BinaryRelationClassifier<String> classifier, List<String> terms,
+            Object2IntMap<String> index, double[][] scores, int[][] parents,
+            double[][] parentScores) {
+        this.classifier = classifier;
+        this.terms = terms;
+        this.index = index;
+        this.scores = scores;
+        this.parents = parents;
+        this.parentScores = parentScores;
+    }
+
+    private static Object2IntMap<String> index(List<String> termList) {
+        final Object2IntMap<String> index = new Object2IntOpenHashMap<>();
+        index.defaultReturnValue(-1);
+        for (int i = 0; i < termList.size(); i++) {
+            index.put(termList.get(i), i);
+        }
+        return index;
+    }
+
+    /**
+     * Compute the scores of all pairs of terms
+     *
+     * @param classifier The classifier
+     * @param terms The terms
+     * @param numThreads The number of threads to use (0 or less to use all
+     * available processors)
+     * @return The matrix of scores, where the score of a term with itself is
+     * zero
+     */
+    public static ScoreMatrix compute(final BinaryRelationClassifier<String> classifier,
+            Collection<String> terms, int numThreads) {
+        final List<String> termList = Collections.unmodifiableList(new ArrayList<>(terms));
+        final Object2IntMap<String> index = index(termList);
+        final int n = termList.size();
+        final double[][] scores = new double[n][n];
+        final List<Callable<Void>> blocks = new ArrayList<>();
+        for (int i = 0; i < n; i += BLOCK_SIZE) {
+            for (int j = 0; j < n; j += BLOCK_SIZE) {
+                final int i0 = i, j0 = j;
+                final int i1 = Math.min(n, i + BLOCK_SIZE), j1 = Math.min(n, j + BLOCK_SIZE);
+                blocks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        double[][] block = classifier.predictBlock(termList.subList(i0, i1),
+                                termList.subList(j0, j1));
+                        for (int k = i0; k < i1; k++) {
+                            System.arraycopy(block[k - i0], 0, scores[k], j0, j1 - j0);
+                            if (k >= j0 && k < j1) {
+                                scores[k][k] = 0.0;
+                            }
+                        }
+                        return null;
+                    }
+                });
+            }
+        }
+        run(blocks, numThreads);
+        return new ScoreMatrix(classifier, termList, index, scores, null, null);
+    }
+
+    /**
+     * Compute the scores of each term and its candidate parents. The scores
+     * of other pairs are obtained from the classifier when requested
+     *
+     * @param classifier The classifier
+     * @param terms The terms
+     * @param candidates The candidate parents of each term
+     * @param numThreads The number of threads to use (0 or less to use all
+     * available processors)
+     * @return The sparse matrix of scores
+     */
+    public static ScoreMatrix compute(final BinaryRelationClassifier<String> classifier,
+            Collection<String> terms, final CandidateParents candidates, int numThreads) {
+        final List<String> termList = Collections.unmodifiableList(new ArrayList<>(terms));
+        final Object2IntMap<String> index = index(termList);
+        final int n = termList.size();
+        final int[][] parents = new int[n][];
+        final double[][] parentScores = new double[n][];
+        final List<Callable<Void>> blocks = new ArrayList<>();
+        for (int i = 0; i < n; i += BLOCK_SIZE) {
+            final int i0 = i, i1 = Math.min(n, i + BLOCK_SIZE);
+            blocks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int j = i0; j < i1; j++) {
+                        final IntList p = new IntArrayList();
+                        for (String parent : candidates.parents(termList.get(j))) {
+                            final int k = index.getInt(parent);
+                            if (k >= 0 && k != j) {
+                                p.add(k);
+                            }
+                        }
+                        final int[] ps = p.toIntArray();
+                        Arrays.sort(ps);
+                        final List<String> parentTerms = new ArrayList<>(ps.length);
+                        for (int k : ps) {
+                            parentTerms.add(termList.get(k));
+                        }
+                        final double[][] column = classifier.predictBlock(parentTerms,
+                                Collections.singletonList(termList.get(j)));
+                        parentScores[j] = new double[ps.length];
+                        for (int k = 0; k < ps.length; k++) {
+                            parentScores[j][k] = column[k][0];
+                        }
+                        parents[j] = ps;
+                    }
+                    return null;
+                }
+            });
+        }
+        run(blocks, numThreads);
+        return new ScoreMatrix(classifier, termList, index, null, parents, parentScores);
+    }
+
+    private static void run(List<Callable<Void>> blocks, int numThreads) {
+        if (numThreads <= 0) {
+            numThreads = Runtime.getRuntime().availableProcessors();
+        }
+        if (numThreads == 1 || blocks.size() <= 1) {
+            for (Callable<Void> block : blocks) {
+                try {
+                    block.call();
+                } catch (Exception x) {
+                    throw new RuntimeException("Could not compute scores", x);
+                }
+            }
+        } else {
+            final ExecutorService service = Executors.newFixedThreadPool(Math.min(numThreads, blocks.size()));
+            try {
+                for (Future<Void> future : service.invokeAll(blocks)) {
+                    future.get();
+                }
+            } catch (InterruptedException | ExecutionException x) {
+                throw new RuntimeException("Could not compute scores", x);
+            } finally {
+                service.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * The terms of this matrix in the order of their indexes
+     *
+     * @return The list of terms
+     */
+    public List<String> terms() {
+        return terms;
+    }
+
+    /**
+     * The number of terms in this matrix
+     *
+     * @return The number of terms
+     */
+    public int size() {
+        return terms.size();
+    }
+
+    /**
+     * The index of a term in this matrix
+     *
+     * @param term The term
+     * @return The index or -1 if the term is not in the matrix
+     */
+    public int indexOf(String term) {
+        return index.getInt(term);
+    }
+
+    /**
+     * Check if this matrix only holds the scores of candidate parents
+     *
+     * @return True if the matrix is sparse
+     */
+    public boolean isSparse() {
+        return scores == null;
+    }
+
+    /**
+     * Get the score of a pair of terms by their indexes
+     *
+     * @param top The index of the top term
+     * @param bottom The index of the bottom term
+     * @return The score
+     */
+    public double get(int top, int bottom) {
+        if (scores != null) {
+            return scores[top][bottom];
+        }
+        final int k = Arrays.binarySearch(parents[bottom], top);
+        return k >= 0 ? parentScores[bottom][k] : classifier.predict(terms.get(top), terms.get(bottom));
+    }
+
+    /**
+     * The indexes of the parents of a term that are stored in this matrix
+     *
+     * @param bottom The index of the term
+     * @return The indexes of the parents in ascending order or null if the
+     * matrix is dense
+     */
+    public int[] parents(int bottom) {
+        return parents == null ? null : parents[bottom];
+    }
+
+    @Override
+    public double predict(String source, String target) {
+        final int i = index.getInt(source);
+        final int j = index.getInt(target);
+        if (i >= 0 && j >= 0) {
+            return get(i, j);
+        } else {
+            return classifier.predict(source, target);
+        }
+    }
+}
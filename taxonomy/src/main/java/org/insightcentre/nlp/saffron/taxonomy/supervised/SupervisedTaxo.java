@@ -4,12 +4,16 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
 import org.insightcentre.nlp.saffron.data.Model;
 import org.insightcentre.nlp.saffron.data.Term;
 import org.insightcentre.nlp.saffron.data.connections.DocumentTerm;
+import org.insightcentre.nlp.saffron.taxonomy.search.CandidateParents;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import libsvm.svm;
 import libsvm.svm_model;
@@ -26,25 +30,88 @@ public class SupervisedTaxo implements BinaryRelationClassifier<String>{
     private final Features features;
     private final svm_model classifier;
     private final ArrayList<String> attributes;
+    // Evaluates the classifier without libsvm if it is supported
+    private final SvmPredictor predictor;
 
     public SupervisedTaxo(List<DocumentTerm> docTerms,
             Map<String, Term> termMap, Model model) throws IOException {
         this.features = Train.makeFeatures(docTerms, termMap, model);
         this.classifier = readClassifier(model);
         this.attributes = Train.buildAttributes(features.featureNames());
+        this.predictor = SvmPredictor.supports(classifier) ? new SvmPredictor(classifier) : null;
     }
 
     protected SupervisedTaxo(Features features, svm_model classifier, ArrayList<String> attributes) {
         this.features = features;
         this.classifier = classifier;
         this.attributes = attributes;
+        this.predictor = SvmPredictor.supports(classifier) ? new SvmPredictor(classifier) : null;
+    }
+
+    // A classifier that delegates every prediction, so it has no model
+    private SupervisedTaxo() {
+        this.features = null;
+        this.classifier = null;
+        this.attributes = null;
+        this.predictor = null;
     }
     
     
 
     public double predict(String top, String bottom) {
+        return predict(features.buildFeatures(top, bottom));
+    }
+
+    @Override
+    public double[][] predictBlock(List<String> sources, List<String> targets) {
+        if(features == null) {
+            return BinaryRelationClassifier.super.predictBlock(sources, targets);
+        }
+        final List<Features.TermData> targetData = new ArrayList<>();
+        for(String target : targets) {
+            targetData.add(features.termData(target));
+        }
+        final double[][] result = new double[sources.size()][targets.size()];
+        final double[][] row = new double[targets.size()][];
+        for(int i = 0; i < sources.size(); i++) {
+            final Features.TermData sourceData = features.termData(sources.get(i));
+            for(int j = 0; j < targets.size(); j++) {
+                row[j] = features.buildFeatures(sourceData, targetData.get(j));
+            }
+            if(predictor != null) {
+                predictor.probabilities(row, result[i]);
+            } else {
+                for(int j = 0; j < targets.size(); j++) {
+                    result[i][j] = predict(row[j]);
+                }
+            }
+        }
+        return result;
+    }
 
-        final Train.Instance instance = Train.makeInstance(features.buildFeatures(top, bottom), 0);
+    /**
+     * Find the candidate parents of each term from the word vectors and the
+     * documents of the terms as well as string inclusion
+     *
+     * @param terms The terms
+     * @param k The number of candidate parents to keep for each term
+     * @return The candidate parents of each term
+     */
+    public CandidateParents candidateParents(Collection<String> terms, int k) {
+        final CandidateGenerator generator;
+        if(features == null) {
+            generator = new CandidateGenerator(k, null, null);
+        } else {
+            generator = new CandidateGenerator(k, features::embedding, features.termDocuments());
+        }
+        return generator.generate(terms);
+    }
+
+    private double predict(double[] featureVector) {
+        if(predictor != null) {
+            return predictor.probability(featureVector);
+        }
+        final Train.Instance instance = Train.makeInstance(featureVector, 0);
         //if(features.names.length != featNames.length) {
         //    throw new RuntimeException("Classifier has wrong number of attributes. Model does not match trained");
         //}
@@ -72,4 +139,116 @@ public class SupervisedTaxo implements BinaryRelationClassifier<String>{
         BufferedReader reader = new BufferedReader(new StringReader(model.classifierData));
         return libsvm.svm.svm_load_model(reader);
     }
+
+    /**
+     * The fingerprint of a model, which identifies the scores it computes in
+     * a score cache
+     *
+     * @param model The model
+     * @return The fingerprint
+     * @throws IOException If the model could not be serialized
+     */
+    public static long fingerprint(Model model) throws IOException {
+        return PairScoreCache.fingerprint(new ObjectMapper().writeValueAsString(model));
+    }
+
+    /**
+     * The fingerprint of a model and the inputs of its features, which
+     * identifies the scores it computes in a score cache. The features depend
+     * on the documents of each term and on the frequency of each term, so the
+     * scores are discarded if either changes. The fingerprint does not depend
+     * on the order of the document terms or of the terms
+     *
+     * @param model The model
+     * @param docTerms The occurrences of the terms in the documents
+     * @param termMap The terms
+     * @return The fingerprint
+     * @throws IOException If the model could not be serialized
+     */
+    public static long fingerprint(Model model, List<DocumentTerm> docTerms,
+            Map<String, Term> termMap) throws IOException {
+        long docHash = 0, termHash = 0;
+        if (docTerms != null) {
+            for (DocumentTerm dt : docTerms) {
+                docHash += PairScoreCache.fingerprint(dt.getDocumentId(), dt.getTermString());
+            }
+        }
+        if (termMap != null) {
+            for (Term t : termMap.values()) {
+                termHash += PairScoreCache.fingerprint(t.getString(), Integer.toString(t.getOccurrences()));
+            }
+        }
+        return PairScoreCache.fingerprint(new ObjectMapper().writeValueAsString(model),
+                Long.toHexString(docHash), Long.toHexString(termHash));
+    }
+
+    /**
+     * Create a classifier that looks up the scores of pairs in a cache and
+     * only uses this classifier for the pairs that are not in it, which are
+     * then added to the cache
+     *
+     * @param cache The cache (with one score per pair)
+     * @return The cached classifier
+     */
+    public SupervisedTaxo withCache(PairScoreCache cache) {
+        if (cache.width() != 1) {
+            throw new IllegalArgumentException("A taxonomy score cache has one score per pair");
+        }
+        return new Cached(this, cache);
+    }
+
+    private static class Cached extends SupervisedTaxo {
+
+        private final SupervisedTaxo base;
+        private final PairScoreCache cache;
+
+        Cached(SupervisedTaxo base, PairScoreCache cache) {
+            this.base = base;
+            this.cache = cache;
+        }
+
+        @Override
+        public double predict(String top, String bottom) {
+            final double[] score = new double[1];
+            if (!cache.get(top, bottom, score)) {
+                score[0] = base.predict(top, bottom);
+                cache.put(top, bottom, score);
+            }
+            return score[0];
+        }
+
+        @Override
+        public double[][] predictBlock(List<String> sources, List<String> targets) {
+            final double[][] result = new double[sources.size()][targets.size()];
+            final double[] score = new double[1];
+            // The sources with a pair that is not cached are scored together
+            final List<String> missing = new ArrayList<>();
+            final List<double[]> missingRows = new ArrayList<>();
+            for (int i = 0; i < sources.size(); i++) {
+                for (int j = 0; j < targets.size(); j++) {
+                    if (cache.get(sources.get(i), targets.get(j), score)) {
+                        result[i][j] = score[0];
+                    } else {
+                        missing.add(sources.get(i));
+                        missingRows.add(result[i]);
+                        break;
+                    }
+                }
+            }
+            if (!missing.isEmpty()) {
+                final double[][] computed = base.predictBlock(missing, targets);
+                for (int i = 0; i < missing.size(); i++) {
+                    System.arraycopy(computed[i], 0, missingRows.get(i), 0, targets.size());
+                }
+                // The whole block is added under a single lock
+                cache.putBlock(missing, targets, computed);
+            }
+            return result;
+        }
+
+        @Override
+        public CandidateParents candidateParents(Collection<String> terms, int k) {
+            return base.candidateParents(terms, k);
+        }
+    }
 }
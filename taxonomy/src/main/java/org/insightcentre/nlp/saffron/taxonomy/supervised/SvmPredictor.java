@@ -0,0 +1,213 @@
+package org.insightcentre.nlp.saffron.taxonomy.supervised;
+
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+
+/**
+ * Probability estimates of a trained two-class libsvm model for dense feature
+ * vectors. The model is copied into flat arrays once, so that evaluating a
+ * vector does not allocate. For a linear kernel the support vectors are
+ * collapsed into a single weight vector.
+ *
+ * The result is the probability of the first class of the model as given by
+ * {@code svm.svm_predict_probability} of libsvm 3.17.
+ *
+ * @author John McCrae
+ */
+public class SvmPredictor {
+
+    private static final double MIN_PROB = 1e-7;
+
+    private final int kernelType;
+    private final int degree;
+    private final double gamma, coef0;
+    // The support vectors as a row-major nSV x dim matrix
+    private final double[] supportVectors;
+    private final double[] coefficients;
+    private final int nSV, dim;
+    // The weights of the linear kernel or null for other kernels
+    private final double[] weights;
+    private final double rho, probA, probB;
+
+    /**
+     * Load a model
+     *
+     * @param model The libsvm model
+     * @throws IllegalArgumentException If the model is not supported, see
+     * {@link #supports(libsvm.svm_model)}
+     */
+    public SvmPredictor(svm_model model) {
+        if (!supports(model)) {
+            throw new IllegalArgumentException("Only two-class classification models with probability estimates are supported");
+        }
+        this.kernelType = model.param.kernel_type;
+        this.degree = model.param.degree;
+        this.gamma = model.param.gamma;
+        this.coef0 = model.param.coef0;
+        this.nSV = model.l;
+        int d = 0;
+        for (svm_node[] sv : model.SV) {
+            for (svm_node node : sv) {
+                d = Math.max(d, node.index + 1);
+            }
+        }
+        this.dim = d;
+        this.coefficients = new double[nSV];
+        this.supportVectors = new double[nSV * dim];
+        for (int i = 0; i < nSV; i++) {
+            coefficients[i] = model.sv_coef[0][i];
+            for (svm_node node : model.SV[i]) {
+                supportVectors[i * dim + node.index] = node.value;
+            }
+        }
+        if (kernelType == svm_parameter.LINEAR) {
+            this.weights = new double[dim];
+            for (int i = 0; i < nSV; i++) {
+                for (int j = 0; j < dim; j++) {
+                    weights[j] += coefficients[i] * supportVectors[i * dim + j];
+                }
+            }
+        } else {
+            this.weights = null;
+        }
+        this.rho = model.rho[0];
+        this.probA = model.probA[0];
+        this.probB = model.probB[0];
+    }
+
+    /**
+     * Check if a model can be evaluated by this class. Only two-class C-SVC
+     * and nu-SVC models trained with probability estimates and without a
+     * precomputed kernel are supported
+     *
+     * @param model The model
+     * @return True if the model is supported
+     */
+    public static boolean supports(svm_model model) {
+        return model != null
+                && (model.param.svm_type == svm_parameter.C_SVC
+                || model.param.svm_type == svm_parameter.NU_SVC)
+                && model.param.kernel_type != svm_parameter.PRECOMPUTED
+                && model.nr_class == 2
+                && model.probA != null && model.probB != null;
+    }
+
+    /**
+     * The probability of the first class for a feature vector, where the
+     * element i of the vector is the value of the feature with index i
+     *
+     * @param x The feature vector
+     * @return The probability
+     */
+    public double probability(double[] x) {
+        final double dec = decisionValue(x);
+        final double r01 = Math.min(Math.max(sigmoid(dec * probA + probB), MIN_PROB), 1 - MIN_PROB);
+        return coupleProbability(r01);
+    }
+
+    /**
+     * The multiclass_probability method of libsvm for two classes. This
+     * iteratively solves for the class probabilities given the pairwise
+     * probability r01 = P(class 0 | class 0 or 1) and is replicated exactly as
+     * its result differs slightly from r01
+     */
+    private static double coupleProbability(double r01) {
+        final double r10 = 1 - r01;
+        final double eps = 0.005 / 2;
+        final double q00 = r10 * r10, q11 = r01 * r01, q01 = -r10 * r01;
+        double p0 = 0.5, p1 = 0.5;
+        for (int iter = 0; iter < 100; iter++) {
+            double qp0 = q00 * p0 + q01 * p1;
+            double qp1 = q01 * p0 + q11 * p1;
+            double pQp = p0 * qp0 + p1 * qp1;
+            if (Math.max(Math.abs(qp0 - pQp), Math.abs(qp1 - pQp)) < eps) {
+                break;
+            }
+            // t = 0
+            double diff = (-qp0 + pQp) / q00;
+            p0 += diff;
+            pQp = (pQp + diff * (diff * q00 + 2 * qp0)) / (1 + diff) / (1 + diff);
+            qp0 = (qp0 + diff * q00) / (1 + diff);
+            qp1 = (qp1 + diff * q01) / (1 + diff);
+            p0 /= (1 + diff);
+            p1 /= (1 + diff);
+            // t = 1
+            diff = (-qp1 + pQp) / q11;
+            p1 += diff;
+            p0 /= (1 + diff);
+            p1 /= (1 + diff);
+        }
+        return p0;
+    }
+
+    /**
+     * The probability of the first class for a block of feature vectors
+     *
+     * @param xs The feature vectors
+     * @param result The array to write the probabilities to
+     */
+    public void probabilities(double[][] xs, double[] result) {
+        for (int i = 0; i < xs.length; i++) {
+            result[i] = probability(xs[i]);
+        }
+    }
+
+    private double decisionValue(double[] x) {
+        double sum = 0.0;
+        if (weights != null) {
+            final int n = Math.min(x.length, dim);
+            for (int j = 0; j < n; j++) {
+                sum += weights[j] * x[j];
+            }
+        } else {
+            for (int i = 0; i < nSV; i++) {
+                sum += coefficients[i] * kernel(x, i * dim);
+            }
+        }
+        return sum - rho;
+    }
+
+    private double kernel(double[] x, int offset) {
+        final int n = Math.min(x.length, dim);
+        switch (kernelType) {
+            case svm_parameter.POLY:
+                return Math.pow(gamma * dot(x, offset, n) + coef0, degree);
+            case svm_parameter.RBF: {
+                double d = 0.0;
+                for (int j = 0; j < n; j++) {
+                    final double y = x[j] - supportVectors[offset + j];
+                    d += y * y;
+                }
+                for (int j = n; j < x.length; j++) {
+                    d += x[j] * x[j];
+                }
+                for (int j = n; j < dim; j++) {
+                    d += supportVectors[offset + j] * supportVectors[offset + j];
+                }
+                return Math.exp(-gamma * d);
+            }
+            case svm_parameter.SIGMOID:
+                return Math.tanh(gamma * dot(x, offset, n) + coef0);
+            default:
+                return dot(x, offset, n);
+        }
+    }
+
+    private double dot(double[] x, int offset, int n) {
+        double sum = 0.0;
+        for (int j = 0; j < n; j++) {
+            sum += x[j] * supportVectors[offset + j];
+        }
+        return sum;
+    }
+
+    // As sigmoid_predict in libsvm, 1 / (1 + exp(fApB)) computed stably
+    private static double sigmoid(double fApB) {
+        if (fApB >= 0) {
+            return Math.exp(-fApB) / (1.0 + Math.exp(-fApB));
+        } else {
+            return 1.0 / (1 + Math.exp(fApB));
+        }
+    }
+}
@@ -5,6 +5,8 @@ import Jama.Matrix;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.type.CollectionType;
 import com.fasterxml.jackson.databind.type.TypeFactory;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
 import it.unimi.dsi.fastutil.ints.IntRBTreeSet;
 import it.unimi.dsi.fastutil.ints.IntSet;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
@@ -37,6 +39,7 @@ import org.insightcentre.nlp.saffron.data.Term;
 import org.insightcentre.nlp.saffron.data.connections.DocumentTerm;
 import static org.insightcentre.nlp.saffron.taxonomy.supervised.Main.loadMap;
 import org.insightcentre.nlp.saffron.taxonomy.wordnet.Hypernym;
+import org.insightcentre.nlp.saffron.taxonomy.wordnet.HypernymIndex;
 
 /**
  * Train the supervised model based on some existing settings and create a
@@ -70,6 +73,10 @@ public class Train {
                     accepts("t", "The taxonomies to train on").withRequiredArg().withValuesSeparatedBy(',').ofType(File.class);
                     accepts("p", "The terms to train on").withRequiredArg().ofType(File.class);
                     accepts("c", "The configuration").withRequiredArg().ofType(File.class);
+                    accepts("search", "Search for the parameters of the classifier (grid or random)").withRequiredArg().ofType(String.class);
+                    accepts("folds", "The number of cross-validation folds for the search").withRequiredArg().ofType(Integer.class).defaultsTo(5);
+                    accepts("trials", "The number of settings tried by a random search").withRequiredArg().ofType(Integer.class).defaultsTo(20);
+                    accepts("threads", "The number of threads for the search (0 for all processors)").withRequiredArg().ofType(Integer.class).defaultsTo(0);
                 }
             };
             final OptionSet os;
@@ -103,6 +110,23 @@ public class Train {
                 badOptions(p, "Config invalid: " + config.verify());
             }
 
+            final String search = (String) os.valueOf("search");
+            final List<HyperparameterSearch.Setting> settings;
+            if (search == null) {
+                settings = null;
+            } else if (search.equals("grid")) {
+                settings = HyperparameterSearch.grid(config.negSampling);
+            } else if (search.equals("random")) {
+                if ((Integer) os.valueOf("trials") <= 0) {
+                    badOptions(p, "Trials must be positive");
+                    return;
+                }
+                settings = HyperparameterSearch.random(config.negSampling, (Integer) os.valueOf("trials"), new Random());
+            } else {
+                badOptions(p, "Search must be grid or random");
+                return;
+            }
+
             final List<DocumentTerm> docTerms;
             if (docTermsFile == null) {
                 docTerms = null;
@@ -119,7 +143,8 @@ public class Train {
 
             Map<String, Term> termMap = terms == null ? null : loadMap(terms, mapper, new DefaultSaffronListener());
 
-            train(docTerms, termMap, taxos, config);
+            train(docTerms, termMap, taxos, config, settings,
+                    (Integer) os.valueOf("folds"), (Integer) os.valueOf("threads"));
 
         } catch (Exception x) {
             x.printStackTrace();
@@ -127,11 +152,23 @@ public class Train {
         }
     }
 
+    /**
+     * Load word vectors. A binary file made by {@link WordVectors#convert}
+     * is memory-mapped, otherwise the vectors are read from the text file
+     *
+     * @param gloveFile The file of word vectors
+     * @return The vectors or null if the file does not exist
+     * @throws IOException If the file could not be read
+     */
     public static Map<String, double[]> loadGLoVE(File gloveFile) throws IOException {
         if (!gloveFile.exists()) {
             System.err.println("GloVe file does not exist. Not using GloVe");
             return null;
         }
+        if (WordVectors.isWordVectorFile(gloveFile)) {
+            return new WordVectors(gloveFile);
+        }
+        System.err.println("Reading GloVe text file (convert it with " + WordVectors.class.getName() + " to load it faster)");
         final Map<String, double[]> data = new HashMap<>();
         try (BufferedReader in = new BufferedReader(new FileReader(gloveFile))) {
             String line;
@@ -171,7 +208,8 @@ public class Train {
     }
 
     private static void train(List<DocumentTerm> docTerms, Map<String, Term> termMap,
-            List<List<StringPair>> taxos, TaxonomyExtractionConfiguration config) throws IOException {
+            List<List<StringPair>> taxos, TaxonomyExtractionConfiguration config,
+            List<HyperparameterSearch.Setting> settings, int folds, int numThreads) throws IOException {
         final Model model = new Model();
         model.features = config.features;
         final Map<String, double[]> glove = config.features == null || config.features.gloveFile == null ? null : loadGLoVE(config.features.gloveFile.toFile());
@@ -182,8 +220,23 @@ public class Train {
         
         features = glove == null ? features : learnSVD(taxos, features, config, model);
 
-        svm_problem prob = loadInstances(taxos, features, config.negSampling);
-        svm_parameter param = makeParameters();
+        final svm_problem prob;
+        final svm_parameter param = makeParameters();
+        if (settings == null) {
+            prob = loadInstances(taxos, features, config.negSampling);
+        } else {
+            final SampledInstances instances = sampleInstances(taxos, features,
+                    Math.max(config.negSampling, HyperparameterSearch.maxNegSampling(settings)));
+            final List<HyperparameterSearch.Result> results
+                    = HyperparameterSearch.search(instances, settings, folds, numThreads);
+            for (HyperparameterSearch.Result result : results) {
+                System.err.println(result);
+            }
+            final HyperparameterSearch.Result best = HyperparameterSearch.best(results);
+            System.err.println("Best: " + best);
+            best.setting.apply(param);
+            prob = instances.toProblem(best.setting.negSampling);
+        }
 
         libsvm.svm_model svmModel;
         try {
@@ -217,19 +270,34 @@ public class Train {
     }
 
     public static svm_problem loadInstances(List<List<StringPair>> taxos, Features features, double negSampling) {
+        return sampleInstances(taxos, features, negSampling).toProblem(negSampling);
+    }
+
+    /**
+     * Extract the features of the positive pairs of the taxonomies and of
+     * random negative pairs. The negative pairs drawn for a smaller
+     * negative-sampling ratio are a prefix of those drawn for a larger ratio,
+     * so the features can be extracted once and the problem for any smaller
+     * ratio taken from them.
+     *
+     * @param taxos The taxonomies
+     * @param features The feature extractor
+     * @param maxNegSampling The largest negative-sampling ratio that will be
+     * used
+     * @return The sampled instances
+     */
+    public static SampledInstances sampleInstances(List<List<StringPair>> taxos, Features features, double maxNegSampling) {
         final Random random = new Random();
-        ArrayList<String> attributes = buildAttributes(features.featureNames());
-        final svm_problem instances = new svm_problem();
-        ArrayList<Instance> instanceList = new ArrayList<>();
+        final SampledInstances instances = new SampledInstances();
         for (List<StringPair> taxo : taxos) {
             List<String> termsList = new ArrayList<>(buildTerms(taxo));
             Set<StringPair> taxoSet = new HashSet<>(taxo); // Faster but uses more memory
             for (StringPair sp : taxo) {
                 double[] d1 = features.buildFeatures(sp._1, sp._2);
-                instanceList.add(makeInstance(d1, +1));
+                instances.add(makeInstance(d1, +1), -1, taxo.size());
             }
-            System.err.println("positive:" + instanceList.size());
-            for (int i = 0; i < negSampling * taxo.size(); i++) {
+            System.err.println("positive:" + instances.size());
+            for (int i = 0; i < maxNegSampling * taxo.size(); i++) {
                 int j = random.nextInt(termsList.size());
                 int k = random.nextInt(termsList.size());
                 if (j == k) {
@@ -238,22 +306,65 @@ public class Train {
                 StringPair termPair = new StringPair(termsList.get(j), termsList.get(k));
                 if (!taxoSet.contains(termPair)) {
                     double[] d1 = features.buildFeatures(termPair._1, termPair._2);
-                    instanceList.add(makeInstance(d1, 0));
+                    instances.add(makeInstance(d1, 0), i, taxo.size());
                 }
             }
-            System.err.println("total:" + instanceList.size());
-        }
-        instances.x = new svm_node[instanceList.size()][];
-        instances.y = new double[instanceList.size()];
-        int i = 0;
-        for(Instance instance : instanceList) {
-            instances.x[i] = instance.x;
-            instances.y[i++] = instance.y;
+            System.err.println("total:" + instances.size());
         }
-        instances.l = instanceList.size();
         return instances;
     }
 
+    /**
+     * The instances extracted from the taxonomies, each with the attempt at
+     * which it was drawn so that the problem for any negative-sampling ratio
+     * up to the one they were sampled for can be made without extracting the
+     * features again
+     */
+    public static class SampledInstances {
+
+        private final List<Instance> instances = new ArrayList<>();
+        // The attempt that drew each negative instance, -1 for positive instances
+        private final IntList attempts = new IntArrayList();
+        // The size of the taxonomy of each instance
+        private final IntList taxoSizes = new IntArrayList();
+
+        void add(Instance instance, int attempt, int taxoSize) {
+            instances.add(instance);
+            attempts.add(attempt);
+            taxoSizes.add(taxoSize);
+        }
+
+        public int size() {
+            return instances.size();
+        }
+
+        /**
+         * Make the problem for a negative-sampling ratio
+         *
+         * @param negSampling The ratio, no more than the ratio the instances
+         * were sampled for
+         * @return The problem
+         */
+        public svm_problem toProblem(double negSampling) {
+            final List<Instance> selected = new ArrayList<>();
+            for (int i = 0; i < instances.size(); i++) {
+                if (attempts.getInt(i) < negSampling * taxoSizes.getInt(i)) {
+                    selected.add(instances.get(i));
+                }
+            }
+            final svm_problem prob = new svm_problem();
+            prob.x = new svm_node[selected.size()][];
+            prob.y = new double[selected.size()];
+            int i = 0;
+            for (Instance instance : selected) {
+                prob.x[i] = instance.x;
+                prob.y[i++] = instance.y;
+            }
+            prob.l = selected.size();
+            return prob;
+        }
+    }
+
     /*private static void writeClassifier(File file, svm_model classifier) throws IOException {
         libsvm.svm.svm_save_model(file.getAbsolutePath(), classifier);
     }*/
@@ -370,7 +481,18 @@ public class Train {
         }
     }
 
+    /**
+     * Load hypernyms. A compiled {@link HypernymIndex} is memory-mapped,
+     * otherwise the hypernyms are read from the JSON file
+     *
+     * @param file The hypernym file
+     * @return The hypernyms
+     * @throws IOException If the file could not be read
+     */
     public static Set<Hypernym> loadHypernyms(File file) throws IOException {
+        if (HypernymIndex.isIndexFile(file)) {
+            return HypernymIndex.open(file);
+        }
         ObjectMapper mapper = new ObjectMapper();
             final CollectionType setOfHypernymType = TypeFactory.defaultInstance().constructCollectionType(HashSet.class, Hypernym.class);
         if(file.getName().endsWith(".gz")) {
@@ -19,21 +19,36 @@ import org.insightcentre.nlp.saffron.data.Taxonomy;
  */
 public class TransTaxoExtract {
 
-    private final SupervisedTaxo classifier;
+    private final BinaryRelationClassifier<String> classifier;
     private final double discount;
+    private final int numThreads;
 
-    public TransTaxoExtract(SupervisedTaxo classifier, double discount) {
+    public TransTaxoExtract(BinaryRelationClassifier<String> classifier, double discount) {
+        this(classifier, discount, 0);
+    }
+
+    /**
+     * Create a taxonomy extractor
+     * @param classifier The classifier of links
+     * @param discount The amount subtracted from the score of each link
+     * @param numThreads The number of threads used to score the links (0 or
+     * less to use all available processors)
+     */
+    public TransTaxoExtract(BinaryRelationClassifier<String> classifier, double discount, int numThreads) {
         this.classifier = classifier;
         this.discount = discount;
+        this.numThreads = numThreads;
     }
 
     public Taxonomy extractTaxonomy(Set<String> terms) {
+        final ScoreMatrix matrix = ScoreMatrix.compute(classifier, terms, numThreads);
+        final List<String> termList = matrix.terms();
         Object2DoubleMap<StringPair> scores = new Object2DoubleOpenHashMap<>();
-        for (String term1 : terms) {
-            for (String term2 : terms) {
-                if (!term1.equals(term2)) {
-                    double score = classifier.predict(term1, term2) - discount;
-                    scores.put(new StringPair(term1, term2), score);
+        for (int i = 0; i < termList.size(); i++) {
+            for (int j = 0; j < termList.size(); j++) {
+                if (i != j) {
+                    double score = matrix.get(i, j) - discount;
+                    scores.put(new StringPair(termList.get(i), termList.get(j)), score);
 
                 }
             }
@@ -0,0 +1,380 @@
+package org.insightcentre.nlp.saffron.taxonomy.supervised;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import it.unimi.dsi.fastutil.Swapper;
+import it.unimi.dsi.fastutil.ints.IntComparator;
+
+/**
+ * Word vectors (e.g., GloVe) in a binary file that is memory-mapped, so that
+ * the vectors are not read onto the heap and several processes on one host
+ * share the same page-cached file. The file is made once from the text format
+ * by {@link #convert(File, File)} (or the main method of this class).
+ *
+ * The file (little-endian) has a header (magic, number of words, dimensions,
+ * offset of the index), the vectors as floats in the order of the text file,
+ * and an index of the words in UTF-8 byte order: the row of each word, the
+ * offsets of the words and the UTF-8 bytes of the words. A word is looked up
+ * by binary search of the mapped index.
+ *
+ * The vectors can be used as a (read-only) map from words to vectors.
+ *
+ * @author John McCrae
+ */
+public class WordVectors extends AbstractMap<String, double[]> {
+
+    private static final byte[] MAGIC = "SAFWVEC1".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_BYTES = MAGIC.length + 4 + 4 + 8;
+    // The size of each memory-mapped region of the vectors
+    private static final long SEGMENT_BYTES = 1L << 30;
+
+    private final int size;
+    private final int dimensions;
+    private final int rowsPerSegment;
+    private final MappedByteBuffer[] segments;
+    // The rows, the word offsets and the words
+    private final MappedByteBuffer index;
+    private final int offsetsStart, wordsStart;
+
+    /**
+     * Open a file of word vectors
+     *
+     * @param file The binary file made by {@link #convert(File, File)}
+     * @throws IOException If the file could not be read or is not a binary
+     * word vector file
+     */
+    public WordVectors(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            final FileChannel channel = raf.getChannel();
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES) {
+                throw new IOException(file + " is not a word vector file");
+            }
+            final byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(file + " is not a word vector file");
+            }
+            this.size = header.getInt();
+            this.dimensions = header.getInt();
+            final long indexStart = header.getLong();
+            final int rowBytes = Math.max(1, dimensions * 4);
+            // Repeated words leave rows that are not in the index
+            final long numRows = (indexStart - HEADER_BYTES) / rowBytes;
+            this.rowsPerSegment = (int) Math.max(1, SEGMENT_BYTES / rowBytes);
+            final int numSegments = (int) ((numRows + rowsPerSegment - 1) / rowsPerSegment);
+            this.segments = new MappedByteBuffer[numSegments];
+            for (int i = 0; i < numSegments; i++) {
+                final long start = HEADER_BYTES + (long) i * rowsPerSegment * rowBytes;
+                final long rows = Math.min(rowsPerSegment, numRows - (long) i * rowsPerSegment);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, rows * rowBytes);
+                segments[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+            this.index = channel.map(FileChannel.MapMode.READ_ONLY, indexStart, channel.size() - indexStart);
+            this.index.order(ByteOrder.LITTLE_ENDIAN);
+            this.offsetsStart = size * 4;
+            this.wordsStart = offsetsStart + (size + 1) * 4;
+        }
+    }
+
+    /**
+     * Check if a file is a binary word vector file
+     *
+     * @param file The file
+     * @return True if the file starts with the header of a binary word vector
+     * file
+     * @throws IOException If the file could not be read
+     */
+    public static boolean isWordVectorFile(File file) throws IOException {
+        final byte[] magic = new byte[MAGIC.length];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(magic);
+        } catch (EOFException x) {
+            return false;
+        }
+        return Arrays.equals(magic, MAGIC);
+    }
+
+    /**
+     * The number of dimensions of the vectors
+     *
+     * @return The number of dimensions
+     */
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && find((String) key) >= 0;
+    }
+
+    @Override
+    public double[] get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        final int i = find((String) key);
+        return i < 0 ? null : vector(index.getInt(i * 4));
+    }
+
+    /**
+     * The position of a word in the index
+     *
+     * @param word The word
+     * @return The position or -1 if the word has no vector
+     */
+    private int find(String word) {
+        final byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        int lo = 0, hi = size - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int c = compareWord(mid, bytes);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int compareWord(int i, byte[] bytes) {
+        final int start = wordsStart + index.getInt(offsetsStart + i * 4);
+        final int length = wordsStart + index.getInt(offsetsStart + (i + 1) * 4) - start;
+        final int n = Math.min(length, bytes.length);
+        for (int k = 0; k < n; k++) {
+            final int c = (index.get(start + k) & 0xff) - (bytes[k] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return length - bytes.length;
+    }
+
+    private String word(int i) {
+        final int start = wordsStart + index.getInt(offsetsStart + i * 4);
+        final byte[] bytes = new byte[wordsStart + index.getInt(offsetsStart + (i + 1) * 4) - start];
+        for (int k = 0; k < bytes.length; k++) {
+            bytes[k] = index.get(start + k);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private double[] vector(int row) {
+        final MappedByteBuffer segment = segments[row / rowsPerSegment];
+        final int offset = (row % rowsPerSegment) * dimensions * 4;
+        final double[] v = new double[dimensions];
+        for (int k = 0; k < dimensions; k++) {
+            v[k] = segment.getFloat(offset + k * 4);
+        }
+        return v;
+    }
+
+    @Override
+    public Set<Entry<String, double[]>> entrySet() {
+        return new AbstractSet<Entry<String, double[]>>() {
+            @Override
+            public Iterator<Entry<String, double[]>> iterator() {
+                return new Iterator<Entry<String, double[]>>() {
+                    int i = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return i < size;
+                    }
+
+                    @Override
+                    public Entry<String, double[]> next() {
+                        if (i >= size) {
+                            throw new NoSuchElementException();
+                        }
+                        final Entry<String, double[]> e = new SimpleImmutableEntry<>(word(i), vector(index.getInt(i * 4)));
+                        i++;
+                        return e;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Convert word vectors in the text format (a word followed by the values
+     * of its vector on each line, separated by spaces) to the binary format.
+     * The first line is skipped if it is a word2vec-style header. Words that
+     * occur more than once keep their first vector.
+     *
+     * @param textFile The text file
+     * @param binaryFile The binary file to write
+     * @throws IOException If the files could not be read or written
+     */
+    public static void convert(File textFile, File binaryFile) throws IOException {
+        final List<byte[]> words = new ArrayList<>();
+        int dimensions = -1;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(textFile), StandardCharsets.UTF_8));
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(binaryFile), 1 << 16)) {
+            // The header is written once the index is known
+            out.write(new byte[HEADER_BYTES]);
+            ByteBuffer row = null;
+            String line;
+            boolean first = true;
+            while ((line = in.readLine()) != null) {
+                final String[] elems = line.trim().split(" ");
+                if (first && elems.length == 2) {
+                    first = false;
+                    continue;
+                }
+                first = false;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                if (row == null) {
+                    dimensions = elems.length - 1;
+                    row = ByteBuffer.allocate(dimensions * 4).order(ByteOrder.LITTLE_ENDIAN);
+                }
+                if (elems.length <= dimensions) {
+                    throw new IOException("Bad line in " + textFile + ": " + line);
+                }
+                // Some vector files have words with spaces
+                final StringBuilder word = new StringBuilder(elems[0]);
+                for (int i = 1; i < elems.length - dimensions; i++) {
+                    word.append(' ').append(elems[i]);
+                }
+                row.clear();
+                for (int i = elems.length - dimensions; i < elems.length; i++) {
+                    row.putFloat(Float.parseFloat(elems[i]));
+                }
+                out.write(row.array());
+                words.add(word.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        dimensions = Math.max(dimensions, 0);
+        final int[] order = sortedRows(words);
+        final long indexStart = HEADER_BYTES + (long) words.size() * dimensions * 4;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(binaryFile, true), 1 << 16)) {
+            final ByteBuffer ints = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            for (int row : order) {
+                out.write(ints.putInt(0, row).array());
+            }
+            long offset = 0;
+            out.write(ints.putInt(0, 0).array());
+            for (int row : order) {
+                offset += words.get(row).length;
+                if (offset + (order.length * 2L + 1) * 4 > Integer.MAX_VALUE) {
+                    throw new IOException("Too many words in " + textFile);
+                }
+                out.write(ints.putInt(0, (int) offset).array());
+            }
+            for (int row : order) {
+                out.write(words.get(row));
+            }
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(binaryFile, "rw")) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(MAGIC);
+            header.putInt(order.length);
+            header.putInt(dimensions);
+            header.putLong(indexStart);
+            raf.write(header.array());
+        }
+    }
+
+    /**
+     * The rows of the distinct words in UTF-8 byte order, keeping the first
+     * row of a repeated word
+     */
+    private static int[] sortedRows(final List<byte[]> words) {
+        final int[] rows = new int[words.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i;
+        }
+        it.unimi.dsi.fastutil.Arrays.mergeSort(0, rows.length, new IntComparator() {
+            @Override
+            public int compare(int i, int j) {
+                final int c = compareBytes(words.get(rows[i]), words.get(rows[j]));
+                return c == 0 ? Integer.compare(rows[i], rows[j]) : c;
+            }
+
+            @Override
+            public int compare(Integer i, Integer j) {
+                return compare(i.intValue(), j.intValue());
+            }
+        }, new Swapper() {
+            @Override
+            public void swap(int i, int j) {
+                final int r = rows[i];
+                rows[i] = rows[j];
+                rows[j] = r;
+            }
+        });
+        int n = 0;
+        for (int i = 0; i < rows.length; i++) {
+            if (n == 0 || compareBytes(words.get(rows[n - 1]), words.get(rows[i])) != 0) {
+                rows[n++] = rows[i];
+            }
+        }
+        return Arrays.copyOf(rows, n);
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        final int n = Math.min(a.length, b.length);
+        for (int k = 0; k < n; k++) {
+            final int c = (a[k] & 0xff) - (b[k] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: WordVectors vectors.txt vectors.bin");
+            System.exit(-1);
+        }
+        try {
+            convert(new File(args[0]), new File(args[1]));
+        } catch (IOException x) {
+            x.printStackTrace();
+            System.exit(-1);
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package org.insightcentre.nlp.saffron.taxonomy.wordnet;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.insightcentre.nlp.saffron.taxonomy.supervised.Train;
+
+/**
+ * The (transitively closed) hypernyms of words, held as int ids. Each word has
+ * an id, given in UTF-8 byte order of the words, and a sorted array of the ids
+ * of its hypernyms, so checking if one word is a hypernym of another is a
+ * binary search in an int array.
+ *
+ * All data is kept in a single buffer (little-endian): a header (magic,
+ * number of words, number of hypernym links), the offsets of the words, the
+ * offsets of the hypernym arrays, the hypernym arrays and the UTF-8 bytes of
+ * the words. The buffer can be written to a file and memory-mapped, so that
+ * it is not read onto the heap.
+ *
+ * The index is also a (read-only) set of hypernyms.
+ *
+ * @author John McCrae
+ */
+public class HypernymIndex extends AbstractSet<Hypernym> {
+
+    private static final byte[] MAGIC = "SAFHYPI1".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_BYTES = MAGIC.length + 4 + 4;
+
+    private final ByteBuffer data;
+    private final int numWords, numLinks;
+    private final int wordOffsetsStart, linkOffsetsStart, linksStart, wordsStart;
+
+    private HypernymIndex(ByteBuffer data) throws IOException {
+        this.data = data.order(ByteOrder.LITTLE_ENDIAN);
+        final byte[] magic = new byte[MAGIC.length];
+        if (data.capacity() < HEADER_BYTES) {
+            throw new IOException("Not a hypernym index");
+        }
+        for (int i = 0; i < magic.length; i++) {
+            magic[i] = data.get(i);
+        }
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a hypernym index");
+        }
+        this.numWords = data.getInt(MAGIC.length);
+        this.numLinks = data.getInt(MAGIC.length + 4);
+        this.wordOffsetsStart = HEADER_BYTES;
+        this.linkOffsetsStart = wordOffsetsStart + (numWords + 1) * 4;
+        this.linksStart = linkOffsetsStart + (numWords + 1) * 4;
+        this.wordsStart = linksStart + numLinks * 4;
+    }
+
+    /**
+     * Build an index from hypernyms
+     *
+     * @param hypernyms The hypernyms, which should be transitively closed
+     * @return The index
+     */
+    public static HypernymIndex build(Set<Hypernym> hypernyms) {
+        if (hypernyms instanceof HypernymIndex) {
+            return (HypernymIndex) hypernyms;
+        }
+        // Give the words ids in UTF-8 byte order
+        final Object2IntMap<String> ids = new Object2IntOpenHashMap<>();
+        for (Hypernym h : hypernyms) {
+            ids.put(h.hyponym, 0);
+            ids.put(h.hypernym, 0);
+        }
+        final byte[][] words = new byte[ids.size()][];
+        int n = 0;
+        for (String word : ids.keySet()) {
+            words[n++] = word.getBytes(StandardCharsets.UTF_8);
+        }
+        Arrays.sort(words, new Comparator<byte[]>() {
+            @Override
+            public int compare(byte[] a, byte[] b) {
+                return compareBytes(a, b);
+            }
+        });
+        long wordBytes = 0;
+        for (int i = 0; i < words.length; i++) {
+            ids.put(new String(words[i], StandardCharsets.UTF_8), i);
+            wordBytes += words[i].length;
+        }
+        final IntList[] links = new IntList[words.length];
+        for (Hypernym h : hypernyms) {
+            final int hypo = ids.getInt(h.hyponym);
+            if (links[hypo] == null) {
+                links[hypo] = new IntArrayList();
+            }
+            links[hypo].add(ids.getInt(h.hypernym));
+        }
+        int numLinks = 0;
+        final int[][] sortedLinks = new int[words.length][];
+        for (int i = 0; i < words.length; i++) {
+            sortedLinks[i] = links[i] == null ? new int[0] : links[i].toIntArray();
+            Arrays.sort(sortedLinks[i]);
+            numLinks += sortedLinks[i].length;
+        }
+        final long size = HEADER_BYTES + (words.length + 1) * 8L + numLinks * 4L + wordBytes;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many hypernyms for an index");
+        }
+        final ByteBuffer data = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        data.put(MAGIC);
+        data.putInt(words.length);
+        data.putInt(numLinks);
+        int offset = 0;
+        data.putInt(0);
+        for (byte[] word : words) {
+            data.putInt(offset += word.length);
+        }
+        offset = 0;
+        data.putInt(0);
+        for (int[] l : sortedLinks) {
+            data.putInt(offset += l.length);
+        }
+        for (int[] l : sortedLinks) {
+            for (int id : l) {
+                data.putInt(id);
+            }
+        }
+        for (byte[] word : words) {
+            data.put(word);
+        }
+        try {
+            return new HypernymIndex(data);
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    /**
+     * Open an index file, which is memory-mapped
+     *
+     * @param file The file written by {@link #write(File)}
+     * @return The index
+     * @throws IOException If the file could not be read or is not an index
+     */
+    public static HypernymIndex open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return new HypernymIndex(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()));
+        }
+    }
+
+    /**
+     * Check if a file is a hypernym index
+     *
+     * @param file The file
+     * @return True if the file starts with the header of an index
+     * @throws IOException If the file could not be read
+     */
+    public static boolean isIndexFile(File file) throws IOException {
+        final byte[] magic = new byte[MAGIC.length];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(magic);
+        } catch (EOFException x) {
+            return false;
+        }
+        return Arrays.equals(magic, MAGIC);
+    }
+
+    /**
+     * Write this index to a file
+     *
+     * @param file The file
+     * @throws IOException If the file could not be written
+     */
+    public void write(File file) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            final ByteBuffer b = data.duplicate();
+            b.clear();
+            while (b.hasRemaining()) {
+                out.getChannel().write(b);
+            }
+        }
+    }
+
+    /**
+     * The id of a word
+     *
+     * @param word The word
+     * @return The id or -1 if the word is not in the index
+     */
+    public int id(String word) {
+        if (word == null) {
+            return -1;
+        }
+        final byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        int lo = 0, hi = numWords - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int c = compareWord(mid, bytes);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Check if a word is a hypernym of another word
+     *
+     * @param hyponym The id of the hyponym (may be -1)
+     * @param hypernym The id of the hypernym (may be -1)
+     * @return True if the hypernym is a hypernym of the hyponym
+     */
+    public boolean isHypernym(int hyponym, int hypernym) {
+        if (hyponym < 0 || hypernym < 0) {
+            return false;
+        }
+        int lo = data.getInt(linkOffsetsStart + hyponym * 4);
+        int hi = data.getInt(linkOffsetsStart + (hyponym + 1) * 4) - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int id = data.getInt(linksStart + mid * 4);
+            if (id < hypernym) {
+                lo = mid + 1;
+            } else if (id > hypernym) {
+                hi = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The number of words in the index
+     *
+     * @return The number of words
+     */
+    public int numWords() {
+        return numWords;
+    }
+
+    private int compareWord(int i, byte[] bytes) {
+        final int start = wordsStart + data.getInt(wordOffsetsStart + i * 4);
+        final int length = wordsStart + data.getInt(wordOffsetsStart + (i + 1) * 4) - start;
+        final int n = Math.min(length, bytes.length);
+        for (int k = 0; k < n; k++) {
+            final int c = (data.get(start + k) & 0xff) - (bytes[k] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return length - bytes.length;
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        final int n = Math.min(a.length, b.length);
+        for (int k = 0; k < n; k++) {
+            final int c = (a[k] & 0xff) - (b[k] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    private String word(int i) {
+        final int start = wordsStart + data.getInt(wordOffsetsStart + i * 4);
+        final byte[] bytes = new byte[wordsStart + data.getInt(wordOffsetsStart + (i + 1) * 4) - start];
+        for (int k = 0; k < bytes.length; k++) {
+            bytes[k] = data.get(start + k);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Hypernym)) {
+            return false;
+        }
+        final Hypernym h = (Hypernym) o;
+        return isHypernym(id(h.hyponym), id(h.hypernym));
+    }
+
+    @Override
+    public int size() {
+        return numLinks;
+    }
+
+    @Override
+    public Iterator<Hypernym> iterator() {
+        return new Iterator<Hypernym>() {
+            int hyponym = 0, link = 0;
+
+            @Override
+            public boolean hasNext() {
+                return link < numLinks;
+            }
+
+            @Override
+            public Hypernym next() {
+                if (link >= numLinks) {
+                    throw new NoSuchElementException();
+                }
+                while (data.getInt(linkOffsetsStart + (hyponym + 1) * 4) <= link) {
+                    hyponym++;
+                }
+                return new Hypernym(word(hyponym), word(data.getInt(linksStart + link++ * 4)));
+            }
+        };
+    }
+
+    /**
+     * Compile a hypernym file (as written by {@link ProcessWNXML}) to an index
+     * file
+     *
+     * @param args The hypernym file and the index file
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: HypernymIndex wn-hyps.json.gz wn-hyps.idx");
+            System.exit(-1);
+        }
+        try {
+            build(Train.loadHypernyms(new File(args[0]))).write(new File(args[1]));
+        } catch (IOException x) {
+            x.printStackTrace();
+            System.exit(-1);
+        }
+    }
+}
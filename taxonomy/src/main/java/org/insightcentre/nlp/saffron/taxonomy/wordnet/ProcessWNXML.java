@@ -18,6 +18,9 @@ import org.xml.sax.helpers.DefaultHandler;
  * This is used to translate a WordNet XML dump into a hypernym file, as follows:
  * 
  * mvn exec:java -Dexec.mainClass="org.insightcentre.nlp.saffron.taxonomy.wordnet.ProcessWNXML" -Dexec.args="../../../jmccrae/gwn-scala-api/wordnets/wn31.xml ../models/wn-hyps.json.gz"
+ * 
+ * If the output file ends with ".idx" a {@link HypernymIndex} is written instead,
+ * which is memory-mapped when it is loaded
  *
  * @author John McCrae
  */
@@ -38,6 +41,10 @@ public class ProcessWNXML {
                 }
             }   
         }
+        if(args[1].endsWith(".idx")) {
+            HypernymIndex.build(hypernyms).write(new File(args[1]));
+            return;
+        }
         ObjectMapper mapper = new ObjectMapper();
         GZIPOutputStream gos = new GZIPOutputStream(new FileOutputStream(args[1]));
         mapper.writerWithDefaultPrettyPrinter().writeValue(gos, hypernyms);
@@ -0,0 +1,132 @@
+package org.insightcentre.nlp.saffron.taxonomy.classifiers;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class EmbeddingStoreTest {
+
+    private File directory;
+
+    public EmbeddingStoreTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("embeddings").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for (File f : directory.listFiles()) {
+            f.delete();
+        }
+        directory.delete();
+    }
+
+    /**
+     * Test of get method, of class EmbeddingStore.
+     */
+    @Test
+    public void testGet() throws Exception {
+        System.out.println("get");
+        Map<String, float[]> embeddings = new HashMap<>();
+        embeddings.put("bank  account", new float[]{1.0f, 2.0f, 3.0f});
+        embeddings.put("interest rate", new float[]{-1.0f, 0.5f, 0.0f, 9.0f});
+        try (EmbeddingStore instance = new EmbeddingStore(directory, "model", 3)) {
+            assertNull(instance.get("bank account"));
+            instance.putAll(embeddings);
+            assertEquals(2, instance.size());
+            assertArrayEquals(new float[]{1.0f, 2.0f, 3.0f}, instance.get(" bank account"), 0.0f);
+            assertArrayEquals(new float[]{-1.0f, 0.5f, 0.0f}, instance.get("interest rate"), 0.0f);
+        }
+    }
+
+    /**
+     * Test that the embeddings are kept between stores and separated by model
+     */
+    @Test
+    public void testReopen() throws Exception {
+        System.out.println("reopen");
+        Map<String, float[]> embeddings = new HashMap<>();
+        embeddings.put("cheese", new float[]{4.0f, 5.0f});
+        try (EmbeddingStore instance = new EmbeddingStore(directory, "model", 2)) {
+            instance.putAll(embeddings);
+        }
+        try (EmbeddingStore instance = new EmbeddingStore(directory, "model", 2);
+                EmbeddingStore other = new EmbeddingStore(directory, "other model", 2)) {
+            assertArrayEquals(new float[]{4.0f, 5.0f}, instance.get("cheese"), 0.0f);
+            assertNull(other.get("cheese"));
+            // Adding an existing term does not change it
+            embeddings.put("cheese", new float[]{0.0f, 0.0f});
+            embeddings.put("wine", new float[]{6.0f, 7.0f});
+            instance.putAll(embeddings);
+            assertEquals(2, instance.size());
+            assertArrayEquals(new float[]{4.0f, 5.0f}, instance.get("cheese"), 0.0f);
+        }
+        try (EmbeddingStore instance = new EmbeddingStore(directory, "model", 2)) {
+            assertArrayEquals(new float[]{6.0f, 7.0f}, instance.get("wine"), 0.0f);
+        }
+    }
+
+    /**
+     * Test that two stores of one JVM on the same directory can add
+     * embeddings at the same time and see those of each other
+     */
+    @Test
+    public void testSameDirectory() throws Exception {
+        System.out.println("sameDirectory");
+        ExecutorService service = Executors.newFixedThreadPool(2);
+        try (EmbeddingStore first = new EmbeddingStore(directory, "model", 2);
+                EmbeddingStore second = new EmbeddingStore(directory, "model", 2)) {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (final EmbeddingStore store : new EmbeddingStore[]{first, second}) {
+                final String prefix = store == first ? "first" : "second";
+                tasks.add(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        Map<String, float[]> embeddings = new HashMap<>();
+                        embeddings.put(prefix + " " + i, new float[]{i, -i});
+                        store.putAll(embeddings);
+                    }
+                    return null;
+                });
+            }
+            for (Future<Void> f : service.invokeAll(tasks)) {
+                f.get();
+            }
+            for (int i = 0; i < 200; i++) {
+                assertArrayEquals(new float[]{i, -i}, first.get("second " + i), 0.0f);
+                assertArrayEquals(new float[]{i, -i}, second.get("first " + i), 0.0f);
+            }
+            assertEquals(400, first.size());
+            assertEquals(400, second.size());
+        } finally {
+            service.shutdownNow();
+        }
+    }
+}
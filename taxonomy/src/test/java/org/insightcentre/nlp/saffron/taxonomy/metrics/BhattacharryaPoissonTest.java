@@ -2,8 +2,11 @@ package org.insightcentre.nlp.saffron.taxonomy.metrics;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
 
 import org.insightcentre.nlp.saffron.data.TaxoLink;
 import org.junit.After;
@@ -59,4 +62,58 @@ public class BhattacharryaPoissonTest {
         assertEquals(0.973, instance.deltaScore(new TaxoLink("b", "d")), 0.001);
     }
 
+    // sum over x > 0 of sqrt(f[x] / (N - f[0]) * l^x exp(-l) / x!)
+    private static double bp(int[] f, int N, double lambda) {
+        if (f[0] == N) {
+            return 0.0;
+        }
+        double bp = 0.0, px = Math.exp(-lambda);
+        for (int x = 1; x < f.length; x++) {
+            px *= lambda / x;
+            bp += Math.sqrt(px * f[x] / (N - f[0]));
+        }
+        return bp;
+    }
+
+    /**
+     * Test that the score of a new parent is the change of the metric
+     */
+    @Test
+    public void testDeltaScoreNewParent() {
+        System.out.println("deltaScoreNewParent");
+        List<String> terms = Arrays.asList("a", "b", "c", "d", "e", "f", "g", "h");
+        int N = terms.size() - 1;
+        Random random = new Random(1);
+        for (int run = 0; run < 20; run++) {
+            HierarchicalScore instance = new BhattacharryaPoisson(new NullScore(),
+                    new HashSet<>(terms), 2.0, 1.0);
+            int[] c = new int[terms.size()];
+            int[] f = new int[N + 1];
+            f[0] = N;
+            List<String> parents = new ArrayList<>();
+            for (int step = 0; step < N - 1; step++) {
+                String top;
+                if (parents.isEmpty() || random.nextBoolean()) {
+                    top = terms.get(random.nextInt(terms.size()));
+                } else {
+                    top = parents.get(random.nextInt(parents.size()));
+                }
+                int t = terms.indexOf(top);
+                if (c[t] == 0) {
+                    int[] f2 = f.clone();
+                    f2[0]--;
+                    f2[1]++;
+                    assertEquals(N * (bp(f2, N, 2.0) - bp(f, N, 2.0)),
+                            instance.deltaScore(new TaxoLink(top, "x")), 1e-9);
+                }
+                instance = instance.next(new TaxoLink(top, "x"), null);
+                f[c[t]]--;
+                c[t]++;
+                f[c[t]]++;
+                if (c[t] == 1) {
+                    parents.add(top);
+                }
+            }
+        }
+    }
 }
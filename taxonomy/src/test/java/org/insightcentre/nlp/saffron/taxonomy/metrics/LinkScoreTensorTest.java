@@ -0,0 +1,80 @@
+package org.insightcentre.nlp.saffron.taxonomy.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.insightcentre.nlp.saffron.data.TypedLink;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class LinkScoreTensorTest {
+
+    public LinkScoreTensorTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of get and set methods, of class LinkScoreTensor.
+     */
+    @Test
+    public void testGetSet() {
+        System.out.println("getSet");
+        LinkScoreTensor instance = new LinkScoreTensor();
+        int a = instance.termId("a");
+        int b = instance.termId("b");
+        assertEquals(a, instance.termId("a"));
+        assertEquals(-1, instance.lookup("c"));
+        assertTrue(Double.isNaN(instance.get(TypedLink.Type.hypernymy, a, b)));
+        instance.set(TypedLink.Type.hypernymy, a, b, 0.3);
+        instance.set(TypedLink.Type.synonymy, b, a, 0.7);
+        assertEquals(0.3, instance.get(TypedLink.Type.hypernymy, a, b), 0.0);
+        assertTrue(Double.isNaN(instance.get(TypedLink.Type.hyponymy, a, b)));
+        assertTrue(Double.isNaN(instance.get(TypedLink.Type.hypernymy, b, a)));
+        assertEquals(2, instance.size());
+    }
+
+    /**
+     * Test that the tensor behaves as a map of links to scores
+     */
+    @Test
+    public void testMap() {
+        System.out.println("map");
+        LinkScoreTensor instance = new LinkScoreTensor();
+        Map<TypedLink, Double> expected = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < 100; j += 7) {
+                TypedLink link = new TypedLink("t" + i, "t" + j, TypedLink.Type.values()[(i + j) % 5]);
+                expected.put(link, i * 0.01 + j);
+                instance.put(link, i * 0.01 + j);
+            }
+        }
+        assertEquals(expected.size(), instance.size());
+        assertEquals(expected, instance);
+        assertTrue(instance.containsKey(new TypedLink("t1", "t0", TypedLink.Type.hyponymy)));
+        assertFalse(instance.containsKey(new TypedLink("t1", "t0", TypedLink.Type.meronymy)));
+        assertEquals(7.01, instance.put(new TypedLink("t1", "t7", TypedLink.Type.synonymy), 0.5), 0.0);
+        assertEquals(0.5, instance.getDouble(new TypedLink("t1", "t7", TypedLink.Type.synonymy)), 0.0);
+    }
+}
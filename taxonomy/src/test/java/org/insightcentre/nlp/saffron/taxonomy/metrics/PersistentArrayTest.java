@@ -0,0 +1,79 @@
+package org.insightcentre.nlp.saffron.taxonomy.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author jmccrae
+ */
+public class PersistentArrayTest {
+    
+    public PersistentArrayTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of set method, of class PersistentArray.
+     */
+    @Test
+    public void testSet() {
+        System.out.println("set");
+        PersistentArray<String> a = PersistentArray.empty();
+        PersistentArray<String> b = a.set(3, "x");
+        PersistentArray<String> c = b.set(5000, "y");
+        PersistentArray<String> d = c.set(3, "z");
+        assertNull(a.get(3));
+        assertEquals("x", b.get(3));
+        assertNull(b.get(5000));
+        assertEquals("x", c.get(3));
+        assertEquals("y", c.get(5000));
+        assertEquals("z", d.get(3));
+        assertEquals("y", d.get(5000));
+        assertNull(d.get(4));
+        assertNull(d.get(-1));
+        assertNull(d.get(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testRandom() {
+        System.out.println("random");
+        Random r = new Random(0);
+        Integer[] expected = new Integer[3000];
+        PersistentArray<Integer> a = PersistentArray.empty();
+        for (int i = 0; i < 10000; i++) {
+            int j = r.nextInt(expected.length);
+            PersistentArray<Integer> b = a.set(j, i);
+            assertEquals(expected[j], a.get(j));
+            assertEquals((Integer) i, b.get(j));
+            expected[j] = i;
+            a = b;
+        }
+        for (int j = 0; j < expected.length; j++) {
+            assertEquals(expected[j], a.get(j));
+        }
+    }
+}
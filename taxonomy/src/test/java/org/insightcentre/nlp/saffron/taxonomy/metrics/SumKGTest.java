@@ -1,10 +1,14 @@
 package org.insightcentre.nlp.saffron.taxonomy.metrics;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.insightcentre.nlp.saffron.DefaultSaffronListener;
@@ -296,6 +300,39 @@ public class SumKGTest {
     	assertEquals(0.3, actual, 0.0001);
     }
     
+    /**
+     * Test that the normalised synonymy scores do not depend on the order the
+     * links are scored in and do not change once read
+     */
+    @Test
+    public void deltaScoreNormalisationOrderTest() {
+        System.out.println("deltaScoreNormalisationOrder");
+        MulticlassRelationClassifier<String> mockClassifier = 
+                Mockito.mock(MulticlassRelationClassifier.class);
+        Map<TypedLink.Type, Double> forward = new HashMap<TypedLink.Type,Double>();
+        forward.put(TypedLink.Type.synonymy, 0.4);
+        forward.put(TypedLink.Type.hypernymy, 0.3);
+        Map<TypedLink.Type, Double> backward = new HashMap<TypedLink.Type,Double>();
+        backward.put(TypedLink.Type.synonymy, 0.8);
+        backward.put(TypedLink.Type.hypernymy, 0.1);
+        Mockito.when(mockClassifier.predict("coach", "bus")).thenReturn(forward);
+        Mockito.when(mockClassifier.predict("bus", "coach")).thenReturn(backward);
+
+        TypedLink coachBus = new TypedLink("coach","bus", TypedLink.Type.synonymy);
+        TypedLink busCoach = new TypedLink("bus","coach", TypedLink.Type.synonymy);
+
+        SumKGScore first = new SumKGScore(mockClassifier, true);
+        assertEquals(0.6, first.deltaScore(coachBus), 0.0001);
+        assertEquals(0.6, first.deltaScore(busCoach), 0.0001);
+        assertEquals(0.6, first.deltaScore(coachBus), 0.0001);
+        assertEquals(0.3, first.deltaScore(new TypedLink("coach","bus", TypedLink.Type.hypernymy)), 0.0001);
+
+        SumKGScore second = new SumKGScore(mockClassifier, true);
+        assertEquals(0.6, second.deltaScore(busCoach), 0.0001);
+        assertEquals(0.6, second.deltaScore(coachBus), 0.0001);
+        assertEquals(0.1, second.deltaScore(new TypedLink("bus","coach", TypedLink.Type.hypernymy)), 0.0001);
+    }
+
     /**
      * Integration test
      * Test of extractTaxonomy method, of class GreedySplitTaxoExtract.
@@ -406,4 +443,30 @@ public class SumKGTest {
 
 
 	}
+
+	/**
+	 * Test that scoring links in a batch gives the same scores as scoring
+	 * each link in turn
+	 */
+	@Test
+	public void testPrefetch() throws Exception {
+		List<TypedLink> links = new ArrayList<>();
+		for (String source : Arrays.asList("coach", "bus", "automobile")) {
+			for (String target : Arrays.asList("coach", "bus", "automobile")) {
+				if (!source.equals(target)) {
+					for (TypedLink.Type type : TypedLink.Type.values()) {
+						links.add(new TypedLink(source, target, type));
+					}
+				}
+			}
+		}
+		SumKGScore expected = new SumKGScore(new TestMultiRelationClassifier(), true);
+		for (TypedLink link : links) {
+			expected.deltaScore(link);
+		}
+		SumKGScore actual = new SumKGScore(new TestMultiRelationClassifier(), true);
+		actual.prefetch(links);
+		assertEquals(expected.scores, actual.scores);
+		assertEquals(0.75, actual.deltaScore(new TypedLink("bus", "coach", TypedLink.Type.synonymy)), 0.0);
+	}
 }
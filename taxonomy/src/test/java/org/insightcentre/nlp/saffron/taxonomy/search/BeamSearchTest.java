@@ -7,6 +7,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Random;
 import java.util.Set;
+import org.insightcentre.nlp.saffron.DefaultSaffronListener;
 import org.insightcentre.nlp.saffron.data.Status;
 import org.insightcentre.nlp.saffron.data.TaxoLink;
 import org.insightcentre.nlp.saffron.data.Taxonomy;
@@ -151,4 +152,64 @@ public class BeamSearchTest {
         }
 
     }
+
+    @Test
+    public void testParallelMatchesSequential() throws Exception {
+        int n = 12;
+        Random r = new Random(1);
+        double[][] scores = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                scores[i][j] = r.nextDouble();
+            }
+        }
+        HashMap<String, Term> terms = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            addTerm(terms, "" + i, 0.0);
+        }
+        SupervisedTaxo classifier = new SupervisedTaxo((Features) null, null, null) {
+            @Override
+            public double predict(String top, String bottom) {
+                return scores[Integer.parseInt(top)][Integer.parseInt(bottom)];
+            }
+        };
+        Taxonomy sequential = new BeamSearch(new SumScore(classifier), 10, 1).extractTaxonomy(terms);
+        Taxonomy parallel = new BeamSearch(new SumScore(classifier), 10, 4).extractTaxonomy(terms);
+        assert (parallel.verifyTree());
+        assertEquals(sequential, parallel);
+    }
+
+    /**
+     * Test of extractTaxonomy method with a budget, of class BeamSearch.
+     */
+    @Test
+    public void testExtractTaxonomyWithBudget() throws Exception {
+        System.out.println("extractTaxonomyWithBudget");
+        HashMap<String, Term> terms = new HashMap<>();
+        addTerm(terms, "", 0.0);
+        addTerm(terms, "a", 0.0);
+        addTerm(terms, "b", 0.0);
+        addTerm(terms, "c", 0.0);
+        addTerm(terms, "ab", 0.0);
+        addTerm(terms, "ac", 0.0);
+        addTerm(terms, "abc", 0.0);
+        addTerm(terms, "ba", 0.0);
+        addTerm(terms, "bd", 0.0);
+
+        // The search stops early, but all terms are still in the taxonomy
+        BeamSearch instance = new BeamSearch(new SumScore(new TestSupervisedTaxo()), 2, 1, null,
+                new SearchBudget(0, 2), new DefaultSaffronListener());
+        Taxonomy result = instance.extractTaxonomy(terms);
+        assertTrue(result.verifyTree());
+        for (String term : terms.keySet()) {
+            assertTrue(result.hasDescendent(term));
+        }
+
+        // A budget that is not spent does not change the result
+        instance = new BeamSearch(new SumScore(new TestSupervisedTaxo()), 2, 1, null,
+                new SearchBudget(60000, 100), new DefaultSaffronListener());
+        result = instance.extractTaxonomy(terms);
+        assertEquals("", result.root);
+        assertEquals(3, result.children.size());
+    }
 }
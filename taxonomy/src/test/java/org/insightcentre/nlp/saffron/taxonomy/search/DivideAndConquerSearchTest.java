@@ -0,0 +1,176 @@
+package org.insightcentre.nlp.saffron.taxonomy.search;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.insightcentre.nlp.saffron.DefaultSaffronListener;
+import org.insightcentre.nlp.saffron.data.Status;
+import org.insightcentre.nlp.saffron.data.TaxoLink;
+import org.insightcentre.nlp.saffron.data.Taxonomy;
+import org.insightcentre.nlp.saffron.data.Term;
+import org.insightcentre.nlp.saffron.taxonomy.metrics.SumScore;
+import org.insightcentre.nlp.saffron.taxonomy.supervised.Features;
+import org.insightcentre.nlp.saffron.taxonomy.supervised.SupervisedTaxo;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class DivideAndConquerSearchTest {
+
+    public DivideAndConquerSearchTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private static class TestSupervisedTaxo extends SupervisedTaxo {
+
+        public TestSupervisedTaxo() throws IOException {
+            super((Features)null, null, null);
+        }
+
+        @Override
+        public double predict(String top, String bottom) {
+            if(bottom.startsWith(top)) {
+                return (double)(top.length() + 1.0) / (bottom.length() + 1.0);
+            } else {
+                return 0.0;
+            }
+        }
+
+    }
+
+    private void addTerm(HashMap<String, Term> terms, String t, double score) {
+        terms.put(t, new Term(t, 0, 0, score, Collections.EMPTY_LIST, Status.none.toString()));
+    }
+
+    private HashMap<String, Term> terms() {
+        HashMap<String, Term> terms = new HashMap<>();
+        for (String t : new String[] { "a", "b", "c" }) {
+            addTerm(terms, t, 0.0);
+            for (String u : new String[] { "a", "b", "c", "d" }) {
+                addTerm(terms, t + u, 0.0);
+                addTerm(terms, t + u + "x", 0.0);
+            }
+        }
+        return terms;
+    }
+
+    /** Only the prefixes of each term are candidates */
+    private CandidateParents prefixes(Set<String> terms) {
+        HashMap<String, Set<String>> parents = new HashMap<>();
+        for (String t : terms) {
+            parents.put(t, new HashSet<String>());
+            for (int i = t.length() - 1; i > 0; i--) {
+                if (terms.contains(t.substring(0, i))) {
+                    parents.get(t).add(t.substring(0, i));
+                }
+            }
+        }
+        return new CandidateParents(parents);
+    }
+
+    /**
+     * Test of cluster method, of class DivideAndConquerSearch.
+     */
+    @Test
+    public void testCluster() {
+        System.out.println("cluster");
+        HashMap<String, Term> terms = terms();
+        Set<TaxoLink> whiteList = new HashSet<>();
+        whiteList.add(new TaxoLink("a", "cdx"));
+        List<Set<String>> clusters = DivideAndConquerSearch.cluster(terms.keySet(),
+                prefixes(terms.keySet()), 10, whiteList);
+        Set<String> clustered = new HashSet<>();
+        for (Set<String> cluster : clusters) {
+            assertTrue(cluster.size() <= 10);
+            for (String term : cluster) {
+                assertTrue(clustered.add(term));
+            }
+            if (cluster.contains("a")) {
+                assertTrue(cluster.contains("cdx"));
+            }
+            if (cluster.contains("abx")) {
+                assertTrue(cluster.contains("ab"));
+            }
+        }
+        assertEquals(terms.keySet(), clustered);
+    }
+
+    /**
+     * Test of extractTaxonomyWithBlackWhiteList method, of class DivideAndConquerSearch.
+     */
+    @Test
+    public void testExtractTaxonomyWithBlackWhiteList() throws Exception {
+        System.out.println("extractTaxonomyWithBlackWhiteList");
+        HashMap<String, Term> terms = terms();
+        Set<TaxoLink> whiteList = new HashSet<>();
+        whiteList.add(new TaxoLink("a", "cdx"));
+        final TestSupervisedTaxo classifier = new TestSupervisedTaxo();
+        DivideAndConquerSearch instance = new DivideAndConquerSearch(
+                subTerms -> new Greedy(new SumScore(classifier)),
+                subTerms -> prefixes(subTerms), 10, 2, new DefaultSaffronListener());
+        Taxonomy result = instance.extractTaxonomyWithBlackWhiteList(terms, whiteList, Collections.EMPTY_SET);
+        assertTrue(result.verifyTree());
+        for (String term : terms.keySet()) {
+            assertTrue(result.hasDescendent(term));
+        }
+        assertEquals(terms.size(), result.size());
+        assertEquals("ab", result.getParent("abx").root);
+        assertEquals("a", result.getParent("cdx").root);
+        assertEquals(Status.accepted, result.descendent("cdx").status);
+    }
+
+    /**
+     * Test that the searches of all the clusters share one budget
+     */
+    @Test
+    public void testSharedBudget() throws Exception {
+        System.out.println("sharedBudget");
+        HashMap<String, Term> terms = terms();
+        Set<TaxoLink> whiteList = new HashSet<>();
+        whiteList.add(new TaxoLink("a", "cdx"));
+        final TestSupervisedTaxo classifier = new TestSupervisedTaxo();
+        final AtomicInteger searches = new AtomicInteger();
+        DivideAndConquerSearch instance = new DivideAndConquerSearch(
+                (subTerms, budget) -> {
+                    searches.incrementAndGet();
+                    return new Greedy(new SumScore(classifier), null, budget, new DefaultSaffronListener());
+                },
+                subTerms -> prefixes(subTerms), classifier::predict,
+                new SearchBudget(0, 1), 10, 1, new DefaultSaffronListener());
+        Taxonomy result = instance.extractTaxonomyWithBlackWhiteList(terms, whiteList, Collections.EMPTY_SET);
+        // The first search spends the budget, so the other clusters and
+        // their roots are not searched
+        assertEquals(1, searches.get());
+        assertTrue(result.verifyTree());
+        assertEquals(terms.size(), result.size());
+        assertEquals("ab", result.getParent("abx").root);
+        assertEquals("a", result.getParent("cdx").root);
+        assertEquals(Status.accepted, result.descendent("cdx").status);
+    }
+}
@@ -0,0 +1,141 @@
+package org.insightcentre.nlp.saffron.taxonomy.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.insightcentre.nlp.saffron.data.TypedLink;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author jmccrae
+ */
+public class GreedyKGListTest {
+
+    public GreedyKGListTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of poll method, of class GreedyKGList.
+     */
+    @Test
+    public void testPoll() {
+        System.out.println("poll");
+        final Map<TypedLink, Double> scores = new HashMap<>();
+        final TypedLink a = new TypedLink("a", "b", TypedLink.Type.hypernymy);
+        final TypedLink b = new TypedLink("a", "b", TypedLink.Type.meronymy);
+        final TypedLink c = new TypedLink("a", "b", TypedLink.Type.synonymy);
+        final TypedLink d = new TypedLink("b", "a", TypedLink.Type.hypernymy);
+        final TypedLink e = new TypedLink("b", "a", TypedLink.Type.synonymy);
+        scores.put(a, 0.9);
+        scores.put(b, 0.95);
+        scores.put(c, 0.1);
+        scores.put(d, 0.9);
+        scores.put(e, 0.2);
+        GreedyKGList instance = new GreedyKGList(Arrays.asList(a, b, c, d, e));
+        instance.score(scores::get);
+        assertEquals(5, instance.size());
+        assertEquals(0.2, instance.maxScore(TypedLink.Type.synonymy), 0.0);
+        assertEquals(Double.NEGATIVE_INFINITY, instance.maxScore(TypedLink.Type.other), 0.0);
+        assertEquals(0.2, instance.peekScore(), 0.0);
+        assertEquals(e, instance.poll());
+        assertEquals(c, instance.poll());
+        assertEquals(b, instance.poll());
+        assertTrue(instance.remove(new TypedLink("a", "b", TypedLink.Type.hypernymy)));
+        assertFalse(instance.remove(a));
+        assertEquals(d, instance.poll());
+        assertTrue(instance.isEmpty());
+    }
+
+    /**
+     * Test that rescoring and removing links keeps the order of the links
+     */
+    @Test
+    public void testRescore() {
+        System.out.println("rescore");
+        final Random random = new Random(11);
+        final List<TypedLink> links = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            for (TypedLink.Type type : TypedLink.Type.values()) {
+                links.add(new TypedLink("t" + i, "t" + (i + 1), type));
+            }
+        }
+        final Map<TypedLink, Double> scores = new HashMap<>();
+        GreedyKGList instance = new GreedyKGList(links);
+        for (int round = 0; round < 3; round++) {
+            for (TypedLink link : links) {
+                // Some ties, so that the order of the links is also checked
+                scores.put(link, (double) random.nextInt(5));
+            }
+            instance.score(scores::get);
+        }
+        for (int i = 0; i < links.size(); i += 7) {
+            assertTrue(instance.remove(links.get(i)));
+        }
+        final List<TypedLink> expected = new ArrayList<>(instance);
+        expected.sort((x, y) -> {
+            final boolean sx = x.getType() == TypedLink.Type.synonymy;
+            final boolean sy = y.getType() == TypedLink.Type.synonymy;
+            if (sx != sy) {
+                return sx ? -1 : 1;
+            }
+            final int c = -Double.compare(scores.get(x), scores.get(y));
+            return c != 0 ? c : Integer.compare(links.indexOf(x), links.indexOf(y));
+        });
+        final List<TypedLink> actual = new ArrayList<>();
+        while (!instance.isEmpty()) {
+            actual.add(instance.poll());
+        }
+        assertEquals(expected, actual);
+    }
+
+    /**
+     * Test that rescoring some links through the index keeps the order
+     */
+    @Test
+    public void testRescoreSome() {
+        System.out.println("rescoreSome");
+        final Map<TypedLink, Double> scores = new HashMap<>();
+        final TypedLink a = new TypedLink("a", "b", TypedLink.Type.hypernymy);
+        final TypedLink b = new TypedLink("b", "c", TypedLink.Type.hypernymy);
+        final TypedLink c = new TypedLink("c", "d", TypedLink.Type.hypernymy);
+        scores.put(a, 0.9);
+        scores.put(b, 0.5);
+        scores.put(c, 0.1);
+        GreedyKGList instance = new GreedyKGList(Arrays.asList(a, b, c));
+        instance.score(scores::get);
+        assertTrue(instance.remove(b));
+        scores.put(b, 2.0);
+        scores.put(c, 1.0);
+        // Links not in the list are ignored
+        instance.rescore(Arrays.asList(b, c, new TypedLink("x", "y", TypedLink.Type.hypernymy)), scores::get);
+        assertEquals(2, instance.size());
+        assertEquals(c, instance.poll());
+        assertEquals(a, instance.poll());
+        assertTrue(instance.isEmpty());
+    }
+}
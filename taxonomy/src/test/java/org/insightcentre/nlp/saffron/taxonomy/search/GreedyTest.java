@@ -6,6 +6,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
+import org.insightcentre.nlp.saffron.DefaultSaffronListener;
 import org.insightcentre.nlp.saffron.data.Status;
 import org.insightcentre.nlp.saffron.data.TaxoLink;
 import org.insightcentre.nlp.saffron.data.Taxonomy;
@@ -119,4 +120,104 @@ public class GreedyTest {
         assert(result.children.stream().anyMatch((Taxonomy t) -> t.root.equals("b") && t.status == Status.none));
         assert(result.children.stream().anyMatch((Taxonomy t) -> t.root.equals("ab") && t.status == Status.accepted));
     }
+
+    /**
+     * Test of extractTaxonomy method with candidate parents, of class Greedy.
+     */
+    @Test
+    public void testExtractTaxonomyWithCandidates() throws Exception {
+        System.out.println("extractTaxonomyWithCandidates");
+        HashMap<String, Term> terms = new HashMap<>();
+        addTerm(terms, "r", 0.0);
+        addTerm(terms, "ra", 0.0);
+        addTerm(terms, "rb", 0.0);
+        addTerm(terms, "rc", 0.0);
+        addTerm(terms, "rab", 0.0);
+        addTerm(terms, "rac", 0.0);
+        addTerm(terms, "rabc", 0.0);
+        addTerm(terms, "rba", 0.0);
+        addTerm(terms, "rbd", 0.0);
+
+        // Only the prefixes of each term are candidates
+        HashMap<String, Set<String>> parents = new HashMap<>();
+        for (String t : terms.keySet()) {
+            parents.put(t, new HashSet<String>());
+            for (int i = 1; i < t.length(); i++) {
+                parents.get(t).add(t.substring(0, i));
+            }
+        }
+        Set<TaxoLink> whiteList = new HashSet<>();
+        whiteList.add(new TaxoLink("rc", "rab"));
+
+        Greedy instance = new Greedy(new SumScore(new TestSupervisedTaxo()), new CandidateParents(parents));
+        Taxonomy result = instance.extractTaxonomyWithBlackWhiteList(terms, whiteList, Collections.EMPTY_SET);
+        assertEquals("rc", result.getParent("rab").root);
+        assertEquals(Status.accepted, result.descendent("rab").status);
+        assertEquals("rab", result.getParent("rabc").root);
+        assertEquals("rb", result.getParent("rbd").root);
+    }
+
+    /**
+     * Test of extractTaxonomy method with a budget, of class Greedy.
+     */
+    @Test
+    public void testExtractTaxonomyWithBudget() throws Exception {
+        System.out.println("extractTaxonomyWithBudget");
+        HashMap<String, Term> terms = new HashMap<>();
+        addTerm(terms, "", 0.0);
+        addTerm(terms, "a", 0.0);
+        addTerm(terms, "b", 0.0);
+        addTerm(terms, "c", 0.0);
+        addTerm(terms, "ab", 0.0);
+        addTerm(terms, "ac", 0.0);
+        addTerm(terms, "abc", 0.0);
+        addTerm(terms, "ba", 0.0);
+        addTerm(terms, "bd", 0.0);
+
+        // The search stops early, but all terms are still in the taxonomy
+        Greedy instance = new Greedy(new SumScore(new TestSupervisedTaxo()), null,
+                new SearchBudget(0, 2), new DefaultSaffronListener());
+        Taxonomy result = instance.extractTaxonomy(terms);
+        assertTrue(result.verifyTree());
+        for (String term : terms.keySet()) {
+            assertTrue(result.hasDescendent(term));
+        }
+
+        // A budget that is not spent does not change the result
+        instance = new Greedy(new SumScore(new TestSupervisedTaxo()), null,
+                new SearchBudget(60000, 100), new DefaultSaffronListener());
+        result = instance.extractTaxonomy(terms);
+        assertEquals("", result.root);
+        assertEquals(3, result.children.size());
+    }
+
+    /**
+     * Test that the search completes when the blacklist removes all the
+     * candidate parents of a term
+     */
+    @Test
+    public void testExtractTaxonomyWithExhaustedCandidates() throws Exception {
+        System.out.println("extractTaxonomyWithExhaustedCandidates");
+        HashMap<String, Term> terms = new HashMap<>();
+        addTerm(terms, "r", 0.0);
+        addTerm(terms, "ra", 0.0);
+        addTerm(terms, "rb", 0.0);
+        addTerm(terms, "rab", 0.0);
+
+        // The root is the only candidate parent of each term
+        HashMap<String, Set<String>> parents = new HashMap<>();
+        for (String t : terms.keySet()) {
+            parents.put(t, t.equals("r") ? Collections.<String>emptySet() : Collections.singleton("r"));
+        }
+        Set<TaxoLink> blackList = new HashSet<>();
+        blackList.add(new TaxoLink("r", "rab"));
+
+        Greedy instance = new Greedy(new SumScore(new TestSupervisedTaxo()), new CandidateParents(parents));
+        Taxonomy result = instance.extractTaxonomyWithBlackWhiteList(terms, Collections.EMPTY_SET, blackList);
+        assertTrue(result.verifyTree());
+        for (String term : terms.keySet()) {
+            assertTrue(result.hasDescendent(term));
+        }
+        assertEquals("ra", result.getParent("rab").root);
+    }
 }
@@ -0,0 +1,198 @@
+package org.insightcentre.nlp.saffron.taxonomy.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import org.insightcentre.nlp.saffron.DefaultSaffronListener;
+import org.insightcentre.nlp.saffron.data.Status;
+import org.insightcentre.nlp.saffron.data.TaxoLink;
+import org.insightcentre.nlp.saffron.data.Taxonomy;
+import org.insightcentre.nlp.saffron.data.Term;
+import org.insightcentre.nlp.saffron.taxonomy.supervised.Features;
+import org.insightcentre.nlp.saffron.taxonomy.supervised.SupervisedTaxo;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class IncrementalSearchTest {
+
+    public IncrementalSearchTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private static class TestSupervisedTaxo extends SupervisedTaxo {
+
+        public TestSupervisedTaxo() throws IOException {
+            super((Features)null, null, null);
+        }
+
+        @Override
+        public double predict(String top, String bottom) {
+            if(bottom.startsWith(top)) {
+                return (double)(top.length() + 1.0) / (bottom.length() + 1.0);
+            } else {
+                return 0.0;
+            }
+        }
+
+    }
+
+    private void addTerm(HashMap<String, Term> terms, String t, double score) {
+        terms.put(t, new Term(t, 0, 0, score, Collections.EMPTY_LIST, Status.none.toString()));
+    }
+
+    private Taxonomy node(String root, double linkScore, Status status, Taxonomy... children) {
+        return new Taxonomy(root, 0.0, linkScore, new ArrayList<>(Arrays.asList(children)), status);
+    }
+
+    /**
+     * Test of insert method, of class IncrementalSearch.
+     */
+    @Test
+    public void testInsert() throws Exception {
+        System.out.println("insert");
+        HashMap<String, Term> terms = new HashMap<>();
+        for (String t : new String[] { "", "a", "b", "ab", "abc", "ac", "ba", "c" }) {
+            addTerm(terms, t, 0.0);
+        }
+        Taxonomy taxonomy = node("", Double.NaN, Status.none,
+                node("a", 0.5, Status.none, node("ab", 2.0 / 3.0, Status.none)),
+                node("b", 0.5, Status.none));
+        Set<TaxoLink> whiteList = new HashSet<>();
+        whiteList.add(new TaxoLink("b", "c"));
+
+        IncrementalSearch instance = new IncrementalSearch(new TestSupervisedTaxo(), null, true,
+                new DefaultSaffronListener());
+        Taxonomy result = instance.insert(taxonomy, terms, whiteList, Collections.EMPTY_SET);
+        assertTrue(result.verifyTree());
+        assertEquals(terms.size(), result.size());
+        assertEquals("ab", result.getParent("abc").root);
+        assertEquals("a", result.getParent("ac").root);
+        assertEquals("b", result.getParent("ba").root);
+        assertEquals("b", result.getParent("c").root);
+        assertEquals(Status.accepted, result.descendent("c").status);
+        // The existing taxonomy is not changed
+        assertEquals(4, taxonomy.size());
+    }
+
+    /**
+     * Test of insert method reoptimising the siblings, of class IncrementalSearch.
+     */
+    @Test
+    public void testInsertReoptimise() throws Exception {
+        System.out.println("insertReoptimise");
+        HashMap<String, Term> terms = new HashMap<>();
+        for (String t : new String[] { "", "a", "b", "ab", "ac", "ad" }) {
+            addTerm(terms, t, 0.0);
+        }
+        Taxonomy taxonomy = node("", Double.NaN, Status.none,
+                node("ab", 1.0 / 3.0, Status.none),
+                node("ac", 1.0 / 3.0, Status.none),
+                node("ad", 1.0 / 3.0, Status.accepted),
+                node("b", 0.5, Status.none));
+
+        Taxonomy result = new IncrementalSearch(new TestSupervisedTaxo(), null, true,
+                new DefaultSaffronListener()).insert(taxonomy, terms);
+        assertTrue(result.verifyTree());
+        assertEquals("a", result.getParent("ab").root);
+        assertEquals("a", result.getParent("ac").root);
+        assertEquals("", result.getParent("ad").root);
+        assertEquals("", result.getParent("b").root);
+
+        // Without reoptimising the existing links are all kept
+        result = new IncrementalSearch(new TestSupervisedTaxo(), null, false,
+                new DefaultSaffronListener()).insert(taxonomy, terms);
+        assertEquals("", result.getParent("ab").root);
+        assertEquals("", result.getParent("a").root);
+    }
+
+    /**
+     * Test that the terms no longer in the term map are removed, of class
+     * IncrementalSearch.
+     */
+    @Test
+    public void testInsertPrune() throws Exception {
+        System.out.println("insertPrune");
+        HashMap<String, Term> terms = new HashMap<>();
+        for (String t : new String[] { "", "ab", "acd", "b" }) {
+            addTerm(terms, t, 0.0);
+        }
+        Taxonomy taxonomy = node("", Double.NaN, Status.none,
+                node("a", 0.5, Status.none,
+                        node("ab", 2.0 / 3.0, Status.none),
+                        node("ac", 2.0 / 3.0, Status.none, node("acd", 0.75, Status.none))),
+                node("b", 0.5, Status.none));
+
+        Taxonomy result = new IncrementalSearch(new TestSupervisedTaxo(), null, true,
+                new DefaultSaffronListener()).insert(taxonomy, terms);
+        assertTrue(result.verifyTree());
+        assertEquals(4, result.size());
+        assertNull(result.descendent("a"));
+        assertNull(result.descendent("ac"));
+        assertEquals("", result.getParent("ab").root);
+        assertEquals("", result.getParent("acd").root);
+        assertEquals("", result.getParent("b").root);
+        // The existing taxonomy is not changed
+        assertEquals(6, taxonomy.size());
+    }
+
+    /**
+     * Test that the blacklisted and whitelisted links between existing terms
+     * are applied, of class IncrementalSearch.
+     */
+    @Test
+    public void testInsertExistingLinks() throws Exception {
+        System.out.println("insertExistingLinks");
+        HashMap<String, Term> terms = new HashMap<>();
+        for (String t : new String[] { "", "a", "ab", "abc", "b", "c" }) {
+            addTerm(terms, t, 0.0);
+        }
+        Taxonomy taxonomy = node("", Double.NaN, Status.none,
+                node("a", 0.5, Status.none,
+                        node("ab", 2.0 / 3.0, Status.none, node("abc", 0.75, Status.none)),
+                        node("b", 0.0, Status.none)),
+                node("c", 0.5, Status.none));
+        Set<TaxoLink> whiteList = new HashSet<>();
+        whiteList.add(new TaxoLink("c", "ab"));
+        Set<TaxoLink> blackList = new HashSet<>();
+        blackList.add(new TaxoLink("a", "b"));
+
+        Taxonomy result = new IncrementalSearch(new TestSupervisedTaxo(), null, true,
+                new DefaultSaffronListener()).insert(taxonomy, terms, whiteList, blackList);
+        assertTrue(result.verifyTree());
+        assertEquals(6, result.size());
+        // The branch under the whitelisted link is moved
+        assertEquals("c", result.getParent("ab").root);
+        assertEquals(Status.accepted, result.descendent("ab").status);
+        assertEquals("ab", result.getParent("abc").root);
+        // The blacklisted child is placed under its best other parent
+        assertEquals("", result.getParent("b").root);
+        assertEquals("a", taxonomy.getParent("b").root);
+    }
+}
@@ -4,7 +4,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.insightcentre.nlp.saffron.data.TypedLink;
@@ -31,13 +34,46 @@ public class KnowledgeGraphSolutionTest {
 		kgs = kgs.add(new TypedLink("automobile","coach",TypedLink.Type.hypernymy), 1.0, 1.0, 1.0, false);
 		
 		//evaluate
-		assertTrue(kgs.synonymyPairs.containsKey("coach"));
-		assertTrue(kgs.synonymyPairs.containsKey("autobus"));
-		assertFalse(kgs.synonymyPairs.containsKey("bus"));
-		assertEquals("bus",kgs.synonymyPairs.get("coach"));
-		assertEquals("bus",kgs.synonymyPairs.get("autobus"));
+		assertFalse(kgs.synonyms.isRepresentative("coach"));
+		assertFalse(kgs.synonyms.isRepresentative("autobus"));
+		assertTrue(kgs.synonyms.isRepresentative("bus"));
+		assertEquals("bus",kgs.synonyms.representative("coach"));
+		assertEquals("bus",kgs.synonyms.representative("autobus"));
 		assertTrue(kgs.taxonomy.heads.containsKey("automobile"));
 		assertEquals("bus",kgs.taxonomy.heads.get("automobile").children.get(0).root);
 	}
 
+	@Test
+	public void testAddJoinsGroups() {
+		Set<String> terms = new HashSet<String>(Arrays.asList("coach", "bus", "car", "auto"));
+		KnowledgeGraphSolution kgs = new KnowledgeGraphSolution(terms);
+		kgs = kgs.add(new TypedLink("coach","bus",TypedLink.Type.synonymy), 1.0, 1.0, 1.0, false);
+		kgs = kgs.add(new TypedLink("auto","car",TypedLink.Type.synonymy), 1.0, 1.0, 1.0, false);
+		// A member of a group joins the whole group to the other group
+		kgs = kgs.add(new TypedLink("auto","coach",TypedLink.Type.synonymy), 1.0, 1.0, 1.0, false);
+		assertEquals("bus",kgs.synonyms.representative("car"));
+		assertEquals(new HashSet<String>(Arrays.asList("bus")), kgs.terms);
+		assertEquals(1, kgs.synonyms.groups().size());
+		assertEquals(4, kgs.synonyms.members("coach").size());
+	}
+
+	@Test
+	public void testPruneCandidateList() {
+		Set<String> terms = new HashSet<String>(Arrays.asList("coach", "bus", "car"));
+		KnowledgeGraphSolution kgs = new KnowledgeGraphSolution(terms);
+		List<TypedLink> candidates = new ArrayList<TypedLink>();
+		for (TypedLink.Type type : TypedLink.Type.values()) {
+			candidates.add(new TypedLink("bus", "coach", type));
+			candidates.add(new TypedLink("car", "coach", type));
+		}
+		TypedLink link = new TypedLink("coach","bus",TypedLink.Type.synonymy);
+		kgs = kgs.add(link, 1.0, 1.0, 1.0, false);
+		kgs.pruneCandidateList(candidates, link);
+		// Only the links to the other term remain
+		assertEquals(TypedLink.Type.values().length, candidates.size());
+		for (TypedLink candidate : candidates) {
+			assertEquals("car", candidate.getSource());
+		}
+	}
+
 }
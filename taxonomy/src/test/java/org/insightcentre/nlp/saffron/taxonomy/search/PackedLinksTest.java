@@ -0,0 +1,159 @@
+package org.insightcentre.nlp.saffron.taxonomy.search;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import org.insightcentre.nlp.saffron.data.TaxoLink;
+import org.insightcentre.nlp.saffron.data.TypedLink;
+import org.insightcentre.nlp.saffron.taxonomy.metrics.BhattacharryaPoisson;
+import org.insightcentre.nlp.saffron.taxonomy.metrics.HierarchicalScore;
+import org.insightcentre.nlp.saffron.taxonomy.metrics.NullScore;
+import org.insightcentre.nlp.saffron.taxonomy.metrics.Score;
+import org.insightcentre.nlp.saffron.taxonomy.metrics.SumScore;
+import org.insightcentre.nlp.saffron.taxonomy.supervised.ScoreMatrix;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class PackedLinksTest {
+
+    public PackedLinksTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of pack method, of class PackedLinks.
+     */
+    @Test
+    public void testPack() {
+        System.out.println("pack");
+        long link = PackedLinks.pack(7, Integer.MAX_VALUE);
+        assertEquals(7, PackedLinks.parent(link));
+        assertEquals(Integer.MAX_VALUE, PackedLinks.child(link));
+        assertTrue(PackedLinks.pack(1, 5) < PackedLinks.pack(2, 0));
+    }
+
+    /**
+     * Test of scoreAndSort method, of class PackedLinks.
+     */
+    @Test
+    public void testScoreAndSort() {
+        System.out.println("scoreAndSort");
+        PackedLinks instance = new PackedLinks(Arrays.asList("c", "a", "b"));
+        assertEquals(0, instance.id("a"));
+        assertEquals("c", instance.term(2));
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                if (i != j) {
+                    instance.add(i, j);
+                }
+            }
+        }
+        instance.removeAll(Collections.singleton(new TaxoLink("c", "a")));
+        assertEquals(5, instance.size());
+        instance.scoreAndSort(new Score<TypedLink>() {
+            @Override
+            public double deltaScore(TypedLink link) {
+                return link.getSource().equals("b") ? 1.0 : 0.0;
+            }
+
+            @Override
+            public Score<TypedLink> next(TypedLink link, Solution soln) {
+                return this;
+            }
+        });
+        assertEquals(new TaxoLink("b", "a"), instance.toTaxoLink(instance.first()));
+        assertEquals(1.0, instance.firstScore(), 0.0);
+        instance.removeFirst();
+        assertEquals(new TaxoLink("b", "c"), instance.toTaxoLink(instance.first()));
+        instance.removeFirst();
+        // Equal scores are in the order of the links
+        assertEquals(new TaxoLink("a", "b"), instance.toTaxoLink(instance.get(0)));
+        assertEquals(new TaxoLink("a", "c"), instance.toTaxoLink(instance.get(1)));
+        assertEquals(new TaxoLink("c", "b"), instance.toTaxoLink(instance.get(2)));
+        assertEquals(3, instance.size());
+    }
+
+    /**
+     * Test that scoring by the ids of the terms gives the same scores and
+     * order as scoring links
+     */
+    @Test
+    public void testScoreAndSortByIds() {
+        System.out.println("scoreAndSortByIds");
+        final List<String> terms = Arrays.asList("d", "a", "c", "e", "b");
+        final ScoreMatrix matrix = ScoreMatrix.compute(
+                (top, bottom) -> (top.hashCode() * 31 + bottom.hashCode()) % 7 / 7.0, terms, 1);
+        HierarchicalScore score = new BhattacharryaPoisson(new SumScore(matrix),
+                new HashSet<>(terms), 2.0, 0.5);
+        score = score.next(new TaxoLink("a", "b"), null);
+        final HierarchicalScore indexed = score;
+        PackedLinks byIds = new PackedLinks(terms);
+        PackedLinks byLinks = new PackedLinks(terms);
+        for (int i = 0; i < terms.size(); i++) {
+            for (int j = 0; j < terms.size(); j++) {
+                if (i != j) {
+                    byIds.add(i, j);
+                    byLinks.add(i, j);
+                }
+            }
+        }
+        byIds.scoreAndSort(indexed);
+        byLinks.scoreAndSort(new Score<TaxoLink>() {
+            @Override
+            public double deltaScore(TaxoLink link) {
+                return indexed.deltaScore(link);
+            }
+
+            @Override
+            public Score<TaxoLink> next(TaxoLink link, Solution soln) {
+                return this;
+            }
+        });
+        assertEquals(byLinks.size(), byIds.size());
+        while (!byLinks.isEmpty()) {
+            assertEquals(byLinks.first(), byIds.first());
+            assertEquals(byLinks.firstScore(), byIds.firstScore(), 0.0);
+            byLinks.removeFirst();
+            byIds.removeFirst();
+        }
+    }
+
+    /**
+     * Test that scoring stops when the budget is spent
+     */
+    @Test
+    public void testScoreAndSortWithBudget() {
+        System.out.println("scoreAndSortWithBudget");
+        PackedLinks instance = new PackedLinks(Arrays.asList("a", "b"));
+        instance.add(0, 1);
+        instance.add(1, 0);
+        SearchBudget.Clock clock = new SearchBudget(0, 1).start();
+        assertTrue(instance.scoreAndSort(new NullScore(), clock));
+        clock.step();
+        assertFalse(instance.scoreAndSort(new NullScore(), clock));
+    }
+}
@@ -0,0 +1,68 @@
+package org.insightcentre.nlp.saffron.taxonomy.search;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.insightcentre.nlp.saffron.data.Taxonomy;
+import org.insightcentre.nlp.saffron.data.Term;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class TaxonomySolutionTest {
+
+    public TaxonomySolutionTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test that complete without candidate parents only considers the
+     * best-scoring terms in the taxonomy as parents
+     */
+    @Test
+    public void testComplete() {
+        System.out.println("complete");
+        final int n = TaxonomySolution.COMPLETION_PARENTS + 20;
+        final Map<String, Term> termMap = new HashMap<>();
+        final Set<String> terms = new HashSet<>();
+        for (int i = 0; i <= n; i++) {
+            final String t = "t" + i;
+            termMap.put(t, new Term.Builder(t).score(n - i).build());
+            terms.add(t);
+        }
+        TaxonomySolution soln = TaxonomySolution.empty(terms);
+        for (int i = 1; i < n; i++) {
+            soln = soln.add("t0", "t" + i, n, n - i, 0.0, false);
+        }
+        // The best link is from the lowest-scoring term in the taxonomy, which
+        // is not considered
+        soln = soln.complete(termMap, null,
+                (top, bottom) -> top.equals("t" + (n - 1)) ? 1.0 : top.equals("t5") ? 0.5 : 0.0);
+        assertTrue(soln.isComplete());
+        final Taxonomy taxo = soln.toTaxonomy();
+        assertEquals("t5", taxo.getParent("t" + n).getRoot());
+    }
+}
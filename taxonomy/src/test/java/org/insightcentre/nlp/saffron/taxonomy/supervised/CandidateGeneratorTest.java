@@ -0,0 +1,140 @@
+package org.insightcentre.nlp.saffron.taxonomy.supervised;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.insightcentre.nlp.saffron.taxonomy.search.CandidateParents;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author jmccrae
+ */
+public class CandidateGeneratorTest {
+
+    public CandidateGeneratorTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private static IntSet docs(int... ids) {
+        return new IntOpenHashSet(ids);
+    }
+
+    /**
+     * Test of generate method, of class CandidateGenerator.
+     */
+    @Test
+    public void testInclusion() {
+        System.out.println("inclusion");
+        List<String> terms = Arrays.asList("network", "neural network",
+                "deep neural network", "learning", "machine learning", "cheese");
+        CandidateGenerator instance = new CandidateGenerator(2, null, null);
+        CandidateParents result = instance.generate(terms);
+        assertTrue(result.contains("network", "neural network"));
+        assertTrue(result.contains("neural network", "deep neural network"));
+        assertTrue(result.contains("network", "deep neural network"));
+        assertTrue(result.contains("learning", "machine learning"));
+        assertFalse(result.contains("machine learning", "learning"));
+    }
+
+    /**
+     * Test of generate method, of class CandidateGenerator.
+     */
+    @Test
+    public void testSharedDocuments() {
+        System.out.println("sharedDocuments");
+        Map<String, IntSet> termDocuments = new HashMap<>();
+        termDocuments.put("cheese", docs(1, 2, 3));
+        termDocuments.put("cheddar", docs(1, 2));
+        termDocuments.put("brie", docs(3));
+        termDocuments.put("volcano", docs(4, 5));
+        termDocuments.put("lava", docs(4, 5));
+        CandidateGenerator instance = new CandidateGenerator(1, null, termDocuments);
+        CandidateParents result = instance.generate(termDocuments.keySet());
+        assertTrue(result.contains("cheese", "cheddar"));
+        assertTrue(result.contains("cheese", "brie"));
+        assertTrue(result.contains("volcano", "lava"));
+        assertTrue(result.contains("lava", "volcano"));
+    }
+
+    /**
+     * Test of generate method, of class CandidateGenerator.
+     */
+    @Test
+    public void testEmbeddings() {
+        System.out.println("embeddings");
+        final Map<String, float[]> vectors = new HashMap<>();
+        vectors.put("cat", new float[]{1.0f, 0.1f, 0.0f});
+        vectors.put("kitten", new float[]{0.9f, 0.15f, 0.0f});
+        vectors.put("car", new float[]{0.0f, 0.1f, 1.0f});
+        vectors.put("truck", new float[]{0.05f, 0.1f, 0.9f});
+        vectors.put("unknown", null);
+        CandidateGenerator instance = new CandidateGenerator(1, vectors::get, null);
+        CandidateParents result = instance.generate(vectors.keySet());
+        assertTrue(result.contains("cat", "kitten"));
+        assertTrue(result.contains("car", "truck"));
+    }
+
+    /**
+     * Test that the candidates connect all the terms
+     */
+    @Test
+    public void testConnected() {
+        System.out.println("connected");
+        List<String> terms = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            terms.add("term" + i);
+        }
+        terms.add("term");
+        terms.add("other term");
+        CandidateGenerator instance = new CandidateGenerator(3, null, null);
+        CandidateParents result = instance.generate(terms);
+        Map<String, Set<String>> undirected = new HashMap<>();
+        for (String t : terms) {
+            undirected.putIfAbsent(t, new HashSet<String>());
+            for (String p : result.parents(t)) {
+                assertNotEquals(t, p);
+                undirected.get(t).add(p);
+                undirected.putIfAbsent(p, new HashSet<String>());
+                undirected.get(p).add(t);
+            }
+        }
+        Set<String> visited = new HashSet<>();
+        List<String> stack = new ArrayList<>();
+        stack.add(terms.get(0));
+        while (!stack.isEmpty()) {
+            String t = stack.remove(stack.size() - 1);
+            if (visited.add(t)) {
+                stack.addAll(undirected.get(t));
+            }
+        }
+        assertEquals(terms.size(), visited.size());
+        assertTrue(result.size() <= terms.size() * (3 + 1));
+    }
+}
@@ -0,0 +1,164 @@
+package org.insightcentre.nlp.saffron.taxonomy.supervised;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import it.unimi.dsi.fastutil.ints.IntRBTreeSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.insightcentre.nlp.saffron.taxonomy.wordnet.Hypernym;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import Jama.Matrix;
+
+/**
+ *
+ * @author jmccrae
+ */
+public class FeaturesTest {
+    
+    public FeaturesTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    private static Features makeFeatures() {
+        Map<String, IntSet> termDocuments = new HashMap<>();
+        termDocuments.put("cat", new IntRBTreeSet(new int[] { 1, 2, 3, 4 }));
+        termDocuments.put("cat food", new IntRBTreeSet(new int[] { 2, 3 }));
+        Map<String, double[]> vectors = new HashMap<>();
+        vectors.put("cat", new double[] { 1.0, -2.0 });
+        vectors.put("food", new double[] { 3.0, 0.0 });
+        Set<Hypernym> hypernyms = new HashSet<>(Arrays.asList(
+                new Hypernym("cat", "animal"),
+                new Hypernym("food", "substance")));
+        return new Features(Matrix.identity(2, 2), Matrix.identity(4, 4),
+                termDocuments, vectors, null, hypernyms, null);
+    }
+
+    private static double regexInclusion(String top, String bottom) {
+        if (bottom.matches("\\Q" + top + "\\E\\b.*")
+                || bottom.matches(".*\\b\\Q" + top + "\\E")) {
+            return +1;
+        } else if (top.matches("\\Q" + bottom + "\\E\\b.*")
+                || top.matches(".*\\b\\Q" + bottom + "\\E")) {
+            return -1;
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * Test of inclusion method, of class Features.
+     */
+    @Test
+    public void testInclusion() {
+        System.out.println("inclusion");
+        Features instance = makeFeatures();
+        String[][] pairs = new String[][] {
+            { "cat", "cat food" },
+            { "food", "cat food" },
+            { "cat food", "cat" },
+            { "cat", "category" },
+            { "cat", "bobcat" },
+            { "cat", "wild-cat" },
+            { "", "cat" },
+            { "cat", "cat" },
+            { "café", "café noir" },
+            { "c++", "c++ code" }
+        };
+        for (String[] pair : pairs) {
+            assertEquals(pair[0] + " / " + pair[1], regexInclusion(pair[0], pair[1]),
+                    instance.inclusion(pair[0], pair[1]), 0.0);
+        }
+    }
+
+    /**
+     * Test of overlap and longestCommonSubseq methods, of class Features.
+     */
+    @Test
+    public void testOverlap() {
+        System.out.println("overlap");
+        Features instance = makeFeatures();
+        assertEquals(0.5, instance.overlap("cat food", "dog food"), 0.0);
+        assertEquals(1.0, instance.overlap("food", "cat food"), 0.0);
+        assertEquals(0.0, instance.overlap("cat", "dog"), 0.0);
+        assertEquals(2.0 / 3.0, instance.longestCommonSubseq("dry cat food", "wet cat food"), 0.0);
+    }
+
+    /**
+     * Test of the vectors, of class Features.
+     */
+    @Test
+    public void testVectors() {
+        System.out.println("vectors");
+        Features instance = makeFeatures();
+        assertArrayEquals(new double[] { 2.0, -1.0 }, instance.svdByAve.vector("cat food"), 1e-6);
+        assertArrayEquals(new double[] { 3.0, 1.0, 0.0, -2.0 }, instance.svdByMinMax.vector("cat food"), 1e-6);
+        assertArrayEquals(new double[] { 1.0, 1.0, -2.0, -2.0 }, instance.svdByMinMax.vector("cat"), 1e-6);
+        assertEquals(null, instance.svdByAve.vector("dog"));
+        // With the identity matrix this is the dot product
+        assertEquals(2.0 + 2.0, instance.svdSimAve("cat", "cat food"), 1e-6);
+        assertEquals(0.0, instance.svdSimAve("cat", "dog"), 0.0);
+    }
+
+    /**
+     * Test of topicComplementDiff method, of class Features.
+     */
+    @Test
+    public void testTopicComplementDiff() {
+        System.out.println("topicComplementDiff");
+        Features instance = makeFeatures();
+        assertEquals(0.5 - 0.0, instance.topicComplementDiff("cat", "cat food"), 1e-6);
+        assertEquals(0.0, instance.topicComplementDiff("cat", "dog"), 0.0);
+    }
+
+    /**
+     * Test of wnDirect and wnIndirect methods, of class Features.
+     */
+    @Test
+    public void testWordNet() {
+        System.out.println("wordnet");
+        Features instance = makeFeatures();
+        assertEquals(1.0, instance.wnDirect("animal", "cat"), 0.0);
+        assertEquals(-1.0, instance.wnDirect("cat", "animal"), 0.0);
+        assertEquals(0.0, instance.wnDirect("cat", "food"), 0.0);
+        assertEquals(0.5, instance.wnIndirect("animal", "cat food"), 0.0);
+        assertEquals(-0.5, instance.wnIndirect("cat food", "substance"), 0.0);
+    }
+
+    /**
+     * Test of buildFeatures method, of class Features.
+     */
+    @Test
+    public void testBuildFeatures() {
+        System.out.println("buildFeatures");
+        Features instance = makeFeatures();
+        assertEquals(instance.featureNames().length, instance.buildFeatures("cat", "cat food").length);
+        assertArrayEquals(instance.buildFeatures("cat", "cat food"),
+                instance.buildFeatures(instance.termData("cat"), instance.termData("cat food")), 0.0);
+    }
+}
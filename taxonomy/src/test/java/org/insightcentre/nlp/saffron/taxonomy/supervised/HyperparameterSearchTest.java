@@ -0,0 +1,104 @@
+package org.insightcentre.nlp.saffron.taxonomy.supervised;
+
+import java.util.Arrays;
+import java.util.List;
+import libsvm.svm_parameter;
+import libsvm.svm_problem;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class HyperparameterSearchTest {
+
+    public HyperparameterSearchTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private static Train.SampledInstances makeInstances() {
+        Train.SampledInstances instances = new Train.SampledInstances();
+        for (int i = 0; i < 10; i++) {
+            instances.add(Train.makeInstance(new double[]{1.0 + i * 0.1, 0.0}, +1), -1, 10);
+        }
+        for (int i = 0; i < 20; i++) {
+            instances.add(Train.makeInstance(new double[]{0.0, 1.0 + i * 0.1}, 0), i, 10);
+        }
+        return instances;
+    }
+
+    /**
+     * Test of toProblem method, of class Train.SampledInstances.
+     */
+    @Test
+    public void testToProblem() {
+        System.out.println("toProblem");
+        Train.SampledInstances instances = makeInstances();
+        svm_problem prob = instances.toProblem(1.0);
+        assertEquals(20, prob.l);
+        assertEquals(+1.0, prob.y[0], 0.0);
+        assertEquals(0.0, prob.y[19], 0.0);
+        assertEquals(15, instances.toProblem(0.5).l);
+        assertEquals(30, instances.toProblem(2.0).l);
+    }
+
+    /**
+     * Test of search method, of class HyperparameterSearch.
+     */
+    @Test
+    public void testSearch() {
+        System.out.println("search");
+        assertEquals(75, HyperparameterSearch.grid(1.0).size());
+        assertEquals(2.0, HyperparameterSearch.maxNegSampling(HyperparameterSearch.grid(1.0)), 0.0);
+        List<HyperparameterSearch.Setting> settings = Arrays.asList(
+                new HyperparameterSearch.Setting(svm_parameter.LINEAR, 0.01, 0.5, 1.0),
+                new HyperparameterSearch.Setting(svm_parameter.LINEAR, 1.0, 0.5, 2.0),
+                new HyperparameterSearch.Setting(svm_parameter.RBF, 1.0, 0.5, 1.0));
+        List<HyperparameterSearch.Result> results = HyperparameterSearch.search(makeInstances(), settings, 3, 2);
+        assertEquals(3, results.size());
+        for (int i = 0; i < 3; i++) {
+            assertSame(settings.get(i), results.get(i).setting);
+        }
+        HyperparameterSearch.Result best = HyperparameterSearch.best(results);
+        assertEquals(1.0, best.accuracy, 0.0);
+        assertEquals(1.0, best.balancedAccuracy, 0.0);
+        // The instances are separable so the earliest setting is the best
+        assertSame(settings.get(0), best.setting);
+    }
+
+    /**
+     * Test that best ranks settings with different negative-sampling ratios
+     * by balanced accuracy
+     */
+    @Test
+    public void testBest() {
+        System.out.println("best");
+        HyperparameterSearch.Setting a = new HyperparameterSearch.Setting(svm_parameter.LINEAR, 1.0, 0.5, 4.0);
+        HyperparameterSearch.Setting b = new HyperparameterSearch.Setting(svm_parameter.LINEAR, 1.0, 0.5, 1.0);
+        // Predicting every pair as negative is 80% accurate at a ratio of 4
+        HyperparameterSearch.Result best = HyperparameterSearch.best(Arrays.asList(
+                new HyperparameterSearch.Result(a, 0.8, 0.5, 0),
+                new HyperparameterSearch.Result(b, 0.75, 0.75, 0)));
+        assertSame(b, best.setting);
+    }
+}
@@ -0,0 +1,156 @@
+package org.insightcentre.nlp.saffron.taxonomy.supervised;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.insightcentre.nlp.saffron.data.Status;
+import org.insightcentre.nlp.saffron.data.TaxoLink;
+import org.insightcentre.nlp.saffron.data.Taxonomy;
+import org.insightcentre.nlp.saffron.data.Term;
+import org.insightcentre.nlp.saffron.taxonomy.search.CandidateParents;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author jmccrae
+ */
+public class MSTTaxoExtractTest {
+
+    public MSTTaxoExtractTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private static class TestSupervisedTaxo extends SupervisedTaxo {
+
+        public TestSupervisedTaxo() throws IOException {
+            super((Features) null, null, null);
+        }
+
+        @Override
+        public double predict(String top, String bottom) {
+            if (bottom.startsWith(top)) {
+                return (double) (top.length() + 1.0) / (bottom.length() + 1.0);
+            } else {
+                return 0.0;
+            }
+        }
+
+    }
+
+    private HashMap<String, Term> terms() {
+        HashMap<String, Term> terms = new HashMap<>();
+        for (String t : new String[]{"r", "ra", "rb", "rc", "rab", "rac", "rabc", "rba", "rbd"}) {
+            // The shortest term has the highest score and is the root
+            terms.put(t, new Term(t, 0, 0, 1.0 / t.length(), Collections.EMPTY_LIST, Status.none.toString()));
+        }
+        return terms;
+    }
+
+    /**
+     * Test of extractTaxonomy method, of class MSTTaxoExtract.
+     */
+    @Test
+    public void testExtractTaxonomy() throws Exception {
+        System.out.println("extractTaxonomy");
+        MSTTaxoExtract instance = new MSTTaxoExtract(new TestSupervisedTaxo(), 1);
+        Taxonomy result = instance.extractTaxonomy(terms());
+        assertEquals("r", result.root);
+        assertEquals(9, result.size());
+        assertEquals("ra", result.getParent("rab").root);
+        assertEquals("rab", result.getParent("rabc").root);
+        assertEquals("rb", result.getParent("rbd").root);
+    }
+
+    /**
+     * Test of extractTaxonomy method with candidate parents, of class
+     * MSTTaxoExtract.
+     */
+    @Test
+    public void testExtractTaxonomyWithCandidates() throws Exception {
+        System.out.println("extractTaxonomyWithCandidates");
+        HashMap<String, Term> terms = terms();
+        // Only the immediate prefix of each term is a candidate
+        HashMap<String, Set<String>> parents = new HashMap<>();
+        for (String t : terms.keySet()) {
+            parents.put(t, t.length() > 1 ? Collections.singleton(t.substring(0, t.length() - 1))
+                    : Collections.<String>emptySet());
+        }
+        parents.put("rbd", Collections.<String>emptySet());
+        MSTTaxoExtract instance = new MSTTaxoExtract(new TestSupervisedTaxo(), 1,
+                new CandidateParents(parents));
+        Taxonomy result = instance.extractTaxonomy(terms);
+        assertEquals("r", result.root);
+        assertEquals(9, result.size());
+        assertEquals("rab", result.getParent("rabc").root);
+        // Terms without candidates are still attached to the root
+        assertEquals("r", result.getParent("rbd").root);
+    }
+
+    /**
+     * Test of extractTaxonomyWithBlackWhiteList method, of class
+     * MSTTaxoExtract.
+     */
+    @Test
+    public void testExtractTaxonomyWithBlackWhiteList() throws Exception {
+        System.out.println("extractTaxonomyWithBlackWhiteList");
+        Set<TaxoLink> whiteList = new HashSet<>();
+        Set<TaxoLink> blackList = new HashSet<>();
+        whiteList.add(new TaxoLink("rc", "rab"));
+        blackList.add(new TaxoLink("rb", "rbd"));
+        MSTTaxoExtract instance = new MSTTaxoExtract(new TestSupervisedTaxo(), 1);
+        Taxonomy result = instance.extractTaxonomyWithBlackWhiteList(terms(), whiteList, blackList);
+        assertEquals("r", result.root);
+        assertEquals(9, result.size());
+        assertEquals("rc", result.getParent("rab").root);
+        assertEquals(Status.accepted, result.descendent("rab").status);
+        assertEquals(Status.none, result.descendent("rabc").status);
+        assertEquals("r", result.getParent("rbd").root);
+    }
+
+    /**
+     * Test that a dense score matrix given as the classifier is used without
+     * scoring the pairs again
+     */
+    @Test
+    public void testExtractTaxonomyFromScoreMatrix() throws Exception {
+        System.out.println("extractTaxonomyFromScoreMatrix");
+        final AtomicInteger calls = new AtomicInteger();
+        SupervisedTaxo classifier = new TestSupervisedTaxo() {
+            @Override
+            public double predict(String top, String bottom) {
+                calls.incrementAndGet();
+                return super.predict(top, bottom);
+            }
+        };
+        HashMap<String, Term> terms = terms();
+        ScoreMatrix matrix = ScoreMatrix.compute(classifier, terms.keySet(), 1);
+        calls.set(0);
+        MSTTaxoExtract instance = new MSTTaxoExtract(matrix, 1);
+        Taxonomy result = instance.extractTaxonomy(terms);
+        assertEquals(0, calls.get());
+        assertEquals(new MSTTaxoExtract(classifier, 1).extractTaxonomy(terms), result);
+    }
+}
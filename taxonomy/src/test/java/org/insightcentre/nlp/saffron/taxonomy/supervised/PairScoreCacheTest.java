@@ -0,0 +1,166 @@
+package org.insightcentre.nlp.saffron.taxonomy.supervised;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.insightcentre.nlp.saffron.data.Model;
+import org.insightcentre.nlp.saffron.data.Term;
+import org.insightcentre.nlp.saffron.data.connections.DocumentTerm;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class PairScoreCacheTest {
+
+    public PairScoreCacheTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private static class CountingSupervisedTaxo extends SupervisedTaxo {
+
+        int count = 0;
+
+        public CountingSupervisedTaxo() throws IOException {
+            super((Features)null, null, null);
+        }
+
+        @Override
+        public synchronized double predict(String top, String bottom) {
+            count++;
+            return bottom.startsWith(top) ? 1.0 : 0.0;
+        }
+    }
+
+    /**
+     * Test of write and load methods, of class PairScoreCache.
+     */
+    @Test
+    public void testWriteLoad() throws IOException {
+        System.out.println("writeLoad");
+        PairScoreCache cache = new PairScoreCache(42L, 2);
+        cache.put("a", "ab", new double[] { 0.5, Double.NaN });
+        cache.put("ab", "a", new double[] { 0.25, 1.0 });
+        cache.put("a", "ab", new double[] { 0.75, Double.NaN });
+        assertEquals(2, cache.size());
+        assertTrue(cache.isModified());
+        File file = File.createTempFile("scores", ".bin");
+        file.deleteOnExit();
+        cache.write(file);
+        assertFalse(cache.isModified());
+
+        PairScoreCache loaded = PairScoreCache.load(file, 42L, 2);
+        assertEquals(2, loaded.size());
+        double[] scores = new double[2];
+        assertTrue(loaded.get("a", "ab", scores));
+        assertEquals(0.75, scores[0], 0.0);
+        assertTrue(Double.isNaN(scores[1]));
+        assertTrue(loaded.get("ab", "a", scores));
+        assertEquals(1.0, scores[1], 0.0);
+        assertFalse(loaded.get("b", "a", scores));
+
+        // Another model does not use the scores
+        assertEquals(0, PairScoreCache.load(file, 43L, 2).size());
+        assertEquals(0, PairScoreCache.load(new File(file.getPath() + ".missing"), 42L, 2).size());
+    }
+
+    /**
+     * Test of fingerprint method, of class PairScoreCache.
+     */
+    @Test
+    public void testFingerprint() {
+        System.out.println("fingerprint");
+        assertEquals(PairScoreCache.fingerprint("a", "bc"), PairScoreCache.fingerprint("a", "bc"));
+        assertNotEquals(PairScoreCache.fingerprint("a", "bc"), PairScoreCache.fingerprint("ab", "c"));
+    }
+
+    /**
+     * Test of withCache method, of class SupervisedTaxo.
+     */
+    @Test
+    public void testWithCache() throws IOException {
+        System.out.println("withCache");
+        CountingSupervisedTaxo base = new CountingSupervisedTaxo();
+        PairScoreCache cache = new PairScoreCache(0L, 1);
+        SupervisedTaxo cached = base.withCache(cache);
+        List<String> terms = Arrays.asList("a", "ab", "b");
+        double[][] scores = cached.predictBlock(terms, terms);
+        assertEquals(9, base.count);
+        assertEquals(1.0, scores[0][1], 0.0);
+        assertEquals(0.0, scores[1][0], 0.0);
+        // The scores are only computed once
+        assertArrayEquals(scores, cached.predictBlock(terms, terms));
+        assertEquals(1.0, cached.predict("a", "ab"), 0.0);
+        assertEquals(9, base.count);
+        // Only the new pairs are computed
+        cached.predictBlock(Arrays.asList("a", "c"), Arrays.asList("ab"));
+        assertEquals(10, base.count);
+    }
+
+    /**
+     * Test that the cache does not grow beyond its maximum number of pairs
+     */
+    @Test
+    public void testMaxPairs() {
+        System.out.println("maxPairs");
+        PairScoreCache cache = new PairScoreCache(0L, 1, 2);
+        double[] score = new double[1];
+        cache.putBlock(Arrays.asList("a"), Arrays.asList("b", "c", "d"), new double[][]{{0.1, 0.2, 0.3}});
+        assertEquals(2, cache.size());
+        assertTrue(cache.get("a", "c", score));
+        assertEquals(0.2, score[0], 0.0);
+        assertFalse(cache.get("a", "d", score));
+        // The pairs in the cache can still be updated
+        cache.put("a", "b", new double[]{0.5});
+        assertTrue(cache.get("a", "b", score));
+        assertEquals(0.5, score[0], 0.0);
+        cache.putAll(Arrays.asList("b"), Arrays.asList("a"), Arrays.asList(new double[]{0.4}));
+        assertFalse(cache.get("b", "a", score));
+    }
+
+    /**
+     * Test of fingerprint method, of class SupervisedTaxo.
+     */
+    @Test
+    public void testSupervisedFingerprint() throws IOException {
+        System.out.println("supervisedFingerprint");
+        Model model = new Model();
+        DocumentTerm dt1 = new DocumentTerm("d1", "a", 1, null, null, null);
+        DocumentTerm dt2 = new DocumentTerm("d2", "b", 1, null, null, null);
+        DocumentTerm dt3 = new DocumentTerm("d2", "a", 1, null, null, null);
+        Map<String, Term> termMap = new HashMap<>();
+        termMap.put("a", new Term.Builder("a").occurrences(2).build());
+        assertEquals(SupervisedTaxo.fingerprint(model, Arrays.asList(dt1, dt2), termMap),
+                SupervisedTaxo.fingerprint(model, Arrays.asList(dt2, dt1), termMap));
+        assertNotEquals(SupervisedTaxo.fingerprint(model, Arrays.asList(dt1, dt2), termMap),
+                SupervisedTaxo.fingerprint(model, Arrays.asList(dt1, dt3), termMap));
+        Map<String, Term> termMap2 = new HashMap<>();
+        termMap2.put("a", new Term.Builder("a").occurrences(3).build());
+        assertNotEquals(SupervisedTaxo.fingerprint(model, Arrays.asList(dt1, dt2), termMap),
+                SupervisedTaxo.fingerprint(model, Arrays.asList(dt1, dt2), termMap2));
+    }
+}
@@ -0,0 +1,85 @@
+package org.insightcentre.nlp.saffron.taxonomy.supervised;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class PrettyGoodTokenizerTest {
+
+    public PrettyGoodTokenizerTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of tokenize method, of class PrettyGoodTokenizer.
+     */
+    @Test
+    public void testTokenize() {
+        System.out.println("tokenize");
+        assertArrayEquals(new String[]{"this", "is", "a", "test", "."},
+                PrettyGoodTokenizer.tokenize("this is a test."));
+        assertArrayEquals(new String[]{"a", "(", "bracketed", ")", "term"},
+                PrettyGoodTokenizer.tokenize("a (bracketed) term"));
+    }
+
+    /**
+     * Test the tokenizer from many threads, with more strings than its cache
+     * holds so that it evicts while other threads read
+     */
+    @Test
+    public void testConcurrent() throws Exception {
+        System.out.println("concurrent");
+        ExecutorService service = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Boolean>> tasks = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final int seed = t;
+                tasks.add(() -> {
+                    boolean correct = true;
+                    for (int i = 0; i < 20000; i++) {
+                        int n = (i * 7 + seed * 13) % 30000;
+                        String[] tokens = PrettyGoodTokenizer.tokenize("term " + n + ", again");
+                        correct &= tokens.length == 4 && tokens[1].equals(Integer.toString(n));
+                    }
+                    return correct;
+                });
+            }
+            for (Future<Boolean> f : service.invokeAll(tasks)) {
+                assertTrue(f.get());
+            }
+        } finally {
+            service.shutdownNow();
+        }
+    }
+}
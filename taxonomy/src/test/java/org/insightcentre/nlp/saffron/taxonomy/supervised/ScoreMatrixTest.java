@@ -0,0 +1,73 @@
+package org.insightcentre.nlp.saffron.taxonomy.supervised;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author jmccrae
+ */
+public class ScoreMatrixTest {
+    
+    public ScoreMatrixTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    private static class TestClassifier implements BinaryRelationClassifier<String> {
+
+        @Override
+        public double predict(String top, String bottom) {
+            return (double)top.hashCode() / (bottom.hashCode() + 1);
+        }
+        
+    }
+    
+    /**
+     * Test of compute method, of class ScoreMatrix.
+     */
+    @Test
+    public void testCompute() {
+        System.out.println("compute");
+        List<String> terms = new ArrayList<>();
+        for(int i = 0; i < 150; i++) {
+            terms.add("term" + i);
+        }
+        TestClassifier classifier = new TestClassifier();
+        ScoreMatrix sequential = ScoreMatrix.compute(classifier, terms, 1);
+        ScoreMatrix parallel = ScoreMatrix.compute(classifier, terms, 4);
+        assertEquals(150, parallel.size());
+        for(String t1 : terms) {
+            for(String t2 : terms) {
+                double expected = t1.equals(t2) ? 0.0 : classifier.predict(t1, t2);
+                assertEquals(expected, sequential.predict(t1, t2), 0.0);
+                assertEquals(expected, parallel.predict(t1, t2), 0.0);
+                assertEquals(expected, parallel.get(parallel.indexOf(t1), parallel.indexOf(t2)), 0.0);
+            }
+        }
+        assertEquals(-1, parallel.indexOf("unknown"));
+        assertEquals(classifier.predict("unknown", "term1"), parallel.predict("unknown", "term1"), 0.0);
+    }
+}
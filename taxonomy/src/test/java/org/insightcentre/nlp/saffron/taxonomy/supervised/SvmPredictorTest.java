@@ -0,0 +1,134 @@
+package org.insightcentre.nlp.saffron.taxonomy.supervised;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import libsvm.svm;
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+import libsvm.svm_print_interface;
+import libsvm.svm_problem;
+
+/**
+ *
+ * @author jmccrae
+ */
+public class SvmPredictorTest {
+    
+    public SvmPredictorTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+        svm.svm_set_print_string_function(new svm_print_interface() {
+            @Override
+            public void print(String s) {
+            }
+        });
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    private static final int DIM = 5;
+
+    private static double[] randomVector(Random r) {
+        double[] x = new double[DIM];
+        for (int i = 0; i < DIM; i++) {
+            x[i] = r.nextGaussian();
+        }
+        return x;
+    }
+
+    private static svm_model train(int kernelType) {
+        Random r = new Random(kernelType);
+        svm_problem prob = new svm_problem();
+        prob.l = 200;
+        prob.x = new svm_node[prob.l][];
+        prob.y = new double[prob.l];
+        for (int i = 0; i < prob.l; i++) {
+            double[] x = randomVector(r);
+            prob.x[i] = Train.makeInstance(x, 0).x;
+            prob.y[i] = x[0] + 0.5 * x[1] * x[1] - x[2] + 0.3 * r.nextGaussian() > 0 ? 1 : 0;
+        }
+        svm_parameter param = Train.makeParameters();
+        param.kernel_type = kernelType;
+        param.degree = 2;
+        param.coef0 = 1.0;
+        param.gamma = 0.2;
+        param.cache_size = 10;
+        return svm.svm_train(prob, param);
+    }
+
+    private static void assertMatchesLibsvm(svm_model model) {
+        SvmPredictor predictor = new SvmPredictor(model);
+        Random r = new Random(1);
+        double[][] xs = new double[100][];
+        double[] expected = new double[xs.length];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = randomVector(r);
+            double[] probs = new double[2];
+            svm.svm_predict_probability(model, Train.makeInstance(xs[i], 0).x, probs);
+            expected[i] = probs[0];
+            assertEquals(expected[i], predictor.probability(xs[i]), 1e-9);
+        }
+        double[] result = new double[xs.length];
+        predictor.probabilities(xs, result);
+        for (int i = 0; i < xs.length; i++) {
+            assertEquals(expected[i], result[i], 1e-9);
+        }
+    }
+
+    @Test
+    public void testLinear() throws IOException {
+        System.out.println("linear");
+        svm_model model = train(svm_parameter.LINEAR);
+        assertMatchesLibsvm(model);
+        // The model as it is stored in a Model
+        File tmpFile = File.createTempFile("svm", ".data");
+        tmpFile.deleteOnExit();
+        svm.svm_save_model(tmpFile.getAbsolutePath(), model);
+        try (BufferedReader reader = new BufferedReader(new FileReader(tmpFile))) {
+            assertMatchesLibsvm(svm.svm_load_model(reader));
+        }
+    }
+
+    @Test
+    public void testRBF() {
+        System.out.println("rbf");
+        assertMatchesLibsvm(train(svm_parameter.RBF));
+    }
+
+    @Test
+    public void testPoly() {
+        System.out.println("poly");
+        assertMatchesLibsvm(train(svm_parameter.POLY));
+    }
+
+    @Test
+    public void testSigmoid() {
+        System.out.println("sigmoid");
+        assertMatchesLibsvm(train(svm_parameter.SIGMOID));
+    }
+}
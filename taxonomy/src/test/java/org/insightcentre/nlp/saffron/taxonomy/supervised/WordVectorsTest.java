@@ -0,0 +1,109 @@
+package org.insightcentre.nlp.saffron.taxonomy.supervised;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class WordVectorsTest {
+
+    public WordVectorsTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private static File writeText(String... lines) throws IOException {
+        File file = File.createTempFile("vectors", ".txt");
+        file.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            for (String line : lines) {
+                out.println(line);
+            }
+        }
+        return file;
+    }
+
+    private static WordVectors convert(File textFile) throws IOException {
+        File binaryFile = File.createTempFile("vectors", ".bin");
+        binaryFile.deleteOnExit();
+        WordVectors.convert(textFile, binaryFile);
+        assertTrue(WordVectors.isWordVectorFile(binaryFile));
+        assertFalse(WordVectors.isWordVectorFile(textFile));
+        return new WordVectors(binaryFile);
+    }
+
+    /**
+     * Test of convert and get methods, of class WordVectors.
+     */
+    @Test
+    public void testConvert() throws IOException {
+        System.out.println("convert");
+        WordVectors instance = convert(writeText("4 2",
+                "dog 1.0 2.0",
+                "cat 0.5 -1.5",
+                "café 3.0 4.0",
+                "dog 9.0 9.0",
+                "ice cream 0.25 0.75"));
+        assertEquals(2, instance.dimensions());
+        assertEquals(4, instance.size());
+        assertArrayEquals(new double[]{1.0, 2.0}, instance.get("dog"), 0.0);
+        assertArrayEquals(new double[]{0.5, -1.5}, instance.get("cat"), 0.0);
+        assertArrayEquals(new double[]{3.0, 4.0}, instance.get("café"), 0.0);
+        assertArrayEquals(new double[]{0.25, 0.75}, instance.get("ice cream"), 0.0);
+        assertNull(instance.get("cats"));
+        assertNull(instance.get("ca"));
+        assertFalse(instance.containsKey("mouse"));
+        assertTrue(instance.containsKey("cat"));
+    }
+
+    /**
+     * Test that the vectors behave as a map of words to vectors
+     */
+    @Test
+    public void testMap() throws IOException {
+        System.out.println("map");
+        String[] lines = new String[100];
+        Map<String, double[]> expected = new HashMap<>();
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = "w" + i + " " + i + " " + (i * 0.5) + " -1";
+            expected.put("w" + i, new double[]{i, i * 0.5, -1});
+        }
+        WordVectors instance = convert(writeText(lines));
+        assertEquals(expected.size(), instance.size());
+        int n = 0;
+        for (Map.Entry<String, double[]> e : instance.entrySet()) {
+            assertArrayEquals(expected.get(e.getKey()), e.getValue(), 0.0);
+            n++;
+        }
+        assertEquals(expected.size(), n);
+        assertEquals(expected.keySet(), instance.keySet());
+    }
+}
@@ -0,0 +1,80 @@
+package org.insightcentre.nlp.saffron.taxonomy.wordnet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class HypernymIndexTest {
+
+    public HypernymIndexTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private static Set<Hypernym> makeHypernyms() {
+        return new HashSet<>(Arrays.asList(
+                new Hypernym("cat", "feline"),
+                new Hypernym("cat", "animal"),
+                new Hypernym("feline", "animal"),
+                new Hypernym("café", "restaurant")));
+    }
+
+    /**
+     * Test of isHypernym method, of class HypernymIndex.
+     */
+    @Test
+    public void testIsHypernym() {
+        System.out.println("isHypernym");
+        HypernymIndex instance = HypernymIndex.build(makeHypernyms());
+        assertEquals(5, instance.numWords());
+        assertTrue(instance.isHypernym(instance.id("cat"), instance.id("animal")));
+        assertTrue(instance.isHypernym(instance.id("feline"), instance.id("animal")));
+        assertFalse(instance.isHypernym(instance.id("animal"), instance.id("cat")));
+        assertTrue(instance.isHypernym(instance.id("café"), instance.id("restaurant")));
+        assertEquals(-1, instance.id("dog"));
+        assertFalse(instance.isHypernym(instance.id("dog"), instance.id("animal")));
+    }
+
+    /**
+     * Test of write and open methods, of class HypernymIndex.
+     */
+    @Test
+    public void testWrite() throws IOException {
+        System.out.println("write");
+        File file = File.createTempFile("hyps", ".idx");
+        file.deleteOnExit();
+        HypernymIndex.build(makeHypernyms()).write(file);
+        assertTrue(HypernymIndex.isIndexFile(file));
+        HypernymIndex instance = HypernymIndex.open(file);
+        assertEquals(makeHypernyms(), instance);
+        assertEquals(makeHypernyms(), new HashSet<>(instance));
+        assertTrue(instance.contains(new Hypernym("cat", "feline")));
+        assertFalse(instance.contains(new Hypernym("feline", "cat")));
+    }
+}
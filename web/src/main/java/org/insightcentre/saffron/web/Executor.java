@@ -58,6 +58,8 @@ import org.insightcentre.nlp.saffron.documentindex.DocumentSearcherFactory;
 import org.insightcentre.nlp.saffron.documentindex.IndexedCorpus;
 import org.insightcentre.nlp.saffron.taxonomy.classifiers.BERTBasedRelationClassifier;
 import org.insightcentre.nlp.saffron.taxonomy.search.KGSearch;
+import org.insightcentre.nlp.saffron.taxonomy.search.IncrementalSearch;
+import org.insightcentre.nlp.saffron.taxonomy.supervised.PairScoreCache;
 import org.insightcentre.nlp.saffron.taxonomy.search.TaxonomySearch;
 import org.insightcentre.nlp.saffron.taxonomy.supervised.SupervisedTaxo;
 import org.insightcentre.nlp.saffron.term.TermExtraction;
@@ -450,6 +452,8 @@ public class Executor extends AbstractHandler {
             allowDenyList = AllowanceDenialList.getInstance(Taxonomy.class);
 
         }
+        // The taxonomy of the previous run is read before the run is reset
+        final Taxonomy previous = isInitialRun || !config.taxonomy.search.incremental ? null : data.getTaxonomy(saffronDatasetName);
         data.deleteRun(saffronDatasetName);
         data.addRun(saffronDatasetName, new Date(), config);
         Status _status = statuses.get(saffronDatasetName);
@@ -555,19 +559,41 @@ public class Executor extends AbstractHandler {
             config.taxonomy.modelFile = new SaffronPath("${saffron.home}/models/default.json");
         }
         Model model = mapper.readValue(config.taxonomy.modelFile.toFile(), Model.class);
-        SupervisedTaxo supTaxo = new SupervisedTaxo(res.docTerms, termMap, model);
-        TaxonomySearch search = TaxonomySearch.create(config.taxonomy.search, supTaxo, termMap.keySet());
-        final Taxonomy graph = search.extractTaxonomyWithBlackWhiteList(termMap, allowDenyList.getRelationAllowanceList(), allowDenyList.getRelationDenialList());
+        // The scores of the pairs of terms are kept for reruns, but not for a
+        // new corpus. They are discarded if the model or the inputs of the
+        // features change
+        final File scoreCacheFile = new File(datasetFolder, "taxonomy-scores.bin");
+        final long fingerprint = SupervisedTaxo.fingerprint(model, res.docTerms, termMap);
+        final PairScoreCache scoreCache = isInitialRun
+                ? new PairScoreCache(fingerprint, 1)
+                : PairScoreCache.load(scoreCacheFile, fingerprint, 1);
+        SupervisedTaxo supTaxo = new SupervisedTaxo(res.docTerms, termMap, model).withCache(scoreCache);
+        final Taxonomy graph;
+        if (previous != null) {
+            IncrementalSearch search = IncrementalSearch.create(config.taxonomy.search, supTaxo, termMap.keySet(), _status);
+            graph = search.insert(previous, termMap, allowDenyList.getRelationAllowanceList(), allowDenyList.getRelationDenialList());
+        } else {
+            TaxonomySearch search = TaxonomySearch.create(config.taxonomy.search, supTaxo, termMap.keySet(), _status);
+            graph = search.extractTaxonomyWithBlackWhiteList(termMap, allowDenyList.getRelationAllowanceList(), allowDenyList.getRelationDenialList());
+        }
+        if (scoreCache.isModified())
+            scoreCache.write(scoreCacheFile);
         if (storeCopy.equals("true"))
             ow.writeValue(new File(new File(parentDirectory, saffronDatasetName), "taxonomy.json"), graph);
         data.setTaxonomy(saffronDatasetName, graph);
         _status.setStageComplete("Building term map and taxonomy", saffronDatasetName);
 
 //      _status.setStageStart("Building knowledge graph", saffronDatasetName);
-//      BERTBasedRelationClassifier relationClassifier = new BERTBasedRelationClassifier(config.kg.kerasModelFile, config.kg.bertModelFile);
-//      KGSearch kgSearch = KGSearch.create(config.taxonomy.search, config.kg, relationClassifier, termMap.keySet());
-//      final KnowledgeGraph kGraph = kgSearch.extractKnowledgeGraphWithDenialAndAllowanceList(termMap,
-//              allowDenyList.getRelationAllowanceList(), allowDenyList.getRelationDenialList());
+//      // Closing the classifier releases its embedding store
+//      final KnowledgeGraph kGraph;
+//      try (BERTBasedRelationClassifier relationClassifier = new BERTBasedRelationClassifier(
+//              config.kg.kerasModelFile.getResolvedPath(), config.kg.bertModelFile.getResolvedPath(),
+//              config.taxonomy.search.numThreads,
+//              config.kg.embeddingStore == null ? null : config.kg.embeddingStore.getResolvedPath())) {
+//          KGSearch kgSearch = KGSearch.create(config.taxonomy.search, config.kg, relationClassifier, termMap.keySet());
+//          kGraph = kgSearch.extractKnowledgeGraphWithDenialAndAllowanceList(termMap,
+//                  allowDenyList.getRelationAllowanceList(), allowDenyList.getRelationDenialList());
+//      }
 //      if (storeCopy.equals("true"))
 //          ow.writeValue(new File(new File(parentDirectory, saffronDatasetName), "knowledge_graph.json"), kGraph);
 //      data.setKnowledgeGraph(saffronDatasetName, kGraph);
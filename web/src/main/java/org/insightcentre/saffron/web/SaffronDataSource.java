@@ -207,6 +207,18 @@ public interface SaffronDataSource extends Closeable {
 
     boolean updateTaxonomy(String id, Taxonomy graph);
 
+    /**
+     * An index of the taxonomy of a run whose edits change the stored
+     * taxonomy directly. Data sources that do not keep such an index return
+     * null, in which case the taxonomy is changed and written back with
+     * updateTaxonomy
+     * @param id The ID of the run
+     * @return The index or null
+     */
+    default TaxonomyIndex getTaxonomyIndex(String id) {
+        return null;
+    }
+
     //FIXME It should be called "updateStatus" instead
     boolean updateTerm(String id, String term, String status);
 
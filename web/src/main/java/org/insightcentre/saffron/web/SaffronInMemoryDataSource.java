@@ -34,8 +34,6 @@ import org.insightcentre.saffron.web.exception.TermNotFoundException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.type.TypeFactory;
 
-import it.unimi.dsi.fastutil.ints.IntArrayList;
-import it.unimi.dsi.fastutil.ints.IntList;
 import org.json.JSONObject;
 
 /**
@@ -70,7 +68,7 @@ public class SaffronInMemoryDataSource implements SaffronDataSource {
         private HashMap<String, Document> corpus;
         private HashMap<String, List<Document>> corpusByAuthor;
         private HashMap<String, Author> authors;
-        private HashMap<String, IntList> taxoMap;
+        private TaxonomyIndex taxoIndex;
         private DocumentSearcher searcher;
         private final String id;
 
@@ -92,7 +90,7 @@ public class SaffronInMemoryDataSource implements SaffronDataSource {
 
         public void setTaxonomy(Taxonomy taxonomy) {
             this.taxonomy = taxonomy;
-            this.taxoMap = getTaxoLocations(taxonomy);
+            this.taxoIndex = new TaxonomyIndex(taxonomy);
         }
 
         public void setKnowledgeGraph(KnowledgeGraph knowledgeGraph) {
@@ -396,54 +394,17 @@ public class SaffronInMemoryDataSource implements SaffronDataSource {
             return corpus.values();
         }
 
-        private HashMap<String, IntList> getTaxoLocations(Taxonomy t) {
-            IntList il = new IntArrayList();
-            HashMap<String, IntList> map = new HashMap<>();
-            _getTaxoLocations(t, il, map);
-            return map;
-        }
-
-        private void _getTaxoLocations(Taxonomy t, IntList il, HashMap<String, IntList> map) {
-            map.put(t.root, il);
-            for (int i = 0; i < t.children.size(); i++) {
-                IntList il2 = new IntArrayList(il);
-                il2.add(i);
-                _getTaxoLocations(t.children.get(i), il2, map);
-            }
-        }
-
-        private Taxonomy taxoNavigate(Taxonomy t, IntList il) {
-            for (int i : il) {
-                t = t.children.get(i);
-            }
-            return t;
-        }
-
         public List<String> getTaxoParents(String termString) {
-            IntList il = taxoMap.get(termString);
-            if (il != null) {
-                Taxonomy t = taxonomy;
-                List<String> route = new ArrayList<>();
-                for (int i : il) {
-                    route.add(t.root);
-                    t = t.children.get(i);
-                }
-                return route;
-            } else {
-                return Collections.EMPTY_LIST;
-            }
+            return taxoIndex.ancestors(termString);
         }
 
         public Taxonomy getTaxoDescendent(String termString) {
-
-            Taxonomy t = taxonomy;
-            return taxonomy.descendent(termString);
+            return taxoIndex.get(termString);
         }
 
         public List<String> getTaxoChildren(String termString) {
-            IntList il = taxoMap.get(termString);
-            if (il != null) {
-                Taxonomy t = taxoNavigate(taxonomy, il);
+            Taxonomy t = taxoIndex.get(termString);
+            if (t != null) {
                 List<String> children = new ArrayList<>();
                 for (Taxonomy t2 : t.children) {
                     children.add(t2.root);
@@ -455,9 +416,8 @@ public class SaffronInMemoryDataSource implements SaffronDataSource {
         }
 
         public List<TermAndScore> getTaxoChildrenScored(String termString) {
-            IntList il = taxoMap.get(termString);
-            if (il != null) {
-                Taxonomy t = taxoNavigate(taxonomy, il);
+            Taxonomy t = taxoIndex.get(termString);
+            if (t != null) {
                 List<TermAndScore> children = new ArrayList<>();
                 for (Taxonomy t2 : t.children) {
                     children.add(new TermAndScore(t2.root, t2.linkScore));
@@ -715,6 +675,15 @@ public class SaffronInMemoryDataSource implements SaffronDataSource {
         return true;
     }
 
+    @Override
+    public TaxonomyIndex getTaxonomyIndex(String runId) {
+        SaffronDataImpl saffron = data.get(runId);
+        if (saffron == null) {
+            throw new NoSuchElementException("Saffron run does not exist");
+        }
+        return saffron.taxoIndex;
+    }
+
     @Override
     public boolean updateTerm(String id, String term, String status) {
         return false;
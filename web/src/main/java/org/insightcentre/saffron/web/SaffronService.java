@@ -13,6 +13,7 @@ import org.insightcentre.nlp.saffron.data.Partonomy;
 import org.insightcentre.nlp.saffron.data.SaffronRun;
 import org.insightcentre.nlp.saffron.data.Status;
 import org.insightcentre.nlp.saffron.data.Taxonomy;
+import org.insightcentre.nlp.saffron.data.TaxonomyIndex;
 import org.insightcentre.nlp.saffron.data.Term;
 import org.insightcentre.nlp.saffron.data.VirtualRootTaxonomy;
 import org.insightcentre.nlp.saffron.data.connections.AuthorAuthor;
@@ -249,12 +250,17 @@ public class SaffronService {
 
 		//2 - If new status = "rejected" then
 		if (term.getStatus().equals(Status.rejected)) {
-			Taxonomy taxonomy = dataSource.getTaxonomy(taxonomyId);
-			taxonomy.removeDescendent(term.getString());
-			boolean taxonomyUpdated = dataSource.updateTaxonomy(taxonomyId, taxonomy);
-			if(!taxonomyUpdated)
-				throw new RuntimeException("An error has ocurred when updating the taxonomy in the database.");
-				//TODO It should revert the term update in this case
+			TaxonomyIndex index = dataSource.getTaxonomyIndex(taxonomyId);
+			if (index != null) {
+				index.removeDescendent(term.getString());
+			} else {
+				Taxonomy taxonomy = dataSource.getTaxonomy(taxonomyId);
+				taxonomy.removeDescendent(term.getString());
+				boolean taxonomyUpdated = dataSource.updateTaxonomy(taxonomyId, taxonomy);
+				if(!taxonomyUpdated)
+					throw new RuntimeException("An error has ocurred when updating the taxonomy in the database.");
+					//TODO It should revert the term update in this case
+			}
 		}
 	}
 
@@ -321,11 +327,17 @@ public class SaffronService {
 		}
 
 		// 2 - Change relation status in the database otherwise
-		Taxonomy taxonomy = dataSource.getTaxonomy(taxonomyId);
-		taxonomy.setParentChildStatus(termChild,Status.valueOf(status));
-		boolean taxonomyUpdated = dataSource.updateTaxonomy(taxonomyId, taxonomy);
-		if(!taxonomyUpdated)
-			throw new RuntimeException("An error has ocurred when updating the taxonomy in the database.");
+		TaxonomyIndex index = dataSource.getTaxonomyIndex(taxonomyId);
+		Taxonomy taxonomy = null;
+		if (index != null) {
+			index.setParentChildStatus(termChild, Status.valueOf(status));
+		} else {
+			taxonomy = dataSource.getTaxonomy(taxonomyId);
+			taxonomy.setParentChildStatus(termChild,Status.valueOf(status));
+			boolean taxonomyUpdated = dataSource.updateTaxonomy(taxonomyId, taxonomy);
+			if(!taxonomyUpdated)
+				throw new RuntimeException("An error has ocurred when updating the taxonomy in the database.");
+		}
 
 		// 3 - If relation status = "accepted" then, change both term status to "accepted"
 		if (status.equals(Status.accepted.toString())) {
@@ -334,7 +346,8 @@ public class SaffronService {
 			if(!termUpdated)
 				throw new RuntimeException("An error has ocurred when updating the status of the child term in the database.");
 
-			String parentString = taxonomy.getParent(termChild).getRoot();
+			Taxonomy parent = index != null ? index.getParent(termChild) : taxonomy.getParent(termChild);
+			String parentString = parent.getRoot();
 			if (!parentString.equals(VirtualRootTaxonomy.VIRTUAL_ROOT)) {
 				termUpdated = dataSource.updateTerm(taxonomyId, parentString, Status.accepted.toString());
 				if(!termUpdated)
@@ -398,14 +411,21 @@ public class SaffronService {
 		}
 
 
-		Taxonomy taxonomy = dataSource.getTaxonomy(taxonomyId);
-		if(taxonomy == null)
-			throw new RuntimeException("There is no run with id = '" + taxonomyId + "'.");
-		taxonomy.updateParent(termChild, termNewParent);
+		// The in-memory data source edits its taxonomy through an index,
+		// rather than finding the terms and rebuilding the index again
+		TaxonomyIndex index = dataSource.getTaxonomyIndex(taxonomyId);
+		if (index != null) {
+			index.updateParent(termChild, termNewParent);
+		} else {
+			Taxonomy taxonomy = dataSource.getTaxonomy(taxonomyId);
+			if(taxonomy == null)
+				throw new RuntimeException("There is no run with id = '" + taxonomyId + "'.");
+			taxonomy.updateParent(termChild, termNewParent);
 
-		boolean taxonomyUpdated =  dataSource.updateTaxonomy(taxonomyId, taxonomy);
-		if(!taxonomyUpdated)
-			throw new RuntimeException("An error has ocurred when updating the taxonomy in the database.");
+			boolean taxonomyUpdated =  dataSource.updateTaxonomy(taxonomyId, taxonomy);
+			if(!taxonomyUpdated)
+				throw new RuntimeException("An error has ocurred when updating the taxonomy in the database.");
+		}
 
 		this.updateParentRelationshipStatus(taxonomyId, termChild, Status.accepted.toString());
 	}
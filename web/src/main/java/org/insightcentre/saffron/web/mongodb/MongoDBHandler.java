@@ -81,7 +81,6 @@ import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.bson.BsonDocument;
-import org.insightcentre.nlp.saffron.util.SimpleCache;
 
 public class MongoDBHandler extends HttpServlet implements SaffronDataSource {
 